@@ -0,0 +1,78 @@
+package edu.gmu.swe622.pa2;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Scratch files for the benchmarks. Each benchmark state works under its own scratch directory, which it deletes
+ * when the trial is over; a state that starts a server makes its scratch directory the server's working directory.
+ */
+final class BenchmarkFiles {
+
+    /**
+     * Discards everything written to it, so that client progress messages do not end up in the benchmark output.
+     */
+    static final PrintStream QUIET = new PrintStream(new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    });
+
+    /**
+     * Constructor. Not used; all methods are static.
+     */
+    private BenchmarkFiles() {
+    }
+
+    /**
+     * Creates a scratch directory under the system's temporary directory.
+     * @return  the new directory
+     * @throws IOException  if the directory cannot be created
+     */
+    static Path createScratch() throws IOException {
+        return Files.createTempDirectory("fss-bench");
+    }
+
+    /**
+     * Creates a file of random bytes, the same bytes every time.
+     * @param file  the file to create
+     * @param size  the number of bytes in the file
+     * @throws IOException  if the file cannot be written
+     */
+    static void createFile(Path file, long size) throws IOException {
+        byte[] buffer = new byte[1024 * 1024];
+        Random random = new Random(0);
+        try (OutputStream stream = Files.newOutputStream(file)) {
+            for (long written = 0; written < size; written += buffer.length) {
+                random.nextBytes(buffer);
+                stream.write(buffer, 0, (int) Math.min(buffer.length, size - written));
+            }
+        }
+    }
+
+    /**
+     * Deletes a directory and everything under it.
+     * @param dir  the directory to delete
+     * @throws IOException  if a file cannot be deleted
+     */
+    static void delete(Path dir) throws IOException {
+        List<Path> paths = new ArrayList<>();
+        try (Stream<Path> walk = Files.walk(dir)) {
+            walk.forEach(paths::add);
+        }
+        for (int i = paths.size() - 1; i >= 0; i--) {
+            Files.deleteIfExists(paths.get(i));
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package edu.gmu.swe622.pa2;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Reads a whole file through a download session and writes it through an upload session a chunk at a time, at
+ * several chunk sizes, without any transport in between. Each operation moves fileSize bytes, so the score in
+ * milliseconds per operation gives the throughput of the session itself.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChunkBenchmark {
+
+    /**
+     * The number of bytes read or written with each call, which must not be more than fss.chunk.max.
+     */
+    @Param({ "4096", "65536", "1048576", "4194304" })
+    public int chunkSize;
+
+    /**
+     * The number of bytes in the file.
+     */
+    @Param({ "67108864" })
+    public long fileSize;
+
+    private Path scratch;
+    private Path file;
+    private Path target;
+    private byte[] data;
+
+    /**
+     * Creates the file to download and the data to upload.
+     * @throws IOException  if the file cannot be created
+     * @throws IllegalArgumentException  if chunkSize is larger than fss.chunk.max
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        if (this.chunkSize > Constants.MAX_CHUNK_SIZE) {
+            throw new IllegalArgumentException("Chunk size " + this.chunkSize + " is larger than fss.chunk.max");
+        }
+        this.scratch = BenchmarkFiles.createScratch();
+        this.file = this.scratch.resolve("download.bin");
+        this.target = this.scratch.resolve("upload.bin");
+        BenchmarkFiles.createFile(this.file, this.fileSize);
+        this.data = new byte[this.chunkSize];
+        new Random(1).nextBytes(this.data);
+    }
+
+    /**
+     * Deletes the file the last upload wrote, so that every upload starts from nothing.
+     * @throws IOException  if the file cannot be deleted
+     */
+    @Setup(Level.Invocation)
+    public void deleteTarget() throws IOException {
+        Files.deleteIfExists(this.target);
+    }
+
+    /**
+     * Deletes the scratch directory.
+     * @throws IOException  if a file cannot be deleted
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkFiles.delete(this.scratch);
+    }
+
+    /**
+     * Reads the file a chunk at a time through a download session.
+     * @param blackhole  consumes the chunks read
+     * @return  the number of bytes read
+     * @throws IOException  if the file cannot be read
+     */
+    @Benchmark
+    public long download(Blackhole blackhole) throws IOException {
+        long offset = 0;
+        DownloadServer download = new DownloadServer(new FileChannelSource(this.file), TransferOptions.defaults());
+        try {
+            byte[] chunk;
+            while ((chunk = download.readChunk(offset, this.chunkSize)).length > 0) {
+                offset += chunk.length;
+                blackhole.consume(chunk);
+            }
+        } finally {
+            download.close();
+        }
+        return offset;
+    }
+
+    /**
+     * Writes the file a chunk at a time through an upload session.
+     * @throws IOException  if the file cannot be written
+     */
+    @Benchmark
+    public void upload() throws IOException {
+        UploadServer upload = new UploadServer(this.target, this.fileSize, TransferOptions.defaults());
+        try {
+            for (long offset = 0; offset < this.fileSize; offset += this.chunkSize) {
+                upload.writeChunk(offset, this.data, (int) Math.min(this.chunkSize, this.fileSize - offset));
+            }
+        } finally {
+            upload.close();
+        }
+    }
+}
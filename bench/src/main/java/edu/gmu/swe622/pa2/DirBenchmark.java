@@ -0,0 +1,83 @@
+package edu.gmu.swe622.pa2;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Lists a directory of empty files through the server, at several directory sizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DirBenchmark {
+
+    /**
+     * The number of files in the directory.
+     */
+    @Param({ "10", "10000", "1000000" })
+    public int entries;
+
+    private String userDir;
+    private Path scratch;
+    private FSSServer server;
+
+    /**
+     * Creates the directory and starts a server in the scratch directory holding it.
+     * @throws IOException  if the files cannot be created or the server cannot be started
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        this.scratch = BenchmarkFiles.createScratch();
+        Path dir = Files.createDirectory(this.scratch.resolve("dir"));
+        for (int i = 0; i < this.entries; i++) {
+            Files.createFile(dir.resolve("file" + i));
+        }
+        this.userDir = System.getProperty("user.dir");
+        System.setProperty("user.dir", this.scratch.toString());
+        this.server = new FSSServer();
+    }
+
+    /**
+     * Shuts the server down and deletes the scratch directory.
+     * @throws IOException  if the server cannot be shut down or a file cannot be deleted
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try {
+            this.server.shutdown();
+        } finally {
+            System.setProperty("user.dir", this.userDir);
+            BenchmarkFiles.delete(this.scratch);
+        }
+    }
+
+    /**
+     * Lists the directory.
+     * @return  the listing
+     * @throws IOException  if the directory cannot be read
+     */
+    @Benchmark
+    public List<String> dir() throws IOException {
+        return this.server.dir("dir");
+    }
+}
@@ -0,0 +1,87 @@
+package edu.gmu.swe622.pa2;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Resolves and validates plain, nested and relative request paths the way the server does for every request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PathBenchmark {
+
+    /**
+     * The path as a client sends it.
+     */
+    @Param({ "a.txt", "/data/2016/logs/server.log", "dir/../../etc/passwd", "./photos/holiday/img_0001.jpg" })
+    public String path;
+
+    private String userDir;
+    private Path scratch;
+    private FSSServer server;
+    private Path resolved;
+
+    /**
+     * Starts a server in a scratch directory and resolves the path once for the validation benchmark.
+     * @throws IOException  if the server cannot be started
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        this.scratch = BenchmarkFiles.createScratch();
+        this.userDir = System.getProperty("user.dir");
+        System.setProperty("user.dir", this.scratch.toString());
+        this.server = new FSSServer();
+        this.resolved = this.server.getPath(this.path);
+    }
+
+    /**
+     * Shuts the server down and deletes the scratch directory.
+     * @throws IOException  if the server cannot be shut down or a file cannot be deleted
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try {
+            this.server.shutdown();
+        } finally {
+            System.setProperty("user.dir", this.userDir);
+            BenchmarkFiles.delete(this.scratch);
+        }
+    }
+
+    /**
+     * Resolves the path against the server's working directory.
+     * @return  the resolved path
+     */
+    @Benchmark
+    public Path getPath() {
+        return this.server.getPath(this.path);
+    }
+
+    /**
+     * Checks that the resolved path stays inside the server's working directory.
+     * @return  true if the path is valid
+     */
+    @Benchmark
+    public boolean validatePath() {
+        return this.server.validatePath(this.resolved);
+    }
+}
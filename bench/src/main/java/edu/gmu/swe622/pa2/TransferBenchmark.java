@@ -0,0 +1,139 @@
+package edu.gmu.swe622.pa2;
+
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.rmi.Naming;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Uploads and downloads a whole file through a client connected to a server in the same process, over RMI with a
+ * registry on the loopback interface or over the framed transport, with whatever transfer settings the system
+ * properties of the forked JVM choose. The server listens on the port set with the fss.bench.port system property
+ * (default 19199).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransferBenchmark {
+
+    private static final int PORT = Integer.getInteger("fss.bench.port", 19199);
+
+    /**
+     * How the client reaches the server, by its name in configuration.
+     */
+    @Param({ "rmi", "frame" })
+    public String transport;
+
+    /**
+     * The number of bytes in the file.
+     */
+    @Param({ "1048576", "67108864" })
+    public long fileSize;
+
+    private String userDir;
+    private PrintStream out;
+    private Path scratch;
+    private Path file;
+    private Path uploaded;
+    private Path downloaded;
+    private FSSServer server;
+    private FSSClient client;
+
+    /**
+     * Starts a server in a scratch directory, serves it with the transport and connects a client to it.
+     * @throws Exception  if the server cannot be started or the client cannot connect
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        Transport transport = Transport.findByName(this.transport);
+        if (transport == null) {
+            throw new IllegalArgumentException("No transport named " + this.transport);
+        }
+        this.scratch = BenchmarkFiles.createScratch();
+        Path serverDir = Files.createDirectory(this.scratch.resolve("server"));
+        this.file = this.scratch.resolve("upload.bin");
+        this.downloaded = this.scratch.resolve("download.bin");
+        this.uploaded = serverDir.resolve("upload.bin");
+        BenchmarkFiles.createFile(this.file, this.fileSize);
+        Files.copy(this.file, serverDir.resolve("download.bin"));
+        this.userDir = System.getProperty("user.dir");
+        System.setProperty("user.dir", serverDir.toString());
+        this.server = new FSSServer();
+        if (transport == Transport.FRAME) {
+            this.server.addTransport(new FrameServer(PORT, this.server, Constants.FRAME_WORKERS,
+                    Constants.FRAME_INTERACTIVE_WORKERS, Constants.FRAME_MAX_IN_FLIGHT, Constants.FRAME_MAX_SIZE));
+        } else {
+            Registry registry = LocateRegistry.createRegistry(PORT);
+            this.server.addTransport(() -> UnicastRemoteObject.unexportObject(registry, true));
+            Naming.rebind("rmi://localhost:" + PORT + "/fss", UnicastRemoteObject.exportObject(this.server, 0));
+        }
+        this.client = new FSSClient("localhost", PORT, transport);
+        this.out = System.out;
+        System.setOut(BenchmarkFiles.QUIET);
+    }
+
+    /**
+     * Deletes the copies the last operation made, so that every upload and download starts from nothing.
+     * @throws Exception  if a file cannot be deleted
+     */
+    @Setup(Level.Invocation)
+    public void reset() throws Exception {
+        Files.deleteIfExists(this.uploaded);
+        Files.deleteIfExists(this.downloaded);
+    }
+
+    /**
+     * Disconnects the client, shuts the server down and deletes the scratch directory.
+     * @throws Exception  if the server cannot be shut down or a file cannot be deleted
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        System.setOut(this.out);
+        try {
+            this.client.close();
+            this.server.shutdown();
+        } finally {
+            System.setProperty("user.dir", this.userDir);
+            BenchmarkFiles.delete(this.scratch);
+        }
+    }
+
+    /**
+     * Uploads the file to the server.
+     * @throws Exception  if the upload fails
+     */
+    @Benchmark
+    public void upload() throws Exception {
+        this.client.doAction(Action.UPLOAD, new String[] { this.file.toString(), "upload.bin" });
+    }
+
+    /**
+     * Downloads the file from the server.
+     * @throws Exception  if the download fails
+     */
+    @Benchmark
+    public void download() throws Exception {
+        this.client.doAction(Action.DOWNLOAD, new String[] { "download.bin", this.downloaded.toString() });
+    }
+}
@@ -9,10 +9,17 @@ public enum Action {
     RMDIR("rmdir", 1),
     UPLOAD("upload", 2),
     DOWNLOAD("download", 2),
-    DIR("dir", 1),
-    MKDIR("mkdir", 1);
+    DIR("dir", 1, 3),
+    MKDIR("mkdir", 1),
+    RENAME("rename", 2),
+    COPY("copy", 2),
+    MOVE("move", 2),
+    SESSIONS("sessions", 0),
+    STATS("stats", 0),
+    SHELL("shell", 0);
 
     private int numargs;
+    private int maxargs;
     private String name;
 
     /**
@@ -22,8 +29,19 @@ public enum Action {
      * @param numargs  the number of arguments required by this action
      */
     Action(String name, int numargs) {
+        this(name, numargs, numargs);
+    }
+
+    /**
+     * Constructor for an action that also takes optional arguments.
+     * @param name  the action name that should be used on the command line when invoking the client
+     * @param numargs  the number of arguments required by this action
+     * @param maxargs  the number of arguments, required and optional, accepted by this action
+     */
+    Action(String name, int numargs, int maxargs) {
         this.name = name;
         this.numargs = numargs;
+        this.maxargs = maxargs;
     }
 
     /**
@@ -42,6 +60,14 @@ public enum Action {
         return this.numargs;
     }
 
+    /**
+     * Getter for the number of arguments accepted by the action.
+     * @return  the number of command line arguments, required and optional, accepted by the action
+     */
+    public int getMaxArgs() {
+        return this.maxargs;
+    }
+
     /**
      * Finds the instance of Action using the name.
      * @param name  the name of the action to find
@@ -0,0 +1,258 @@
+package edu.gmu.swe622.pa2;
+
+import java.rmi.server.RemoteServer;
+import java.rmi.server.ServerNotActiveException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decides which requests the server takes on, so that bulk transfers cannot crowd out everything else. Requests are
+ * in one of two priority classes. Interactive requests, such as listing or creating directories, are never held
+ * back. Bulk requests, the calls that move file data, are limited in three ways: each client can only have so many
+ * transfer sessions open, only so many bulk calls run at once both per client and in total, and the bytes they move
+ * are shaped by token buckets per client and in total. A bulk call that cannot get a slot within a short wait is
+ * turned away with a ServerBusyException that tells the client when to try again; a call that has moved more bytes
+ * than the buckets allow is delayed before it returns.
+ */
+public class AdmissionControl {
+
+    /**
+     * The priority class of a request.
+     */
+    public enum Priority {
+        INTERACTIVE,
+        BULK
+    }
+
+    /**
+     * What is known about one client host. The number of open sessions and running calls holding the state, and when
+     * it was last released, are only changed inside the map's compute methods, so that it is never pruned while held.
+     */
+    private class Client {
+        private Semaphore calls = new Semaphore(AdmissionControl.this.clientCalls, true);
+        private AtomicInteger sessions = new AtomicInteger();
+        private TokenBucket bandwidth = AdmissionControl.this.clientRate > 0
+                ? new TokenBucket(AdmissionControl.this.clientRate) : null;
+        private int holds;
+        private long lastUsed = System.nanoTime();
+    }
+
+    private int clientCalls;
+    private int clientSessions;
+    private long waitMillis;
+    private long retryAfterMillis;
+    private long clientRate;
+    private Semaphore calls;
+    private TokenBucket bandwidth;
+    private Map<String, Client> clients = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor.
+     * @param globalCalls  the most bulk calls running at once
+     * @param clientCalls  the most bulk calls running at once for one client
+     * @param clientSessions  the most transfer sessions one client can have open
+     * @param waitMillis  how long a bulk call waits for a slot before it is turned away
+     * @param retryAfterMillis  how long a client that was turned away is told to wait
+     * @param globalRate  the most bytes per second moved by all bulk calls, or 0 for no limit
+     * @param clientRate  the most bytes per second moved by one client's bulk calls, or 0 for no limit
+     * @throws IllegalArgumentException  if a limit is not positive or a time or rate is negative
+     */
+    public AdmissionControl(int globalCalls, int clientCalls, int clientSessions, long waitMillis,
+            long retryAfterMillis, long globalRate, long clientRate) {
+        if (globalCalls <= 0 || clientCalls <= 0 || clientSessions <= 0) {
+            throw new IllegalArgumentException("Call and session limits must be > 0");
+        }
+        if (waitMillis < 0 || retryAfterMillis < 0 || globalRate < 0 || clientRate < 0) {
+            throw new IllegalArgumentException("Wait times and rates must be >= 0");
+        }
+        this.clientCalls = clientCalls;
+        this.clientSessions = clientSessions;
+        this.waitMillis = waitMillis;
+        this.retryAfterMillis = retryAfterMillis;
+        this.clientRate = clientRate;
+        this.calls = new Semaphore(globalCalls, true);
+        this.bandwidth = globalRate > 0 ? new TokenBucket(globalRate) : null;
+    }
+
+    /**
+     * Returns the host of the client making the current remote call.
+     * @return  the client's host, or "local" if the current thread is not serving a remote call
+     */
+    public String currentClient() {
+        String client = FrameServer.currentClient();
+        if (client != null) {
+            return client;
+        }
+        try {
+            return RemoteServer.getClientHost();
+        } catch (ServerNotActiveException exp) {
+            return "local";
+        }
+    }
+
+    /**
+     * Getter for the retry delay.
+     * @return  how long, in milliseconds, a client that was turned away is told to wait
+     */
+    public long getRetryAfterMillis() {
+        return this.retryAfterMillis;
+    }
+
+    /**
+     * Admits a new transfer session for a client, unless it already has as many open as it is allowed.
+     * @param client  the client's host
+     * @throws ServerBusyException  if the client has too many transfer sessions open
+     */
+    public void openSession(String client) throws ServerBusyException {
+        Client state = this.hold(client);
+        if (state.sessions.incrementAndGet() > this.clientSessions) {
+            state.sessions.decrementAndGet();
+            this.release(client);
+            throw new ServerBusyException("Too many transfers open from " + client, this.retryAfterMillis);
+        }
+    }
+
+    /**
+     * Releases a transfer session admitted by openSession.
+     * @param client  the client's host
+     */
+    public void closeSession(String client) {
+        this.clients.get(client).sessions.decrementAndGet();
+        this.release(client);
+    }
+
+    /**
+     * Waits for a slot to run a bulk call, first among the client's own calls and then among all bulk calls.
+     * @param client  the client's host
+     * @throws ServerBusyException  if no slot became free within the wait time
+     */
+    public void beginCall(String client) throws ServerBusyException {
+        Client state = this.hold(client);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.waitMillis);
+        if (! this.acquire(state.calls, deadline)) {
+            this.release(client);
+            throw new ServerBusyException("Too many transfers running for " + client, this.retryAfterMillis);
+        }
+        if (! this.acquire(this.calls, deadline)) {
+            state.calls.release();
+            this.release(client);
+            throw new ServerBusyException("Too many transfers running", this.retryAfterMillis);
+        }
+    }
+
+    /**
+     * Releases the slot of a bulk call, then delays the caller if the bytes it moved put a bandwidth limit over.
+     * @param client  the client's host
+     * @param bytes  the number of bytes of file data the call moved
+     */
+    public void endCall(String client, long bytes) {
+        Client state = this.clients.get(client);
+        this.calls.release();
+        state.calls.release();
+        long delay = 0;
+        if (bytes > 0 && this.bandwidth != null) {
+            delay = this.bandwidth.take(bytes);
+        }
+        if (bytes > 0 && state.bandwidth != null) {
+            delay = Math.max(delay, state.bandwidth.take(bytes));
+        }
+        this.release(client);
+        if (delay > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(delay);
+            } catch (InterruptedException exp) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Forgets the clients that have no sessions open and no calls running and have not had any for longer than a
+     * timeout, so that the server does not keep state for every host that ever connected.
+     * @param idleMillis  how long, in milliseconds, a client must have been idle; at least a second, so that its
+     *                    bandwidth allowance has been refilled
+     */
+    public void prune(long idleMillis) {
+        long now = System.nanoTime();
+        long idleNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(idleMillis, 1000));
+        for (String client : this.clients.keySet()) {
+            this.clients.computeIfPresent(client,
+                    (host, state) -> state.holds == 0 && now - state.lastUsed > idleNanos ? null : state);
+        }
+    }
+
+    /**
+     * Getter for the number of clients.
+     * @return  the number of client hosts the server keeps state for
+     */
+    public int clientCount() {
+        return this.clients.size();
+    }
+
+    /**
+     * Counts the bytes of file data in an argument or result of a bulk call.
+     * @param value  the argument or result
+     * @return  the length of a byte array, of the data of a chunk or of a list of chunks or delta operations, or 0
+     */
+    public static long bytesOf(Object value) {
+        if (value instanceof byte[]) {
+            return ((byte[]) value).length;
+        } else if (value instanceof Chunk) {
+            return ((Chunk) value).getData().length;
+        } else if (value instanceof DeltaOp) {
+            return ((DeltaOp) value).isCopy() ? 0 : bytesOf(((DeltaOp) value).getLiteral());
+        } else if (value instanceof List) {
+            long bytes = 0;
+            for (Object element : (List<?>) value) {
+                bytes += bytesOf(element);
+            }
+            return bytes;
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the state of a client, creating it if the client is new or was pruned, and holds it until release is
+     * called.
+     * @param client  the client's host
+     * @return  the client's state
+     */
+    private Client hold(String client) {
+        return this.clients.compute(client, (host, state) -> {
+            Client held = state != null ? state : new Client();
+            held.holds++;
+            return held;
+        });
+    }
+
+    /**
+     * Releases a client's state held by hold, so that it can be pruned once it has been idle long enough.
+     * @param client  the client's host
+     */
+    private void release(String client) {
+        this.clients.computeIfPresent(client, (host, state) -> {
+            state.holds--;
+            state.lastUsed = System.nanoTime();
+            return state;
+        });
+    }
+
+    /**
+     * Acquires a permit, waiting no later than a deadline.
+     * @param semaphore  the semaphore to acquire a permit of
+     * @param deadline  the value of System.nanoTime after which to give up
+     * @return  true if a permit was acquired
+     */
+    private boolean acquire(Semaphore semaphore, long deadline) {
+        try {
+            return semaphore.tryAcquire(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException exp) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package edu.gmu.swe622.pa2;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * A batch of small files packed into one byte array, so that all of them can be uploaded with a single call. The
+ * batch starts with a magic number and the number of entries, and each entry is framed as its path, its length, a
+ * CRC-32 of its bytes and the bytes themselves. The reader unpacks one entry at a time and checks each checksum as
+ * it goes. An entry that does not match its checksum is skipped, but once the framing itself is broken, as in a
+ * truncated batch, none of the entries after it can be read.
+ */
+public class BatchArchive {
+
+    /**
+     * The most entries in one batch.
+     */
+    public static final int MAX_ENTRIES = 10000;
+
+    private static final int MAGIC = 0x46535342;
+
+    /**
+     * One file of a batch.
+     */
+    public static class Entry {
+        private String path;
+        private byte[] data;
+
+        /**
+         * Constructor.
+         * @param path  the path of the file on the server
+         * @param data  the contents of the file
+         */
+        public Entry(String path, byte[] data) {
+            this.path = path;
+            this.data = data;
+        }
+
+        /**
+         * Getter for the path.
+         * @return  the path of the file on the server
+         */
+        public String getPath() {
+            return this.path;
+        }
+
+        /**
+         * Getter for the data.
+         * @return  the contents of the file
+         */
+        public byte[] getData() {
+            return this.data;
+        }
+    }
+
+    /**
+     * Packs entries into a batch.
+     */
+    public static class Writer {
+        private ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private DataOutputStream out = new DataOutputStream(this.bytes);
+        private int count;
+
+        /**
+         * Adds an entry to the batch.
+         * @param path  the path of the file on the server
+         * @param data  the contents of the file
+         * @throws IOException  if the path is too long to be framed
+         * @throws IllegalStateException  if the batch already holds the most entries allowed
+         */
+        public void add(String path, byte[] data) throws IOException {
+            if (this.count >= MAX_ENTRIES) {
+                throw new IllegalStateException("A batch holds at most " + MAX_ENTRIES + " entries");
+            }
+            this.out.writeUTF(path);
+            this.out.writeInt(data.length);
+            this.out.writeLong(Chunk.checksum(data, data.length));
+            this.out.write(data);
+            this.count++;
+        }
+
+        /**
+         * Returns the number of entries in the batch.
+         * @return  the count of entries added
+         */
+        public int getCount() {
+            return this.count;
+        }
+
+        /**
+         * Returns the packed batch.
+         * @return  the header followed by every entry added
+         * @throws IOException  never, since the batch is held in memory
+         */
+        public byte[] toByteArray() throws IOException {
+            ByteArrayOutputStream batch = new ByteArrayOutputStream(this.bytes.size() + 8);
+            DataOutputStream header = new DataOutputStream(batch);
+            header.writeInt(MAGIC);
+            header.writeInt(this.count);
+            this.bytes.writeTo(batch);
+            return batch.toByteArray();
+        }
+    }
+
+    /**
+     * Unpacks the entries of a batch one at a time.
+     */
+    public static class Reader {
+        private DataInputStream in;
+        private int remaining;
+        private boolean broken;
+
+        /**
+         * Constructor. Reads and checks the header of the batch.
+         * @param batch  the packed batch
+         * @throws IOException  if the batch does not start with a valid header
+         */
+        public Reader(byte[] batch) throws IOException {
+            this.in = new DataInputStream(new ByteArrayInputStream(batch));
+            if (batch.length < 8 || this.in.readInt() != MAGIC) {
+                throw new IOException("Not a batch of files");
+            }
+            this.remaining = this.in.readInt();
+            if (this.remaining < 0 || this.remaining > MAX_ENTRIES) {
+                throw new IOException("Invalid number of entries in batch: " + this.remaining);
+            }
+        }
+
+        /**
+         * Returns whether there are more entries that can be read.
+         * @return  true if next will return, or fail to verify, another entry
+         */
+        public boolean hasNext() {
+            return this.remaining > 0 && ! this.broken;
+        }
+
+        /**
+         * Returns the number of entries the batch still holds, including any that can no longer be read.
+         * @return  the count of entries not yet unpacked
+         */
+        public int getRemaining() {
+            return this.remaining;
+        }
+
+        /**
+         * Returns whether the framing of the batch is broken, so that the remaining entries cannot be read.
+         * @return  true if next failed on something other than a checksum
+         */
+        public boolean isBroken() {
+            return this.broken;
+        }
+
+        /**
+         * Unpacks the next entry. An entry that does not match its checksum is skipped, and the one after it can still
+         * be read.
+         * @return  the next entry
+         * @throws IOException  if the batch is truncated or the entry does not match its checksum
+         */
+        public Entry next() throws IOException {
+            if (! this.hasNext()) {
+                throw new IOException("No more entries in batch");
+            }
+            String path;
+            byte[] data;
+            long checksum;
+            try {
+                path = this.in.readUTF();
+                int length = this.in.readInt();
+                checksum = this.in.readLong();
+                if (length < 0 || length > this.in.available()) {
+                    throw new IOException("Batch is truncated at " + path);
+                }
+                data = new byte[length];
+                this.in.readFully(data);
+            } catch (IOException exp) {
+                this.broken = true;
+                throw exp;
+            }
+            this.remaining--;
+            if (Chunk.checksum(data, data.length) != checksum) {
+                throw new IOException("Checksum mismatch in batch entry " + path);
+            }
+            return new Entry(path, data);
+        }
+    }
+}
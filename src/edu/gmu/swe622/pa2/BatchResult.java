@@ -0,0 +1,48 @@
+package edu.gmu.swe622.pa2;
+
+import java.io.Serializable;
+
+/**
+ * The outcome of writing one entry of an uploaded batch of files.
+ */
+public class BatchResult implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private String path;
+    private String error;
+
+    /**
+     * Constructor.
+     * @param path  the path of the entry, or null if it could not be read from the batch
+     * @param error  why the entry could not be written, or null if it was written
+     */
+    public BatchResult(String path, String error) {
+        this.path = path;
+        this.error = error;
+    }
+
+    /**
+     * Getter for the path.
+     * @return  the path of the entry, or null if it could not be read from the batch
+     */
+    public String getPath() {
+        return this.path;
+    }
+
+    /**
+     * Getter for the error.
+     * @return  why the entry could not be written, or null if it was written
+     */
+    public String getError() {
+        return this.error;
+    }
+
+    /**
+     * Returns whether the entry was written.
+     * @return  true if the entry was written
+     */
+    public boolean isOk() {
+        return this.error == null;
+    }
+}
@@ -0,0 +1,105 @@
+package edu.gmu.swe622.pa2;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded pool of equally sized slices of direct buffers. Buffers are allocated on first use, up to the configured
+ * count, and cut into slices, so that a caller that only has a little to stage does not tie up a whole buffer; once
+ * every slice is in use, callers wait for one to be released, up to a time limit after which they are turned away as
+ * if the server were busy.
+ */
+public class BufferPool {
+
+    private int bufferSize;
+    private int sliceSize;
+    private int slicesPerBuffer;
+    private int maxBuffers;
+    private long waitMillis;
+    private long retryAfterMillis;
+    private int allocated;
+    private BlockingQueue<ByteBuffer> free;
+
+    /**
+     * Constructor.
+     * @param bufferSize  the number of bytes in each buffer
+     * @param sliceSize  the number of bytes in each slice; a buffer that is not a multiple of it has its last bytes
+     *                   left unused
+     * @param maxBuffers  the most buffers the pool will allocate
+     * @param waitMillis  how long, in milliseconds, to wait for a slice when all of them are in use
+     * @param retryAfterMillis  how long, in milliseconds, a client turned away should wait before trying again
+     * @throws IllegalArgumentException  if bufferSize, sliceSize or maxBuffers is not positive
+     */
+    public BufferPool(int bufferSize, int sliceSize, int maxBuffers, long waitMillis, long retryAfterMillis) {
+        if (bufferSize <= 0 || sliceSize <= 0 || maxBuffers <= 0) {
+            throw new IllegalArgumentException("Buffer size, slice size and count must be > 0");
+        }
+        this.bufferSize = bufferSize;
+        this.sliceSize = Math.min(sliceSize, bufferSize);
+        this.slicesPerBuffer = bufferSize / this.sliceSize;
+        this.maxBuffers = maxBuffers;
+        this.waitMillis = waitMillis;
+        this.retryAfterMillis = retryAfterMillis;
+        this.free = new ArrayBlockingQueue<>(maxBuffers * this.slicesPerBuffer);
+    }
+
+    /**
+     * Takes a cleared slice from the pool, allocating a new buffer if every slice is in use and the pool is not yet
+     * full, or else waiting for a slice to be released.
+     * @return  a slice ready to be filled
+     * @throws InterruptedException  if interrupted while waiting for a slice
+     * @throws ServerBusyException  if no slice was released within the wait limit
+     */
+    public ByteBuffer acquire() throws InterruptedException, ServerBusyException {
+        ByteBuffer slice = this.free.poll();
+        if (slice == null) {
+            synchronized (this) {
+                if (this.allocated < this.maxBuffers) {
+                    this.allocated++;
+                    ByteBuffer buffer = ByteBuffer.allocateDirect(this.bufferSize);
+                    for (int i = 1; i < this.slicesPerBuffer; i++) {
+                        this.free.offer(this.slice(buffer, i));
+                    }
+                    return this.slice(buffer, 0);
+                }
+            }
+            slice = this.free.poll(Math.max(0, this.waitMillis), TimeUnit.MILLISECONDS);
+            if (slice == null) {
+                throw new ServerBusyException("Every upload buffer is in use", this.retryAfterMillis);
+            }
+        }
+        slice.clear();
+        return slice;
+    }
+
+    /**
+     * Returns a slice to the pool.
+     * @param slice  a slice previously taken from this pool
+     */
+    public void release(ByteBuffer slice) {
+        this.free.offer(slice);
+    }
+
+    /**
+     * Returns the number of slices currently taken from the pool.
+     * @return  the count of slices in use
+     */
+    public synchronized int inUse() {
+        return this.allocated * this.slicesPerBuffer - this.free.size();
+    }
+
+    /**
+     * Cuts one slice out of a buffer.
+     * @param buffer  the buffer
+     * @param index  the index of the slice in the buffer
+     * @return  a buffer sharing the bytes of the slice
+     */
+    private ByteBuffer slice(ByteBuffer buffer, int index) {
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.position(index * this.sliceSize);
+        duplicate.limit((index + 1) * this.sliceSize);
+        return duplicate.slice();
+    }
+}
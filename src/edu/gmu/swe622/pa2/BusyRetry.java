@@ -0,0 +1,94 @@
+package edu.gmu.swe622.pa2;
+
+import java.io.IOException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Runs the client's calls that move file data so that they keep within the server's admission limits. At most as
+ * many of them are in flight at once, across every transfer the client is running, as the server runs for one
+ * client, and a call the server turns away as busy is sent again after the delay the server asked for.
+ */
+public final class BusyRetry {
+
+    /**
+     * A call to the server.
+     * @param <T>  the type of the result
+     */
+    public interface Call<T> {
+
+        /**
+         * Makes the call.
+         * @return  the result
+         * @throws IOException  if there is an error while communicating with the server
+         */
+        T call() throws IOException;
+    }
+
+    /**
+     * The calls that move file data the client has in flight.
+     */
+    private static final Semaphore IN_FLIGHT = new Semaphore(Constants.ADMIT_CLIENT_CALLS, true);
+
+    /**
+     * Not instantiable.
+     */
+    private BusyRetry() {
+    }
+
+    /**
+     * Makes a call that moves file data, once one of the client's slots is free, retrying it while the server is
+     * busy.
+     * @param call  the call
+     * @param <T>  the type of the result
+     * @return  the result
+     * @throws IOException  if the call fails, or the server is still busy after the last retry
+     */
+    public static <T> T bulk(Call<T> call) throws IOException {
+        return retry(() -> {
+            acquire();
+            try {
+                return call.call();
+            } finally {
+                IN_FLIGHT.release();
+            }
+        });
+    }
+
+    /**
+     * Makes a call, retrying it while the server is busy.
+     * @param call  the call
+     * @param <T>  the type of the result
+     * @return  the result
+     * @throws IOException  if the call fails, or the server is still busy after the last retry
+     */
+    public static <T> T retry(Call<T> call) throws IOException {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return call.call();
+            } catch (ServerBusyException exp) {
+                if (attempt >= Constants.ADMIT_RETRIES) {
+                    throw exp;
+                }
+                try {
+                    Thread.sleep(exp.getRetryAfterMillis());
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw exp;
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits for one of the client's slots for calls that move file data.
+     * @throws IOException  if the wait was interrupted
+     */
+    private static void acquire() throws IOException {
+        try {
+            IN_FLIGHT.acquire();
+        } catch (InterruptedException exp) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting to transfer", exp);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package edu.gmu.swe622.pa2;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.zip.CRC32;
+
+/**
+ * A chunk of a file sent in a compressed transfer. The bytes are compressed with the transfer's codec unless that
+ * did not make them meaningfully smaller, in which case they are sent raw and the codec name is null. Every chunk
+ * carries a CRC-32 of its raw bytes, which is checked when it is decoded.
+ */
+public class Chunk implements Serializable {
+
+    private static final long serialVersionUID = 2L;
+
+    /**
+     * Compressed bytes are only sent if they are at most this fraction of the raw length.
+     */
+    private static final double MAX_COMPRESSED_RATIO = 0.9;
+
+    private String codec;
+    private int length;
+    private byte[] data;
+    private long checksum;
+
+    /**
+     * Constructor.
+     * @param codec  the name of the codec the data is compressed with, or null if it is raw
+     * @param length  the number of bytes in the chunk before compression
+     * @param data  the bytes of the chunk as sent
+     * @param checksum  the CRC-32 of the raw bytes of the chunk
+     */
+    public Chunk(String codec, int length, byte[] data, long checksum) {
+        this.codec = codec;
+        this.length = length;
+        this.data = data;
+        this.checksum = checksum;
+    }
+
+    /**
+     * Computes the checksum a chunk carries.
+     * @param data  the array holding the raw bytes of the chunk
+     * @param length  the number of bytes in the chunk, starting at index 0
+     * @return  the CRC-32 of the bytes
+     */
+    public static long checksum(byte[] data, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, length);
+        return crc.getValue();
+    }
+
+    /**
+     * Builds a chunk from raw bytes, compressing them with codec if that makes them meaningfully smaller.
+     * @param codec  the codec to compress with, or null to send the bytes raw
+     * @param data  the array holding the bytes of the chunk
+     * @param length  the number of bytes of data in the chunk, starting at index 0
+     * @return  the chunk to send
+     */
+    public static Chunk encode(Codec codec, byte[] data, int length) {
+        long checksum = checksum(data, length);
+        if (codec != null && length > 0) {
+            byte[] compressed = codec.compress(data, 0, length);
+            if (compressed.length <= length * MAX_COMPRESSED_RATIO) {
+                return new Chunk(codec.getName(), length, compressed, checksum);
+            }
+        }
+        byte[] raw = data;
+        if (data.length != length) {
+            raw = new byte[length];
+            System.arraycopy(data, 0, raw, 0, length);
+        }
+        return new Chunk(null, length, raw, checksum);
+    }
+
+    /**
+     * Returns the raw bytes of the chunk, decompressing them if necessary.
+     * @param maxLength  the largest raw length that will be accepted
+     * @return  the raw bytes
+     * @throws IOException  if the chunk is too long, its codec is not registered, or its data is corrupt or does not
+     *                      match its checksum
+     */
+    public byte[] decode(int maxLength) throws IOException {
+        if (this.length < 0 || this.length > maxLength) {
+            throw new IOException("Chunk length " + this.length + " is larger than the maximum of " + maxLength);
+        }
+        if (this.codec == null) {
+            if (this.data.length != this.length) {
+                throw new IOException("Raw chunk holds " + this.data.length + " bytes instead of " + this.length);
+            }
+            return this.verify(this.data);
+        }
+        Codec codec = Codecs.find(this.codec);
+        if (codec == null) {
+            throw new IOException("Unsupported codec: " + this.codec);
+        }
+        return this.verify(codec.decompress(this.data, this.length));
+    }
+
+    /**
+     * Checks decoded bytes against the chunk's checksum.
+     * @param raw  the decoded bytes
+     * @return  raw
+     * @throws IOException  if the bytes do not match the checksum
+     */
+    private byte[] verify(byte[] raw) throws IOException {
+        if (checksum(raw, raw.length) != this.checksum) {
+            throw new IOException("Chunk does not match its checksum");
+        }
+        return raw;
+    }
+
+    /**
+     * Getter for the codec name.
+     * @return  the name of the codec the data is compressed with, or null if it is raw
+     */
+    public String getCodec() {
+        return this.codec;
+    }
+
+    /**
+     * Getter for the raw length.
+     * @return  the number of bytes in the chunk before compression
+     */
+    public int getLength() {
+        return this.length;
+    }
+
+    /**
+     * Getter for the checksum.
+     * @return  the CRC-32 of the raw bytes of the chunk
+     */
+    public long getChecksum() {
+        return this.checksum;
+    }
+
+    /**
+     * Getter for the data.
+     * @return  the bytes of the chunk as sent
+     */
+    public byte[] getData() {
+        return this.data;
+    }
+}
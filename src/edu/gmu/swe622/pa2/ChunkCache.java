@@ -0,0 +1,312 @@
+package edu.gmu.swe622.pa2;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A least recently used cache of fixed size blocks of downloaded files, stored off the Java heap. The memory budget
+ * is allocated up front as direct buffers divided into one slot per block, so the cache never uses more than its
+ * budget. Blocks are keyed by file path, modification time and block index, so a block of an older version of a file
+ * is never returned for a newer one.
+ */
+public class ChunkCache {
+
+    /**
+     * Identifies one block of one version of a file.
+     */
+    private static class Key {
+        private Path filePath;
+        private long lastModified;
+        private long block;
+
+        /**
+         * Constructor.
+         * @param filePath  the normalized absolute path of the file
+         * @param lastModified  the modification time of the file in milliseconds
+         * @param block  the index of the block in the file
+         */
+        private Key(Path filePath, long lastModified, long block) {
+            this.filePath = filePath;
+            this.lastModified = lastModified;
+            this.block = block;
+        }
+
+        /**
+         * Compares keys by path, modification time and block index.
+         * @param other  the object to compare with
+         * @return  true if other names the same block of the same version of the same file
+         */
+        @Override
+        public boolean equals(Object other) {
+            if (! (other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return this.block == key.block && this.lastModified == key.lastModified
+                    && this.filePath.equals(key.filePath);
+        }
+
+        /**
+         * Hashes the path, modification time and block index.
+         * @return  the hash code of the key
+         */
+        @Override
+        public int hashCode() {
+            return Objects.hash(this.filePath, this.lastModified, this.block);
+        }
+    }
+
+    /**
+     * Where a cached block is stored.
+     */
+    private static class Entry {
+        private int slot;
+        private int length;
+    }
+
+    private int blockSize;
+    private int slotsPerSlab;
+    private ByteBuffer[] slabs;
+    private Deque<Integer> freeSlots = new ArrayDeque<>();
+    private LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private LongAdder hits = new LongAdder();
+    private LongAdder misses = new LongAdder();
+    private LongAdder evictions = new LongAdder();
+
+    /**
+     * Constructor. Allocates the whole memory budget.
+     * @param blockSize  the number of bytes in each cached block
+     * @param budget  the most bytes of direct memory the cache may use
+     * @throws IllegalArgumentException  if blockSize is not positive or the budget holds no blocks
+     */
+    public ChunkCache(int blockSize, long budget) {
+        if (blockSize <= 0 || budget < blockSize) {
+            throw new IllegalArgumentException("Block size must be > 0 and the budget must hold at least one block");
+        }
+        this.blockSize = blockSize;
+        this.slotsPerSlab = Integer.MAX_VALUE / blockSize;
+        long slots = budget / blockSize;
+        int slabCount = (int) ((slots + this.slotsPerSlab - 1) / this.slotsPerSlab);
+        this.slabs = new ByteBuffer[slabCount];
+        for (int i = 0; i < slabCount; i++) {
+            long slabSlots = Math.min(this.slotsPerSlab, slots - (long) i * this.slotsPerSlab);
+            this.slabs[i] = ByteBuffer.allocateDirect((int) (slabSlots * blockSize));
+        }
+        for (int slot = 0; slot < slots; slot++) {
+            this.freeSlots.add(slot);
+        }
+    }
+
+    /**
+     * Returns a source that reads a file through this cache.
+     * @param filePath  the file to read
+     * @param lastModified  the modification time of the file when it was opened, in milliseconds
+     * @param source  the source to read blocks that are not cached from
+     * @return  a source that reads through the cache; closing it closes source
+     */
+    public ChunkSource wrap(Path filePath, long lastModified, ChunkSource source) {
+        return new CachedChunkSource(filePath.toAbsolutePath().normalize(), lastModified, source);
+    }
+
+    /**
+     * Drops every cached block of a file.
+     * @param filePath  the file that is changing
+     */
+    public synchronized void invalidate(Path filePath) {
+        Path normalized = filePath.toAbsolutePath().normalize();
+        for (Iterator<Map.Entry<Key, Entry>> it = this.entries.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Key, Entry> entry = it.next();
+            if (entry.getKey().filePath.equals(normalized)) {
+                this.freeSlots.add(entry.getValue().slot);
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of reads answered from the cache.
+     * @return  the count of cache hits
+     */
+    public long getHits() {
+        return this.hits.sum();
+    }
+
+    /**
+     * Returns the number of reads that had to go to the file.
+     * @return  the count of cache misses
+     */
+    public long getMisses() {
+        return this.misses.sum();
+    }
+
+    /**
+     * Returns the number of blocks dropped to make room for others.
+     * @return  the count of evictions
+     */
+    public long getEvictions() {
+        return this.evictions.sum();
+    }
+
+    /**
+     * Returns the number of blocks currently cached.
+     * @return  the count of cached blocks
+     */
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * Summarizes the cache counters.
+     * @return  the hit, miss and eviction counts and the number of cached blocks
+     */
+    @Override
+    public String toString() {
+        return "hits=" + this.getHits() + " misses=" + this.getMisses() + " evictions=" + this.getEvictions()
+                + " blocks=" + this.size();
+    }
+
+    /**
+     * Copies a cached block into dst.
+     * @param key  the block to find
+     * @param dst  the array to copy the block into, which must hold blockSize bytes
+     * @return  the number of bytes in the block, or -1 if it is not cached
+     */
+    private synchronized int get(Key key, byte[] dst) {
+        Entry entry = this.entries.get(key);
+        if (entry == null) {
+            this.misses.increment();
+            return -1;
+        }
+        this.hits.increment();
+        this.slotBuffer(entry.slot).get(dst, 0, entry.length);
+        return entry.length;
+    }
+
+    /**
+     * Stores a block, evicting the least recently used block if every slot is taken.
+     * @param key  the block to store
+     * @param data  the bytes of the block
+     * @param length  the number of bytes in the block
+     */
+    private synchronized void put(Key key, byte[] data, int length) {
+        if (this.entries.containsKey(key)) {
+            return;
+        }
+        if (this.freeSlots.isEmpty()) {
+            Iterator<Entry> eldest = this.entries.values().iterator();
+            this.freeSlots.add(eldest.next().slot);
+            eldest.remove();
+            this.evictions.increment();
+        }
+        Entry entry = new Entry();
+        entry.slot = this.freeSlots.poll();
+        entry.length = length;
+        this.slotBuffer(entry.slot).put(data, 0, length);
+        this.entries.put(key, entry);
+    }
+
+    /**
+     * Returns a buffer positioned at the start of a slot.
+     * @param slot  the index of the slot
+     * @return  a view of the slab holding the slot
+     */
+    private ByteBuffer slotBuffer(int slot) {
+        ByteBuffer buffer = this.slabs[slot / this.slotsPerSlab].duplicate();
+        buffer.position((slot % this.slotsPerSlab) * this.blockSize);
+        return buffer;
+    }
+
+    /**
+     * Reads a file block by block, taking blocks from the cache when they are there and caching the ones that are
+     * read from the underlying source.
+     */
+    private class CachedChunkSource implements ChunkSource {
+        private Path filePath;
+        private long lastModified;
+        private ChunkSource source;
+
+        /**
+         * Constructor.
+         * @param filePath  the normalized absolute path of the file
+         * @param lastModified  the modification time of the file in milliseconds
+         * @param source  the source to read blocks that are not cached from
+         */
+        private CachedChunkSource(Path filePath, long lastModified, ChunkSource source) {
+            this.filePath = filePath;
+            this.lastModified = lastModified;
+            this.source = source;
+        }
+
+        /**
+         * Returns the number of bytes in the file.
+         * @return  the file size
+         * @throws IOException  if the size cannot be read
+         */
+        @Override
+        public long size() throws IOException {
+            return this.source.size();
+        }
+
+        /**
+         * Reads bytes from the file through the cache.
+         * @param offset  the position in the file of the first byte to read
+         * @param length  the number of bytes to read
+         * @return  the bytes read from the file
+         * @throws IOException  if a block that is not cached cannot be read
+         */
+        @Override
+        public byte[] read(long offset, int length) throws IOException {
+            int count = (int) Math.max(0, Math.min(length, this.source.size() - offset));
+            byte[] chunk = new byte[count];
+            byte[] block = new byte[blockSize];
+            int copied = 0;
+            while (copied < count) {
+                long position = offset + copied;
+                long index = position / blockSize;
+                Key key = new Key(this.filePath, this.lastModified, index);
+                int blockLength = ChunkCache.this.get(key, block);
+                if (blockLength < 0) {
+                    byte[] read = this.source.read(index * blockSize, blockSize);
+                    blockLength = read.length;
+                    System.arraycopy(read, 0, block, 0, blockLength);
+                    ChunkCache.this.put(key, block, blockLength);
+                }
+                int start = (int) (position - index * blockSize);
+                int n = Math.min(count - copied, blockLength - start);
+                if (n <= 0) {
+                    break;
+                }
+                System.arraycopy(block, start, chunk, copied, n);
+                copied += n;
+            }
+            return copied == count ? chunk : Arrays.copyOf(chunk, copied);
+        }
+
+        /**
+         * Returns whether the underlying source reads from disk, so that reading ahead also fills the cache.
+         * @return  true if blocks that are not cached are read from disk
+         */
+        @Override
+        public boolean readsFromDisk() {
+            return this.source.readsFromDisk();
+        }
+
+        /**
+         * Closes the underlying source.
+         * @throws IOException  if the source cannot be closed
+         */
+        @Override
+        public void close() throws IOException {
+            this.source.close();
+        }
+    }
+}
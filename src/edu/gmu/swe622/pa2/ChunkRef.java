@@ -0,0 +1,40 @@
+package edu.gmu.swe622.pa2;
+
+import java.io.Serializable;
+
+/**
+ * Names one chunk of a file kept in the chunk store: the SHA-256 hash of its bytes and its length.
+ */
+public class ChunkRef implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private String hash;
+    private int length;
+
+    /**
+     * Constructor.
+     * @param hash  the hexadecimal SHA-256 hash of the chunk
+     * @param length  the number of bytes in the chunk
+     */
+    public ChunkRef(String hash, int length) {
+        this.hash = hash;
+        this.length = length;
+    }
+
+    /**
+     * Getter for the hash.
+     * @return  the hexadecimal SHA-256 hash of the chunk
+     */
+    public String getHash() {
+        return this.hash;
+    }
+
+    /**
+     * Getter for the length.
+     * @return  the number of bytes in the chunk
+     */
+    public int getLength() {
+        return this.length;
+    }
+}
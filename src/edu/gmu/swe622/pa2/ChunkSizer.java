@@ -0,0 +1,116 @@
+package edu.gmu.swe622.pa2;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chooses the size of each chunk in a transfer using a congestion-window style algorithm. The size starts at the
+ * negotiated initial chunk size and doubles after every chunk that improves throughput (slow start). Once throughput
+ * stops improving the size grows additively instead. The size is halved whenever a chunk takes longer than
+ * Constants.MAX_CHUNK_LATENCY_MILLIS, throughput drops sharply, or a chunk fails.
+ */
+public class ChunkSizer {
+
+    /**
+     * Throughput must improve by this factor for slow start to keep doubling the chunk size.
+     */
+    private static final double GROWTH_THRESHOLD = 1.1;
+
+    /**
+     * Throughput below this fraction of the smoothed throughput is treated as congestion.
+     */
+    private static final double CONGESTION_THRESHOLD = 0.5;
+
+    /**
+     * Weight given to the newest sample in the smoothed throughput.
+     */
+    private static final double SMOOTHING = 0.25;
+
+    private final int minChunkSize;
+    private final int maxChunkSize;
+    private final long maxLatencyNanos;
+    private int chunkSize;
+    private boolean slowStart = true;
+    private double smoothedThroughput;
+    private double bestThroughput;
+
+    /**
+     * Constructor.
+     * @param options  the negotiated options of the transfer whose chunks will be sized
+     */
+    public ChunkSizer(TransferOptions options) {
+        this.minChunkSize = options.getMinChunkSize();
+        this.maxChunkSize = options.getMaxChunkSize();
+        this.chunkSize = options.getInitialChunkSize();
+        this.maxLatencyNanos = TimeUnit.MILLISECONDS.toNanos(Constants.MAX_CHUNK_LATENCY_MILLIS);
+    }
+
+    /**
+     * Returns the number of bytes that should be sent in the next chunk.
+     * @return  the current chunk size
+     */
+    public synchronized int nextChunkSize() {
+        return this.chunkSize;
+    }
+
+    /**
+     * Returns the largest chunk size this sizer will ever return, so that buffers can be allocated once.
+     * @return  the maximum chunk size
+     */
+    public int maxChunkSize() {
+        return this.maxChunkSize;
+    }
+
+    /**
+     * Records how long a chunk took to transfer and adjusts the chunk size.
+     * @param bytes  the number of bytes transferred in the chunk
+     * @param elapsedNanos  the round trip time of the chunk in nanoseconds
+     */
+    public synchronized void record(int bytes, long elapsedNanos) {
+        if (bytes <= 0) {
+            return;
+        }
+        double throughput = bytes / (double) Math.max(1L, elapsedNanos);
+        boolean congested = elapsedNanos > this.maxLatencyNanos
+                || (this.smoothedThroughput > 0 && throughput < this.smoothedThroughput * CONGESTION_THRESHOLD);
+        this.smoothedThroughput = this.smoothedThroughput == 0
+                ? throughput
+                : (1 - SMOOTHING) * this.smoothedThroughput + SMOOTHING * throughput;
+
+        if (congested) {
+            this.shrink();
+        } else if (this.slowStart) {
+            if (throughput >= this.bestThroughput * GROWTH_THRESHOLD) {
+                this.setChunkSize((long) this.chunkSize * 2);
+            } else {
+                this.slowStart = false;
+            }
+        } else if (throughput >= this.smoothedThroughput) {
+            this.setChunkSize((long) this.chunkSize + this.minChunkSize);
+        }
+        this.bestThroughput = Math.max(this.bestThroughput, throughput);
+    }
+
+    /**
+     * Records that a chunk could not be transferred, halving the chunk size.
+     */
+    public synchronized void recordFailure() {
+        this.shrink();
+    }
+
+    /**
+     * Halves the chunk size and leaves slow start.
+     */
+    private void shrink() {
+        this.slowStart = false;
+        this.bestThroughput = 0;
+        this.setChunkSize(this.chunkSize / 2);
+    }
+
+    /**
+     * Sets the chunk size, keeping it between the negotiated minimum and maximum.
+     * @param size  the requested chunk size
+     */
+    private void setChunkSize(long size) {
+        this.chunkSize = (int) Math.max(this.minChunkSize, Math.min(this.maxChunkSize, size));
+    }
+}
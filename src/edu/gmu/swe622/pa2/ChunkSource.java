@@ -0,0 +1,38 @@
+package edu.gmu.swe622.pa2;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Where a download session reads the bytes of its file from.
+ */
+public interface ChunkSource extends Closeable {
+
+    /**
+     * Returns the number of bytes in the file.
+     * @return  the file size
+     * @throws IOException  if the size cannot be read
+     */
+    long size() throws IOException;
+
+    /**
+     * Reads bytes from the file. The returned array is shorter than length only if the end of the file is reached.
+     * @param offset  the position in the file of the first byte to read
+     * @param length  the number of bytes to read
+     * @return  the bytes read from the file
+     * @throws IOException  if the file cannot be read
+     */
+    byte[] read(long offset, int length) throws IOException;
+
+    /**
+     * Returns true if reads go to the disk, so that reading ahead of the client is worthwhile.
+     * @return  true if reads are not served from memory
+     */
+    boolean readsFromDisk();
+
+    /**
+     * Releases the file. Reads are not allowed afterwards.
+     * @throws IOException  if the file cannot be closed
+     */
+    void close() throws IOException;
+}
@@ -0,0 +1,260 @@
+package edu.gmu.swe622.pa2;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Stores chunks of files by the SHA-256 hash of their contents, so that a chunk shared by many files is stored once.
+ * Each chunk is an immutable file named by its hash, in a subdirectory named by the first two hex digits of the
+ * hash. Files made of stored chunks are represented by manifests. Chunks that an upload still in progress has sent,
+ * or has been told are already stored, are pinned so that a sweep running at the same time does not delete them
+ * before the upload's manifest is written.
+ */
+public class ChunkStore {
+
+    /**
+     * The algorithm chunks are named by.
+     */
+    public static final String HASH_ALGORITHM = "SHA-256";
+
+    /**
+     * The number of bytes in a chunk hash.
+     */
+    public static final int HASH_LENGTH = 32;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private Path root;
+    private Map<String, Integer> pins = new HashMap<>();
+
+    /**
+     * Constructor. Creates the store directory if it does not exist.
+     * @param root  the directory to keep chunks in
+     * @throws IOException  if the directory cannot be created, or is on a file system that cannot mark manifests
+     */
+    public ChunkStore(Path root) throws IOException {
+        this.root = root.toAbsolutePath().normalize();
+        Files.createDirectories(this.root);
+        Manifest.checkSupported(this.root);
+    }
+
+    /**
+     * Getter for the root.
+     * @return  the directory chunks are kept in
+     */
+    public Path getRoot() {
+        return this.root;
+    }
+
+    /**
+     * Computes the hash a chunk is stored under.
+     * @param data  the array holding the chunk
+     * @param offset  the index of the first byte of the chunk
+     * @param length  the number of bytes in the chunk
+     * @return  the hexadecimal SHA-256 hash of the chunk
+     */
+    public static String hash(byte[] data, int offset, int length) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance(HASH_ALGORITHM);
+            digest.update(data, offset, length);
+            return toHex(digest.digest());
+        } catch (NoSuchAlgorithmException exp) {
+            throw new IllegalStateException(HASH_ALGORITHM + " is not available", exp);
+        }
+    }
+
+    /**
+     * Returns the hashes of the chunks that are not in the store.
+     * @param hashes  the hashes to look for
+     * @return  the hashes that were not found, in the order given
+     * @throws IllegalArgumentException  if a hash is not a hexadecimal SHA-256 hash
+     */
+    public List<String> missing(List<String> hashes) {
+        List<String> missing = new ArrayList<>();
+        for (String hash : hashes) {
+            if (! Files.exists(this.chunkPath(hash))) {
+                missing.add(hash);
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * Returns the number of bytes in a stored chunk.
+     * @param hash  the hash of the chunk
+     * @return  the length of the chunk, or -1 if it is not stored
+     * @throws IOException  if the chunk cannot be read
+     */
+    public long length(String hash) throws IOException {
+        Path chunkPath = this.chunkPath(hash);
+        return Files.exists(chunkPath) ? Files.size(chunkPath) : -1;
+    }
+
+    /**
+     * Pins a chunk and stores it unless it is already stored. The chunk is written to a temporary file and moved into
+     * place, so a stored chunk is always complete. Once stored, the chunk stays pinned until the caller unpins it;
+     * a chunk that cannot be written is unpinned again.
+     * @param data  the bytes of the chunk
+     * @return  the hash the chunk is stored under
+     * @throws IOException  if the chunk cannot be written
+     */
+    public String put(byte[] data) throws IOException {
+        String hash = hash(data, 0, data.length);
+        List<String> pinned = Collections.singletonList(hash);
+        this.pin(pinned);
+        try {
+            Path chunkPath = this.chunkPath(hash);
+            if (! Files.exists(chunkPath)) {
+                Files.createDirectories(chunkPath.getParent());
+                Path tempPath = Files.createTempFile(chunkPath.getParent(), hash, ".tmp");
+                try {
+                    Files.write(tempPath, data);
+                    Files.move(tempPath, chunkPath, StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.ATOMIC_MOVE);
+                } finally {
+                    Files.deleteIfExists(tempPath);
+                }
+            }
+        } catch (IOException | RuntimeException exp) {
+            this.unpin(pinned);
+            throw exp;
+        }
+        return hash;
+    }
+
+    /**
+     * Opens a stored chunk for reading.
+     * @param hash  the hash of the chunk
+     * @return  the open chunk file
+     * @throws IOException  if the chunk is not stored or cannot be opened
+     */
+    public FileChannel open(String hash) throws IOException {
+        return FileChannel.open(this.chunkPath(hash), StandardOpenOption.READ);
+    }
+
+    /**
+     * Pins chunks, so that they are not swept until they are unpinned as often as they were pinned. A chunk can be
+     * pinned before it is stored.
+     * @param hashes  the hashes of the chunks
+     */
+    public void pin(Collection<String> hashes) {
+        synchronized (this.pins) {
+            for (String hash : hashes) {
+                this.pins.merge(hash, 1, Integer::sum);
+            }
+        }
+    }
+
+    /**
+     * Unpins chunks that were pinned.
+     * @param hashes  the hashes of the chunks
+     */
+    public void unpin(Collection<String> hashes) {
+        synchronized (this.pins) {
+            for (String hash : hashes) {
+                this.pins.computeIfPresent(hash, (key, count) -> count > 1 ? count - 1 : null);
+            }
+        }
+    }
+
+    /**
+     * Deletes every chunk that is not referenced by a manifest under a directory tree and is not pinned, along with
+     * temporary files left by chunks that were never stored. Each chunk is checked against the pins just before it
+     * is deleted, so an upload that pins a chunk while the sweep runs either keeps it or finds it missing.
+     * @param tree  the directory holding every manifest that uses this store
+     * @return  the number of chunks deleted
+     * @throws IOException  if the tree cannot be read or a chunk cannot be deleted
+     */
+    public int sweep(Path tree) throws IOException {
+        Set<String> live = new HashSet<>();
+        try (Stream<Path> paths = Files.walk(tree)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                if (! path.toAbsolutePath().normalize().startsWith(this.root) && Manifest.isManifest(path)) {
+                    for (ChunkRef chunk : Manifest.read(path).getChunks()) {
+                        live.add(chunk.getHash());
+                    }
+                }
+            }
+        }
+        int deleted = 0;
+        try (Stream<Path> paths = Files.walk(this.root)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                String name = path.getFileName().toString();
+                // a temporary file is named after the chunk it is being written for
+                String hash = name.substring(0, Math.min(name.length(), HASH_LENGTH * 2));
+                if (! Files.isRegularFile(path) || live.contains(name)) {
+                    continue;
+                }
+                synchronized (this.pins) {
+                    if (! this.pins.containsKey(hash) && Files.deleteIfExists(path)) {
+                        deleted++;
+                    }
+                }
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * Formats bytes as lowercase hexadecimal.
+     * @param bytes  the bytes to format
+     * @return  two hex digits for each byte
+     */
+    public static String toHex(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            hex[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+        return new String(hex);
+    }
+
+    /**
+     * Parses a hexadecimal SHA-256 hash.
+     * @param hash  the hash to parse
+     * @return  the bytes of the hash
+     * @throws IllegalArgumentException  if the hash is not 64 lowercase hex digits
+     */
+    public static byte[] fromHex(String hash) {
+        if (hash == null || hash.length() != HASH_LENGTH * 2) {
+            throw new IllegalArgumentException("Not a chunk hash: " + hash);
+        }
+        byte[] bytes = new byte[HASH_LENGTH];
+        for (int i = 0; i < bytes.length; i++) {
+            int high = Character.digit(hash.charAt(i * 2), 16);
+            int low = Character.digit(hash.charAt(i * 2 + 1), 16);
+            if (high < 0 || low < 0 || Character.isUpperCase(hash.charAt(i * 2))
+                    || Character.isUpperCase(hash.charAt(i * 2 + 1))) {
+                throw new IllegalArgumentException("Not a chunk hash: " + hash);
+            }
+            bytes[i] = (byte) ((high << 4) | low);
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the path a chunk is stored at.
+     * @param hash  the hash of the chunk
+     * @return  the path of the chunk file
+     * @throws IllegalArgumentException  if the hash is not a hexadecimal SHA-256 hash
+     */
+    private Path chunkPath(String hash) {
+        fromHex(hash);
+        return this.root.resolve(hash.substring(0, 2)).resolve(hash);
+    }
+}
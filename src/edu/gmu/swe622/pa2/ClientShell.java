@@ -0,0 +1,171 @@
+package edu.gmu.swe622.pa2;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a stream of client commands, one per line, through a single connected client, so that the JVM start-up and
+ * the registry lookup are paid once instead of for every command. Commands use the same names and arguments as on
+ * the command line; arguments containing spaces can be put in double quotes. A command ending in "&amp;" runs in the
+ * background, alongside the commands that follow it, on a bounded pool of threads; "wait" waits for every background
+ * command to finish, and the end of the input waits for them too. A command that fails prints its error and the
+ * shell carries on with the next one. Blank lines and lines starting with "#" are skipped, and "exit" or "quit" ends
+ * the shell.
+ */
+public class ClientShell {
+
+    private FSSClient client;
+    private ExecutorService jobs;
+    private List<Future<?>> pending = new ArrayList<>();
+    private AtomicInteger failures = new AtomicInteger();
+
+    /**
+     * Constructor.
+     * @param client  the connected client that runs the commands
+     * @param jobs  the most commands run in the background at once
+     * @throws IllegalArgumentException  if jobs is not positive
+     */
+    public ClientShell(FSSClient client, int jobs) {
+        if (jobs <= 0) {
+            throw new IllegalArgumentException("Number of jobs must be > 0");
+        }
+        this.client = client;
+        this.jobs = Executors.newFixedThreadPool(jobs);
+    }
+
+    /**
+     * Reads and runs commands until the input ends or an exit command is read. A prompt is printed before each
+     * command if the shell is attached to a console.
+     * @param input  the commands to run
+     * @throws IOException  if the input cannot be read, or any command failed
+     */
+    public void run(Reader input) throws IOException {
+        BufferedReader reader = new BufferedReader(input);
+        boolean prompt = System.console() != null;
+        try {
+            while (true) {
+                if (prompt) {
+                    System.out.print("fss> ");
+                    System.out.flush();
+                }
+                String line = reader.readLine();
+                if (line == null) {
+                    break;
+                }
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                } else if ("exit".equalsIgnoreCase(line) || "quit".equalsIgnoreCase(line)) {
+                    break;
+                } else if ("wait".equalsIgnoreCase(line)) {
+                    this.waitForJobs();
+                    continue;
+                }
+                boolean background = line.endsWith("&");
+                if (background) {
+                    line = line.substring(0, line.length() - 1).trim();
+                }
+                this.submit(line, background);
+            }
+            this.waitForJobs();
+        } finally {
+            this.jobs.shutdown();
+        }
+        if (this.failures.get() > 0) {
+            throw new IOException(this.failures.get() + " commands failed");
+        }
+    }
+
+    /**
+     * Parses a command and runs it, either now or in the background.
+     * @param line  the command and its arguments
+     * @param background  true to run the command in the background
+     */
+    private void submit(String line, boolean background) {
+        List<String> words = this.split(line);
+        Action action = words.isEmpty() ? null : Action.findByName(words.get(0));
+        if (action == null || action == Action.SHELL || words.size() - 1 < action.getNumArgs()) {
+            System.err.println("Unknown command or missing arguments: " + line);
+            this.failures.incrementAndGet();
+            return;
+        }
+        String[] args = words.subList(1, Math.min(words.size(), action.getMaxArgs() + 1)).toArray(new String[0]);
+        if (background) {
+            this.pending.add(this.jobs.submit(() -> this.execute(action, args)));
+        } else {
+            this.execute(action, args);
+        }
+    }
+
+    /**
+     * Runs one command, printing its error if it fails.
+     * @param action  the command to run
+     * @param args  the arguments of the command
+     */
+    private void execute(Action action, String[] args) {
+        try {
+            this.client.doAction(action, args);
+        } catch (Exception exp) {
+            System.err.println(action.getName() + ": " + exp.getMessage());
+            this.failures.incrementAndGet();
+        }
+    }
+
+    /**
+     * Waits for every background command to finish.
+     * @throws IOException  if interrupted while waiting
+     */
+    private void waitForJobs() throws IOException {
+        for (Future<?> job : this.pending) {
+            try {
+                job.get();
+            } catch (InterruptedException exp) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for commands to finish", exp);
+            } catch (ExecutionException exp) {
+                System.err.println(exp.getCause().getMessage());
+                this.failures.incrementAndGet();
+            }
+        }
+        this.pending.clear();
+    }
+
+    /**
+     * Splits a command into words at spaces, keeping text in double quotes together.
+     * @param line  the command
+     * @return  the words of the command, without the quotes
+     */
+    private List<String> split(String line) {
+        List<String> words = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        boolean quoted = false;
+        boolean inWord = false;
+        for (char c : line.toCharArray()) {
+            if (c == '"') {
+                quoted = ! quoted;
+                inWord = true;
+            } else if (Character.isWhitespace(c) && ! quoted) {
+                if (inWord) {
+                    words.add(word.toString());
+                    word.setLength(0);
+                    inWord = false;
+                }
+            } else {
+                word.append(c);
+                inWord = true;
+            }
+        }
+        if (inWord) {
+            words.add(word.toString());
+        }
+        return words;
+    }
+}
@@ -0,0 +1,34 @@
+package edu.gmu.swe622.pa2;
+
+import java.io.IOException;
+
+/**
+ * A compression algorithm that can be negotiated for a transfer. Implementations must be thread safe, and are made
+ * available for negotiation by registering them with Codecs.
+ */
+public interface Codec {
+
+    /**
+     * Returns the name the codec is negotiated under.
+     * @return  the codec name
+     */
+    String getName();
+
+    /**
+     * Compresses bytes.
+     * @param data  the array holding the bytes to compress
+     * @param offset  the index of the first byte to compress
+     * @param length  the number of bytes to compress
+     * @return  the compressed bytes
+     */
+    byte[] compress(byte[] data, int offset, int length);
+
+    /**
+     * Decompresses bytes that were compressed by this codec.
+     * @param data  the compressed bytes
+     * @param length  the number of bytes the data decompresses to
+     * @return  the decompressed bytes
+     * @throws IOException  if the data is corrupt or does not decompress to exactly length bytes
+     */
+    byte[] decompress(byte[] data, int length) throws IOException;
+}
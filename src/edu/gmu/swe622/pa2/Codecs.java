@@ -0,0 +1,53 @@
+package edu.gmu.swe622.pa2;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The codecs this process can use for compressed transfers. DeflateCodec is always registered; faster codecs can be
+ * added with register before the client or server starts.
+ */
+public class Codecs {
+
+    private static final Map<String, Codec> CODECS = new LinkedHashMap<>();
+
+    static {
+        register(new DeflateCodec(Constants.COMPRESSION_LEVEL));
+    }
+
+    /**
+     * Makes a codec available for negotiation, replacing any codec registered under the same name.
+     * @param codec  the codec to register
+     */
+    public static synchronized void register(Codec codec) {
+        CODECS.put(codec.getName().toLowerCase(), codec);
+    }
+
+    /**
+     * Finds a registered codec by name.
+     * @param name  the name of the codec, or null
+     * @return  the codec, or null if name is null or no codec with that name is registered
+     */
+    public static synchronized Codec find(String name) {
+        return name == null ? null : CODECS.get(name.toLowerCase());
+    }
+
+    /**
+     * Splits a comma separated list of codec names, keeping only the names of registered codecs.
+     * @param names  the list of names, or null
+     * @return  the registered codec names, in the order given
+     */
+    public static synchronized List<String> parse(String names) {
+        List<String> codecs = new ArrayList<>();
+        if (names != null) {
+            for (String name : names.split(",")) {
+                if (CODECS.containsKey(name.trim().toLowerCase())) {
+                    codecs.add(name.trim().toLowerCase());
+                }
+            }
+        }
+        return codecs;
+    }
+}
@@ -1,11 +1,425 @@
 package edu.gmu.swe622.pa2;
 
+import java.io.File;
+
 /**
  * Constants used by the FSS program.
  */
 public class Constants {
     /**
-     * The size of the buffers used to upload and download files.
+     * The smallest number of bytes sent in each chunk when uploading and downloading files. Set with the
+     * fss.chunk.min system property.
+     */
+    public static final int MIN_CHUNK_SIZE = Integer.getInteger("fss.chunk.min", 4 * 1024);
+
+    /**
+     * The largest number of bytes sent in each chunk when uploading and downloading files. Set with the
+     * fss.chunk.max system property.
+     */
+    public static final int MAX_CHUNK_SIZE = Integer.getInteger("fss.chunk.max", 4 * 1024 * 1024);
+
+    /**
+     * The number of bytes sent in the first chunk of a transfer, before the chunk size has been adapted to the link.
+     * Set with the fss.chunk.initial system property.
+     */
+    public static final int INITIAL_CHUNK_SIZE = Integer.getInteger("fss.chunk.initial", 64 * 1024);
+
+    /**
+     * The longest a single chunk round trip should take, in milliseconds, before the chunk size is reduced. Set with
+     * the fss.chunk.latency system property.
+     */
+    public static final long MAX_CHUNK_LATENCY_MILLIS = Long.getLong("fss.chunk.latency", 1000L);
+
+    /**
+     * The number of byte ranges downloaded at once. A value greater than 1 turns on parallel downloads. Set with the
+     * fss.download.streams system property.
+     */
+    public static final int DOWNLOAD_STREAMS = Integer.getInteger("fss.download.streams", 1);
+
+    /**
+     * The number of bytes in each range of a parallel download. Set with the fss.download.range system property.
+     */
+    public static final long DOWNLOAD_RANGE_SIZE = Long.getLong("fss.download.range", 8L * 1024 * 1024);
+
+    /**
+     * The number of chunk requests a download keeps in flight at once. A value of 1 waits for each chunk before
+     * requesting the next; values below 1 are treated as 1. Set with the fss.download.pipeline system property.
+     */
+    public static final int DOWNLOAD_PIPELINE_DEPTH = Math.max(1, Integer.getInteger("fss.download.pipeline", 4));
+
+    /**
+     * The number of chunks the server reads from disk ahead of a download's most recent request; 0 turns read-ahead
+     * off. Set with the fss.download.prefetch system property.
+     */
+    public static final int DOWNLOAD_PREFETCH_CHUNKS = Integer.getInteger("fss.download.prefetch", 2);
+
+    /**
+     * Whether the server serves downloads from memory mappings shared by every session that downloads the same file.
+     * Set with the fss.download.mmap system property.
+     */
+    public static final boolean DOWNLOAD_MMAP = Boolean.getBoolean("fss.download.mmap");
+
+    /**
+     * The largest number of bytes mapped as one segment of a memory-mapped file. Set with the fss.mmap.segment system
+     * property.
+     */
+    public static final long MMAP_SEGMENT_SIZE = Long.getLong("fss.mmap.segment", 1024L * 1024 * 1024);
+
+    /**
+     * How long, in milliseconds, the mapping of a file is kept after its last download session closes. Set with the
+     * fss.mmap.idle system property.
+     */
+    public static final long MMAP_IDLE_MILLIS = Long.getLong("fss.mmap.idle", 60000L);
+
+    /**
+     * The most bytes of direct memory the server's chunk cache may use; 0 disables the cache. Set with the
+     * fss.cache.size system property.
+     */
+    public static final long CHUNK_CACHE_SIZE = Long.getLong("fss.cache.size", 0L);
+
+    /**
+     * The number of bytes in each block held by the chunk cache. Set with the fss.cache.block system property.
+     */
+    public static final int CHUNK_CACHE_BLOCK_SIZE = Integer.getInteger("fss.cache.block", 64 * 1024);
+
+    /**
+     * The number of parts uploaded at once. A value greater than 1 turns on multipart uploads. Set with the
+     * fss.upload.streams system property.
+     */
+    public static final int UPLOAD_STREAMS = Integer.getInteger("fss.upload.streams", 1);
+
+    /**
+     * The number of bytes in each part of a multipart upload. Set with the fss.upload.part system property.
+     */
+    public static final long UPLOAD_PART_SIZE = Long.getLong("fss.upload.part", 8L * 1024 * 1024);
+
+    /**
+     * The directory, relative to the server's working directory, that multipart uploads keep their temporary files
+     * in until every part has arrived. It is never listed or served, and must be on the same file system as the
+     * files it is uploaded over. Set with the fss.upload.staging system property.
+     */
+    public static final String UPLOAD_STAGING_DIR = System.getProperty("fss.upload.staging", ".fssuploads");
+
+    /**
+     * When uploaded files are forced to disk: "none", "close" or "periodic". Read by the client to request a policy
+     * for its uploads and by the server as the policy for uploads whose client did not request one. Set with the
+     * fss.upload.durability system property.
+     */
+    public static final Durability UPLOAD_DURABILITY = Durability.findByName(System.getProperty("fss.upload.durability"));
+
+    /**
+     * The number of bytes written between each fsync of a periodic upload. Set in megabytes with the
+     * fss.upload.sync system property.
+     */
+    public static final long UPLOAD_SYNC_INTERVAL = Long.getLong("fss.upload.sync", 64L) * 1024 * 1024;
+
+    /**
+     * The size of each direct buffer used to stage uploaded bytes before they are written to disk. Set with the
+     * fss.upload.buffer system property.
+     */
+    public static final int UPLOAD_BUFFER_SIZE = Integer.getInteger("fss.upload.buffer", 1024 * 1024);
+
+    /**
+     * The size of the slices the staging buffers are cut into; an uploaded chunk takes as many slices as it needs
+     * rather than whole buffers. Set with the fss.upload.slice system property.
+     */
+    public static final int UPLOAD_BUFFER_SLICE = Integer.getInteger("fss.upload.slice", 64 * 1024);
+
+    /**
+     * The most staging buffers the server allocates for all uploads together. Uploads wait up to fss.admit.wait
+     * milliseconds for a slice to be written out when all of them are in use. Set with the fss.upload.buffers system
+     * property.
+     */
+    public static final int UPLOAD_BUFFER_COUNT = Integer.getInteger("fss.upload.buffers", 64);
+
+    /**
+     * The port the server's data channel listens on; 0 picks any free port and a negative value disables the data
+     * channel. Set with the fss.data.port system property.
+     */
+    public static final int DATA_CHANNEL_PORT = Integer.getInteger("fss.data.port", -1);
+
+    /**
+     * How long, in milliseconds, a data channel ticket stays valid before the client connects, and how long a
+     * connection has to send its ticket's token. Set with the fss.data.timeout system property.
+     */
+    public static final long DATA_TICKET_TIMEOUT_MILLIS = Long.getLong("fss.data.timeout", 30000L);
+
+    /**
+     * How long, in milliseconds, a data channel transfer may move no bytes before the server closes its connection.
+     * Set with the fss.data.idle system property.
+     */
+    public static final long DATA_IDLE_TIMEOUT_MILLIS = Long.getLong("fss.data.idle", 60000L);
+
+    /**
+     * The most data channel connections the server serves at once; as many more can wait their turn, and any beyond
+     * that are closed. Set with the fss.data.workers system property.
+     */
+    public static final int DATA_CHANNEL_WORKERS = Integer.getInteger("fss.data.workers", 32);
+
+    /**
+     * Whether the client moves file bytes over the server's data channel instead of through RMI calls. Set with the
+     * fss.data.channel system property.
+     */
+    public static final boolean USE_DATA_CHANNEL = Boolean.getBoolean("fss.data.channel");
+
+    /**
+     * The codecs this process will compress chunks with, as a comma separated list in order of preference; a list
+     * with no registered codec, such as "none", turns compression off. Set with the fss.compression system property.
+     */
+    public static final String COMPRESSION_CODECS = System.getProperty("fss.compression", DeflateCodec.NAME);
+
+    /**
+     * The Deflater compression level, from 0 to 9, used by the deflate codec. Set with the fss.compression.level
+     * system property.
+     */
+    public static final int COMPRESSION_LEVEL = Integer.getInteger("fss.compression.level", 1);
+
+    /**
+     * Whether the client uploads files by sending only the blocks that differ from the version already on the
+     * server. Set with the fss.upload.delta system property.
+     */
+    public static final boolean UPLOAD_DELTA = Boolean.getBoolean("fss.upload.delta");
+
+    /**
+     * The size of the blocks the server's file is split into for a delta upload; 0 picks about the square root of
+     * the file size. Set with the fss.delta.block system property.
+     */
+    public static final int DELTA_BLOCK_SIZE = Integer.getInteger("fss.delta.block", 0);
+
+    /**
+     * Whether the client verifies transfers against the server's hash tree of the file, and checks the existing
+     * prefix before resuming. Set with the fss.verify system property.
+     */
+    public static final boolean VERIFY = Boolean.parseBoolean(System.getProperty("fss.verify", "true"));
+
+    /**
+     * The number of bytes in each leaf of a file's hash tree. Set with the fss.hash.block system property.
+     */
+    public static final int HASH_BLOCK_SIZE = Integer.getInteger("fss.hash.block", 1024 * 1024);
+
+    /**
+     * The most hash trees the server keeps for files that have not changed; 0 turns the cache off. Set with the
+     * fss.digest.cache system property.
+     */
+    public static final int DIGEST_CACHE_ENTRIES = Integer.getInteger("fss.digest.cache", 256);
+
+    /**
+     * The number of entries the client asks for in each page of a directory listing. Set with the fss.dir.page
+     * system property.
+     */
+    public static final int DIR_PAGE_SIZE = Integer.getInteger("fss.dir.page", 1000);
+
+    /**
+     * The most directory entries the server keeps in its metadata cache; 0 turns the cache off. Set with the
+     * fss.meta.cache system property.
+     */
+    public static final int METADATA_CACHE_ENTRIES = Integer.getInteger("fss.meta.cache", 200000);
+
+    /**
+     * The most directories the server keeps in its metadata cache, each of which takes one of the operating system's
+     * file watches. Set with the fss.meta.dirs system property.
+     */
+    public static final int METADATA_CACHE_DIRS = Integer.getInteger("fss.meta.dirs", 4096);
+
+    /**
+     * How long, in milliseconds, the server waits before reading a directory that had too many entries for its
+     * metadata cache again to try caching it. Set with the fss.meta.retry system property.
+     */
+    public static final long METADATA_CACHE_RETRY_MILLIS = Long.getLong("fss.meta.retry", 60000L);
+
+    /**
+     * The most upload, download and listing sessions the server keeps open at once. Set with the fss.session.max
+     * system property.
+     */
+    public static final int MAX_SESSIONS = Integer.getInteger("fss.session.max", 1000);
+
+    /**
+     * How long, in milliseconds, a session can go unused before the server closes it. Set with the fss.session.idle
+     * system property.
+     */
+    public static final long SESSION_IDLE_MILLIS = Long.getLong("fss.session.idle", 300000L);
+
+    /**
+     * How long, in milliseconds, RMI lets a client hold a session without renewing its lease, which is how long after
+     * a client dies its sessions are found orphaned. The server uses it as java.rmi.dgc.leaseValue unless that is
+     * set. Set with the fss.session.lease system property.
+     */
+    public static final long SESSION_LEASE_MILLIS = Long.getLong("fss.session.lease", 30000L);
+
+    /**
+     * The most calls that move file data the server runs at once. Set with the fss.admit.calls system property.
+     */
+    public static final int ADMIT_CALLS = Integer.getInteger("fss.admit.calls", 64);
+
+    /**
+     * The most calls that move file data the server runs at once for one client host. Set with the
+     * fss.admit.client.calls system property.
+     */
+    public static final int ADMIT_CLIENT_CALLS = Integer.getInteger("fss.admit.client.calls", 32);
+
+    /**
+     * The most upload and download sessions one client host can have open at once. Set with the
+     * fss.admit.client.sessions system property.
+     */
+    public static final int ADMIT_CLIENT_SESSIONS = Integer.getInteger("fss.admit.client.sessions", 64);
+
+    /**
+     * How long, in milliseconds, a call that moves file data waits for its turn before the server turns it away.
+     * Set with the fss.admit.wait system property.
+     */
+    public static final long ADMIT_WAIT_MILLIS = Long.getLong("fss.admit.wait", 5000L);
+
+    /**
+     * How long, in milliseconds, the server tells a client it turned away to wait before trying again. Set with the
+     * fss.admit.retry system property.
+     */
+    public static final long ADMIT_RETRY_MILLIS = Long.getLong("fss.admit.retry", 1000L);
+
+    /**
+     * The number of times the client sends a call that moves file data again after the server turned it away as busy.
+     * Set with the fss.admit.retries system property.
+     */
+    public static final int ADMIT_RETRIES = Integer.getInteger("fss.admit.retries", 10);
+
+    /**
+     * The most bytes per second the server sends and receives for all transfers together, or 0 for no limit. Set
+     * with the fss.rate.limit system property.
+     */
+    public static final long RATE_LIMIT = Long.getLong("fss.rate.limit", 0L);
+
+    /**
+     * The most bytes per second the server sends to and receives from one client host, or 0 for no limit. Set with
+     * the fss.rate.client system property.
+     */
+    public static final long CLIENT_RATE_LIMIT = Long.getLong("fss.rate.client", 0L);
+
+    /**
+     * The most commands the client shell runs in the background at once. Set with the fss.shell.jobs system
+     * property.
+     */
+    public static final int SHELL_JOBS = Integer.getInteger("fss.shell.jobs", 4);
+
+    /**
+     * The operations the load test's clients run, as a comma separated list of operation:weight pairs, where the
+     * operations are upload, download, dir and rm. Set with the fss.load.mix system property.
+     */
+    public static final String LOAD_MIX = System.getProperty("fss.load.mix", "upload:30,download:45,dir:15,rm:10");
+
+    /**
+     * The sizes of the files the load test's clients upload, as a comma separated list of bytes:weight pairs. Set
+     * with the fss.load.sizes system property.
+     */
+    public static final String LOAD_SIZES = System.getProperty("fss.load.sizes", "4096:60,262144:30,8388608:10");
+
+    /**
+     * The mean time, in milliseconds, each load test client waits between operations; the waits are exponentially
+     * distributed, and 0 turns them off. Set with the fss.load.think system property.
+     */
+    public static final long LOAD_THINK_MILLIS = Long.getLong("fss.load.think", 0L);
+
+    /**
+     * How often, in seconds, the load test prints its progress. Set with the fss.load.report system property.
+     */
+    public static final long LOAD_REPORT_SECONDS = Long.getLong("fss.load.report", 10L);
+
+    /**
+     * How long, in milliseconds, the load test waits after the run for the server's resources to return to where
+     * they started. The default outlasts the 15 seconds RMI keeps idle connections open. Set with the
+     * fss.load.settle system property.
+     */
+    public static final long LOAD_SETTLE_MILLIS = Long.getLong("fss.load.settle", 20000L);
+
+    /**
+     * The number of threads the framed transport runs calls that move file data on. Since a call that waits for
+     * admission holds its thread, this bounds the transfer calls all framed clients together have in progress. Set
+     * with the fss.frame.workers system property.
+     */
+    public static final int FRAME_WORKERS = Integer.getInteger("fss.frame.workers", 64);
+
+    /**
+     * The number of threads the framed transport runs calls that do not move file data on, such as listing or
+     * creating directories, so that they do not wait behind transfers. Set with the fss.frame.interactive system
+     * property.
+     */
+    public static final int FRAME_INTERACTIVE_WORKERS = Integer.getInteger("fss.frame.interactive", 8);
+
+    /**
+     * The most calls one framed transport connection can have in progress or waiting to send their results; the
+     * server reads no more requests from the connection until it is below this. Set with the fss.frame.inflight
+     * system property.
+     */
+    public static final int FRAME_MAX_IN_FLIGHT = Integer.getInteger("fss.frame.inflight", 32);
+
+    /**
+     * The largest frame, in bytes, either end of the framed transport accepts. It must hold the largest chunk a
+     * transfer sends. Set with the fss.frame.max system property.
+     */
+    public static final int FRAME_MAX_SIZE = Integer.getInteger("fss.frame.max", 64 * 1024 * 1024);
+
+    /**
+     * The number of files the server copies at once for all copies and moves together. Set with the
+     * fss.copy.workers system property.
+     */
+    public static final int COPY_WORKERS = Integer.getInteger("fss.copy.workers", 4);
+
+    /**
+     * The number of files the client transfers at once when it uploads or downloads a directory tree. Set with the
+     * fss.tree.streams system property.
+     */
+    public static final int TREE_STREAMS = Integer.getInteger("fss.tree.streams", 4);
+
+    /**
+     * The number of times the client retries a file of a directory tree that failed to transfer. Set with the
+     * fss.tree.retries system property.
+     */
+    public static final int TREE_RETRIES = Integer.getInteger("fss.tree.retries", 3);
+
+    /**
+     * The largest file, in bytes, that is sent in a batch with other small files when uploading a directory tree, or
+     * 0 to send every file on its own. Set with the fss.batch.file system property.
+     */
+    public static final int BATCH_FILE_SIZE = Integer.getInteger("fss.batch.file", 64 * 1024);
+
+    /**
+     * The most bytes of file data sent in one batch when uploading a directory tree. Set with the fss.batch.size
+     * system property.
+     */
+    public static final int BATCH_SIZE = Integer.getInteger("fss.batch.size", 4 * 1024 * 1024);
+
+    /**
+     * The directory the client keeps the manifests of unfinished directory tree transfers, and the ids of unfinished
+     * multipart uploads, in. Set with the fss.tree.state system property.
+     */
+    public static final String TREE_STATE_DIR = System.getProperty("fss.tree.state",
+            System.getProperty("user.home") + File.separator + ".fss");
+
+    /**
+     * Whether the server keeps a content-addressed chunk store that clients can upload deduplicated files into. Set
+     * with the fss.store system property.
+     */
+    public static final boolean CHUNK_STORE = Boolean.getBoolean("fss.store");
+
+    /**
+     * The directory, relative to the server's working directory, that the chunk store keeps chunks in. Set with the
+     * fss.store.dir system property.
+     */
+    public static final String CHUNK_STORE_DIR = System.getProperty("fss.store.dir", ".fssstore");
+
+    /**
+     * How often, in milliseconds, the server deletes the chunks that no manifest uses any more; 0 sweeps the chunk
+     * store only when the server starts. Set with the fss.store.sweep system property.
+     */
+    public static final long STORE_SWEEP_MILLIS = Long.getLong("fss.store.sweep", 3600000L);
+
+    /**
+     * The average size of the content-defined chunks files are split into for the chunk store. Set with the
+     * fss.store.chunk system property.
+     */
+    public static final int STORE_CHUNK_SIZE = Integer.getInteger("fss.store.chunk", 64 * 1024);
+
+    /**
+     * Whether the client uploads files into the server's chunk store, sending only chunks the store does not have.
+     * Set with the fss.upload.dedup system property.
      */
-    public static int BUFFER_SIZE = 256;
+    public static final boolean UPLOAD_DEDUP = Boolean.getBoolean("fss.upload.dedup");
 }
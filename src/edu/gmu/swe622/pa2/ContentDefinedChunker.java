@@ -0,0 +1,74 @@
+package edu.gmu.swe622.pa2;
+
+import java.util.Random;
+
+/**
+ * Splits data into chunks at positions chosen by the content, using a gear rolling hash. Because a boundary depends
+ * only on the bytes just before it, inserting or removing bytes in a file only changes the chunks around the edit,
+ * and identical runs of bytes in different files are split into identical chunks.
+ */
+public class ContentDefinedChunker {
+
+    /**
+     * A random value for each byte, fixed so that every client cuts the same data in the same places.
+     */
+    private static final long[] GEAR = new long[256];
+
+    static {
+        Random random = new Random(0x46535343484e4b31L);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    private int minSize;
+    private int maxSize;
+    private long mask;
+
+    /**
+     * Constructor.
+     * @param averageSize  the desired average chunk size, rounded down to a power of two
+     * @param maxSize  the largest chunk size allowed
+     * @throws IllegalArgumentException  if averageSize is less than 64 or maxSize is less than averageSize
+     */
+    public ContentDefinedChunker(int averageSize, int maxSize) {
+        if (averageSize < 64 || maxSize < averageSize) {
+            throw new IllegalArgumentException("Average chunk size must be >= 64 and <= the maximum");
+        }
+        int bits = Integer.numberOfTrailingZeros(Integer.highestOneBit(averageSize));
+        this.mask = ((1L << bits) - 1) << (64 - bits);
+        this.minSize = averageSize / 4;
+        this.maxSize = Math.min(maxSize, averageSize * 4);
+    }
+
+    /**
+     * Getter for the maximum chunk size.
+     * @return  the largest number of bytes cut returns
+     */
+    public int getMaxSize() {
+        return this.maxSize;
+    }
+
+    /**
+     * Finds the end of the chunk that starts at offset. The caller must pass at least getMaxSize bytes unless the
+     * data ends before that.
+     * @param data  the array holding the data
+     * @param offset  the index of the first byte of the chunk
+     * @param length  the number of bytes available from offset
+     * @return  the number of bytes in the chunk
+     */
+    public int cut(byte[] data, int offset, int length) {
+        if (length <= this.minSize) {
+            return length;
+        }
+        int limit = Math.min(length, this.maxSize);
+        long hash = 0;
+        for (int i = this.minSize; i < limit; i++) {
+            hash = (hash << 1) + GEAR[data[offset + i] & 0xff];
+            if ((hash & this.mask) == 0) {
+                return i + 1;
+            }
+        }
+        return limit;
+    }
+}
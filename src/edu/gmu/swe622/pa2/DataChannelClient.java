@@ -0,0 +1,93 @@
+package edu.gmu.swe622.pa2;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Client side of the data channel. Connects to the port named in a DataTicket and moves the file bytes with
+ * FileChannel.transferFrom and transferTo.
+ */
+public class DataChannelClient {
+
+    /**
+     * The most bytes moved by a single transferTo or transferFrom call, so progress can be reported between calls.
+     */
+    private static final long TRANSFER_SLICE = 8L * 1024 * 1024;
+
+    private String hostName;
+
+    /**
+     * Constructor.
+     * @param hostName  the host on which the server is running
+     */
+    public DataChannelClient(String hostName) {
+        this.hostName = hostName;
+    }
+
+    /**
+     * Receives the bytes described by a download ticket and writes them into the file at the ticket's offset.
+     * @param ticket  the ticket issued by the server
+     * @param fileChannel  the destination file
+     * @param progress  the progress of the download
+     * @throws IOException  if the connection fails or closes before every byte has been received
+     */
+    public void download(DataTicket ticket, FileChannel fileChannel, ProgressReporter progress) throws IOException {
+        try (SocketChannel socket = this.connect(ticket)) {
+            long position = ticket.getOffset();
+            long end = ticket.getOffset() + ticket.getLength();
+            while (position < end) {
+                long transferred = fileChannel.transferFrom(socket, position, Math.min(TRANSFER_SLICE, end - position));
+                if (transferred <= 0) {
+                    throw new IOException("Connection closed before download completed");
+                }
+                position += transferred;
+                progress.add(transferred);
+            }
+        }
+    }
+
+    /**
+     * Sends the bytes described by an upload ticket from the file, then waits for the server to confirm that they
+     * were written.
+     * @param ticket  the ticket issued by the server
+     * @param fileChannel  the file to upload
+     * @param progress  the progress of the upload
+     * @throws IOException  if the connection fails or the server does not confirm the upload
+     */
+    public void upload(DataTicket ticket, FileChannel fileChannel, ProgressReporter progress) throws IOException {
+        try (SocketChannel socket = this.connect(ticket)) {
+            long position = ticket.getOffset();
+            long end = ticket.getOffset() + ticket.getLength();
+            while (position < end) {
+                long transferred = fileChannel.transferTo(position, Math.min(TRANSFER_SLICE, end - position), socket);
+                if (transferred <= 0) {
+                    throw new IOException("File was truncated while uploading");
+                }
+                position += transferred;
+                progress.add(transferred);
+            }
+            ByteBuffer status = ByteBuffer.allocate(1);
+            if (socket.read(status) != 1 || status.get(0) != DataChannelServer.STATUS_OK) {
+                throw new IOException("Server did not confirm the upload");
+            }
+        }
+    }
+
+    /**
+     * Opens a connection to the data channel and sends the ticket's token.
+     * @param ticket  the ticket issued by the server
+     * @return  the open connection
+     * @throws IOException  if the connection cannot be opened
+     */
+    private SocketChannel connect(DataTicket ticket) throws IOException {
+        SocketChannel socket = SocketChannel.open(new InetSocketAddress(this.hostName, ticket.getPort()));
+        ByteBuffer token = ByteBuffer.wrap(ticket.getToken());
+        while (token.hasRemaining()) {
+            socket.write(token);
+        }
+        return socket;
+    }
+}
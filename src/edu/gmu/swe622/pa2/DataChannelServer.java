@@ -0,0 +1,357 @@
+package edu.gmu.swe622.pa2;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Moves file bytes over a plain TCP socket, outside of RMI. The server issues a DataTicket through an RMI call; the
+ * client then connects to this channel and sends the ticket's token. Downloads are sent with FileChannel.transferTo
+ * and uploads are received with FileChannel.transferFrom, so file data is copied by the kernel without passing
+ * through Java serialization. When an upload has been completely received, it is forced to disk as its durability
+ * policy requires, the server is told the file changed, and the client is sent a single status byte. Connections are
+ * served by a fixed number of threads, with as many more waiting their turn; a connection beyond that is closed at
+ * once, as is one that does not send its token within the ticket timeout. A watchdog closes any transfer that has
+ * moved no bytes for the idle timeout, so that a client that stops reading or writing cannot hold a worker forever.
+ * Failed transfers are reported on the server's standard error.
+ */
+public class DataChannelServer {
+
+    /**
+     * Status byte sent to the client when an upload has been written successfully.
+     */
+    public static final int STATUS_OK = 0;
+
+    /**
+     * The most bytes moved by a single transferTo or transferFrom call, which is also how often a transfer records
+     * that it is making progress.
+     */
+    private static final long TRANSFER_SLICE = 1024 * 1024;
+
+    private ServerSocketChannel serverChannel;
+    private ExecutorService executor;
+    private Map<String, PendingTransfer> pending = new ConcurrentHashMap<>();
+    private SecureRandom random = new SecureRandom();
+    private long ticketTimeoutNanos;
+    private long idleTimeoutNanos;
+    private Map<SocketChannel, Long> lastProgress = new ConcurrentHashMap<>();
+    private ScheduledExecutorService watchdog;
+    private Consumer<Path> uploaded;
+
+    /**
+     * A transfer that has been issued a ticket but whose client has not connected yet.
+     */
+    private static class PendingTransfer {
+        private Path filePath;
+        private boolean upload;
+        private long offset;
+        private long length;
+        private Durability durability;
+        private long syncInterval;
+        private long expiresAt;
+
+        /**
+         * Describes the transfer for the server's error output.
+         * @return  the direction of the transfer and the file it moves
+         */
+        @Override
+        public String toString() {
+            return (this.upload ? "upload to " : "download of ") + this.filePath;
+        }
+    }
+
+    /**
+     * Constructor. Opens the listening socket and starts accepting connections.
+     * @param port  the port to listen on, or 0 for any free port
+     * @param ticketTimeoutMillis  how long a ticket stays valid before the client must connect and send its token
+     * @param idleTimeoutMillis  how long a transfer may move no bytes before its connection is closed
+     * @param workers  the most connections served at once
+     * @param uploaded  told about every file once an upload to it has been completely received
+     * @throws IOException  if the socket cannot be opened
+     * @throws IllegalArgumentException  if workers or idleTimeoutMillis is not positive
+     */
+    public DataChannelServer(int port, long ticketTimeoutMillis, long idleTimeoutMillis, int workers,
+            Consumer<Path> uploaded) throws IOException {
+        if (workers <= 0) {
+            throw new IllegalArgumentException("Number of workers must be > 0");
+        }
+        if (idleTimeoutMillis <= 0) {
+            throw new IllegalArgumentException("Idle timeout must be > 0");
+        }
+        this.ticketTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(ticketTimeoutMillis);
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+        this.uploaded = uploaded;
+        this.executor = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(workers), runnable -> {
+                    Thread thread = new Thread(runnable, "fss-data-worker");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "fss-data-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long checkMillis = Math.max(1, idleTimeoutMillis / 2);
+        this.watchdog.scheduleWithFixedDelay(this::closeIdle, checkMillis, checkMillis, TimeUnit.MILLISECONDS);
+        this.serverChannel = ServerSocketChannel.open();
+        this.serverChannel.bind(new InetSocketAddress(port));
+        Thread acceptor = new Thread(this::acceptConnections, "fss-data-channel");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Returns the port the data channel is listening on.
+     * @return  the local port of the listening socket
+     * @throws IOException  if the socket has been closed
+     */
+    public int getPort() throws IOException {
+        return ((InetSocketAddress) this.serverChannel.getLocalAddress()).getPort();
+    }
+
+    /**
+     * Issues a ticket for sending length bytes of a file, starting at offset, to the client.
+     * @param filePath  the file to download
+     * @param offset  the position of the first byte to send
+     * @param length  the number of bytes to send
+     * @return  the ticket the client uses to connect
+     * @throws IOException  if the socket has been closed
+     */
+    public DataTicket issueDownload(Path filePath, long offset, long length) throws IOException {
+        return this.issue(filePath, false, offset, length, Durability.NONE, 0);
+    }
+
+    /**
+     * Issues a ticket for receiving a file of length bytes from the client. A shorter existing file is kept up to
+     * resumeAt and the upload resumes from there; any other existing file is cut off and received whole.
+     * @param filePath  the file to upload to
+     * @param length  the number of bytes in the uploaded file
+     * @param resumeAt  the number of bytes at the start of an existing shorter file that can be kept
+     * @param options  the negotiated options of the upload, which say when it is forced to disk
+     * @return  the ticket the client uses to connect, whose offset is where the upload resumes
+     * @throws IOException  if the file cannot be opened or cut off, or the socket has been closed
+     */
+    public DataTicket issueUpload(Path filePath, long length, long resumeAt, TransferOptions options)
+            throws IOException {
+        long offset = 0;
+        try (FileChannel fileChannel = FileChannel.open(filePath, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE)) {
+            long size = fileChannel.size();
+            if (size < length) {
+                offset = Math.min(size, resumeAt);
+            }
+            fileChannel.truncate(offset);
+        }
+        return this.issue(filePath, true, offset, length - offset, options.getDurability(),
+                options.getSyncInterval());
+    }
+
+    /**
+     * Stops accepting connections. Transfers that are already running are allowed to finish, but are no longer
+     * closed when they stop moving bytes.
+     * @throws IOException  if the socket cannot be closed
+     */
+    public void close() throws IOException {
+        this.serverChannel.close();
+        this.executor.shutdown();
+        this.watchdog.shutdownNow();
+        this.pending.clear();
+    }
+
+    /**
+     * Records a pending transfer under a new random token, dropping any tickets that have expired.
+     * @param filePath  the file to transfer
+     * @param upload  true if the client will send the bytes, false if it will receive them
+     * @param offset  the position in the file of the first byte to transfer
+     * @param length  the number of bytes to transfer
+     * @param durability  when an upload is forced to disk
+     * @param syncInterval  the number of bytes written between each fsync when durability is PERIODIC
+     * @return  the ticket the client uses to connect
+     * @throws IOException  if the socket has been closed
+     */
+    private DataTicket issue(Path filePath, boolean upload, long offset, long length, Durability durability,
+            long syncInterval) throws IOException {
+        long now = System.nanoTime();
+        for (Iterator<PendingTransfer> it = this.pending.values().iterator(); it.hasNext(); ) {
+            if (it.next().expiresAt - now < 0) {
+                it.remove();
+            }
+        }
+        PendingTransfer transfer = new PendingTransfer();
+        transfer.filePath = filePath;
+        transfer.upload = upload;
+        transfer.offset = offset;
+        transfer.length = length;
+        transfer.durability = durability;
+        transfer.syncInterval = syncInterval;
+        transfer.expiresAt = now + this.ticketTimeoutNanos;
+        byte[] token = new byte[DataTicket.TOKEN_LENGTH];
+        this.random.nextBytes(token);
+        this.pending.put(Base64.getEncoder().encodeToString(token), transfer);
+        return new DataTicket(token, this.getPort(), offset, length);
+    }
+
+    /**
+     * Accepts connections until the listening socket is closed, handing each one to the executor, or closing it if
+     * the executor is full.
+     */
+    private void acceptConnections() {
+        while (this.serverChannel.isOpen()) {
+            try {
+                SocketChannel socket = this.serverChannel.accept();
+                try {
+                    this.executor.execute(() -> this.handle(socket));
+                } catch (RejectedExecutionException exp) {
+                    socket.close();
+                }
+            } catch (ClosedChannelException exp) {
+                break;
+            } catch (IOException exp) {
+                System.err.println("Data channel could not accept a connection: " + exp);
+            }
+        }
+    }
+
+    /**
+     * Closes the connections of transfers that have moved no bytes for longer than the idle timeout, which makes
+     * their blocked transferTo or transferFrom call fail. Runs on the watchdog thread.
+     */
+    private void closeIdle() {
+        long now = System.nanoTime();
+        for (Map.Entry<SocketChannel, Long> entry : this.lastProgress.entrySet()) {
+            if (now - entry.getValue() > this.idleTimeoutNanos && this.lastProgress.remove(entry.getKey()) != null) {
+                try {
+                    entry.getKey().close();
+                } catch (IOException exp) {
+                    // the transfer fails either way
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the token from a new connection and carries out the transfer it was issued for. A connection that does
+     * not send its whole token within the ticket timeout is closed, and the watchdog closes one whose transfer stops
+     * moving bytes.
+     * @param socket  the client connection
+     */
+    private void handle(SocketChannel socket) {
+        PendingTransfer transfer = null;
+        try (SocketChannel channel = socket) {
+            // the socket's own stream, unlike the channel, honours a read timeout
+            byte[] token = new byte[DataTicket.TOKEN_LENGTH];
+            channel.socket().setSoTimeout((int) Math.max(1, TimeUnit.NANOSECONDS.toMillis(this.ticketTimeoutNanos)));
+            InputStream in = channel.socket().getInputStream();
+            for (int read = 0; read < token.length; ) {
+                int count = in.read(token, read, token.length - read);
+                if (count == -1) {
+                    return;
+                }
+                read += count;
+            }
+            transfer = this.pending.remove(Base64.getEncoder().encodeToString(token));
+            if (transfer == null || transfer.expiresAt - System.nanoTime() < 0) {
+                return;
+            }
+            this.progressed(channel);
+            if (transfer.upload) {
+                this.receive(channel, transfer);
+            } else {
+                this.send(channel, transfer);
+            }
+        } catch (SocketTimeoutException exp) {
+            // the client never sent its token
+        } catch (ClosedChannelException exp) {
+            System.err.println("Data channel " + transfer + " moved no bytes for "
+                    + TimeUnit.NANOSECONDS.toMillis(this.idleTimeoutNanos) + " ms and was closed");
+        } catch (IOException exp) {
+            System.err.println("Data channel " + (transfer == null ? "connection" : transfer) + " failed: " + exp);
+        } finally {
+            this.lastProgress.remove(socket);
+        }
+    }
+
+    /**
+     * Records that the transfer on a connection has just moved bytes.
+     * @param channel  the client connection
+     */
+    private void progressed(SocketChannel channel) {
+        this.lastProgress.put(channel, System.nanoTime());
+    }
+
+    /**
+     * Sends the requested bytes of a file to the client with transferTo.
+     * @param channel  the client connection
+     * @param transfer  the download to carry out
+     * @throws IOException  if the file cannot be read or the connection fails
+     */
+    private void send(SocketChannel channel, PendingTransfer transfer) throws IOException {
+        try (FileChannel fileChannel = FileChannel.open(transfer.filePath, StandardOpenOption.READ)) {
+            long position = transfer.offset;
+            long end = Math.min(fileChannel.size(), transfer.offset + transfer.length);
+            while (position < end) {
+                position += fileChannel.transferTo(position, Math.min(TRANSFER_SLICE, end - position), channel);
+                this.progressed(channel);
+            }
+        }
+    }
+
+    /**
+     * Receives the requested bytes of a file from the client with transferFrom, forces them to disk as the upload's
+     * durability policy requires, tells the server the file has changed, then sends the status byte. The client is
+     * only told the upload succeeded once the bytes are as durable as it asked for.
+     * @param channel  the client connection
+     * @param transfer  the upload to carry out
+     * @throws IOException  if the file cannot be written or forced, or the connection closes early
+     */
+    private void receive(SocketChannel channel, PendingTransfer transfer) throws IOException {
+        try (FileChannel fileChannel = FileChannel.open(transfer.filePath,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            long position = transfer.offset;
+            long end = transfer.offset + transfer.length;
+            long unsynced = 0;
+            while (position < end) {
+                long transferred = fileChannel.transferFrom(channel, position, Math.min(TRANSFER_SLICE, end - position));
+                if (transferred <= 0) {
+                    throw new IOException("Connection closed before upload completed: " + transfer.filePath);
+                }
+                position += transferred;
+                this.progressed(channel);
+                unsynced += transferred;
+                if (transfer.durability == Durability.PERIODIC && unsynced >= transfer.syncInterval) {
+                    fileChannel.force(false);
+                    unsynced = 0;
+                }
+            }
+            // every byte has arrived, so the time taken to force them is not the client's idleness
+            this.lastProgress.remove(channel);
+            if (transfer.durability != Durability.NONE) {
+                fileChannel.force(true);
+            }
+        }
+        this.uploaded.accept(transfer.filePath);
+        channel.write(ByteBuffer.wrap(new byte[] {STATUS_OK}));
+    }
+}
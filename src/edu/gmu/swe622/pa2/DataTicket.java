@@ -0,0 +1,68 @@
+package edu.gmu.swe622.pa2;
+
+import java.io.Serializable;
+
+/**
+ * Describes a transfer that the server has agreed to carry out over its data channel instead of through RMI calls.
+ * The client connects to the data channel port, sends the token, and then receives or sends the file bytes.
+ */
+public class DataTicket implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The number of bytes in a ticket token.
+     */
+    public static final int TOKEN_LENGTH = 16;
+
+    private byte[] token;
+    private int port;
+    private long offset;
+    private long length;
+
+    /**
+     * Constructor.
+     * @param token  the single use token that identifies the transfer on the data channel
+     * @param port  the port the server's data channel listens on
+     * @param offset  the position in the file of the first byte to transfer
+     * @param length  the number of bytes to transfer
+     */
+    public DataTicket(byte[] token, int port, long offset, long length) {
+        this.token = token;
+        this.port = port;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * Getter for the token.
+     * @return  the single use token that identifies the transfer on the data channel
+     */
+    public byte[] getToken() {
+        return this.token;
+    }
+
+    /**
+     * Getter for the data channel port.
+     * @return  the port the server's data channel listens on
+     */
+    public int getPort() {
+        return this.port;
+    }
+
+    /**
+     * Getter for the offset.
+     * @return  the position in the file of the first byte to transfer
+     */
+    public long getOffset() {
+        return this.offset;
+    }
+
+    /**
+     * Getter for the length.
+     * @return  the number of bytes to transfer
+     */
+    public long getLength() {
+        return this.length;
+    }
+}
@@ -0,0 +1,138 @@
+package edu.gmu.swe622.pa2;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Uploads a file into the server's chunk store. The file is split into content-defined chunks and hashed, the
+ * server is asked which of the hashes it is missing, and only those chunks are sent before the file's manifest is
+ * committed.
+ */
+public class DedupUpload {
+
+    /**
+     * The most hashes asked about in one call.
+     */
+    private static final int MAX_QUERY = 4096;
+
+    private FileSharingSystem fss;
+    private Path filePath;
+    private String remoteDestination;
+
+    /**
+     * Constructor.
+     * @param fss  the server to upload to
+     * @param filePath  the local file to upload
+     * @param remoteDestination  the path of the file on the server
+     */
+    public DedupUpload(FileSharingSystem fss, Path filePath, String remoteDestination) {
+        this.fss = fss;
+        this.filePath = filePath;
+        this.remoteDestination = remoteDestination;
+    }
+
+    /**
+     * Uploads the file.
+     * @param length  the number of bytes in the local file
+     * @return  the number of bytes the server already had and that were not sent
+     * @throws IOException  if there is an error while communicating with the server or reading the file
+     */
+    public long run(long length) throws IOException {
+        StoreUpload upload = this.fss.storeUpload(this.remoteDestination, length, TransferOptions.defaults());
+        try (FileChannel fileChannel = FileChannel.open(this.filePath, StandardOpenOption.READ)) {
+            TransferOptions options = upload.getOptions();
+            ContentDefinedChunker chunker = new ContentDefinedChunker(
+                    Math.min(Constants.STORE_CHUNK_SIZE, options.getMaxChunkSize()), options.getMaxChunkSize());
+            List<ChunkRef> chunks = this.split(fileChannel, chunker);
+
+            Set<String> missing = new HashSet<>();
+            for (int i = 0; i < chunks.size(); i += MAX_QUERY) {
+                List<String> hashes = new ArrayList<>();
+                for (ChunkRef chunk : chunks.subList(i, Math.min(chunks.size(), i + MAX_QUERY))) {
+                    hashes.add(chunk.getHash());
+                }
+                missing.addAll(upload.missing(hashes));
+            }
+            long toSend = 0;
+            Set<String> counted = new HashSet<>();
+            for (ChunkRef chunk : chunks) {
+                if (missing.contains(chunk.getHash()) && counted.add(chunk.getHash())) {
+                    toSend += chunk.getLength();
+                }
+            }
+
+            ProgressReporter progress = new ProgressReporter(toSend, "upload", "uploaded");
+            Codec codec = options.getCodec();
+            List<Chunk> batch = new ArrayList<>();
+            long batchBytes = 0;
+            long offset = 0;
+            for (ChunkRef chunk : chunks) {
+                if (missing.remove(chunk.getHash())) {
+                    ByteBuffer buffer = ByteBuffer.allocate(chunk.getLength());
+                    while (buffer.hasRemaining()) {
+                        if (fileChannel.read(buffer, offset + buffer.position()) == -1) {
+                            throw new IOException("File was truncated while uploading: " + this.filePath);
+                        }
+                    }
+                    Chunk encoded = Chunk.encode(codec, buffer.array(), chunk.getLength());
+                    batch.add(encoded);
+                    batchBytes += encoded.getData().length;
+                    if (batchBytes >= options.getMaxChunkSize()) {
+                        upload.putChunks(batch);
+                        batch = new ArrayList<>();
+                        batchBytes = 0;
+                    }
+                    progress.add(chunk.getLength());
+                }
+                offset += chunk.getLength();
+            }
+            if (! batch.isEmpty()) {
+                upload.putChunks(batch);
+            }
+            upload.commit(chunks);
+            return length - toSend;
+        } finally {
+            upload.close();
+        }
+    }
+
+    /**
+     * Splits the local file into content-defined chunks and hashes each one.
+     * @param fileChannel  the local file
+     * @param chunker  the chunker to split the file with
+     * @return  the chunks of the file, in order
+     * @throws IOException  if the file cannot be read
+     */
+    private List<ChunkRef> split(FileChannel fileChannel, ContentDefinedChunker chunker) throws IOException {
+        List<ChunkRef> chunks = new ArrayList<>();
+        byte[] window = new byte[Math.max(4 * 1024 * 1024, 2 * chunker.getMaxSize())];
+        int start = 0;
+        int end = 0;
+        boolean eof = false;
+        while (! eof || start < end) {
+            if (! eof && end - start < chunker.getMaxSize()) {
+                System.arraycopy(window, start, window, 0, end - start);
+                end -= start;
+                start = 0;
+                int read = fileChannel.read(ByteBuffer.wrap(window, end, window.length - end));
+                if (read == -1) {
+                    eof = true;
+                } else {
+                    end += read;
+                }
+                continue;
+            }
+            int length = chunker.cut(window, start, end - start);
+            chunks.add(new ChunkRef(ChunkStore.hash(window, start, length), length));
+            start += length;
+        }
+        return chunks;
+    }
+}
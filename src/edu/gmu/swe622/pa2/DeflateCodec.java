@@ -0,0 +1,95 @@
+package edu.gmu.swe622.pa2;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Codec using the raw deflate format of java.util.zip. Each thread keeps its own Deflater and Inflater.
+ */
+public class DeflateCodec implements Codec {
+
+    /**
+     * The name the codec is negotiated under.
+     */
+    public static final String NAME = "deflate";
+
+    private int level;
+    private ThreadLocal<Deflater> deflaters;
+    private ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(() -> new Inflater(true));
+
+    /**
+     * Constructor.
+     * @param level  the Deflater compression level, from 0 to 9
+     */
+    public DeflateCodec(int level) {
+        this.level = level;
+        this.deflaters = ThreadLocal.withInitial(() -> new Deflater(this.level, true));
+    }
+
+    /**
+     * Returns the name the codec is negotiated under.
+     * @return  "deflate"
+     */
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    /**
+     * Compresses bytes with the raw deflate format.
+     * @param data  the array holding the bytes to compress
+     * @param offset  the index of the first byte to compress
+     * @param length  the number of bytes to compress
+     * @return  the compressed bytes
+     */
+    @Override
+    public byte[] compress(byte[] data, int offset, int length) {
+        Deflater deflater = this.deflaters.get();
+        deflater.reset();
+        deflater.setInput(data, offset, length);
+        deflater.finish();
+        byte[] output = new byte[length + (length >> 6) + 64];
+        int size = 0;
+        while (! deflater.finished()) {
+            if (size == output.length) {
+                output = Arrays.copyOf(output, output.length * 2);
+            }
+            size += deflater.deflate(output, size, output.length - size);
+        }
+        return Arrays.copyOf(output, size);
+    }
+
+    /**
+     * Decompresses bytes that were compressed with the raw deflate format.
+     * @param data  the compressed bytes
+     * @param length  the number of bytes the data decompresses to
+     * @return  the decompressed bytes
+     * @throws IOException  if the data is corrupt or does not decompress to exactly length bytes
+     */
+    @Override
+    public byte[] decompress(byte[] data, int length) throws IOException {
+        Inflater inflater = this.inflaters.get();
+        inflater.reset();
+        inflater.setInput(data);
+        byte[] output = new byte[length];
+        int size = 0;
+        try {
+            while (size < length && ! inflater.finished()) {
+                int inflated = inflater.inflate(output, size, length - size);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                size += inflated;
+            }
+        } catch (DataFormatException exp) {
+            throw new IOException("Compressed chunk is corrupt", exp);
+        }
+        if (size != length || ! inflater.finished()) {
+            throw new IOException("Compressed chunk did not decompress to " + length + " bytes");
+        }
+        return output;
+    }
+}
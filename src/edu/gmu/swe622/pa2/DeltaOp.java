@@ -0,0 +1,92 @@
+package edu.gmu.swe622.pa2;
+
+import java.io.Serializable;
+
+/**
+ * One instruction for rebuilding a file in a delta upload: either copy a run of consecutive blocks from the file
+ * already on the server, or write literal bytes sent by the client.
+ */
+public class DeltaOp implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private int block;
+    private int count;
+    private Chunk literal;
+
+    /**
+     * Constructor. Use copy or literal to create instances.
+     * @param block  the index of the first block to copy
+     * @param count  the number of blocks to copy
+     * @param literal  the bytes to write, or null to copy blocks
+     */
+    private DeltaOp(int block, int count, Chunk literal) {
+        this.block = block;
+        this.count = count;
+        this.literal = literal;
+    }
+
+    /**
+     * Creates an instruction to copy blocks of the server's file.
+     * @param block  the index of the first block to copy
+     * @param count  the number of consecutive blocks to copy
+     * @return  the instruction
+     */
+    public static DeltaOp copy(int block, int count) {
+        return new DeltaOp(block, count, null);
+    }
+
+    /**
+     * Creates an instruction to write bytes sent by the client.
+     * @param literal  the bytes to write, which may be compressed with the negotiated codec
+     * @return  the instruction
+     */
+    public static DeltaOp literal(Chunk literal) {
+        return new DeltaOp(0, 0, literal);
+    }
+
+    /**
+     * Returns true if this instruction copies blocks.
+     * @return  true for a copy, false for literal bytes
+     */
+    public boolean isCopy() {
+        return this.literal == null;
+    }
+
+    /**
+     * Getter for the first block.
+     * @return  the index of the first block to copy
+     */
+    public int getBlock() {
+        return this.block;
+    }
+
+    /**
+     * Getter for the block count.
+     * @return  the number of blocks to copy
+     */
+    public int getCount() {
+        return this.count;
+    }
+
+    /**
+     * Getter for the literal bytes.
+     * @return  the bytes to write, or null for a copy
+     */
+    public Chunk getLiteral() {
+        return this.literal;
+    }
+
+    /**
+     * Extends a copy by one block if the block follows the ones it already copies.
+     * @param next  the index of the block to add
+     * @return  true if the block was added
+     */
+    boolean extend(int next) {
+        if (this.isCopy() && this.block + this.count == next) {
+            this.count++;
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,260 @@
+package edu.gmu.swe622.pa2;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Uploads a file by sending only what differs from the version already on the server, in the manner of rsync. The
+ * local file is scanned with a rolling checksum for blocks that match the server's block signature; matching blocks
+ * are sent as references and everything in between as literal bytes, compressed with the negotiated codec.
+ */
+public class DeltaSync {
+
+    /**
+     * The most literal bytes sent in one instruction.
+     */
+    private static final int MAX_LITERAL = 1024 * 1024;
+
+    /**
+     * The most instructions sent in one call.
+     */
+    private static final int MAX_BATCH_OPS = 4096;
+
+    private FileSharingSystem fss;
+    private Path filePath;
+    private String remoteDestination;
+    private DeltaUpload upload;
+    private Codec codec;
+    private int maxLiteral;
+    private List<DeltaOp> batch = new ArrayList<>();
+    private long batchBytes;
+    private ProgressReporter progress;
+    private long matched;
+
+    /**
+     * Constructor.
+     * @param fss  the server to upload to
+     * @param filePath  the local file to upload
+     * @param remoteDestination  the path of the file on the server
+     */
+    public DeltaSync(FileSharingSystem fss, Path filePath, String remoteDestination) {
+        this.fss = fss;
+        this.filePath = filePath;
+        this.remoteDestination = remoteDestination;
+    }
+
+    /**
+     * Uploads the file. The file on the server is only replaced once the whole new version has been rebuilt and
+     * checked.
+     * @param length  the number of bytes in the local file
+     * @return  the number of bytes that were found on the server and not sent
+     * @throws IOException  if there is an error while communicating with the server or reading the file
+     */
+    public long run(long length) throws IOException {
+        this.upload = this.fss.deltaUpload(this.remoteDestination, length, TransferOptions.defaults());
+        try {
+            TransferOptions options = this.upload.getOptions();
+            this.codec = options.getCodec();
+            this.maxLiteral = Math.min(MAX_LITERAL, options.getMaxChunkSize());
+            FileSignature signature = this.upload.getSignature();
+            this.progress = new ProgressReporter(length, "upload", "uploaded");
+            byte[] digest = this.scan(signature);
+            this.upload.commit(digest);
+        } finally {
+            this.upload.close();
+        }
+        return this.matched;
+    }
+
+    /**
+     * Reads the local file once, sending block references and literal bytes for it.
+     * @param signature  the signature of the file on the server
+     * @return  the SHA-256 digest of the local file
+     * @throws IOException  if there is an error while communicating with the server or reading the file
+     */
+    private byte[] scan(FileSignature signature) throws IOException {
+        int blockSize = signature.getBlockSize();
+        Map<Integer, List<Integer>> blocks = new HashMap<>();
+        // a cheap first test, so that most offsets are rejected without a map lookup
+        boolean[] present = new boolean[1 << 16];
+        for (int block = 0; block < signature.getBlockCount(); block++) {
+            blocks.computeIfAbsent(signature.getWeak(block), weak -> new ArrayList<>(1)).add(block);
+            present[hash16(signature.getWeak(block))] = true;
+        }
+        MessageDigest fileDigest;
+        try {
+            fileDigest = MessageDigest.getInstance(DeltaUploadServer.FILE_DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException exp) {
+            throw new IllegalStateException(DeltaUploadServer.FILE_DIGEST_ALGORITHM + " is not available", exp);
+        }
+        MessageDigest strongDigest = FileSignature.newStrongDigest();
+        RollingChecksum checksum = new RollingChecksum();
+
+        // the window holds unsent literal bytes, at most maxLiteral, followed by the block being compared
+        byte[] window = new byte[Math.max(4 * 1024 * 1024, 2 * (this.maxLiteral + blockSize))];
+        int literalStart = 0;
+        int position = 0;
+        int end = 0;
+        boolean eof = false;
+        boolean checksumValid = false;
+        try (FileChannel fileChannel = FileChannel.open(this.filePath, StandardOpenOption.READ)) {
+            while (true) {
+                if (end - position < blockSize || blocks.isEmpty()) {
+                    if (eof) {
+                        break;
+                    }
+                    System.arraycopy(window, literalStart, window, 0, end - literalStart);
+                    position -= literalStart;
+                    end -= literalStart;
+                    literalStart = 0;
+                    ByteBuffer buffer = ByteBuffer.wrap(window, end, window.length - end);
+                    int read = fileChannel.read(buffer);
+                    if (read == -1) {
+                        eof = true;
+                    } else {
+                        fileDigest.update(window, end, read);
+                        end += read;
+                    }
+                    if (blocks.isEmpty()) {
+                        this.sendLiteral(window, literalStart, end - literalStart);
+                        literalStart = end;
+                        position = end;
+                    }
+                    continue;
+                }
+                if (! checksumValid) {
+                    checksum.reset(window, position, blockSize);
+                    checksumValid = true;
+                }
+                int weak = checksum.getValue();
+                int match = ! present[hash16(weak)] ? -1
+                        : this.findBlock(blocks.get(weak), signature, strongDigest, window, position, blockSize);
+                if (match >= 0) {
+                    this.sendLiteral(window, literalStart, position - literalStart);
+                    this.sendCopy(match, blockSize);
+                    position += blockSize;
+                    literalStart = position;
+                    checksumValid = false;
+                } else {
+                    if (position + blockSize < end) {
+                        checksum.roll(window[position], window[position + blockSize]);
+                    } else {
+                        checksumValid = false;
+                    }
+                    position++;
+                    if (position - literalStart >= this.maxLiteral) {
+                        this.sendLiteral(window, literalStart, position - literalStart);
+                        literalStart = position;
+                    }
+                }
+            }
+        }
+        this.sendLiteral(window, literalStart, end - literalStart);
+        this.flush();
+        return fileDigest.digest();
+    }
+
+    /**
+     * Folds a weak checksum into 16 bits.
+     * @param weak  the checksum
+     * @return  an index into the presence table
+     */
+    private static int hash16(int weak) {
+        return (weak ^ (weak >>> 16)) & 0xffff;
+    }
+
+    /**
+     * Finds the block of the server's file that a window of the local file matches.
+     * @param candidates  the blocks whose weak checksum matches the window, or null if none does
+     * @param signature  the signature of the file on the server
+     * @param strongDigest  the digest to compute the strong checksum with
+     * @param window  the array holding the window
+     * @param offset  the index of the first byte of the window
+     * @param blockSize  the number of bytes in the window
+     * @return  the index of the matching block, or -1 if there is none
+     */
+    private int findBlock(List<Integer> candidates, FileSignature signature, MessageDigest strongDigest,
+                          byte[] window, int offset, int blockSize) {
+        if (candidates == null) {
+            return -1;
+        }
+        strongDigest.update(window, offset, blockSize);
+        byte[] strong = strongDigest.digest();
+        for (int block : candidates) {
+            if (signature.strongMatches(block, strong)) {
+                return block;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Queues an instruction to copy a block of the server's file, merging it with the previous copy if the blocks
+     * are consecutive.
+     * @param block  the index of the block
+     * @param blockSize  the number of bytes in the block
+     * @throws IOException  if there is an error while communicating with the server
+     */
+    private void sendCopy(int block, int blockSize) throws IOException {
+        if (this.batch.isEmpty() || ! this.batch.get(this.batch.size() - 1).extend(block)) {
+            this.queue(DeltaOp.copy(block, 1), 0);
+        }
+        this.matched += blockSize;
+        this.progress.add(blockSize);
+    }
+
+    /**
+     * Queues literal bytes, compressed with the negotiated codec if that makes them smaller.
+     * @param data  the array holding the bytes
+     * @param offset  the index of the first byte
+     * @param length  the number of bytes
+     * @throws IOException  if there is an error while communicating with the server
+     */
+    private void sendLiteral(byte[] data, int offset, int length) throws IOException {
+        while (length > 0) {
+            int count = Math.min(length, this.maxLiteral);
+            byte[] literal = new byte[count];
+            System.arraycopy(data, offset, literal, 0, count);
+            Chunk chunk = Chunk.encode(this.codec, literal, count);
+            this.queue(DeltaOp.literal(chunk), chunk.getData().length);
+            this.progress.add(count);
+            offset += count;
+            length -= count;
+        }
+    }
+
+    /**
+     * Adds an instruction to the batch, sending the batch once it is full.
+     * @param op  the instruction
+     * @param bytes  the number of bytes the instruction adds to the request
+     * @throws IOException  if there is an error while communicating with the server
+     */
+    private void queue(DeltaOp op, int bytes) throws IOException {
+        this.batch.add(op);
+        this.batchBytes += bytes;
+        if (this.batch.size() >= MAX_BATCH_OPS || this.batchBytes >= this.maxLiteral) {
+            this.flush();
+        }
+    }
+
+    /**
+     * Sends the queued instructions.
+     * @throws IOException  if there is an error while communicating with the server
+     */
+    private void flush() throws IOException {
+        if (! this.batch.isEmpty()) {
+            this.upload.apply(this.batch);
+            this.batch = new ArrayList<>();
+            this.batchBytes = 0;
+        }
+    }
+}
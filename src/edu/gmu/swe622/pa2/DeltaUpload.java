@@ -0,0 +1,20 @@
+package edu.gmu.swe622.pa2;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Interface for uploading a file by sending only the parts that differ from the file already on the server.
+ */
+public interface DeltaUpload extends RemoteSession {
+
+    FileSignature getSignature() throws IOException;
+
+    TransferOptions getOptions() throws IOException;
+
+    void apply(List<DeltaOp> ops) throws IOException;
+
+    void commit(byte[] digest) throws IOException;
+
+    void close() throws IOException;
+}
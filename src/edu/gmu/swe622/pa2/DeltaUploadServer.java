@@ -0,0 +1,241 @@
+package edu.gmu.swe622.pa2;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Implements the remote DeltaUpload interface. The file already at the destination is the basis: its block
+ * signature is computed on request, and the new file is rebuilt in a temporary file next to it from blocks copied
+ * out of the basis and literal bytes sent by the client. On commit the result is checked against the client's
+ * SHA-256 digest of the whole file and atomically moved over the destination, so the old file stays intact if the
+ * upload fails.
+ */
+public class DeltaUploadServer implements DeltaUpload {
+
+    /**
+     * Suffix of the temporary file the new version is rebuilt in.
+     */
+    private static final String TEMP_SUFFIX = ".fssdelta";
+
+    /**
+     * The algorithm of the whole-file digest checked on commit.
+     */
+    public static final String FILE_DIGEST_ALGORITHM = "SHA-256";
+
+    /**
+     * The most blocks a signature may have; larger files get larger blocks.
+     */
+    private static final long MAX_BLOCKS = 1 << 24;
+
+    private Path filePath;
+    private Path tempPath;
+    private long length;
+    private TransferOptions options;
+    private FileChannel basis;
+    private long basisLength;
+    private int blockSize;
+    private FileChannel output;
+    private long written;
+    private MessageDigest digest;
+    private Runnable onCommitted;
+    private boolean finished;
+
+    /**
+     * Constructor. Opens the existing file, if there is one, and creates the temporary file.
+     * @param filePath  the path to upload the file to
+     * @param length  the length of the new version of the file
+     * @param options  the transfer options negotiated with the client
+     * @param onCommitted  called once the new version has replaced the file
+     * @throws IOException  if the files cannot be opened
+     */
+    public DeltaUploadServer(Path filePath, long length, TransferOptions options, Runnable onCommitted)
+            throws IOException {
+        this.filePath = filePath;
+        this.length = length;
+        this.options = options;
+        this.onCommitted = onCommitted;
+        if (Files.isRegularFile(filePath)) {
+            this.basis = FileChannel.open(filePath, StandardOpenOption.READ);
+            this.basisLength = this.basis.size();
+        }
+        this.blockSize = blockSizeFor(this.basisLength);
+        Path parent = filePath.toAbsolutePath().getParent();
+        this.tempPath = Files.createTempFile(parent, filePath.getFileName().toString(), TEMP_SUFFIX);
+        this.output = FileChannel.open(this.tempPath, StandardOpenOption.WRITE);
+        try {
+            this.digest = MessageDigest.getInstance(FILE_DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException exp) {
+            throw new IllegalStateException(FILE_DIGEST_ALGORITHM + " is not available", exp);
+        }
+    }
+
+    /**
+     * Returns the block size for the signature of a file: the configured size, or about the square root of the file
+     * length if none is configured, and never so small that the file has more than MAX_BLOCKS blocks.
+     * @param length  the number of bytes in the file
+     * @return  the number of bytes in each block
+     */
+    private static int blockSizeFor(long length) {
+        long blockSize = Constants.DELTA_BLOCK_SIZE;
+        if (blockSize <= 0) {
+            blockSize = Math.max(Constants.MIN_CHUNK_SIZE, Math.min(1024 * 1024, (long) Math.sqrt(length)));
+        }
+        return (int) Math.max(blockSize, (length + MAX_BLOCKS - 1) / MAX_BLOCKS);
+    }
+
+    /**
+     * Returns the transfer options negotiated with the client.
+     * @return  the options used for this upload
+     */
+    @Override
+    public TransferOptions getOptions() {
+        return this.options;
+    }
+
+    /**
+     * Reads the existing file and computes the checksums of its full blocks.
+     * @return  the signature of the existing file, with no blocks if there is none
+     * @throws IOException  if the file cannot be read
+     */
+    @Override
+    public FileSignature getSignature() throws IOException {
+        int blocks = (int) (this.basisLength / this.blockSize);
+        int[] weak = new int[blocks];
+        byte[] strong = new byte[blocks * FileSignature.STRONG_LENGTH];
+        MessageDigest strongDigest = FileSignature.newStrongDigest();
+        ByteBuffer buffer = ByteBuffer.allocate(this.blockSize);
+        for (int block = 0; block < blocks; block++) {
+            this.readBlock(block, buffer);
+            weak[block] = RollingChecksum.of(buffer.array(), 0, this.blockSize);
+            strongDigest.update(buffer.array(), 0, this.blockSize);
+            System.arraycopy(strongDigest.digest(), 0, strong, block * FileSignature.STRONG_LENGTH,
+                    FileSignature.STRONG_LENGTH);
+        }
+        return new FileSignature(this.blockSize, this.basisLength, weak, strong);
+    }
+
+    /**
+     * Appends the bytes described by a batch of instructions to the new version of the file.
+     * @param ops  the instructions, in file order
+     * @throws IOException  if the files cannot be read or written, or a literal chunk is corrupt
+     * @throws IllegalArgumentException  if an instruction copies a block that does not exist or the new version
+     *                                   would be longer than the length given when the upload started
+     */
+    @Override
+    public synchronized void apply(List<DeltaOp> ops) throws IOException {
+        if (this.finished) {
+            throw new IllegalStateException("The delta upload has already finished");
+        }
+        ByteBuffer buffer = null;
+        for (DeltaOp op : ops) {
+            if (op.isCopy()) {
+                if (op.getCount() <= 0 || op.getBlock() < 0
+                        || (long) op.getBlock() + op.getCount() > this.basisLength / this.blockSize) {
+                    throw new IllegalArgumentException("Block " + op.getBlock() + " is not in the existing file");
+                }
+                if (buffer == null) {
+                    buffer = ByteBuffer.allocate(this.blockSize);
+                }
+                for (int block = op.getBlock(); block < op.getBlock() + op.getCount(); block++) {
+                    this.readBlock(block, buffer);
+                    this.append(buffer.array(), this.blockSize);
+                }
+            } else {
+                byte[] data = op.getLiteral().decode(this.options.getMaxChunkSize());
+                this.append(data, data.length);
+            }
+        }
+    }
+
+    /**
+     * Checks the new version of the file and moves it over the existing one.
+     * @param digest  the SHA-256 digest of the whole new version, computed by the client
+     * @throws IOException  if the new version is incomplete or does not match the digest, or cannot be moved into
+     *                      place; the existing file is left unchanged
+     */
+    @Override
+    public synchronized void commit(byte[] digest) throws IOException {
+        if (this.finished) {
+            throw new IllegalStateException("The delta upload has already finished");
+        }
+        if (this.written != this.length) {
+            throw new IOException("Delta upload ended after " + this.written + " of " + this.length + " bytes");
+        }
+        if (! Arrays.equals(this.digest.digest(), digest)) {
+            throw new IOException("Rebuilt file does not match the digest of the uploaded file");
+        }
+        this.finished = true;
+        this.output.force(true);
+        this.output.close();
+        this.closeBasis();
+        Files.move(this.tempPath, this.filePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        this.onCommitted.run();
+    }
+
+    /**
+     * Ends the session, discarding the new version if it was not committed.
+     * @throws IOException  if the files cannot be closed or the temporary file cannot be deleted
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (! this.finished) {
+            this.finished = true;
+            this.output.close();
+            this.closeBasis();
+            Files.deleteIfExists(this.tempPath);
+        }
+    }
+
+    /**
+     * Reads a full block of the existing file.
+     * @param block  the index of the block
+     * @param buffer  the buffer to read into, which holds blockSize bytes
+     * @throws IOException  if the file cannot be read or was truncated
+     */
+    private void readBlock(int block, ByteBuffer buffer) throws IOException {
+        buffer.clear();
+        long position = (long) block * this.blockSize;
+        while (buffer.hasRemaining()) {
+            if (this.basis.read(buffer, position + buffer.position()) == -1) {
+                throw new IOException("File changed while it was being compared: " + this.filePath);
+            }
+        }
+    }
+
+    /**
+     * Appends bytes to the new version of the file.
+     * @param data  the bytes to append
+     * @param count  the number of bytes of data to append
+     * @throws IOException  if the file cannot be written
+     * @throws IllegalArgumentException  if the new version would be longer than expected
+     */
+    private void append(byte[] data, int count) throws IOException {
+        if (this.written + count > this.length) {
+            throw new IllegalArgumentException("Delta upload is longer than " + this.length + " bytes");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(data, 0, count);
+        while (buffer.hasRemaining()) {
+            this.written += this.output.write(buffer, this.written);
+        }
+        this.digest.update(data, 0, count);
+    }
+
+    /**
+     * Closes the existing file, if there is one.
+     * @throws IOException  if the file cannot be closed
+     */
+    private void closeBasis() throws IOException {
+        if (this.basis != null) {
+            this.basis.close();
+        }
+    }
+}
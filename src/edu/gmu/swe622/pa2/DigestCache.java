@@ -0,0 +1,144 @@
+package edu.gmu.swe622.pa2;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Remembers the hash trees of files on the server, so that verifying a transfer does not read the file again. A
+ * tree is only returned while the file has the size and modification time it had when the tree was computed; the
+ * least recently used trees are dropped once the cache is full.
+ */
+public class DigestCache {
+
+    /**
+     * Identifies the tree of one file at one leaf size.
+     */
+    private static class Key {
+        private Path filePath;
+        private int leafSize;
+
+        /**
+         * Constructor.
+         * @param filePath  the normalized absolute path of the file
+         * @param leafSize  the number of bytes in each leaf
+         */
+        private Key(Path filePath, int leafSize) {
+            this.filePath = filePath;
+            this.leafSize = leafSize;
+        }
+
+        /**
+         * Compares keys by path and leaf size.
+         * @param other  the object to compare with
+         * @return  true if other names the same file and leaf size
+         */
+        @Override
+        public boolean equals(Object other) {
+            if (! (other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return this.leafSize == key.leafSize && this.filePath.equals(key.filePath);
+        }
+
+        /**
+         * Hashes the path and leaf size.
+         * @return  the hash code of the key
+         */
+        @Override
+        public int hashCode() {
+            return Objects.hash(this.filePath, this.leafSize);
+        }
+    }
+
+    /**
+     * A tree and the version of the file it describes.
+     */
+    private static class Entry {
+        private long size;
+        private long lastModified;
+        private HashTree tree;
+    }
+
+    private int capacity;
+    private LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Constructor.
+     * @param capacity  the most trees to keep
+     */
+    public DigestCache(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Returns the tree of a file, computing it from source if it is not cached for the file's current version.
+     * @param filePath  the file
+     * @param source  a source reading the current version of the file
+     * @param leafSize  the number of bytes in each leaf
+     * @return  the tree of the file
+     * @throws IOException  if the file cannot be read
+     */
+    public HashTree get(Path filePath, ChunkSource source, int leafSize) throws IOException {
+        Key key = new Key(filePath.toAbsolutePath().normalize(), leafSize);
+        long size = Files.size(filePath);
+        long lastModified = Files.getLastModifiedTime(filePath).toMillis();
+        synchronized (this) {
+            Entry entry = this.entries.get(key);
+            if (entry != null && entry.size == size && entry.lastModified == lastModified) {
+                return entry.tree;
+            }
+        }
+        HashTree tree = HashTree.compute(source, source.size(), leafSize);
+        this.store(key, size, lastModified, tree);
+        return tree;
+    }
+
+    /**
+     * Caches a tree that was computed while the file was being transferred, for the file's current version.
+     * @param filePath  the file
+     * @param tree  the tree of the whole file
+     * @throws IOException  if the file's size or modification time cannot be read
+     */
+    public void put(Path filePath, HashTree tree) throws IOException {
+        long size = Files.size(filePath);
+        if (size == tree.getLength()) {
+            Key key = new Key(filePath.toAbsolutePath().normalize(), tree.getLeafSize());
+            this.store(key, size, Files.getLastModifiedTime(filePath).toMillis(), tree);
+        }
+    }
+
+    /**
+     * Drops every tree of a file.
+     * @param filePath  the file that is changing
+     */
+    public synchronized void invalidate(Path filePath) {
+        Path normalized = filePath.toAbsolutePath().normalize();
+        this.entries.keySet().removeIf(key -> key.filePath.equals(normalized));
+    }
+
+    /**
+     * Caches a tree, dropping the least recently used one if the cache is full.
+     * @param key  the file and leaf size
+     * @param size  the size of the file the tree describes
+     * @param lastModified  the modification time of the file the tree describes
+     * @param tree  the tree
+     */
+    private synchronized void store(Key key, long size, long lastModified, HashTree tree) {
+        Entry entry = new Entry();
+        entry.size = size;
+        entry.lastModified = lastModified;
+        entry.tree = tree;
+        this.entries.put(key, entry);
+        if (this.entries.size() > this.capacity) {
+            Iterator<Entry> eldest = this.entries.values().iterator();
+            eldest.next();
+            eldest.remove();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package edu.gmu.swe622.pa2;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * One entry of a directory listing: the name of a file or directory with its type, size and modification time.
+ */
+public class DirEntry implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * What kind of file an entry is.
+     */
+    public enum Type {
+        FILE,
+        DIRECTORY,
+        OTHER
+    }
+
+    private String name;
+    private Type type;
+    private long size;
+    private long lastModified;
+
+    /**
+     * Constructor.
+     * @param name  the name of the entry within its directory
+     * @param type  what kind of file the entry is
+     * @param size  the number of bytes in the file
+     * @param lastModified  the modification time of the file in milliseconds
+     */
+    public DirEntry(String name, Type type, long size, long lastModified) {
+        this.name = name;
+        this.type = type;
+        this.size = size;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * Reads the entry for a file from the file system.
+     * @param path  the file to read
+     * @return  the entry for the file, or null if it does not exist
+     * @throws IOException  if the file's attributes cannot be read
+     */
+    public static DirEntry read(Path path) throws IOException {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (NoSuchFileException exp) {
+            return null;
+        }
+        Type type = attributes.isDirectory() ? Type.DIRECTORY : attributes.isRegularFile() ? Type.FILE : Type.OTHER;
+        String name = path.getFileName() != null ? path.getFileName().toString() : path.toString();
+        return new DirEntry(name, type, attributes.size(), attributes.lastModifiedTime().toMillis());
+    }
+
+    /**
+     * Getter for the name.
+     * @return  the name of the entry within its directory
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Getter for the type.
+     * @return  what kind of file the entry is
+     */
+    public Type getType() {
+        return this.type;
+    }
+
+    /**
+     * Getter for the size.
+     * @return  the number of bytes in the file
+     */
+    public long getSize() {
+        return this.size;
+    }
+
+    /**
+     * Getter for the modification time.
+     * @return  the modification time of the file in milliseconds
+     */
+    public long getLastModified() {
+        return this.lastModified;
+    }
+}
@@ -0,0 +1,13 @@
+package edu.gmu.swe622.pa2;
+
+import java.io.IOException;
+
+/**
+ * Interface for reading a directory listing remotely, one page at a time.
+ */
+public interface DirListing extends RemoteSession {
+
+    DirPage nextPage() throws IOException;
+
+    void close() throws IOException;
+}
@@ -0,0 +1,172 @@
+package edu.gmu.swe622.pa2;
+
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.rmi.server.Unreferenced;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Implements remote DirListing interface. An unordered listing is read lazily from a DirectoryStream, one page per
+ * call, so the server never holds more than a page of entries; the stream is closed once the last page has been
+ * read, when the client closes the listing, or when the client goes away. A sorted listing has to see every entry
+ * before it can return the first, so it reads the whole directory up front, closes the stream, and then pages
+ * through the sorted entries. A listing can also page through entries the server already has, such as the entries
+ * of the metadata cache, without touching the disk.
+ */
+public class DirListingServer implements DirListing, Unreferenced {
+
+    /**
+     * The most entries returned in one page, whatever the client asks for.
+     */
+    public static final int MAX_PAGE_SIZE = 10000;
+
+    private Collection<Path> excluded;
+    private int pageSize;
+    private DirectoryStream<Path> stream;
+    private Iterator<Path> paths;
+    private Iterator<DirEntry> entries;
+    private boolean closed;
+
+    /**
+     * Constructor. Opens the directory, and reads and sorts it if the options ask for an order.
+     * @param dirPath  the directory to list
+     * @param options  which entries to return, in what order, and how many in each page
+     * @param excluded  the normalized absolute paths of entries that are never listed
+     * @throws IOException  if the directory cannot be read
+     * @throws IllegalArgumentException  if the glob pattern is invalid
+     */
+    public DirListingServer(Path dirPath, ListOptions options, Collection<Path> excluded) throws IOException {
+        this.excluded = excluded;
+        this.pageSize = Math.min(options.getPageSize(), MAX_PAGE_SIZE);
+        if (options.getGlob() == null) {
+            this.stream = Files.newDirectoryStream(dirPath);
+        } else {
+            this.stream = Files.newDirectoryStream(dirPath, options.getGlob());
+        }
+        this.paths = this.stream.iterator();
+        Comparator<DirEntry> comparator = options.getOrder().getComparator();
+        if (comparator != null) {
+            List<DirEntry> entries = new ArrayList<>();
+            try {
+                for (DirEntry entry = this.next(); entry != null; entry = this.next()) {
+                    entries.add(entry);
+                }
+            } finally {
+                this.close();
+            }
+            entries.sort(options.isDescending() ? comparator.reversed() : comparator);
+            this.entries = entries.iterator();
+        }
+    }
+
+    /**
+     * Constructor for a listing of entries that have already been read. The entries are filtered and sorted
+     * according to the options.
+     * @param entries  the entries of the directory; the list is filtered and sorted in place
+     * @param options  which entries to return, in what order, and how many in each page
+     * @throws IllegalArgumentException  if the glob pattern is invalid
+     */
+    public DirListingServer(List<DirEntry> entries, ListOptions options) {
+        this.pageSize = Math.min(options.getPageSize(), MAX_PAGE_SIZE);
+        this.closed = true;
+        if (options.getGlob() != null) {
+            PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + options.getGlob());
+            entries.removeIf((entry) -> ! matcher.matches(Paths.get(entry.getName())));
+        }
+        Comparator<DirEntry> comparator = options.getOrder().getComparator();
+        if (comparator != null) {
+            entries.sort(options.isDescending() ? comparator.reversed() : comparator);
+        }
+        this.entries = entries.iterator();
+    }
+
+    /**
+     * Returns the next page of entries. The listing is closed once the last page has been returned.
+     * @return  up to the page size entries, and whether there are more
+     * @throws IOException  if the directory cannot be read
+     * @throws IllegalStateException  if the listing was closed before its last page was read
+     */
+    @Override
+    public synchronized DirPage nextPage() throws IOException {
+        if (this.closed && this.entries == null) {
+            throw new IllegalStateException("Directory listing is closed");
+        }
+        List<DirEntry> pageEntries = new ArrayList<>();
+        while (pageEntries.size() < this.pageSize) {
+            DirEntry entry;
+            if (this.entries != null) {
+                entry = this.entries.hasNext() ? this.entries.next() : null;
+            } else {
+                entry = this.next();
+            }
+            if (entry == null) {
+                break;
+            }
+            pageEntries.add(entry);
+        }
+        boolean last = this.entries != null ? ! this.entries.hasNext() : ! this.paths.hasNext();
+        if (last) {
+            this.close();
+        }
+        return new DirPage(pageEntries, last);
+    }
+
+    /**
+     * Closes the directory stream.
+     * @throws IOException  if the stream cannot be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (! this.closed) {
+            this.closed = true;
+            this.stream.close();
+        }
+    }
+
+    /**
+     * Closes the directory stream when no client holds the listing any more, in case the client went away without
+     * closing it.
+     */
+    @Override
+    public void unreferenced() {
+        try {
+            this.close();
+        } catch (IOException exp) {
+            exp.printStackTrace();
+        }
+    }
+
+    /**
+     * Reads the next entry from the directory stream, skipping the excluded entries and entries deleted since the
+     * directory was read.
+     * @return  the next entry, or null if there are no more
+     * @throws IOException  if the directory cannot be read
+     */
+    private DirEntry next() throws IOException {
+        try {
+            while (this.paths.hasNext()) {
+                Path path = this.paths.next();
+                if (this.excluded.contains(path.toAbsolutePath().normalize())) {
+                    continue;
+                }
+                DirEntry entry = DirEntry.read(path);
+                if (entry != null) {
+                    return entry;
+                }
+            }
+        } catch (DirectoryIteratorException exp) {
+            throw exp.getCause();
+        }
+        return null;
+    }
+}
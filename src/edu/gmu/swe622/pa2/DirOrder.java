@@ -0,0 +1,68 @@
+package edu.gmu.swe622.pa2;
+
+import java.util.Comparator;
+
+/**
+ * The order a directory listing returns its entries in.
+ */
+public enum DirOrder {
+    /**
+     * The order the file system returns entries in. The listing is read from the directory a page at a time.
+     */
+    NONE("none", null),
+    /**
+     * By name.
+     */
+    NAME("name", Comparator.comparing(DirEntry::getName)),
+    /**
+     * By size, then by name.
+     */
+    SIZE("size", Comparator.comparingLong(DirEntry::getSize).thenComparing(DirEntry::getName)),
+    /**
+     * By modification time, then by name.
+     */
+    MODIFIED("modified", Comparator.comparingLong(DirEntry::getLastModified).thenComparing(DirEntry::getName));
+
+    private String name;
+    private Comparator<DirEntry> comparator;
+
+    /**
+     * Constructor.
+     * @param name  the name of the order as it is written on the command line
+     * @param comparator  compares entries in this order, or null if entries are not sorted
+     */
+    DirOrder(String name, Comparator<DirEntry> comparator) {
+        this.name = name;
+        this.comparator = comparator;
+    }
+
+    /**
+     * Getter for the order name.
+     * @return  the name of the order as it is written on the command line
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Getter for the comparator.
+     * @return  compares entries in this order, or null if entries are not sorted
+     */
+    public Comparator<DirEntry> getComparator() {
+        return this.comparator;
+    }
+
+    /**
+     * Finds the instance of DirOrder using the name.
+     * @param name  the name of the order to find, or null
+     * @return  the order with the specified name, or null if no order with that name exists
+     */
+    public static DirOrder findByName(String name) {
+        for (DirOrder order : DirOrder.values()) {
+            if (order.name.equalsIgnoreCase(name)) {
+                return order;
+            }
+        }
+        return null;
+    }
+}
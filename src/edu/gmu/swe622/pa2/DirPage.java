@@ -0,0 +1,41 @@
+package edu.gmu.swe622.pa2;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * One page of a directory listing.
+ */
+public class DirPage implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private List<DirEntry> entries;
+    private boolean last;
+
+    /**
+     * Constructor.
+     * @param entries  the entries on this page
+     * @param last  true if there are no entries after this page
+     */
+    public DirPage(List<DirEntry> entries, boolean last) {
+        this.entries = entries;
+        this.last = last;
+    }
+
+    /**
+     * Getter for the entries.
+     * @return  the entries on this page
+     */
+    public List<DirEntry> getEntries() {
+        return this.entries;
+    }
+
+    /**
+     * Returns whether this is the last page of the listing.
+     * @return  true if there are no entries after this page
+     */
+    public boolean isLast() {
+        return this.last;
+    }
+}
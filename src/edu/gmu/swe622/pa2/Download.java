@@ -1,16 +1,21 @@
 package edu.gmu.swe622.pa2;
 
 import java.io.IOException;
-import java.rmi.Remote;
 
 /**
  * Interface for downloading files remotely.
  */
-public interface Download extends Remote {
+public interface Download extends RemoteSession {
 
     long fileSize() throws IOException;
 
-    int[] read() throws IOException;
+    TransferOptions getOptions() throws IOException;
+
+    byte[] readChunk(long offset, int maxLen) throws IOException;
+
+    Chunk readEncodedChunk(long offset, int maxLen) throws IOException;
+
+    HashTree hashTree(int leafSize) throws IOException;
 
     void close() throws IOException;
 }
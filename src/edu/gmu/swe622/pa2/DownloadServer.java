@@ -1,30 +1,99 @@
 package edu.gmu.swe622.pa2;
 
 import java.io.IOException;
-import java.io.RandomAccessFile;
-import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
- * Implementation of the remote Download interface.
+ * Implementation of the remote Download interface. Bytes are read from a ChunkSource. When the source reads from
+ * disk, the next Constants.DOWNLOAD_PREFETCH_CHUNKS chunks after each chunk served are read in the background so
+ * that the client's next requests can be answered without waiting for the disk. Chunks read ahead for
+ * readEncodedChunk are compressed in the background as well. While chunks are served in file order from the start
+ * of the file, they are also hashed into the file's hash tree, which is published to the digest cache once the last
+ * byte has been served.
  */
 public class DownloadServer implements Download {
 
-    private RandomAccessFile randomAccessFile;
+    /**
+     * Reads chunks ahead of the client for every download.
+     */
+    private static final ExecutorService PREFETCH_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "fss-prefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * The most chunks that are held back to be hashed because an earlier chunk has not been served yet.
+     */
+    private static final int MAX_PENDING_HASH = 16;
+
+    /**
+     * A chunk read from the file, in raw and encoded form.
+     */
+    private static class ReadChunk {
+        private byte[] raw;
+        private Chunk chunk;
+    }
+
+    private ChunkSource source;
+    private TransferOptions options;
     private Path filePath;
+    private DigestCache digestCache;
+    private HashTreeBuilder hashBuilder;
+    private TreeMap<Long, byte[]> pendingHash = new TreeMap<>();
+    private HashTree hashTree;
+    private boolean hashing = true;
+    private long rangeStart;
+    private long rangeEnd;
+    private Map<Long, Future<ReadChunk>> prefetched = new ConcurrentHashMap<>();
+    private long prefetchedUpTo;
+    private boolean closed;
 
     /**
-     * Constructor.
-     * @param filePath  the path of the file to be downloaded
-     * @param startAt  the place in the file to start downloading
-     * @throws IOException if there is a communication error
+     * Constructor for downloading the whole file.
+     * @param source  the file to be downloaded; it is closed when the download is closed
+     * @param options  the transfer options negotiated with the client
+     */
+    public DownloadServer(ChunkSource source, TransferOptions options) {
+        this(source, options, 0, Long.MAX_VALUE);
+    }
+
+    /**
+     * Constructor for downloading a byte range of the file.
+     * @param source  the file to be downloaded; it is closed when the download is closed
+     * @param options  the transfer options negotiated with the client
+     * @param offset  the position of the first byte in the range
+     * @param length  the number of bytes in the range
      */
-    public DownloadServer(Path filePath, long startAt) throws IOException {
+    public DownloadServer(ChunkSource source, TransferOptions options, long offset, long length) {
+        this(source, options, offset, length, null, null);
+    }
+
+    /**
+     * Constructor for downloading a byte range of a file whose hash tree is kept in a digest cache.
+     * @param source  the file to be downloaded; it is closed when the download is closed
+     * @param options  the transfer options negotiated with the client
+     * @param offset  the position of the first byte in the range
+     * @param length  the number of bytes in the range
+     * @param filePath  the path of the file, or null if its tree is not cached
+     * @param digestCache  the cache of hash trees, or null if trees are not cached
+     */
+    public DownloadServer(ChunkSource source, TransferOptions options, long offset, long length, Path filePath,
+                          DigestCache digestCache) {
+        this.source = source;
+        this.options = options;
         this.filePath = filePath;
-        this.randomAccessFile = new RandomAccessFile(filePath.toFile(), "r");
-        if (startAt != 0) {
-            this.randomAccessFile.seek(startAt);
-        }
+        this.digestCache = digestCache;
+        this.rangeStart = offset;
+        this.rangeEnd = length > Long.MAX_VALUE - offset ? Long.MAX_VALUE : offset + length;
     }
 
     /**
@@ -34,24 +103,208 @@ public class DownloadServer implements Download {
      */
     @Override
     public long fileSize() throws IOException {
-        return Files.size(this.filePath);
+        return this.source.size();
+    }
+
+    /**
+     * Returns the transfer options negotiated with the client.
+     * @return  the options used for this download
+     */
+    @Override
+    public TransferOptions getOptions() {
+        return this.options;
     }
 
     /**
-     * Reads Constants.BUFFER_SIZE bytes from the file to be downloaded and returns it in a buffer array. If the array
-     * is longer than the total size of the file, the remaining bytes should be ignored.
-     * @return  a buffer of Constants.BUFFER_SIZE bytes read from the file to download.
+     * Reads up to maxLen bytes from the file starting at offset. The returned array is exactly as long as the number
+     * of bytes read, and is empty once offset reaches the end of the file or of the range being downloaded. Requests
+     * for more than the negotiated maximum chunk size are cut down to that size.
+     * @param offset  the position in the file of the first byte to read
+     * @param maxLen  the largest number of bytes to return
+     * @return  the bytes read from the file
      * @throws IOException if there is a communication error
+     * @throws IllegalArgumentException  if offset or maxLen is negative, or offset is outside the range being
+     *                                   downloaded
      */
     @Override
-    public int[] read() throws IOException {
-        int[] buffer = new int[Constants.BUFFER_SIZE];
-        for (int i = 0; i < Constants.BUFFER_SIZE; i++) {
-            int c = this.randomAccessFile.read();
-            if (c == -1) break;
-            buffer[i] = c;
+    public byte[] readChunk(long offset, int maxLen) throws IOException {
+        return this.read(offset, maxLen, null).raw;
+    }
+
+    /**
+     * Reads up to maxLen bytes from the file starting at offset, as readChunk does, and compresses them with the
+     * negotiated codec unless that does not make them smaller.
+     * @param offset  the position in the file of the first byte to read
+     * @param maxLen  the largest number of bytes to return
+     * @return  the chunk read from the file, which is empty once offset reaches the end of the file or range
+     * @throws IOException if there is a communication error
+     * @throws IllegalArgumentException  if offset or maxLen is negative, or offset is outside the range being
+     *                                   downloaded
+     */
+    @Override
+    public Chunk readEncodedChunk(long offset, int maxLen) throws IOException {
+        return this.read(offset, maxLen, this.options.getCodec()).chunk;
+    }
+
+    /**
+     * Reads a chunk, taking it from the chunks read ahead if possible, and starts reading ahead of it.
+     * @param offset  the position in the file of the first byte to read
+     * @param maxLen  the largest number of bytes to return
+     * @param codec  the codec to compress the chunk with, or null to leave it raw
+     * @return  the chunk read from the file
+     * @throws IOException if the file cannot be read
+     */
+    private ReadChunk read(long offset, int maxLen, Codec codec) throws IOException {
+        if (offset < 0 || maxLen < 0) {
+            throw new IllegalArgumentException("Offset and length must be >= 0");
+        }
+        if (offset < this.rangeStart || offset > this.rangeEnd) {
+            throw new IllegalArgumentException("Offset is outside of the range being downloaded");
+        }
+        long end = Math.min(this.source.size(), this.rangeEnd);
+        if (offset >= end) {
+            ReadChunk empty = new ReadChunk();
+            empty.raw = new byte[0];
+            empty.chunk = Chunk.encode(null, empty.raw, 0);
+            return empty;
+        }
+        int length = (int) Math.min(Math.min(maxLen, this.options.getMaxChunkSize()), end - offset);
+        ReadChunk read = this.takePrefetched(offset, length, codec);
+        if (read == null) {
+            read = new ReadChunk();
+            read.raw = this.source.read(offset, length);
+            read.chunk = Chunk.encode(codec, read.raw, read.raw.length);
+        }
+        this.prefetch(offset + read.raw.length, length, end, codec);
+        this.hash(offset, read.raw);
+        return read;
+    }
+
+    /**
+     * Returns the hash tree of the whole file. The tree built while the file was served is used if there is one;
+     * otherwise it comes from the digest cache, which reads the file only if it has changed since it was last
+     * hashed.
+     * @param leafSize  the number of bytes in each leaf
+     * @return  the tree of the file
+     * @throws IOException  if the file cannot be read
+     * @throws IllegalArgumentException  if leafSize is too small
+     */
+    @Override
+    public HashTree hashTree(int leafSize) throws IOException {
+        HashTree.checkLeafSize(leafSize);
+        synchronized (this.pendingHash) {
+            if (this.hashTree != null && this.hashTree.getLeafSize() == leafSize) {
+                return this.hashTree;
+            }
+        }
+        if (this.digestCache != null && this.filePath != null) {
+            return this.digestCache.get(this.filePath, this.source, leafSize);
+        }
+        return HashTree.compute(this.source, this.source.size(), leafSize);
+    }
+
+    /**
+     * Adds a served chunk to the hash tree of the file. Chunks served out of order are held back until the chunks
+     * before them have been served; hashing stops if the client skips around or too many chunks are held back.
+     * @param offset  the position in the file of the chunk
+     * @param raw  the bytes of the chunk
+     * @throws IOException  if the size of the file cannot be read
+     */
+    private void hash(long offset, byte[] raw) throws IOException {
+        synchronized (this.pendingHash) {
+            if (! this.hashing || raw.length == 0) {
+                return;
+            }
+            if (this.hashBuilder == null) {
+                if (offset != 0) {
+                    this.hashing = false;
+                    return;
+                }
+                this.hashBuilder = new HashTreeBuilder(Constants.HASH_BLOCK_SIZE);
+            }
+            this.pendingHash.put(offset, raw);
+            Map.Entry<Long, byte[]> next;
+            while ((next = this.pendingHash.firstEntry()) != null && next.getKey() <= this.hashBuilder.getPosition()) {
+                this.pendingHash.remove(next.getKey());
+                int skip = (int) (this.hashBuilder.getPosition() - next.getKey());
+                if (skip < next.getValue().length) {
+                    this.hashBuilder.update(next.getValue(), skip, next.getValue().length - skip);
+                }
+            }
+            if (this.pendingHash.size() > MAX_PENDING_HASH) {
+                this.hashing = false;
+                this.pendingHash.clear();
+            } else if (this.hashBuilder.getPosition() == this.source.size()) {
+                this.hashing = false;
+                this.hashTree = this.hashBuilder.build();
+                if (this.digestCache != null && this.filePath != null) {
+                    this.digestCache.put(this.filePath, this.hashTree);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a chunk that was read ahead of the client, if one starts at offset and holds at least length bytes.
+     * @param offset  the position in the file of the first byte requested
+     * @param length  the number of bytes requested
+     * @param codec  the codec the chunk is requested with, or null if it is requested raw
+     * @return  the requested chunk, or null if it has not been read ahead
+     */
+    private ReadChunk takePrefetched(long offset, int length, Codec codec) {
+        Future<ReadChunk> future = this.prefetched.remove(offset);
+        if (future == null) {
+            return null;
+        }
+        ReadChunk read;
+        try {
+            read = future.get();
+        } catch (InterruptedException exp) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException exp) {
+            return null;
+        }
+        if (read.raw.length < length) {
+            return null;
+        } else if (read.raw.length > length || (codec == null && read.chunk.getCodec() != null)) {
+            read.raw = Arrays.copyOf(read.raw, length);
+            read.chunk = Chunk.encode(codec, read.raw, length);
         }
-        return buffer;
+        return read;
+    }
+
+    /**
+     * Starts background reads of the chunks that follow the one just served, up to
+     * Constants.DOWNLOAD_PREFETCH_CHUNKS chunks ahead. Chunks before the one just served will never be requested in
+     * order, so they are dropped.
+     * @param from  the position in the file just after the chunk that was served
+     * @param length  the length of the chunk that was served, used as the length of the chunks read ahead
+     * @param end  the position just past the last byte that can be downloaded
+     * @param codec  the codec to compress the chunks read ahead with, or null to leave them raw
+     */
+    private synchronized void prefetch(long from, int length, long end, Codec codec) {
+        if (Constants.DOWNLOAD_PREFETCH_CHUNKS <= 0 || length <= 0 || this.closed || ! this.source.readsFromDisk()) {
+            return;
+        }
+        this.prefetched.keySet().removeIf(position -> position < from);
+        if (this.prefetched.isEmpty() || from > this.prefetchedUpTo) {
+            this.prefetchedUpTo = from;
+        }
+        long position = this.prefetchedUpTo;
+        long limit = Math.min(end, from + (long) length * Constants.DOWNLOAD_PREFETCH_CHUNKS);
+        while (position < limit && this.prefetched.size() < Constants.DOWNLOAD_PREFETCH_CHUNKS) {
+            final long chunkStart = position;
+            final int chunkLength = (int) Math.min(length, limit - position);
+            this.prefetched.put(chunkStart, PREFETCH_EXECUTOR.submit(() -> {
+                ReadChunk read = new ReadChunk();
+                read.raw = this.source.read(chunkStart, chunkLength);
+                read.chunk = Chunk.encode(codec, read.raw, read.raw.length);
+                return read;
+            }));
+            position += chunkLength;
+        }
+        this.prefetchedUpTo = position;
     }
 
     /**
@@ -60,7 +313,12 @@ public class DownloadServer implements Download {
      */
     @Override
     public void close() throws IOException {
-        this.randomAccessFile.close();
+        synchronized (this) {
+            this.closed = true;
+            this.prefetched.values().forEach(future -> future.cancel(false));
+            this.prefetched.clear();
+        }
+        this.source.close();
     }
 
 
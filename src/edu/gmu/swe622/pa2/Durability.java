@@ -0,0 +1,52 @@
+package edu.gmu.swe622.pa2;
+
+/**
+ * When an upload's bytes are forced to disk with fsync.
+ */
+public enum Durability {
+    /**
+     * The operating system decides when the bytes reach the disk.
+     */
+    NONE("none"),
+    /**
+     * The file is forced to disk when the upload is closed.
+     */
+    CLOSE("close"),
+    /**
+     * The file is forced to disk each time the configured number of bytes has been written, and when the upload is
+     * closed.
+     */
+    PERIODIC("periodic");
+
+    private String name;
+
+    /**
+     * Constructor.
+     * @param name  the name of the policy as it is written in configuration
+     */
+    Durability(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Getter for the policy name.
+     * @return  the name of the policy as it is written in configuration
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Finds the instance of Durability using the name.
+     * @param name  the name of the policy to find, or null
+     * @return  the policy with the specified name, or null if no policy with that name exists
+     */
+    public static Durability findByName(String name) {
+        for (Durability durability : Durability.values()) {
+            if (durability.name.equalsIgnoreCase(name)) {
+                return durability;
+            }
+        }
+        return null;
+    }
+}
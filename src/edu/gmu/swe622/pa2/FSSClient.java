@@ -1,40 +1,89 @@
 package edu.gmu.swe622.pa2;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
-import java.io.RandomAccessFile;
-import java.net.MalformedURLException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.rmi.Naming;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.List;
 
 /**
  * Implements the client for the File Sharing System.
  */
-public class FSSClient {
+public class FSSClient implements Closeable {
+
+    /**
+     * The most directories created with one request when uploading a tree.
+     */
+    private static final int MKDIRS_BATCH_SIZE = 1000;
+
+    /**
+     * The longest time, in milliseconds, the client waits for a copy or move on the server between progress reports.
+     */
+    private static final long OPERATION_POLL_MILLIS = 1000;
 
     private FileSharingSystem fss;
+    private String hostName;
 
     /**
      * Constructor. Attempts to retrieve a reference to the server using the hostname and port.
      * @param hostName  the host on which the server is running
      * @param port  the port at which the server is listening
-     * @throws RemoteException if there is an error while communicating with the server
+     * @throws IOException if there is an error while communicating with the server
      * @throws NotBoundException  if the remote server cannot be found
-     * @throws MalformedURLException if the URL passed to the Naming context is invalid
      * @throws IllegalArgumentException  if either hostName or port are null
      */
-    public FSSClient(String hostName, Integer port) throws RemoteException, NotBoundException, MalformedURLException {
-        if (hostName == null || port == null) {
-            throw new IllegalArgumentException("hostName and port must not be null");
+    public FSSClient(String hostName, Integer port) throws IOException, NotBoundException {
+        this(hostName, port, Transport.RMI);
+    }
+
+    /**
+     * Constructor. Attempts to retrieve a reference to the server using the hostname, port and transport.
+     * @param hostName  the host on which the server is running
+     * @param port  the port at which the server is listening
+     * @param transport  how to reach the server
+     * @throws IOException if there is an error while communicating with the server
+     * @throws NotBoundException  if the remote server cannot be found
+     * @throws IllegalArgumentException  if either hostName, port or transport are null
+     */
+    public FSSClient(String hostName, Integer port, Transport transport) throws IOException, NotBoundException {
+        if (hostName == null || port == null || transport == null) {
+            throw new IllegalArgumentException("hostName, port and transport must not be null");
+        }
+        this.fss = transport.connect(hostName, port);
+        this.hostName = hostName;
+    }
+
+    /**
+     * Closes the connection to the server if the transport keeps one open for the client; with RMI the connections
+     * are closed once they have been idle for a while.
+     * @throws IOException  if the connection cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.fss instanceof Closeable) {
+            ((Closeable) this.fss).close();
         }
-        String registeredName = "rmi://" + hostName + ":" + port + "/fss";
-        this.fss = (FileSharingSystem) Naming.lookup(registeredName);
     }
 
     /**
@@ -53,20 +102,38 @@ public class FSSClient {
                 this.mkdir(args[0]);
                 break;
             case DIR:
-                this.dir(args[0]);
+                this.dir(args[0], args.length > 1 ? args[1] : null, args.length > 2 ? args[2] : null);
                 break;
             case RMDIR:
                 this.rmdir(args[0]);
                 break;
+            case RENAME:
+                this.rename(args[0], args[1]);
+                break;
+            case COPY:
+                this.copy(args[0], args[1], false);
+                break;
+            case MOVE:
+                this.copy(args[0], args[1], true);
+                break;
             case UPLOAD:
                 this.upload(args[0], args[1]);
                 break;
             case DOWNLOAD:
                 this.download(args[0], args[1]);
                 break;
+            case SESSIONS:
+                this.sessions();
+                break;
+            case STATS:
+                this.stats();
+                break;
             case SHUTDOWN:
                 this.shutdown();
                 break;
+            case SHELL:
+                new ClientShell(this, Constants.SHELL_JOBS).run(new InputStreamReader(System.in));
+                break;
             default:
                 break;
         }
@@ -100,20 +167,104 @@ public class FSSClient {
         System.out.println("Directory created");
     }
 
+    /**
+     * Sends a request to rename a file or directory on the server in one atomic step.
+     * @param source  the path of the file or directory to rename
+     * @param target  the new path, on the same volume of the server
+     * @throws IOException  if there is an error while communicating with the server
+     * @throws IllegalArgumentException  if either path is blank
+     */
+    private void rename(String source, String target) throws IOException {
+        if (source == null || source.length() == 0 || target == null || target.length() == 0) {
+            throw new IllegalArgumentException("source and target cannot be blank");
+        }
+        this.fss.rename(source, target);
+        System.out.println("File renamed");
+    }
+
+    /**
+     * Asks the server to copy or move a file or directory tree to another place on the server, and prints the
+     * percentage done until it has finished. None of the bytes pass through the client. The files that could not be
+     * copied or moved are printed on stderr.
+     * @param source  the path of the file or directory to copy or move
+     * @param target  where to copy or move it to
+     * @param move  true to move, false to copy
+     * @throws IOException  if there is an error while communicating with the server, or some files could not be
+     *                      copied or moved
+     * @throws IllegalArgumentException  if either path is blank
+     */
+    private void copy(String source, String target, boolean move) throws IOException {
+        if (source == null || source.length() == 0 || target == null || target.length() == 0) {
+            throw new IllegalArgumentException("source and target cannot be blank");
+        }
+        String verb = move ? "moved" : "copied";
+        TreeOperation operation = move ? this.fss.move(source, target) : this.fss.copy(source, target);
+        OperationStatus status;
+        try {
+            status = operation.poll(0);
+            ProgressReporter progress = new ProgressReporter(status.getBytesTotal(), move ? "move" : "copy", verb);
+            long reported = 0;
+            while (true) {
+                if (status.getBytesDone() > reported) {
+                    progress.add(status.getBytesDone() - reported);
+                    reported = status.getBytesDone();
+                }
+                if (status.isFinished()) {
+                    break;
+                }
+                status = operation.poll(OPERATION_POLL_MILLIS);
+            }
+        } finally {
+            operation.close();
+        }
+        if (! status.getErrors().isEmpty()) {
+            for (String error : status.getErrors()) {
+                System.err.println(error);
+            }
+            throw new IOException(status.getErrors().size() + " files could not be " + verb);
+        }
+        System.out.println(status.getFilesDone() + " files " + verb);
+    }
+
     /**
      * Sends a request to list the contents of a directory specified by dirName from the server.
-     * The returned list of files and directories is then printed on stdout.
+     * The files and directories are printed on stdout with their sizes and modification times as each page
+     * arrives.
      * @param dirName the name of the directory on the server to list
-     * @throws IllegalArgumentException
+     * @param glob  a glob pattern that names must match, or null to list every entry
+     * @param order  the order to list entries in, prefixed with "-" to reverse it, or null for the server's order
+     * @throws IllegalArgumentException  if order is not a known order
      * @throws IOException  if there is an error while communicating with the server
      */
-    private void dir(String dirName) throws IOException {
+    private void dir(String dirName, String glob, String order) throws IOException {
         if (dirName == null || dirName.length() == 0) {
             throw new IllegalArgumentException("dirName cannot be blank");
         }
-        List<String> contents = this.fss.dir(dirName);
+        boolean descending = order != null && order.startsWith("-");
+        DirOrder dirOrder = order == null ? DirOrder.NONE
+                : DirOrder.findByName(descending ? order.substring(1) : order);
+        if (dirOrder == null) {
+            throw new IllegalArgumentException("Unknown order: " + order);
+        }
+        DirListing listing = this.fss.list(dirName, new ListOptions(glob, dirOrder, descending,
+                Constants.DIR_PAGE_SIZE));
         System.out.println("Directory contents:");
-        contents.stream().forEach(System.out::println);
+        try {
+            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm")
+                    .withZone(ZoneId.systemDefault());
+            DirPage page;
+            do {
+                page = listing.nextPage();
+                for (DirEntry entry : page.getEntries()) {
+                    char type = entry.getType() == DirEntry.Type.DIRECTORY ? 'd'
+                            : entry.getType() == DirEntry.Type.FILE ? '-' : '?';
+                    System.out.println(type + " " + String.format("%12d", entry.getSize()) + " "
+                            + formatter.format(Instant.ofEpochMilli(entry.getLastModified())) + " " + entry.getName());
+                }
+            } while (! page.isLast());
+        } finally {
+            listing.close();
+        }
     }
 
     /**
@@ -132,7 +283,7 @@ public class FSSClient {
 
     /**
      * Sends a request to upload a file specified by localFilePath to the remote directory specified by
-     * remoteDestination.
+     * remoteDestination. If localFilePath is a directory, the whole tree under it is uploaded to remoteDestination.
      * @param localFilePath path of the file to upload to the server
      * @param remoteDestination the name of the remote directory where the file should be created on
      *                          the server
@@ -145,48 +296,85 @@ public class FSSClient {
         if (! Files.exists(filePath)) {
             throw new IllegalArgumentException("File could not be found: " + localFilePath);
         } else if (Files.isDirectory(filePath)) {
-            throw new IllegalArgumentException("Directories cannot be uploaded: " + localFilePath);
+            this.uploadTree(filePath, remoteDestination);
+            return;
         }
 
-        Long fileSize = Files.size(filePath);
-
-        Upload upload = this.fss.upload(remoteDestination, fileSize);
-        try (RandomAccessFile randomAccessFile = new RandomAccessFile(filePath.toFile(), "r")) {
-            Long bytesWritten = upload.fileSize();
+        long fileSize = Files.size(filePath);
+        if (Constants.UPLOAD_DELTA) {
+            System.out.println("Uploading changes...");
+            long unchanged = new DeltaSync(this.fss, filePath, remoteDestination).run(fileSize);
+            System.out.println("File uploaded, " + unchanged + " of " + fileSize + " bytes were already on the server");
+            return;
+        }
+        if (Constants.UPLOAD_DEDUP) {
             System.out.println("Uploading file...");
-            float percentDone = 0f;
-            if (bytesWritten != null && bytesWritten > 0 && bytesWritten < fileSize) {
-                randomAccessFile.seek(bytesWritten);
-                percentDone = (((float) bytesWritten) / fileSize) * 100;
-                System.out.format("Skipping %d%% of upload\n", (int) percentDone);
-                System.out.flush();
-            }
-            int[] bytes = new int[Constants.BUFFER_SIZE];
-            while (bytesWritten < fileSize) {
-                for (int i = 0; i < Constants.BUFFER_SIZE; i++) {
-                    int b = randomAccessFile.read();
-                    if (b == -1) break;
-                    bytes[i] = b;
-                    int percent = (int) ((((float) bytesWritten) / fileSize) * 100);
-                    if (percent >= percentDone) {
-                        System.out.format("%d%% uploaded\n", percent);
-                        System.out.flush();
-                        percentDone += 10;
-                    }
-                    bytesWritten++;
+            long stored = new DedupUpload(this.fss, filePath, remoteDestination).run(fileSize);
+            System.out.println("File uploaded, " + stored + " of " + fileSize + " bytes were already on the server");
+            return;
+        }
+        if (Constants.USE_DATA_CHANNEL) {
+            this.uploadOverDataChannel(filePath, remoteDestination, fileSize);
+            return;
+        }
+        if (Constants.UPLOAD_STREAMS > 1 && fileSize > 0) {
+            System.out.println("Uploading file...");
+            new ParallelUpload(this.fss, filePath, remoteDestination,
+                    this.stateFile("multipart", filePath, remoteDestination, ".id"), Constants.UPLOAD_STREAMS,
+                    Constants.UPLOAD_PART_SIZE).run(fileSize);
+            this.verify(remoteDestination, filePath);
+            System.out.println("File uploaded");
+            return;
+        }
+
+        System.out.println("Uploading file...");
+        this.uploadFile(filePath, remoteDestination, fileSize, System.out);
+        System.out.println("File uploaded");
+    }
+
+    /**
+     * Uploads a file through one upload session, resuming an earlier upload of the same file and verifying the
+     * result if verification is on.
+     * @param filePath  the local file to upload
+     * @param remoteDestination  the path of the file on the server
+     * @param fileSize  the number of bytes in the file
+     * @param out  the stream to print progress to, or null to print nothing
+     * @throws IOException if there is an error while communicating with the server, or the upload fails
+     *                     verification
+     */
+    private void uploadFile(Path filePath, String remoteDestination, long fileSize, PrintStream out)
+            throws IOException {
+        Upload upload = this.fss.upload(remoteDestination, fileSize, TransferOptions.defaults());
+        try (FileChannel fileChannel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            long bytesWritten = upload.fileSize();
+            HashTreeBuilder hashBuilder = null;
+            if (Constants.VERIFY) {
+                if (bytesWritten > 0) {
+                    hashBuilder = this.resumeHash(upload.hashTree(Constants.HASH_BLOCK_SIZE), filePath, bytesWritten);
+                    bytesWritten = hashBuilder.getPosition();
+                } else {
+                    hashBuilder = new HashTreeBuilder(Constants.HASH_BLOCK_SIZE);
                 }
-                upload.write(bytes);
+            }
+            ProgressReporter progress = new ProgressReporter(fileSize, "upload", "uploaded", out);
+            if (bytesWritten > 0 && bytesWritten < fileSize) {
+                progress.skip(bytesWritten);
+            }
+            PipelinedUpload pipelinedUpload = new PipelinedUpload(upload, fileChannel, filePath, progress);
+            pipelinedUpload.setHashBuilder(hashBuilder);
+            pipelinedUpload.run(bytesWritten, fileSize);
+            if (hashBuilder != null) {
+                this.verify(hashBuilder.build(), upload.hashTree(Constants.HASH_BLOCK_SIZE));
             }
         } finally {
             upload.close();
         }
-
-        System.out.println("File uploaded");
     }
 
     /**
      * Sends a request to download a file, specified by remoteFile, from the server to the local
-     * directory specified by destination.
+     * directory specified by destination. If remoteFile is a directory, the whole tree under it is downloaded to
+     * destination.
      * @param remoteFile  the file to download from the server
      * @param destination the destination directory for the downloaded file
      * @throws IOException  if there is an error while communicating with the server
@@ -194,17 +382,48 @@ public class FSSClient {
      */
     private void download(String remoteFile, String destination) throws IOException {
         Path destinationPath = FileSystems.getDefault().getPath(destination);
+        DirEntry remoteEntry = this.fss.stat(remoteFile);
+        if (remoteEntry == null) {
+            throw new IllegalArgumentException("File could not be found: " + remoteFile);
+        } else if (remoteEntry.getType() == DirEntry.Type.DIRECTORY) {
+            this.downloadTree(remoteFile, destinationPath);
+            return;
+        }
         if (Files.isDirectory(destinationPath)) {
             throw new IllegalArgumentException("A directory with that name already exists.");
         } else if (! (destinationPath.getParent() == null || Files.exists(destinationPath.getParent()))) {
             throw new IllegalArgumentException("Destination directory could not be found.");
         }
-        File file = destinationPath.toFile();
-        Download download = this.fss.download(remoteFile, file.length());
-
+        if (Constants.USE_DATA_CHANNEL) {
+            this.downloadOverDataChannel(remoteFile, destinationPath, remoteEntry.getSize());
+            return;
+        }
+        if (Constants.DOWNLOAD_STREAMS > 1) {
+            System.out.println("Downloading file...");
+            new ParallelDownload(this.fss, remoteFile, destinationPath, Constants.DOWNLOAD_STREAMS,
+                    Constants.DOWNLOAD_RANGE_SIZE).run();
+            this.verify(remoteFile, destinationPath);
+            System.out.println("File downloaded");
+            return;
+        }
         System.out.println("Downloading file...");
-        float percentDone = 0f;
-        float total = download.fileSize();
+        this.downloadFile(remoteFile, destinationPath, System.out);
+        System.out.println("File downloaded");
+    }
+
+    /**
+     * Downloads a file through one download session, resuming an earlier download of the same file and verifying
+     * the result if verification is on.
+     * @param remoteFile  the file to download from the server
+     * @param destinationPath  the local path to download the file to
+     * @param out  the stream to print progress to, or null to print nothing
+     * @throws IOException  if there is an error while communicating with the server, or the download fails
+     *                      verification
+     */
+    private void downloadFile(String remoteFile, Path destinationPath, PrintStream out) throws IOException {
+        File file = destinationPath.toFile();
+        Download download = this.fss.download(remoteFile, file.length(), TransferOptions.defaults());
+        long total = download.fileSize();
         long downloadedBytes = file.length();
         if (downloadedBytes >= total) {
             // if the existing file is >= the remote file size, overwrite it
@@ -214,37 +433,375 @@ public class FSSClient {
             file.createNewFile();
         }
 
-        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+        try (FileChannel fileChannel = FileChannel.open(destinationPath, StandardOpenOption.WRITE)) {
+            HashTreeBuilder hashBuilder = null;
+            if (Constants.VERIFY) {
+                if (downloadedBytes > 0) {
+                    hashBuilder = this.resumeHash(download.hashTree(Constants.HASH_BLOCK_SIZE), destinationPath,
+                            downloadedBytes);
+                    downloadedBytes = hashBuilder.getPosition();
+                    fileChannel.truncate(downloadedBytes);
+                } else {
+                    hashBuilder = new HashTreeBuilder(Constants.HASH_BLOCK_SIZE);
+                }
+            }
+            ProgressReporter progress = new ProgressReporter(total, "download", "downloaded", out);
             if (downloadedBytes != 0 && downloadedBytes < total) {
-                randomAccessFile.seek(downloadedBytes);
-                percentDone = (((float) downloadedBytes) / total) * 100;
-                System.out.format("Skipping %d%% of download\n", (int) percentDone);
-                System.out.flush();
+                progress.skip(downloadedBytes);
+            } else {
+                fileChannel.truncate(0);
             }
 
-            int[] buffer;
+            PipelinedDownload pipelinedDownload = new PipelinedDownload(download, fileChannel,
+                    Constants.DOWNLOAD_PIPELINE_DEPTH, progress);
+            pipelinedDownload.setHashBuilder(hashBuilder);
+            pipelinedDownload.run(downloadedBytes, total);
+            if (hashBuilder != null) {
+                this.verify(download.hashTree(Constants.HASH_BLOCK_SIZE), hashBuilder.build());
+            }
+        } finally {
+            download.close();
+        }
+    }
 
-            while (downloadedBytes < total) {
-                buffer = download.read();
+    /**
+     * Uploads a directory tree. The remote directories are created first, in batches, and the files are then
+     * uploaded several at a time, smallest first. Each file goes through its own upload session with verification
+     * if it is on; delta, deduplicating, data channel and parallel uploads are not used for trees.
+     * @param rootPath  the local directory to upload
+     * @param remoteRoot  the path of the directory on the server
+     * @throws IOException if the tree cannot be read, there is an error while communicating with the server, or
+     *                     some files could not be uploaded
+     */
+    private void uploadTree(Path rootPath, String remoteRoot) throws IOException {
+        List<String> dirNames = new ArrayList<>();
+        List<TreeTransfer.Item> items = new ArrayList<>();
+        Files.walkFileTree(rootPath, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) {
+                dirNames.add(FSSClient.this.treePath(remoteRoot, FSSClient.this.relativePath(rootPath, dir)));
+                return FileVisitResult.CONTINUE;
+            }
 
-                for (int c : buffer) {
-                    if (downloadedBytes >= total) break;
-                    randomAccessFile.write(c);
-                    int percent = (int) ((downloadedBytes / total) * 100);
-                    if (percent >= percentDone) {
-                        System.out.format("%d%% downloaded\n", percent);
-                        System.out.flush();
-                        percentDone += 10;
-                    }
-                    downloadedBytes++;
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                if (attributes.isRegularFile()) {
+                    items.add(new TreeTransfer.Item(FSSClient.this.relativePath(rootPath, file), attributes.size(),
+                            attributes.lastModifiedTime().toMillis()));
                 }
+                return FileVisitResult.CONTINUE;
             }
-        } finally {
-            download.close();
+        });
+
+        System.out.println("Creating " + dirNames.size() + " directories...");
+        for (int i = 0; i < dirNames.size(); i += MKDIRS_BATCH_SIZE) {
+            this.fss.mkdirs(new ArrayList<>(dirNames.subList(i, Math.min(i + MKDIRS_BATCH_SIZE, dirNames.size()))));
+        }
+        System.out.println("Uploading " + items.size() + " files...");
+        TreeTransfer treeTransfer = new TreeTransfer(this.treeManifest("upload", rootPath, remoteRoot),
+                Constants.TREE_STREAMS, Constants.TREE_RETRIES, "upload", "uploaded");
+        if (Constants.BATCH_FILE_SIZE > 0) {
+            treeTransfer.setBatching(Constants.BATCH_FILE_SIZE, Constants.BATCH_SIZE,
+                    (batch) -> this.uploadBatch(rootPath, remoteRoot, batch));
+        }
+        treeTransfer.run(items, (item) -> {
+            Path filePath = rootPath.resolve(item.getPath());
+            this.uploadFile(filePath, this.treePath(remoteRoot, item.getPath()), Files.size(filePath), null);
+        });
+        System.out.println("Directory uploaded, " + treeTransfer.getSkipped() + " of " + items.size()
+                + " files were already uploaded");
+    }
+
+    /**
+     * Uploads a batch of small files of a tree with a single call. A file that cannot be read is left out of the
+     * batch and reported as failed.
+     * @param rootPath  the local directory being uploaded
+     * @param remoteRoot  the path of the directory on the server
+     * @param items  the files to upload
+     * @return  for each file, null if it was uploaded or why it was not
+     * @throws IOException if there is an error while communicating with the server
+     */
+    private List<String> uploadBatch(Path rootPath, String remoteRoot, List<TreeTransfer.Item> items)
+            throws IOException {
+        String[] errors = new String[items.size()];
+        List<Integer> sent = new ArrayList<>();
+        BatchArchive.Writer batch = new BatchArchive.Writer();
+        for (int i = 0; i < items.size(); i++) {
+            TreeTransfer.Item item = items.get(i);
+            byte[] data;
+            try {
+                data = Files.readAllBytes(rootPath.resolve(item.getPath()));
+            } catch (IOException exp) {
+                errors[i] = exp.toString();
+                continue;
+            }
+            batch.add(this.treePath(remoteRoot, item.getPath()), data);
+            sent.add(i);
+        }
+        if (! sent.isEmpty()) {
+            List<BatchResult> results = this.fss.uploadBatch(batch.toByteArray(), TransferOptions.defaults());
+            for (int i = 0; i < sent.size(); i++) {
+                errors[sent.get(i)] = results.get(i).getError();
+            }
+        }
+        return Arrays.asList(errors);
+    }
+
+    /**
+     * Downloads a directory tree. The remote tree is listed one directory at a time, creating the local directories
+     * as it goes, and the files are then downloaded several at a time, smallest first. Each file goes through its
+     * own download session with verification if it is on; data channel and parallel downloads are not used for
+     * trees.
+     * @param remoteRoot  the path of the directory on the server
+     * @param rootPath  the local directory to download the tree to
+     * @throws IOException if there is an error while communicating with the server, a local directory cannot be
+     *                     created, or some files could not be downloaded
+     */
+    private void downloadTree(String remoteRoot, Path rootPath) throws IOException {
+        if (Files.exists(rootPath) && ! Files.isDirectory(rootPath)) {
+            throw new IllegalArgumentException("A file with that name already exists.");
+        }
+        List<TreeTransfer.Item> items = new ArrayList<>();
+        Deque<String> pendingDirs = new ArrayDeque<>();
+        pendingDirs.add("");
+        while (! pendingDirs.isEmpty()) {
+            String dir = pendingDirs.poll();
+            Files.createDirectories(dir.isEmpty() ? rootPath : rootPath.resolve(dir));
+            DirListing listing = this.fss.list(this.treePath(remoteRoot, dir), ListOptions.defaults());
+            try {
+                DirPage page;
+                do {
+                    page = listing.nextPage();
+                    for (DirEntry entry : page.getEntries()) {
+                        String path = dir.isEmpty() ? entry.getName() : dir + "/" + entry.getName();
+                        if (entry.getType() == DirEntry.Type.DIRECTORY) {
+                            pendingDirs.add(path);
+                        } else if (entry.getType() == DirEntry.Type.FILE) {
+                            items.add(new TreeTransfer.Item(path, entry.getSize(), entry.getLastModified()));
+                        }
+                    }
+                } while (! page.isLast());
+            } finally {
+                listing.close();
+            }
+        }
+
+        System.out.println("Downloading " + items.size() + " files...");
+        TreeTransfer treeTransfer = new TreeTransfer(this.treeManifest("download", rootPath, remoteRoot),
+                Constants.TREE_STREAMS, Constants.TREE_RETRIES, "download", "downloaded");
+        treeTransfer.run(items, (item) -> this.downloadFile(this.treePath(remoteRoot, item.getPath()),
+                rootPath.resolve(item.getPath()), null));
+        System.out.println("Directory downloaded, " + treeTransfer.getSkipped() + " of " + items.size()
+                + " files were already downloaded");
+    }
+
+    /**
+     * Returns the path of a file under a local directory, with '/' between names whatever the local separator.
+     * @param rootPath  the directory
+     * @param path  a file under the directory
+     * @return  the relative path of the file, or an empty string for the directory itself
+     */
+    private String relativePath(Path rootPath, Path path) {
+        StringBuilder relative = new StringBuilder();
+        for (Path name : rootPath.relativize(path)) {
+            if (relative.length() > 0) {
+                relative.append('/');
+            }
+            relative.append(name.toString());
+        }
+        return relative.toString();
+    }
+
+    /**
+     * Returns the remote path of a file in a tree.
+     * @param remoteRoot  the path of the tree's directory on the server
+     * @param relativePath  the path of the file relative to the tree, with '/' between names
+     * @return  the path of the file on the server
+     */
+    private String treePath(String remoteRoot, String relativePath) {
+        if (relativePath.isEmpty()) {
+            return remoteRoot;
+        }
+        return remoteRoot.endsWith("/") ? remoteRoot + relativePath : remoteRoot + "/" + relativePath;
+    }
+
+    /**
+     * Returns the manifest file of a tree transfer. The name is derived from the server and both ends of the
+     * transfer, so running the same transfer again finds the manifest of the earlier run.
+     * @param direction  "upload" or "download"
+     * @param rootPath  the local directory
+     * @param remoteRoot  the remote directory
+     * @return  the path of the manifest in the tree state directory
+     */
+    private Path treeManifest(String direction, Path rootPath, String remoteRoot) {
+        return this.stateFile(direction, rootPath, remoteRoot, ".manifest");
+    }
+
+    /**
+     * Returns a file in the tree state directory that belongs to one transfer. The name is derived from the server
+     * and both ends of the transfer.
+     * @param prefix  the start of the file name
+     * @param localPath  the local file or directory
+     * @param remotePath  the remote file or directory
+     * @param suffix  the end of the file name
+     * @return  the path of the file in the tree state directory
+     */
+    private Path stateFile(String prefix, Path localPath, String remotePath, String suffix) {
+        MessageDigest digest = HashTree.newDigest();
+        String key = this.hostName + "\n" + localPath.toAbsolutePath().normalize() + "\n" + remotePath;
+        String hash = ChunkStore.toHex(digest.digest(key.getBytes(StandardCharsets.UTF_8))).substring(0, 16);
+        return Paths.get(Constants.TREE_STATE_DIR, prefix + "-" + hash + suffix);
+    }
+
+    /**
+     * Uploads a file over the server's data channel instead of through RMI calls. A shorter file already on the
+     * server is resumed from the end of the prefix that matches the local file, if verification is on, and from its
+     * end otherwise.
+     * @param filePath  the local file to upload
+     * @param remoteDestination  the path of the file on the server
+     * @param fileSize  the number of bytes in the file
+     * @throws IOException if there is an error while communicating with the server
+     */
+    private void uploadOverDataChannel(Path filePath, String remoteDestination, long fileSize) throws IOException {
+        DirEntry remoteEntry = this.fss.stat(remoteDestination);
+        long resumeAt = 0;
+        if (remoteEntry != null && remoteEntry.getType() != DirEntry.Type.DIRECTORY && remoteEntry.getSize() > 0
+                && remoteEntry.getSize() < fileSize) {
+            resumeAt = this.matchingPrefix(remoteDestination, filePath, remoteEntry.getSize());
         }
+        DataTicket ticket = this.fss.uploadChannel(remoteDestination, fileSize, resumeAt, TransferOptions.defaults());
+        System.out.println("Uploading file...");
+        ProgressReporter progress = new ProgressReporter(fileSize, "upload", "uploaded");
+        progress.skip(ticket.getOffset());
+        try (FileChannel fileChannel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            new DataChannelClient(this.hostName).upload(ticket, fileChannel, progress);
+        }
+        this.verify(remoteDestination, filePath);
+        System.out.println("File uploaded");
+    }
+
+    /**
+     * Downloads a file over the server's data channel instead of through RMI calls. A shorter local file is resumed
+     * from the end of the prefix that matches the file on the server, if verification is on, and from its end
+     * otherwise.
+     * @param remoteFile  the file to download from the server
+     * @param destinationPath  the local path to download the file to
+     * @param remoteSize  the number of bytes in the file on the server
+     * @throws IOException if there is an error while communicating with the server
+     */
+    private void downloadOverDataChannel(String remoteFile, Path destinationPath, long remoteSize)
+            throws IOException {
+        long existing = Files.exists(destinationPath) ? Files.size(destinationPath) : 0;
+        if (existing > 0 && existing < remoteSize) {
+            existing = this.matchingPrefix(remoteFile, destinationPath, existing);
+        }
+        DataTicket ticket = this.fss.downloadChannel(remoteFile, existing);
+        System.out.println("Downloading file...");
+        ProgressReporter progress = new ProgressReporter(ticket.getOffset() + ticket.getLength(), "download",
+                "downloaded");
+        progress.skip(ticket.getOffset());
+        try (FileChannel fileChannel = FileChannel.open(destinationPath,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            fileChannel.truncate(ticket.getOffset());
+            new DataChannelClient(this.hostName).download(ticket, fileChannel, progress);
+        }
+        this.verify(remoteFile, destinationPath);
         System.out.println("File downloaded");
     }
 
+    /**
+     * Compares the bytes a partial transfer has already put in place with the same bytes of the other copy of the
+     * file, and starts hashing the transfer from the end of the longest prefix that matches.
+     * @param remoteTree  the hash tree of the remote copy of the file
+     * @param localPath  the local copy of the file
+     * @param length  the number of bytes already transferred
+     * @return  a builder holding the hash of the matching prefix, positioned where the transfer should resume
+     * @throws IOException  if the local file cannot be read
+     */
+    private HashTreeBuilder resumeHash(HashTree remoteTree, Path localPath, long length) throws IOException {
+        try (ChunkSource source = new FileChannelSource(localPath)) {
+            HashTree localTree = HashTree.compute(source, length, remoteTree.getLeafSize());
+            long matching = localTree.matchingLength(remoteTree);
+            if (matching < length) {
+                System.out.println("Only " + matching + " of the " + length
+                        + " bytes already transferred match, resuming from there");
+            }
+            return HashTreeBuilder.resume(localTree, matching, source);
+        }
+    }
+
+    /**
+     * Finds how much of a partial transfer that did not go through a session can be kept, by comparing the bytes
+     * already in place with the same bytes of the other copy of the file, if verification is on.
+     * @param remoteFile  the path of the file on the server
+     * @param localPath  the local copy of the file
+     * @param length  the number of bytes already transferred
+     * @return  the length of the longest prefix that matches, or length if verification is off
+     * @throws IOException  if the local file cannot be read, or there is an error while communicating with the
+     *                      server
+     */
+    private long matchingPrefix(String remoteFile, Path localPath, long length) throws IOException {
+        if (! Constants.VERIFY) {
+            return length;
+        }
+        return this.resumeHash(this.fss.hashTree(remoteFile, Constants.HASH_BLOCK_SIZE), localPath, length)
+                .getPosition();
+    }
+
+    /**
+     * Checks that the local and remote copies of a file are the same once a transfer that did not hash the file as
+     * it went has completed, if verification is on.
+     * @param remoteFile  the path of the file on the server
+     * @param localPath  the local copy of the file
+     * @throws IOException  if the copies differ, or there is an error while communicating with the server
+     */
+    private void verify(String remoteFile, Path localPath) throws IOException {
+        if (! Constants.VERIFY) {
+            return;
+        }
+        HashTree localTree;
+        try (ChunkSource source = new FileChannelSource(localPath)) {
+            localTree = HashTree.compute(source, source.size(), Constants.HASH_BLOCK_SIZE);
+        }
+        this.verify(this.fss.hashTree(remoteFile, Constants.HASH_BLOCK_SIZE), localTree);
+    }
+
+    /**
+     * Checks that the hash tree of the file that was sent matches the tree of the file that arrived.
+     * @param sent  the tree of the copy the bytes were read from
+     * @param received  the tree of the copy the bytes were written to
+     * @throws IOException  if the trees differ
+     */
+    private void verify(HashTree sent, HashTree received) throws IOException {
+        if (! sent.matches(received)) {
+            throw new IOException("Transfer failed verification: the file that arrived (" + received
+                    + ") is not the file that was sent (" + sent + ")");
+        }
+    }
+
+    /**
+     * Prints the sessions open on the server, one per line, with how long each has been open and idle in seconds.
+     * @throws RemoteException  if there is an error communicating with the server
+     */
+    private void sessions() throws RemoteException {
+        List<SessionInfo> sessions = this.fss.sessions();
+        for (SessionInfo session : sessions) {
+            System.out.println(String.format("%8d %8d %8d ", session.getId(), session.getAgeMillis() / 1000,
+                    session.getIdleMillis() / 1000) + session.getKind() + " " + session.getPath());
+        }
+        System.out.println(sessions.size() + " sessions open");
+    }
+
+    /**
+     * Prints the server's counters, gauges and latency histograms, one per line.
+     * @throws RemoteException  if there is an error communicating with the server
+     */
+    private void stats() throws RemoteException {
+        for (String line : this.fss.stats()) {
+            System.out.println(line);
+        }
+    }
+
     /**
      * Sends a shutdown request to the server.
      * @throws RemoteException  if there is an error communicating with the server
@@ -1,29 +1,122 @@
 package edu.gmu.swe622.pa2;
 
+import com.sun.management.UnixOperatingSystemMXBean;
+import java.io.Closeable;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.rmi.NoSuchObjectException;
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import javax.management.JMException;
+import javax.management.ObjectName;
 
 /**
- * Server for the File Sharing System.
+ * Server for the File Sharing System. It is only exported as an RMI remote object when it is served over RMI.
  */
-public class FSSServer extends UnicastRemoteObject implements FileSharingSystem {
+public class FSSServer implements FileSharingSystem {
+
+    private static final String METRICS_NAME = "edu.gmu.swe622.pa2:type=Metrics";
+
+    private TransferOptions transferOptions = TransferOptions.defaults();
+    private Map<String, MultipartUpload> multipartUploads = new ConcurrentHashMap<>();
+    private DataChannelServer dataChannel;
+    private MappedFileCache mappedFiles;
+    private ChunkCache chunkCache;
+    private ChunkStore chunkStore;
+    private volatile long lastSweep;
+    private Path stagingRoot;
+    private DigestCache digestCache;
+    private MetadataCache metadataCache;
+    private AdmissionControl admission = new AdmissionControl(Constants.ADMIT_CALLS, Constants.ADMIT_CLIENT_CALLS,
+            Constants.ADMIT_CLIENT_SESSIONS, Constants.ADMIT_WAIT_MILLIS, Constants.ADMIT_RETRY_MILLIS,
+            Constants.RATE_LIMIT, Constants.CLIENT_RATE_LIMIT);
+    private Metrics metrics = new Metrics();
+    private SessionRegistry sessions = new SessionRegistry(Constants.MAX_SESSIONS, Constants.SESSION_IDLE_MILLIS,
+            this.admission, this.metrics);
+    private List<Closeable> transports = new ArrayList<>();
 
     /**
-     * Constructor.
-     * @throws RemoteException  if there is a communication error
+     * Constructor. Starts the data channel if a port has been configured for it, the shared file mappings if
+     * memory-mapped downloads are turned on, the chunk cache if it has been given a memory budget, and the metadata
+     * cache unless it has been turned off. If the chunk store is turned on, chunks that no manifest uses any more are
+     * deleted from it, at once and then periodically on the session reaper. Temporary files that multipart uploads of
+     * an earlier run left in the staging directory are deleted. The session reaper aborts multipart uploads left idle
+     * and forgets client hosts that have been idle as long. The server's metrics are registered with the platform MBean
+     * server.
+     * @throws IOException  if the data channel, the metadata cache or the chunk store cannot be opened, or the
+     *                      staging directory cannot be cleared
      */
-    protected FSSServer() throws RemoteException {
+    protected FSSServer() throws IOException {
+        if (Constants.DATA_CHANNEL_PORT >= 0) {
+            this.dataChannel = new DataChannelServer(Constants.DATA_CHANNEL_PORT, Constants.DATA_TICKET_TIMEOUT_MILLIS,
+                    Constants.DATA_IDLE_TIMEOUT_MILLIS, Constants.DATA_CHANNEL_WORKERS, this::fileChanged);
+        }
+        if (Constants.DOWNLOAD_MMAP) {
+            this.mappedFiles = new MappedFileCache(Constants.MMAP_SEGMENT_SIZE, Constants.MMAP_IDLE_MILLIS);
+        }
+        if (Constants.CHUNK_CACHE_SIZE > 0) {
+            this.chunkCache = new ChunkCache(Constants.CHUNK_CACHE_BLOCK_SIZE, Constants.CHUNK_CACHE_SIZE);
+        }
+        if (Constants.DIGEST_CACHE_ENTRIES > 0) {
+            this.digestCache = new DigestCache(Constants.DIGEST_CACHE_ENTRIES);
+        }
+        if (Constants.METADATA_CACHE_ENTRIES > 0) {
+            this.metadataCache = new MetadataCache(this.getPath(""), Constants.METADATA_CACHE_ENTRIES,
+                    Constants.METADATA_CACHE_DIRS, Constants.METADATA_CACHE_RETRY_MILLIS);
+        }
+        if (Constants.CHUNK_STORE) {
+            this.chunkStore = new ChunkStore(this.getPath(Constants.CHUNK_STORE_DIR));
+            this.chunkStore.sweep(this.getPath(""));
+            this.lastSweep = System.nanoTime();
+            if (Constants.STORE_SWEEP_MILLIS > 0) {
+                this.sessions.addReapTask(this::sweepChunkStore);
+            }
+        }
+        this.stagingRoot = this.getPath(Constants.UPLOAD_STAGING_DIR).toAbsolutePath().normalize();
+        if (Files.isDirectory(this.stagingRoot)) {
+            try (Stream<Path> leftovers = Files.list(this.stagingRoot)) {
+                for (Path leftover : (Iterable<Path>) leftovers::iterator) {
+                    Files.deleteIfExists(leftover);
+                }
+            }
+        }
+        this.sessions.addReapTask(this::reapMultipartUploads);
+        this.sessions.addReapTask(() -> this.admission.prune(this.sessions.getIdleTimeoutMillis()));
+        this.registerMetrics();
     }
 
     /**
-     * Validates the passed in parameters and returns a remote object to use for the download.
+     * Adds a transport other than RMI that serves this server, so that it is closed when the server shuts down.
+     * @param transport  the transport
+     */
+    void addTransport(Closeable transport) {
+        this.transports.add(transport);
+    }
+
+    /**
+     * Validates the passed in parameters and returns a remote object to use for the download, using the server's
+     * default transfer options.
      * @param remoteFile  path to the file to download
      * @param startAt  the point in the file to start at
      * @return  a remote object to use for the download
@@ -32,25 +125,56 @@ public class FSSServer extends UnicastRemoteObject implements FileSharingSystem
      */
     @Override
     public Download download(String remoteFile, long startAt) throws IOException {
-        if (remoteFile == null || remoteFile.length() == 0) {
-            throw new IllegalArgumentException("File name cannot be blank");
-        }
-        Path filePath = this.getPath(remoteFile);
+        return this.download(remoteFile, startAt, null);
+    }
+
+    /**
+     * Validates the passed in parameters and returns a remote object to use for the download. The options requested
+     * by the client are negotiated against the server's limits.
+     * @param remoteFile  path to the file to download
+     * @param startAt  the point in the file to start at
+     * @param options  the transfer options requested by the client, or null to use the server's defaults
+     * @return  a remote object to use for the download
+     * @throws IOException  if there is a communication error
+     * @throws IllegalArgumentException  if remoteFile or startAt does not have a valid value
+     */
+    @Override
+    public Download download(String remoteFile, long startAt, TransferOptions options) throws IOException {
         if (startAt < 0) {
             throw new IllegalArgumentException("File length must be >= 0");
         }
-        if (! this.validatePath(filePath)) {
-            throw new IllegalArgumentException("Relative file paths are not supported");
-        }
-        if (Files.isDirectory(filePath)) {
-            throw new IllegalArgumentException("A directory with that name already exists.");
+        Path filePath = this.getTransferPath(remoteFile);
+        return this.sessions.open(Download.class, "download", AdmissionControl.Priority.BULK, remoteFile, null,
+                () -> new DownloadServer(this.openSource(filePath), this.transferOptions.negotiate(options), 0,
+                        Long.MAX_VALUE, filePath, this.digestCache));
+    }
+
+    /**
+     * Validates the passed in parameters and returns a remote object that can only read the given byte range of the
+     * file. Several range downloads of the same file can be used at once to download it in parallel.
+     * @param remoteFile  path to the file to download
+     * @param offset  the position of the first byte in the range
+     * @param length  the number of bytes in the range
+     * @param options  the transfer options requested by the client, or null to use the server's defaults
+     * @return  a remote object to use for downloading the range
+     * @throws IOException  if there is a communication error
+     * @throws IllegalArgumentException  if remoteFile, offset or length does not have a valid value
+     */
+    @Override
+    public Download downloadRange(String remoteFile, long offset, long length, TransferOptions options)
+            throws IOException {
+        if (offset < 0 || length < 0) {
+            throw new IllegalArgumentException("Range offset and length must be >= 0");
         }
-        Download download = new DownloadServer(filePath, startAt);
-        return (Download) exportObject(download, 0);
+        Path filePath = this.getTransferPath(remoteFile);
+        return this.sessions.open(Download.class, "download", AdmissionControl.Priority.BULK, remoteFile, null,
+                () -> new DownloadServer(this.openSource(filePath), this.transferOptions.negotiate(options), offset,
+                        length, filePath, this.digestCache));
     }
 
     /**
-     * Validates the parameters and returns a remote object to use for the upload.
+     * Validates the parameters and returns a remote object to use for the upload, using the server's default
+     * transfer options.
      * @param destinationPath  the path where the file should be uploaded
      * @param length  the number of bytes in the uploaded file
      * @return  a remote object to use for the upload
@@ -59,21 +183,304 @@ public class FSSServer extends UnicastRemoteObject implements FileSharingSystem
      */
     @Override
     public Upload upload(String destinationPath, long length) throws IOException {
-        if (destinationPath == null || destinationPath.length() == 0) {
-            throw new IllegalArgumentException("File name cannot be blank");
+        return this.upload(destinationPath, length, null);
+    }
+
+    /**
+     * Validates the parameters and returns a remote object to use for the upload. The options requested by the
+     * client are negotiated against the server's limits.
+     * @param destinationPath  the path where the file should be uploaded
+     * @param length  the number of bytes in the uploaded file
+     * @param options  the transfer options requested by the client, or null to use the server's defaults
+     * @return  a remote object to use for the upload
+     * @throws IOException if there is a communication error
+     * @throws IllegalArgumentException  if destinationPath or length does not have a valid value
+     */
+    @Override
+    public Upload upload(String destinationPath, long length, TransferOptions options) throws IOException {
+        if (length < 0) {
+            throw new IllegalArgumentException("File length must be >= 0");
         }
-        Path filePath = this.getPath(destinationPath);
+        Path filePath = this.getTransferPath(destinationPath);
+        String reattachKey = "upload " + length + " " + filePath.toAbsolutePath().normalize();
+        Upload reattached = this.sessions.reattach(Upload.class, reattachKey);
+        if (reattached != null) {
+            return reattached;
+        }
+        this.fileChanged(filePath);
+        this.dropManifest(filePath);
+        Upload upload = this.sessions.open(Upload.class, "upload", AdmissionControl.Priority.BULK,
+                destinationPath, reattachKey,
+                () -> new UploadServer(filePath, length, this.transferOptions.negotiate(options), this.digestCache));
+        this.refreshMetadata(filePath);
+        return upload;
+    }
+
+    /**
+     * Validates the parameters and starts a multipart upload, whose parts are then sent through uploadPart. The
+     * destination file is replaced once every part has been received. If resumeId names an unfinished multipart
+     * upload to the same destination, of the same length and part size, that upload is continued instead, so the
+     * parts it already received are kept. An upload no part has joined or written to for the session idle timeout
+     * is discarded.
+     * @param destinationPath  the path where the file should be uploaded
+     * @param length  the number of bytes in the uploaded file
+     * @param partSize  the number of bytes in each part
+     * @param resumeId  the id of an earlier upload of the same file to continue, or null to start a new one
+     * @param options  the transfer options requested by the client, or null to use the server's defaults
+     * @return  the id of the upload
+     * @throws IOException if there is a communication error or the temporary file cannot be created
+     * @throws IllegalArgumentException  if destinationPath, length or partSize does not have a valid value, or the
+     *                                   file would have too many parts
+     */
+    @Override
+    public String startMultipartUpload(String destinationPath, long length, long partSize, String resumeId,
+            TransferOptions options) throws IOException {
+        if (length <= 0 || partSize <= 0) {
+            throw new IllegalArgumentException("File length and part size must be > 0");
+        }
+        Path filePath = this.getTransferPath(destinationPath);
+        synchronized (this.multipartUploads) {
+            MultipartUpload resumed = resumeId != null ? this.multipartUploads.get(resumeId) : null;
+            if (resumed != null && resumed.matches(filePath, length, partSize)) {
+                resumed.touch();
+                return resumeId;
+            }
+            String uploadId = UUID.randomUUID().toString();
+            Files.createDirectories(this.stagingRoot);
+            Path tempPath = this.stagingRoot.resolve(uploadId);
+            this.multipartUploads.put(uploadId, new MultipartUpload(destinationPath, filePath, tempPath, length,
+                    partSize, this.transferOptions.negotiate(options).getDurability()));
+            return uploadId;
+        }
+    }
+
+    /**
+     * Validates the parameters and returns a remote object to use for uploading one part of a multipart upload.
+     * @param uploadId  the id returned by startMultipartUpload
+     * @param part  the index of the part to upload
+     * @param options  the transfer options requested by the client, or null to use the server's defaults
+     * @return  a remote object to use for uploading the part
+     * @throws IOException if there is a communication error
+     * @throws IllegalArgumentException  if there is no unfinished upload with that id, or part is out of range
+     */
+    @Override
+    public Upload uploadPart(String uploadId, int part, TransferOptions options) throws IOException {
+        MultipartUpload multipartUpload = uploadId != null ? this.multipartUploads.get(uploadId) : null;
+        if (multipartUpload == null) {
+            throw new IllegalArgumentException("No multipart upload in progress with id " + uploadId);
+        }
+        multipartUpload.touch();
+        if (part < 0 || part >= multipartUpload.getPartCount()) {
+            throw new IllegalArgumentException("Part must be >= 0 and < " + multipartUpload.getPartCount());
+        }
+        return this.sessions.open(Upload.class, "upload part " + part, AdmissionControl.Priority.BULK,
+                multipartUpload.getName(), null,
+                () -> new UploadPartServer(multipartUpload, part, this.transferOptions.negotiate(options), () -> {
+                    this.multipartUploads.remove(uploadId, multipartUpload);
+                    this.fileChanged(multipartUpload.getFilePath());
+                }));
+    }
+
+    /**
+     * Validates the parameters and returns a remote object to use for uploading a new version of a file by sending
+     * only what differs from the existing one. The existing file is left unchanged until the upload is committed.
+     * If there is no existing file, every byte is sent as a literal.
+     * @param destinationPath  the path where the file should be uploaded
+     * @param length  the number of bytes in the new version of the file
+     * @param options  the transfer options requested by the client, or null to use the server's defaults
+     * @return  a remote object to use for the delta upload
+     * @throws IOException if there is a communication error
+     * @throws IllegalArgumentException  if destinationPath or length does not have a valid value
+     */
+    @Override
+    public DeltaUpload deltaUpload(String destinationPath, long length, TransferOptions options) throws IOException {
         if (length < 0) {
             throw new IllegalArgumentException("File length must be >= 0");
         }
-        if (! this.validatePath(filePath)) {
-            throw new IllegalArgumentException("Relative file paths are not supported");
+        Path filePath = this.getTransferPath(destinationPath);
+        return this.sessions.open(DeltaUpload.class, "delta upload", AdmissionControl.Priority.BULK,
+                destinationPath, null,
+                () -> new DeltaUploadServer(filePath, length, this.transferOptions.negotiate(options),
+                        () -> this.fileChanged(filePath)));
+    }
+
+    /**
+     * Validates the parameters and returns a remote object to use for uploading a file into the chunk store. The
+     * file is stored as a manifest at destinationPath once the upload is committed.
+     * @param destinationPath  the path where the file should be uploaded
+     * @param length  the number of bytes in the uploaded file
+     * @param options  the transfer options requested by the client, or null to use the server's defaults
+     * @return  a remote object to use for the upload
+     * @throws IOException if there is a communication error
+     * @throws IllegalArgumentException  if destinationPath or length does not have a valid value
+     * @throws IllegalStateException  if the chunk store is not enabled
+     */
+    @Override
+    public StoreUpload storeUpload(String destinationPath, long length, TransferOptions options) throws IOException {
+        if (length < 0) {
+            throw new IllegalArgumentException("File length must be >= 0");
         }
-        if (Files.isDirectory(filePath)) {
-            throw new IllegalArgumentException("A directory with that name already exists.");
+        Path filePath = this.getTransferPath(destinationPath);
+        if (this.chunkStore == null) {
+            throw new IllegalStateException("The chunk store is not enabled on this server");
+        }
+        return this.sessions.open(StoreUpload.class, "store upload", AdmissionControl.Priority.BULK,
+                destinationPath, null,
+                () -> new StoreUploadServer(this.chunkStore, filePath, length, this.transferOptions.negotiate(options),
+                        () -> this.fileChanged(filePath)));
+    }
+
+    /**
+     * Writes a batch of small files uploaded with a single call. Each entry is written in turn, replacing any
+     * existing file, and forced to disk unless the negotiated durability is NONE. An entry that cannot be written,
+     * or is corrupt, does not stop the others; its error is returned instead. If the batch is truncated or otherwise
+     * cannot be read past some entry, that entry and every one after it fail, and the entries before them keep
+     * their outcomes.
+     * @param batch  the packed batch of files
+     * @param options  the transfer options requested by the client, or null to use the server's defaults
+     * @return  the outcome of each entry, in the order of the batch
+     * @throws IOException if there is a communication error, or the batch does not start with a valid header
+     * @throws ServerBusyException  if the server is running as many transfers as it is allowed
+     */
+    @Override
+    public List<BatchResult> uploadBatch(byte[] batch, TransferOptions options) throws IOException {
+        long start = System.nanoTime();
+        try {
+            Durability durability = this.transferOptions.negotiate(options).getDurability();
+            List<BatchResult> results = new ArrayList<>();
+            String client = this.admission.currentClient();
+            this.admission.beginCall(client);
+            try {
+                BatchArchive.Reader reader = new BatchArchive.Reader(batch);
+                while (reader.hasNext()) {
+                    BatchArchive.Entry entry;
+                    try {
+                        entry = reader.next();
+                    } catch (IOException exp) {
+                        String error = exp.getMessage() != null ? exp.getMessage() : exp.toString();
+                        for (int i = reader.isBroken() ? reader.getRemaining() : 1; i > 0; i--) {
+                            results.add(new BatchResult(null, error));
+                        }
+                        continue;
+                    }
+                    try {
+                        this.writeBatchEntry(entry, durability);
+                        results.add(new BatchResult(entry.getPath(), null));
+                    } catch (IllegalArgumentException | IOException exp) {
+                        String error = exp.getMessage() != null ? exp.getMessage() : exp.toString();
+                        results.add(new BatchResult(entry.getPath(), error));
+                    }
+                }
+            } finally {
+                this.metrics.add("bytes.in", batch.length);
+                this.metrics.add("client." + client + ".bytes.in", batch.length);
+                this.admission.endCall(client, batch.length);
+            }
+            return results;
+        } finally {
+            this.metrics.record("uploadBatch", System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Validates the parameters and issues a ticket for downloading the file over the data channel. The download
+     * resumes at startAt if it is inside the file, and starts over from the beginning otherwise.
+     * @param remoteFile  path to the file to download
+     * @param startAt  the number of bytes the client already has
+     * @return  the ticket the client uses to connect to the data channel
+     * @throws IOException  if there is a communication error
+     * @throws IllegalArgumentException  if remoteFile or startAt does not have a valid value
+     * @throws IllegalStateException  if the data channel is not enabled
+     */
+    @Override
+    public DataTicket downloadChannel(String remoteFile, long startAt) throws IOException {
+        long start = System.nanoTime();
+        try {
+            if (startAt < 0) {
+                throw new IllegalArgumentException("File length must be >= 0");
+            }
+            Path filePath = this.getTransferPath(remoteFile);
+            if (this.dataChannel == null) {
+                throw new IllegalStateException("The data channel is not enabled on this server");
+            }
+            if (this.chunkStore != null && Manifest.isManifest(filePath)) {
+                throw new IllegalStateException("Files in the chunk store cannot be downloaded over the data channel");
+            }
+            long size = Files.size(filePath);
+            long offset = startAt < size ? startAt : 0;
+            return this.dataChannel.issueDownload(filePath, offset, size - offset);
+        } finally {
+            this.metrics.record("downloadChannel", System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Validates the parameters and issues a ticket for uploading the file over the data channel. As with upload, a
+     * shorter existing file is treated as an interrupted upload and resumed, but only from resumeAt, the end of the
+     * prefix the client has found to match its own copy; the rest of the existing file is cut off. Any other existing
+     * file is overwritten. The file is forced to disk as the negotiated durability policy requires before the data
+     * channel reports the upload complete.
+     * @param destinationPath  the path where the file should be uploaded
+     * @param length  the number of bytes in the uploaded file
+     * @param resumeAt  the number of bytes at the start of an existing shorter file that can be kept
+     * @param options  the transfer options requested by the client, or null to use the server's defaults
+     * @return  the ticket the client uses to connect to the data channel
+     * @throws IOException  if there is a communication error
+     * @throws IllegalArgumentException  if destinationPath, length or resumeAt does not have a valid value
+     * @throws IllegalStateException  if the data channel is not enabled
+     */
+    @Override
+    public DataTicket uploadChannel(String destinationPath, long length, long resumeAt, TransferOptions options)
+            throws IOException {
+        long start = System.nanoTime();
+        try {
+            if (length < 0) {
+                throw new IllegalArgumentException("File length must be >= 0");
+            }
+            if (resumeAt < 0) {
+                throw new IllegalArgumentException("Resume offset must be >= 0");
+            }
+            Path filePath = this.getTransferPath(destinationPath);
+            if (this.dataChannel == null) {
+                throw new IllegalStateException("The data channel is not enabled on this server");
+            }
+            this.fileChanged(filePath);
+            this.dropManifest(filePath);
+            DataTicket ticket = this.dataChannel.issueUpload(filePath, length, resumeAt,
+                    this.transferOptions.negotiate(options));
+            this.refreshMetadata(filePath);
+            return ticket;
+        } finally {
+            this.metrics.record("uploadChannel", System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Returns the hash tree of a file, from the digest cache if the file has not changed since it was last hashed.
+     * @param remoteFile  path to the file
+     * @param leafSize  the number of bytes in each leaf
+     * @return  the tree of the file
+     * @throws IOException  if there is a communication error or the file cannot be read
+     * @throws IllegalArgumentException  if remoteFile does not name a file or leafSize is too small
+     */
+    @Override
+    public HashTree hashTree(String remoteFile, int leafSize) throws IOException {
+        long start = System.nanoTime();
+        try {
+            HashTree.checkLeafSize(leafSize);
+            Path filePath = this.getTransferPath(remoteFile);
+            if (this.stat(filePath) == null) {
+                throw new IllegalArgumentException("File could not be found");
+            }
+            try (ChunkSource source = this.openSource(filePath)) {
+                if (this.digestCache != null) {
+                    return this.digestCache.get(filePath, source, leafSize);
+                }
+                return HashTree.compute(source, source.size(), leafSize);
+            }
+        } finally {
+            this.metrics.record("hashTree", System.nanoTime() - start);
         }
-        Upload upload = new UploadServer(filePath, length);
-        return (Upload) exportObject(upload, 0);
     }
 
     /**
@@ -84,24 +491,33 @@ public class FSSServer extends UnicastRemoteObject implements FileSharingSystem
      */
     @Override
     public void rm(String fileName) throws IOException {
-        if (fileName == null || fileName.length() == 0) {
-            throw new IllegalArgumentException("File name cannot be blank");
-        }
-        Path filePath = this.getPath(fileName);
-        if (! this.validatePath(filePath)) {
-            throw new IllegalArgumentException("Relative file paths are not supported");
-        }
-        if (! Files.exists(filePath)) {
-            throw new IllegalArgumentException("File could not be found");
-        }
-        if (Files.isDirectory(filePath)) {
-            throw new IllegalArgumentException("File is a directory");
+        long start = System.nanoTime();
+        try {
+            if (fileName == null || fileName.length() == 0) {
+                throw new IllegalArgumentException("File name cannot be blank");
+            }
+            Path filePath = this.getPath(fileName);
+            if (! this.validatePath(filePath)) {
+                throw new IllegalArgumentException("Relative file paths are not supported");
+            }
+            DirEntry entry = this.stat(filePath);
+            if (entry == null) {
+                throw new IllegalArgumentException("File could not be found");
+            }
+            if (entry.getType() == DirEntry.Type.DIRECTORY) {
+                throw new IllegalArgumentException("File is a directory");
+            }
+            this.fileChanged(filePath);
+            Files.deleteIfExists(filePath);
+            this.refreshMetadata(filePath);
+        } finally {
+            this.metrics.record("rm", System.nanoTime() - start);
         }
-        Files.deleteIfExists(filePath);
     }
 
     /**
-     * Returns a list of the files and directories in the specified directory.
+     * Returns a list of the files and directories in the specified directory. Large directories are better read
+     * with list, which returns them a page at a time.
      * @param dirName  the directory to list
      * @return  a list of the name of the files and directories in the directory specified by dirName
      * @throws IllegalArgumentException  if the path specified by dirName is invalid
@@ -109,22 +525,37 @@ public class FSSServer extends UnicastRemoteObject implements FileSharingSystem
      */
     @Override
     public List<String> dir(String dirName) throws IllegalArgumentException, IOException {
-        if (dirName == null || dirName.length() == 0) {
-            throw new IllegalArgumentException("File name cannot be blank");
-        }
-        Path dirPath = this.getPath(dirName);
-        if (! this.validatePath(dirPath)) {
-            throw new IllegalArgumentException("Relative file paths are not supported");
-        }
-        if (! Files.exists(dirPath)) {
-            throw new IllegalArgumentException("Directory not found");
-        }
-        if (! Files.isDirectory(dirPath)) {
-            throw new IllegalArgumentException("Specified file is not a directory: " + dirPath);
+        long start = System.nanoTime();
+        try {
+            List<String> fileNames = new ArrayList<>();
+            DirListing listing = this.openListing(dirName, ListOptions.defaults());
+            try {
+                DirPage page;
+                do {
+                    page = listing.nextPage();
+                    page.getEntries().forEach((entry) -> fileNames.add(entry.getName()));
+                } while (! page.isLast());
+            } finally {
+                listing.close();
+            }
+            return fileNames;
+        } finally {
+            this.metrics.record("dir", System.nanoTime() - start);
         }
-        List<String> fileNames = new ArrayList<>();
-        Files.list(dirPath).forEach((path) -> fileNames.add(path.getFileName().toString()));
-        return fileNames;
+    }
+
+    /**
+     * Starts a listing of the specified directory that the client reads a page at a time.
+     * @param dirName  the directory to list
+     * @param options  which entries to return, in what order, and how many in each page
+     * @return  the listing session
+     * @throws IllegalArgumentException  if the path specified by dirName is invalid or the glob pattern is invalid
+     * @throws IOException if there is a communication error or the directory cannot be read
+     */
+    @Override
+    public DirListing list(String dirName, ListOptions options) throws IOException {
+        return this.sessions.open(DirListing.class, "list", AdmissionControl.Priority.INTERACTIVE, dirName, null,
+                () -> this.openListing(dirName, options != null ? options : ListOptions.defaults()));
     }
 
     /**
@@ -135,23 +566,39 @@ public class FSSServer extends UnicastRemoteObject implements FileSharingSystem
      */
     @Override
     public void rmdir(String dirName) throws IOException {
-        if (dirName == null || dirName.length() == 0) {
-            throw new IllegalArgumentException("File name cannot be blank");
-        }
-        Path filePath = this.getPath(dirName);
-        if (! this.validatePath(filePath)) {
-            throw new IllegalArgumentException("Relative file paths are not supported");
-        }
-        if (! Files.exists(filePath)) {
-            throw new IllegalArgumentException("File could not be found");
-        }
-        if (! Files.isDirectory(filePath)) {
-            throw new IllegalArgumentException("File is not a directory");
-        }
-        if (Files.list(filePath).count() > 0) {
-            throw new IllegalArgumentException("Directory must be empty before deleting");
+        long start = System.nanoTime();
+        try {
+            if (dirName == null || dirName.length() == 0) {
+                throw new IllegalArgumentException("File name cannot be blank");
+            }
+            Path filePath = this.getPath(dirName);
+            if (! this.validatePath(filePath)) {
+                throw new IllegalArgumentException("Relative file paths are not supported");
+            }
+            DirEntry entry = this.stat(filePath);
+            if (entry == null) {
+                throw new IllegalArgumentException("File could not be found");
+            }
+            if (entry.getType() != DirEntry.Type.DIRECTORY) {
+                throw new IllegalArgumentException("File is not a directory");
+            }
+            List<DirEntry> children = this.metadataCache != null ? this.metadataCache.list(filePath) : null;
+            if (children != null) {
+                if (! children.isEmpty()) {
+                    throw new IllegalArgumentException("Directory must be empty before deleting");
+                }
+            } else {
+                try (DirectoryStream<Path> entries = Files.newDirectoryStream(filePath)) {
+                    if (entries.iterator().hasNext()) {
+                        throw new IllegalArgumentException("Directory must be empty before deleting");
+                    }
+                }
+            }
+            Files.deleteIfExists(filePath);
+            this.refreshMetadata(filePath);
+        } finally {
+            this.metrics.record("rmdir", System.nanoTime() - start);
         }
-        Files.deleteIfExists(filePath);
     }
 
     /**
@@ -162,14 +609,165 @@ public class FSSServer extends UnicastRemoteObject implements FileSharingSystem
      */
     @Override
     public void mkdir(String dirName) throws IOException {
-        if (dirName == null || dirName.length() == 0) {
-            throw new IllegalArgumentException("File name cannot be blank");
+        long start = System.nanoTime();
+        try {
+            if (dirName == null || dirName.length() == 0) {
+                throw new IllegalArgumentException("File name cannot be blank");
+            }
+            Path filePath = this.getPath(dirName);
+            if (this.stat(filePath) != null) {
+                throw new IllegalArgumentException("A directory with that name already exists");
+            }
+            Files.createDirectory(filePath);
+            this.refreshMetadata(filePath);
+        } finally {
+            this.metrics.record("mkdir", System.nanoTime() - start);
         }
-        Path filePath = this.getPath(dirName);
-        if (Files.exists(filePath)) {
-            throw new IllegalArgumentException("A directory with that name already exists");
+    }
+
+    /**
+     * Creates directories in the FSS repository, along with any missing parents. Directories that already exist are
+     * left alone, so a batch can be sent again after an interruption.
+     * @param dirNames  the paths of the directories to create
+     * @throws IOException if there is a communication error or a directory cannot be created
+     * @throws IllegalArgumentException  if a path is blank or invalid, or names an existing file
+     */
+    @Override
+    public void mkdirs(List<String> dirNames) throws IOException {
+        long start = System.nanoTime();
+        try {
+            for (String dirName : dirNames) {
+                if (dirName == null || dirName.length() == 0) {
+                    throw new IllegalArgumentException("File name cannot be blank");
+                }
+                Path dirPath = this.getPath(dirName);
+                if (! this.validatePath(dirPath)) {
+                    throw new IllegalArgumentException("Relative file paths are not supported");
+                }
+                DirEntry entry = this.stat(dirPath);
+                if (entry != null) {
+                    if (entry.getType() != DirEntry.Type.DIRECTORY) {
+                        throw new IllegalArgumentException("A file with that name already exists: " + dirName);
+                    }
+                    continue;
+                }
+                Path topmost = dirPath;
+                for (Path parent = dirPath.getParent(); parent != null && this.stat(parent) == null;
+                        parent = parent.getParent()) {
+                    topmost = parent;
+                }
+                Files.createDirectories(dirPath);
+                for (Path path = dirPath; path != null; path = path.equals(topmost) ? null : path.getParent()) {
+                    this.refreshMetadata(path);
+                }
+            }
+        } finally {
+            this.metrics.record("mkdirs", System.nanoTime() - start);
         }
-        Files.createDirectory(filePath);
+    }
+
+    /**
+     * Returns the type, size and modification time of a file or directory.
+     * @param fileName  the path of the file
+     * @return  the entry for the file, or null if it does not exist
+     * @throws IOException if there is a communication error or the file's attributes cannot be read
+     * @throws IllegalArgumentException  if fileName is blank or invalid
+     */
+    @Override
+    public DirEntry stat(String fileName) throws IOException {
+        long start = System.nanoTime();
+        try {
+            if (fileName == null || fileName.length() == 0) {
+                throw new IllegalArgumentException("File name cannot be blank");
+            }
+            Path filePath = this.getPath(fileName);
+            if (! this.validatePath(filePath)) {
+                throw new IllegalArgumentException("Relative file paths are not supported");
+            }
+            return this.stat(filePath);
+        } finally {
+            this.metrics.record("stat", System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Renames a file or directory in one atomic step, so that other clients see either the old name or the new one.
+     * An existing file at the target is replaced.
+     * @param source  the path of the file or directory to rename
+     * @param target  the new path, which must be on the same volume
+     * @throws IOException if there is a communication error or the file cannot be renamed
+     * @throws IllegalArgumentException  if either path is blank or invalid, the source does not exist, the target
+     *                                   cannot take its place, or the two are on different volumes
+     */
+    @Override
+    public void rename(String source, String target) throws IOException {
+        long start = System.nanoTime();
+        try {
+            Path sourcePath = this.getSourcePath(source);
+            Path targetPath = this.getTargetPath(sourcePath, target);
+            this.treeChanged(sourcePath);
+            this.fileChanged(targetPath);
+            try {
+                Files.move(sourcePath, targetPath, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException exp) {
+                throw new IllegalArgumentException("Source and target are on different volumes; use move instead");
+            }
+            this.refreshMetadata(sourcePath);
+            this.refreshMetadata(targetPath);
+        } finally {
+            this.metrics.record("rename", System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Starts copying a file or directory tree to another place on the server. The copy runs in the background and is
+     * followed through the returned session.
+     * @param source  the path of the file or directory to copy
+     * @param target  the path of the copy
+     * @return  the session reporting the progress of the copy
+     * @throws IOException if there is a communication error or the tree cannot be read
+     * @throws IllegalArgumentException  if either path is blank or invalid, the source does not exist, or the target
+     *                                   cannot take its place
+     */
+    @Override
+    public TreeOperation copy(String source, String target) throws IOException {
+        return this.startTreeOperation(source, target, false);
+    }
+
+    /**
+     * Starts moving a file or directory tree to another place on the server. A move within one volume is a single
+     * atomic rename and has finished when this returns; a move to another volume copies the files and deletes them
+     * in the background. Either way it is followed through the returned session.
+     * @param source  the path of the file or directory to move
+     * @param target  the new path
+     * @return  the session reporting the progress of the move
+     * @throws IOException if there is a communication error or the tree cannot be read or moved
+     * @throws IllegalArgumentException  if either path is blank or invalid, the source does not exist, or the target
+     *                                   cannot take its place
+     */
+    @Override
+    public TreeOperation move(String source, String target) throws IOException {
+        return this.startTreeOperation(source, target, true);
+    }
+
+    /**
+     * Describes the sessions open on the server.
+     * @return  every open upload, download and listing session, oldest first
+     * @throws RemoteException  if there is a communication error
+     */
+    @Override
+    public List<SessionInfo> sessions() throws RemoteException {
+        return this.sessions.list();
+    }
+
+    /**
+     * Reads the server's counters, gauges and latency histograms.
+     * @return  one line of text per metric
+     * @throws RemoteException  if there is a communication error
+     */
+    @Override
+    public List<String> stats() throws RemoteException {
+        return this.metrics.dump();
     }
 
     /**
@@ -178,7 +776,110 @@ public class FSSServer extends UnicastRemoteObject implements FileSharingSystem
      */
     @Override
     public void shutdown() throws RemoteException {
-        unexportObject(this, true);
+        for (Closeable transport : this.transports) {
+            try {
+                transport.close();
+            } catch (IOException exp) {
+                exp.printStackTrace();
+            }
+        }
+        if (this.dataChannel != null) {
+            try {
+                this.dataChannel.close();
+            } catch (IOException exp) {
+                exp.printStackTrace();
+            }
+        }
+        if (this.mappedFiles != null) {
+            this.mappedFiles.close();
+        }
+        if (this.metadataCache != null) {
+            try {
+                this.metadataCache.close();
+            } catch (IOException exp) {
+                exp.printStackTrace();
+            }
+        }
+        this.sessions.close();
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(METRICS_NAME));
+        } catch (JMException exp) {
+            // never registered
+        }
+        try {
+            UnicastRemoteObject.unexportObject(this, true);
+        } catch (NoSuchObjectException exp) {
+            // not served over RMI
+        }
+    }
+
+    /**
+     * Deletes the chunks that no manifest uses any more and no upload in progress has pinned, if the sweep interval
+     * has passed since the last sweep. Runs on the session reaper.
+     */
+    private void sweepChunkStore() {
+        long now = System.nanoTime();
+        if (now - this.lastSweep < TimeUnit.MILLISECONDS.toNanos(Constants.STORE_SWEEP_MILLIS)) {
+            return;
+        }
+        this.lastSweep = now;
+        try {
+            this.metrics.add("store.chunks.swept", this.chunkStore.sweep(this.getPath("")));
+        } catch (IOException exp) {
+            System.err.println("Chunk store sweep failed: " + exp);
+        }
+    }
+
+    /**
+     * Aborts the multipart uploads that no part has joined or written to for longer than the session idle timeout,
+     * deleting their temporary files. Runs on the session reaper.
+     */
+    private void reapMultipartUploads() {
+        long idleTimeoutMillis = this.sessions.getIdleTimeoutMillis();
+        synchronized (this.multipartUploads) {
+            for (Iterator<MultipartUpload> it = this.multipartUploads.values().iterator(); it.hasNext(); ) {
+                MultipartUpload multipartUpload = it.next();
+                if (multipartUpload.getIdleMillis() > idleTimeoutMillis) {
+                    it.remove();
+                    try {
+                        multipartUpload.abort();
+                    } catch (IOException exp) {
+                        exp.printStackTrace();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds gauges for the sessions, the caches, the upload buffers and the process's open files and threads, and
+     * registers the metrics as an MBean. A server whose metrics cannot be registered, such as a second server in the
+     * same JVM, still keeps them.
+     */
+    private void registerMetrics() {
+        this.metrics.gauge("sessions.open", this.sessions::size);
+        this.metrics.gauge("admission.clients", this.admission::clientCount);
+        this.metrics.gauge("upload.buffers.used", UploadServer::getBuffersInUse);
+        this.metrics.gauge("process.threads", ManagementFactory.getThreadMXBean()::getThreadCount);
+        OperatingSystemMXBean system = ManagementFactory.getOperatingSystemMXBean();
+        if (system instanceof UnixOperatingSystemMXBean) {
+            this.metrics.gauge("process.files.open", ((UnixOperatingSystemMXBean) system)::getOpenFileDescriptorCount);
+        }
+        if (this.metadataCache != null) {
+            this.metrics.gauge("metadata.cache.size", this.metadataCache::size);
+            this.metrics.gauge("metadata.cache.hits", this.metadataCache::getHits);
+            this.metrics.gauge("metadata.cache.misses", this.metadataCache::getMisses);
+        }
+        if (this.chunkCache != null) {
+            this.metrics.gauge("chunk.cache.size", this.chunkCache::size);
+            this.metrics.gauge("chunk.cache.hits", this.chunkCache::getHits);
+            this.metrics.gauge("chunk.cache.misses", this.chunkCache::getMisses);
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this.metrics, new ObjectName(METRICS_NAME));
+        } catch (JMException exp) {
+            System.err.println("Metrics could not be registered with JMX: " + exp.getMessage());
+        }
     }
 
     /**
@@ -187,7 +888,7 @@ public class FSSServer extends UnicastRemoteObject implements FileSharingSystem
      * @param path  the filesystem path to validate
      * @return  a response with an error message if not valid, otherwise null
      */
-    private boolean validatePath(Path path) {
+    boolean validatePath(Path path) {
         boolean valid = true;
         Path parent = Paths.get("..");
         Path cwd = Paths.get(".");
@@ -201,12 +902,271 @@ public class FSSServer extends UnicastRemoteObject implements FileSharingSystem
         return valid;
     }
 
+    /**
+     * Opens the file for a download session. A manifest is read through the chunk store; any other file is read
+     * through the shared mappings if memory-mapped downloads are turned on, or otherwise through the chunk cache if
+     * it is enabled.
+     * @param filePath  the file to download
+     * @return  the source the session reads from
+     * @throws IOException  if the file cannot be opened
+     */
+    private ChunkSource openSource(Path filePath) throws IOException {
+        if (this.chunkStore != null && Manifest.isManifest(filePath)) {
+            return new ManifestSource(this.chunkStore, Manifest.read(filePath));
+        }
+        if (this.mappedFiles != null) {
+            return this.mappedFiles.acquire(filePath);
+        }
+        if (this.chunkCache != null) {
+            long lastModified = Files.getLastModifiedTime(filePath).toMillis();
+            return this.chunkCache.wrap(filePath, lastModified, new FileChannelSource(filePath));
+        }
+        return new FileChannelSource(filePath);
+    }
+
+    /**
+     * Starts a listing of a directory sent by the client, from the metadata cache if the directory is cached and
+     * from the disk otherwise. The chunk store is never listed.
+     * @param dirName  the path of the directory relative to the file server repository
+     * @param options  which entries to return, in what order, and how many in each page
+     * @return  the listing
+     * @throws IllegalArgumentException  if dirName is blank, relative, or does not name a directory
+     * @throws IOException  if the directory cannot be read
+     */
+    private DirListingServer openListing(String dirName, ListOptions options) throws IOException {
+        if (dirName == null || dirName.length() == 0) {
+            throw new IllegalArgumentException("File name cannot be blank");
+        }
+        Path dirPath = this.getPath(dirName);
+        if (! this.validatePath(dirPath)) {
+            throw new IllegalArgumentException("Relative file paths are not supported");
+        }
+        DirEntry entry = this.stat(dirPath);
+        if (entry == null) {
+            throw new IllegalArgumentException("Directory not found");
+        }
+        if (entry.getType() != DirEntry.Type.DIRECTORY) {
+            throw new IllegalArgumentException("Specified file is not a directory: " + dirPath);
+        }
+        Set<Path> reserved = new HashSet<>();
+        reserved.add(this.stagingRoot);
+        if (this.chunkStore != null) {
+            reserved.add(this.chunkStore.getRoot());
+        }
+        List<DirEntry> entries = this.metadataCache != null ? this.metadataCache.list(dirPath) : null;
+        if (entries == null) {
+            return new DirListingServer(dirPath, options, reserved);
+        }
+        entries.removeIf((child) -> reserved.contains(dirPath.resolve(child.getName()).toAbsolutePath().normalize()));
+        return new DirListingServer(entries, options);
+    }
+
+    /**
+     * Validates the paths of a copy or move and opens the session that carries it out.
+     * @param source  the path of the file or directory to copy or move
+     * @param target  where to copy or move it to
+     * @param move  true to move, false to copy
+     * @return  the session reporting the progress of the operation
+     * @throws IOException  if the tree cannot be read or moved
+     * @throws IllegalArgumentException  if either path is invalid or the target cannot take the source's place
+     */
+    private TreeOperation startTreeOperation(String source, String target, boolean move) throws IOException {
+        Path sourcePath = this.getSourcePath(source);
+        Path targetPath = this.getTargetPath(sourcePath, target);
+        return this.sessions.open(TreeOperation.class, move ? "move" : "copy",
+                AdmissionControl.Priority.INTERACTIVE, source, null,
+                () -> new TreeOperationServer(sourcePath, targetPath, move, this::fileChanged));
+    }
+
+    /**
+     * Validates the path of an existing file or directory that is to be renamed, copied or moved.
+     * @param fileName  the path sent by the client
+     * @return  the path of the file or directory
+     * @throws IOException  if the file's attributes cannot be read
+     * @throws IllegalArgumentException  if the path is blank or relative or names nothing
+     */
+    private Path getSourcePath(String fileName) throws IOException {
+        if (fileName == null || fileName.length() == 0) {
+            throw new IllegalArgumentException("File name cannot be blank");
+        }
+        Path filePath = this.getPath(fileName);
+        if (! this.validatePath(filePath)) {
+            throw new IllegalArgumentException("Relative file paths are not supported");
+        }
+        if (this.stat(filePath) == null) {
+            throw new IllegalArgumentException("File could not be found");
+        }
+        return filePath;
+    }
+
+    /**
+     * Validates the path a file or directory is to be renamed, copied or moved to. The parent directory must exist,
+     * and only a file can take the place of an existing file.
+     * @param sourcePath  the file or directory being renamed, copied or moved
+     * @param fileName  the target path sent by the client
+     * @return  the path of the target
+     * @throws IOException  if the file's attributes cannot be read
+     * @throws IllegalArgumentException  if the path is blank or relative, its directory does not exist, it names the
+     *                                   source or a path inside it, or it names a directory or a file that the
+     *                                   source cannot replace
+     */
+    private Path getTargetPath(Path sourcePath, String fileName) throws IOException {
+        if (fileName == null || fileName.length() == 0) {
+            throw new IllegalArgumentException("File name cannot be blank");
+        }
+        Path filePath = this.getPath(fileName);
+        if (! this.validatePath(filePath)) {
+            throw new IllegalArgumentException("Relative file paths are not supported");
+        }
+        Path normalized = filePath.toAbsolutePath().normalize();
+        if (normalized.startsWith(sourcePath.toAbsolutePath().normalize())) {
+            throw new IllegalArgumentException("Target cannot be the source or inside it");
+        }
+        DirEntry parent = normalized.getParent() != null ? this.stat(normalized.getParent()) : null;
+        if (parent == null || parent.getType() != DirEntry.Type.DIRECTORY) {
+            throw new IllegalArgumentException("Directory not found");
+        }
+        DirEntry entry = this.stat(filePath);
+        if (entry != null) {
+            if (entry.getType() == DirEntry.Type.DIRECTORY) {
+                throw new IllegalArgumentException("A directory with that name already exists");
+            }
+            if (this.stat(sourcePath).getType() == DirEntry.Type.DIRECTORY) {
+                throw new IllegalArgumentException("A file with that name already exists");
+            }
+        }
+        return filePath;
+    }
+
+    /**
+     * Looks up a file in the metadata cache, or on disk if the cache is turned off.
+     * @param path  the file to look up
+     * @return  the entry for the file, or null if it does not exist
+     * @throws IOException  if the file's attributes cannot be read
+     */
+    private DirEntry stat(Path path) throws IOException {
+        if (this.metadataCache != null) {
+            return this.metadataCache.stat(path);
+        }
+        return DirEntry.read(path);
+    }
+
+    /**
+     * Updates the metadata cache after the server has created, changed or deleted a file, so that the change is seen
+     * without waiting for the watch service.
+     * @param path  the file that changed
+     */
+    private void refreshMetadata(Path path) {
+        if (this.metadataCache != null) {
+            this.metadataCache.refresh(path);
+        }
+    }
+
+    /**
+     * Drops anything the server keeps about a file that is about to be overwritten or deleted, or has just been
+     * replaced, and reads its metadata again.
+     * @param filePath  the file that is changing
+     */
+    private void fileChanged(Path filePath) {
+        if (this.mappedFiles != null) {
+            this.mappedFiles.invalidate(filePath);
+        }
+        if (this.chunkCache != null) {
+            this.chunkCache.invalidate(filePath);
+        }
+        if (this.digestCache != null) {
+            this.digestCache.invalidate(filePath);
+        }
+        this.refreshMetadata(filePath);
+    }
+
+    /**
+     * Drops anything the server keeps about a file or about every file under a directory, which is about to be
+     * renamed. The tree is only walked if the server keeps anything about the contents of files.
+     * @param path  the file or directory that is changing
+     * @throws IOException  if the directory cannot be walked
+     */
+    private void treeChanged(Path path) throws IOException {
+        if (this.mappedFiles == null && this.chunkCache == null && this.digestCache == null) {
+            return;
+        }
+        try (Stream<Path> walk = Files.walk(path)) {
+            walk.forEach(this::fileChanged);
+        }
+    }
+
+    /**
+     * Deletes a manifest that a plain upload is about to overwrite, so that its bytes are not taken for the start of
+     * an interrupted upload.
+     * @param filePath  the file being uploaded
+     * @throws IOException  if the manifest cannot be deleted
+     */
+    private void dropManifest(Path filePath) throws IOException {
+        if (this.chunkStore != null && Manifest.isManifest(filePath)) {
+            Files.delete(filePath);
+        }
+    }
+
+    /**
+     * Writes one entry of an uploaded batch, replacing any existing file.
+     * @param entry  the entry to write
+     * @param durability  whether to force the file to disk
+     * @throws IOException  if the file cannot be written
+     * @throws IllegalArgumentException  if the entry's path is blank, relative or names a directory
+     */
+    private void writeBatchEntry(BatchArchive.Entry entry, Durability durability) throws IOException {
+        Path filePath = this.getTransferPath(entry.getPath());
+        this.fileChanged(filePath);
+        this.dropManifest(filePath);
+        try (FileChannel fileChannel = FileChannel.open(filePath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(entry.getData());
+            while (buffer.hasRemaining()) {
+                fileChannel.write(buffer);
+            }
+            if (durability != Durability.NONE) {
+                fileChannel.force(false);
+            }
+        }
+        this.refreshMetadata(filePath);
+    }
+
+    /**
+     * Validates the name of a file sent by the client for an upload or download and returns its path.
+     * @param fileName  the name of the file
+     * @return  a Path object representing the file named by fileName
+     * @throws IllegalArgumentException  if fileName is blank, relative or names a directory
+     * @throws IOException  if the file's attributes cannot be read
+     */
+    private Path getTransferPath(String fileName) throws IOException {
+        if (fileName == null || fileName.length() == 0) {
+            throw new IllegalArgumentException("File name cannot be blank");
+        }
+        Path filePath = this.getPath(fileName);
+        if (! this.validatePath(filePath)) {
+            throw new IllegalArgumentException("Relative file paths are not supported");
+        }
+        DirEntry entry = this.stat(filePath);
+        if (entry != null && entry.getType() == DirEntry.Type.DIRECTORY) {
+            throw new IllegalArgumentException("A directory with that name already exists.");
+        }
+        return filePath;
+    }
+
     /**
      * Returns a Path object representing the file named by fileName.
      * @param fileName  the name of the file
      * @return  a Path object representing the file named by fileName
+     * @throws IllegalArgumentException  if fileName is inside the chunk store or the upload staging directory
      */
-    private Path getPath(String fileName) {
-        return FileSystems.getDefault().getPath(System.getProperty("user.dir"), fileName);
+    Path getPath(String fileName) {
+        Path path = FileSystems.getDefault().getPath(System.getProperty("user.dir"), fileName);
+        if (this.chunkStore != null && path.toAbsolutePath().normalize().startsWith(this.chunkStore.getRoot())) {
+            throw new IllegalArgumentException("Path is reserved for the chunk store");
+        }
+        if (this.stagingRoot != null && path.toAbsolutePath().normalize().startsWith(this.stagingRoot)) {
+            throw new IllegalArgumentException("Path is reserved for uploads in progress");
+        }
+        return path;
     }
 }
@@ -0,0 +1,72 @@
+package edu.gmu.swe622.pa2;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads chunks of a file with positional FileChannel reads.
+ */
+public class FileChannelSource implements ChunkSource {
+
+    private FileChannel fileChannel;
+
+    /**
+     * Constructor. Opens the file for reading.
+     * @param filePath  the file to read
+     * @throws IOException  if the file cannot be opened
+     */
+    public FileChannelSource(Path filePath) throws IOException {
+        this.fileChannel = FileChannel.open(filePath, StandardOpenOption.READ);
+    }
+
+    /**
+     * Returns the number of bytes in the file.
+     * @return  the file size
+     * @throws IOException  if the size cannot be read
+     */
+    @Override
+    public long size() throws IOException {
+        return this.fileChannel.size();
+    }
+
+    /**
+     * Reads bytes from the file with positional reads.
+     * @param offset  the position in the file of the first byte to read
+     * @param length  the number of bytes to read
+     * @return  the bytes read from the file
+     * @throws IOException  if the file cannot be read
+     */
+    @Override
+    public byte[] read(long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        long position = offset;
+        while (buffer.hasRemaining()) {
+            int read = this.fileChannel.read(buffer, position);
+            if (read == -1) break;
+            position += read;
+        }
+        return buffer.hasRemaining() ? Arrays.copyOf(buffer.array(), buffer.position()) : buffer.array();
+    }
+
+    /**
+     * Returns true, since every read goes to the file.
+     * @return  true
+     */
+    @Override
+    public boolean readsFromDisk() {
+        return true;
+    }
+
+    /**
+     * Closes the file.
+     * @throws IOException  if the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        this.fileChannel.close();
+    }
+}
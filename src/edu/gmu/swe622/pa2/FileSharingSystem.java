@@ -11,10 +11,31 @@ import java.util.List;
 public interface FileSharingSystem extends Remote {
 
     Download download(String remoteFile, long startAt) throws IOException;
+    Download download(String remoteFile, long startAt, TransferOptions options) throws IOException;
+    Download downloadRange(String remoteFile, long offset, long length, TransferOptions options) throws IOException;
     Upload upload(String remoteFile, long length) throws IOException;
+    Upload upload(String remoteFile, long length, TransferOptions options) throws IOException;
+    String startMultipartUpload(String remoteFile, long length, long partSize, String resumeId,
+            TransferOptions options) throws IOException;
+    Upload uploadPart(String uploadId, int part, TransferOptions options) throws IOException;
+    DeltaUpload deltaUpload(String remoteFile, long length, TransferOptions options) throws IOException;
+    List<BatchResult> uploadBatch(byte[] batch, TransferOptions options) throws IOException;
+    StoreUpload storeUpload(String remoteFile, long length, TransferOptions options) throws IOException;
+    DataTicket downloadChannel(String remoteFile, long startAt) throws IOException;
+    DataTicket uploadChannel(String remoteFile, long length, long resumeAt, TransferOptions options)
+            throws IOException;
+    HashTree hashTree(String remoteFile, int leafSize) throws IOException;
     void rm(String fileName) throws IOException;
     List<String> dir(String dirName) throws IllegalArgumentException, IOException;
+    DirListing list(String dirName, ListOptions options) throws IOException;
     void rmdir(String dirName) throws IOException;
     void mkdir(String dirName) throws IOException;
+    void mkdirs(List<String> dirNames) throws IOException;
+    DirEntry stat(String fileName) throws IOException;
+    void rename(String source, String target) throws IOException;
+    TreeOperation copy(String source, String target) throws IOException;
+    TreeOperation move(String source, String target) throws IOException;
+    List<SessionInfo> sessions() throws RemoteException;
+    List<String> stats() throws RemoteException;
     void shutdown() throws RemoteException;
 }
@@ -0,0 +1,107 @@
+package edu.gmu.swe622.pa2;
+
+import java.io.Serializable;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * The checksums of the full blocks of a file on the server, which a delta upload compares the local file against.
+ * Every block has a weak rolling checksum, to find candidate matches cheaply, and an MD5 digest to confirm them.
+ */
+public class FileSignature implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The algorithm of the strong per-block digest.
+     */
+    public static final String STRONG_ALGORITHM = "MD5";
+
+    /**
+     * The number of bytes in each strong digest.
+     */
+    public static final int STRONG_LENGTH = 16;
+
+    private int blockSize;
+    private long length;
+    private int[] weak;
+    private byte[] strong;
+
+    /**
+     * Constructor.
+     * @param blockSize  the number of bytes in each block
+     * @param length  the number of bytes in the file
+     * @param weak  the rolling checksum of each full block
+     * @param strong  the strong digests of the full blocks, one after another
+     */
+    public FileSignature(int blockSize, long length, int[] weak, byte[] strong) {
+        this.blockSize = blockSize;
+        this.length = length;
+        this.weak = weak;
+        this.strong = strong;
+    }
+
+    /**
+     * Creates a digest for the strong per-block checksum.
+     * @return  a new MD5 digest
+     */
+    public static MessageDigest newStrongDigest() {
+        try {
+            return MessageDigest.getInstance(STRONG_ALGORITHM);
+        } catch (NoSuchAlgorithmException exp) {
+            throw new IllegalStateException(STRONG_ALGORITHM + " is not available", exp);
+        }
+    }
+
+    /**
+     * Getter for the block size.
+     * @return  the number of bytes in each block
+     */
+    public int getBlockSize() {
+        return this.blockSize;
+    }
+
+    /**
+     * Getter for the length.
+     * @return  the number of bytes in the file
+     */
+    public long getLength() {
+        return this.length;
+    }
+
+    /**
+     * Returns the number of full blocks in the file; a shorter last block has no signature.
+     * @return  the count of blocks
+     */
+    public int getBlockCount() {
+        return this.weak.length;
+    }
+
+    /**
+     * Returns the rolling checksum of a block.
+     * @param block  the index of the block
+     * @return  the weak checksum of the block
+     */
+    public int getWeak(int block) {
+        return this.weak[block];
+    }
+
+    /**
+     * Returns true if a strong digest is the digest of a block.
+     * @param block  the index of the block
+     * @param digest  the digest to compare
+     * @return  true if the digests are equal
+     */
+    public boolean strongMatches(int block, byte[] digest) {
+        if (digest.length != STRONG_LENGTH) {
+            return false;
+        }
+        int from = block * STRONG_LENGTH;
+        for (int i = 0; i < STRONG_LENGTH; i++) {
+            if (this.strong[from + i] != digest[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,262 @@
+package edu.gmu.swe622.pa2;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.rmi.RemoteException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Client side of the framed transport described in FrameCodec. All the calls a client makes, on the server and on
+ * every session the server returns, share one connection: each call sends a request frame and waits for the response
+ * with its call id, which a background thread reads and hands over, so calls from many threads can be in flight at
+ * once. Remote objects are represented by proxies implementing their remote interface, so the client code works the
+ * same as with RMI; the proxy of the server is also Closeable, and closing it closes the connection. A call that
+ * cannot be made because the connection has failed throws a RemoteException.
+ */
+public class FrameClient implements Closeable {
+
+    /**
+     * A response to a call.
+     */
+    private static class Response {
+        private byte type;
+        private Object value;
+    }
+
+    /**
+     * Makes the calls on the proxy of one remote object.
+     */
+    private class RemoteObject implements InvocationHandler {
+        private long id;
+        private Class<?> type;
+
+        /**
+         * Constructor.
+         * @param id  the id the server knows the object by on this connection
+         * @param type  the remote interface of the object
+         */
+        private RemoteObject(long id, Class<?> type) {
+            this.id = id;
+            this.type = type;
+        }
+
+        /**
+         * Sends a call to the remote object and returns its result.
+         * @param proxy  the proxy the call was made on
+         * @param method  the method called
+         * @param args  the arguments of the call
+         * @return  the result of the call
+         * @throws Throwable  whatever the call threw on the server, or a RemoteException if it could not be made
+         */
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                switch (method.getName()) {
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    default:
+                        return this.type.getSimpleName() + " " + this.id + " on " + FrameClient.this.address;
+                }
+            } else if (method.getDeclaringClass() == Closeable.class) {
+                FrameClient.this.close();
+                return null;
+            }
+            return FrameClient.this.call(this.id, this.type, method, args != null ? args : new Object[0]);
+        }
+    }
+
+    private InetSocketAddress address;
+    private int maxFrameSize;
+    private SocketChannel channel;
+    private AtomicInteger nextCall = new AtomicInteger();
+    private Map<Integer, CompletableFuture<Response>> pending = new ConcurrentHashMap<>();
+    private volatile IOException failure;
+
+    /**
+     * Constructor. Connects to the server and starts reading responses.
+     * @param hostName  the host on which the server is running
+     * @param port  the port the server is listening on
+     * @param maxFrameSize  the largest frame accepted from the server
+     * @throws IOException  if the connection cannot be made
+     */
+    public FrameClient(String hostName, int port, int maxFrameSize) throws IOException {
+        this.address = new InetSocketAddress(hostName, port);
+        this.maxFrameSize = maxFrameSize;
+        this.channel = SocketChannel.open(this.address);
+        this.channel.socket().setTcpNoDelay(true);
+        Thread reader = new Thread(this::readResponses, "fss-frame-client");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Returns the server's FileSharingSystem.
+     * @return  a proxy that makes its calls over this connection, and closes it when the proxy is closed
+     */
+    public FileSharingSystem getServer() {
+        return (FileSharingSystem) Proxy.newProxyInstance(FileSharingSystem.class.getClassLoader(),
+                new Class<?>[] { FileSharingSystem.class, Closeable.class },
+                new RemoteObject(FrameCodec.ROOT_ID, FileSharingSystem.class));
+    }
+
+    /**
+     * Closes the connection. Calls that are waiting for a response fail, and the server closes the sessions the
+     * client still had open.
+     * @throws IOException  if the connection cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        this.fail(new RemoteException("Connection to " + this.address + " closed"));
+        this.channel.close();
+    }
+
+    /**
+     * Creates the proxy of a remote object.
+     * @param id  the id the server knows the object by on this connection
+     * @param type  the remote interface of the object
+     * @return  the proxy
+     */
+    private <T> T proxy(long id, Class<T> type) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type },
+                new RemoteObject(id, type)));
+    }
+
+    /**
+     * Sends a call and waits for its response.
+     * @param id  the id of the object to call
+     * @param type  the remote interface of the object
+     * @param method  the method to call
+     * @param args  the arguments of the call
+     * @return  the result of the call, with a remote object returned as a proxy
+     * @throws Throwable  whatever the call threw on the server, or a RemoteException if it could not be made
+     */
+    private Object call(long id, Class<?> type, Method method, Object[] args) throws Throwable {
+        int callId = this.nextCall.incrementAndGet();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0);
+        out.writeByte(FrameCodec.REQUEST);
+        out.writeInt(callId);
+        out.writeLong(id);
+        out.writeShort(FrameCodec.indexOf(type, method));
+        out.writeByte(args.length);
+        for (Object arg : args) {
+            FrameCodec.writeValue(out, arg);
+        }
+        ByteBuffer request = ByteBuffer.wrap(bytes.toByteArray());
+        request.putInt(0, request.capacity() - 4);
+
+        CompletableFuture<Response> future = new CompletableFuture<>();
+        this.pending.put(callId, future);
+        Response response;
+        try {
+            if (this.failure != null) {
+                throw this.failure;
+            }
+            synchronized (this.channel) {
+                while (request.hasRemaining()) {
+                    this.channel.write(request);
+                }
+            }
+            response = future.get();
+        } catch (IOException exp) {
+            this.fail(new RemoteException("Connection to " + this.address + " failed", exp));
+            throw this.failure;
+        } catch (InterruptedException exp) {
+            Thread.currentThread().interrupt();
+            throw new RemoteException("Interrupted while waiting for " + method.getName(), exp);
+        } catch (ExecutionException exp) {
+            throw exp.getCause();
+        } finally {
+            this.pending.remove(callId);
+        }
+
+        if (response.type == FrameCodec.REMOTE) {
+            return this.proxy((Long) response.value, method.getReturnType());
+        } else if (response.type == FrameCodec.ERROR) {
+            Throwable thrown = (Throwable) response.value;
+            if (thrown instanceof RuntimeException || thrown instanceof Error) {
+                throw thrown;
+            }
+            for (Class<?> declared : method.getExceptionTypes()) {
+                if (declared.isInstance(thrown)) {
+                    throw thrown;
+                }
+            }
+            throw new RemoteException("Server error in " + method.getName(), thrown);
+        }
+        return response.value;
+    }
+
+    /**
+     * Reads response frames until the connection fails, completing the calls they answer. Runs on its own thread.
+     */
+    private void readResponses() {
+        ByteBuffer header = ByteBuffer.allocate(4);
+        try {
+            while (true) {
+                header.clear();
+                this.readFully(header);
+                int length = header.getInt(0);
+                if (length <= 0 || length > this.maxFrameSize) {
+                    throw new IOException("Frame of " + length + " bytes refused");
+                }
+                ByteBuffer body = ByteBuffer.allocate(length);
+                this.readFully(body);
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(body.array()));
+                Response response = new Response();
+                response.type = in.readByte();
+                int callId = in.readInt();
+                response.value = response.type == FrameCodec.REMOTE ? in.readLong() : FrameCodec.readValue(in);
+                CompletableFuture<Response> future = this.pending.get(callId);
+                if (future != null) {
+                    future.complete(response);
+                }
+            }
+        } catch (IOException exp) {
+            this.fail(new RemoteException("Connection to " + this.address + " lost", exp));
+        }
+    }
+
+    /**
+     * Fills a buffer from the connection.
+     * @param buffer  the buffer to fill
+     * @throws IOException  if the connection fails or is closed before the buffer is full
+     */
+    private void readFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (this.channel.read(buffer) == -1) {
+                throw new IOException("Connection closed by server");
+            }
+        }
+    }
+
+    /**
+     * Records that the connection can no longer be used and fails every call waiting for a response.
+     * @param exp  the reason
+     */
+    private void fail(IOException exp) {
+        if (this.failure == null) {
+            this.failure = exp;
+        }
+        for (CompletableFuture<Response> future : this.pending.values()) {
+            future.completeExceptionally(this.failure);
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package edu.gmu.swe622.pa2;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The wire format of the framed transport, shared by FrameServer and FrameClient. Every message is a frame: a four
+ * byte length followed by that many bytes. A request names the call it belongs to, the object it is made on and the
+ * method by its index in the sorted methods of the object's remote interface, followed by the arguments; a response
+ * names the call it answers and carries a value, a reference to a new remote object, or an exception. Since every
+ * response carries its call id, any number of calls on any number of objects can be in flight on one connection and
+ * be answered in any order. Byte arrays, strings, numbers, chunks and lists of strings, which make up the arguments
+ * and results of the calls that move data, have a compact encoding; any other value is sent with Java serialization.
+ * Serialized values are only read if every class in them is one of the protocol's own, a boxed primitive or string,
+ * one of the standard lists, or an exception. Values are always read from a stream over a whole frame that has
+ * already been received.
+ */
+public class FrameCodec {
+
+    /**
+     * The id of the FileSharingSystem object on every connection.
+     */
+    public static final long ROOT_ID = 0;
+
+    /**
+     * The message type of a request.
+     */
+    public static final byte REQUEST = 1;
+
+    /**
+     * The message type of a response carrying the value returned by a call.
+     */
+    public static final byte RESULT = 2;
+
+    /**
+     * The message type of a response carrying the id of a remote object returned by a call.
+     */
+    public static final byte REMOTE = 3;
+
+    /**
+     * The message type of a response carrying the exception thrown by a call.
+     */
+    public static final byte ERROR = 4;
+
+    private static final byte NULL = 0;
+    private static final byte BYTES = 1;
+    private static final byte STRING = 2;
+    private static final byte LONG = 3;
+    private static final byte INT = 4;
+    private static final byte BOOLEAN = 5;
+    private static final byte CHUNK = 6;
+    private static final byte STRING_LIST = 7;
+    private static final byte OBJECT = 8;
+
+    private static final Map<Class<?>, Method[]> METHODS = new ConcurrentHashMap<>();
+
+    /**
+     * The classes outside the protocol's own package that a serialized value may contain, besides exceptions.
+     */
+    private static final Set<String> ALLOWED_CLASSES = new HashSet<>(Arrays.asList(
+            "java.lang.Boolean", "java.lang.Byte", "java.lang.Character", "java.lang.Short", "java.lang.Integer",
+            "java.lang.Long", "java.lang.Float", "java.lang.Double", "java.lang.Number", "java.lang.String",
+            "java.lang.Enum", "java.lang.StackTraceElement", "java.util.ArrayList", "java.util.Arrays$ArrayList",
+            "java.util.Collections$EmptyList", "java.util.Collections$SingletonList",
+            "java.util.Collections$UnmodifiableCollection", "java.util.Collections$UnmodifiableList",
+            "java.util.Collections$UnmodifiableRandomAccessList"));
+
+    /**
+     * Reads serialized values, refusing any class that is not allowed in them before it is instantiated.
+     */
+    private static class ProtocolObjectInputStream extends ObjectInputStream {
+
+        /**
+         * Constructor.
+         * @param bytes  the serialized value
+         * @throws IOException  if the stream header is malformed
+         */
+        ProtocolObjectInputStream(byte[] bytes) throws IOException {
+            super(new ByteArrayInputStream(bytes));
+        }
+
+        /**
+         * Loads a class named in the stream, if it is allowed.
+         * @param desc  the description of the class
+         * @return  the class
+         * @throws IOException  if the class is not allowed
+         * @throws ClassNotFoundException  if the class cannot be found
+         */
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            Class<?> type = super.resolveClass(desc);
+            Class<?> element = type;
+            while (element.isArray()) {
+                element = element.getComponentType();
+            }
+            if (! element.isPrimitive() && ! isAllowed(element)) {
+                throw new InvalidClassException(type.getName(), "Not allowed in a frame");
+            }
+            return type;
+        }
+
+        /**
+         * Refuses every proxy class, since no value of the protocol is a proxy.
+         * @param interfaces  the interfaces the proxy implements
+         * @return  never
+         * @throws IOException  always
+         */
+        @Override
+        protected Class<?> resolveProxyClass(String[] interfaces) throws IOException {
+            throw new InvalidClassException(Arrays.toString(interfaces), "Proxy not allowed in a frame");
+        }
+
+        /**
+         * Checks whether a class may be read from a frame.
+         * @param type  the class, which is not an array
+         * @return  true if the class belongs to the protocol, is in the allowed classes, or is a standard exception
+         */
+        private static boolean isAllowed(Class<?> type) {
+            return type.getName().startsWith(FrameCodec.class.getPackage().getName() + ".")
+                    || ALLOWED_CLASSES.contains(type.getName())
+                    || (Throwable.class.isAssignableFrom(type) && type.getName().startsWith("java."));
+        }
+    }
+
+    /**
+     * Returns the methods of a remote interface in the order both ends number them: sorted by name and parameter
+     * types, with a method redeclared by a subinterface counted once.
+     * @param type  the remote interface
+     * @return  the methods of the interface
+     */
+    public static Method[] methods(Class<?> type) {
+        return METHODS.computeIfAbsent(type, (key) -> {
+            Map<String, Method> sorted = new TreeMap<>();
+            for (Method method : key.getMethods()) {
+                StringBuilder signature = new StringBuilder(method.getName()).append('(');
+                for (Class<?> parameter : method.getParameterTypes()) {
+                    signature.append(parameter.getName()).append(',');
+                }
+                sorted.putIfAbsent(signature.append(')').toString(), method);
+            }
+            return sorted.values().toArray(new Method[0]);
+        });
+    }
+
+    /**
+     * Returns the number a method has in its interface.
+     * @param type  the remote interface
+     * @param method  a method of the interface
+     * @return  the index of the method in the result of methods
+     * @throws IllegalArgumentException  if the method does not belong to the interface
+     */
+    public static int indexOf(Class<?> type, Method method) {
+        Method[] methods = methods(type);
+        for (int i = 0; i < methods.length; i++) {
+            if (methods[i].getName().equals(method.getName())
+                    && Arrays.equals(methods[i].getParameterTypes(), method.getParameterTypes())) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException(method + " is not a method of " + type.getName());
+    }
+
+    /**
+     * Writes a value.
+     * @param out  the stream to write to
+     * @param value  the value, which must be serializable unless it has a compact encoding
+     * @throws IOException  if the value cannot be written
+     */
+    public static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof byte[]) {
+            out.writeByte(BYTES);
+            writeBytes(out, (byte[]) value);
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            writeBytes(out, ((String) value).getBytes(StandardCharsets.UTF_8));
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(INT);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Chunk) {
+            Chunk chunk = (Chunk) value;
+            out.writeByte(CHUNK);
+            writeValue(out, chunk.getCodec());
+            out.writeInt(chunk.getLength());
+            out.writeLong(chunk.getChecksum());
+            writeBytes(out, chunk.getData());
+        } else if (isStringList(value)) {
+            List<?> list = (List<?>) value;
+            out.writeByte(STRING_LIST);
+            out.writeInt(list.size());
+            for (Object element : list) {
+                writeBytes(out, ((String) element).getBytes(StandardCharsets.UTF_8));
+            }
+        } else if (value instanceof Serializable) {
+            out.writeByte(OBJECT);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream objects = new ObjectOutputStream(bytes)) {
+                objects.writeObject(value);
+            }
+            writeBytes(out, bytes.toByteArray());
+        } else {
+            throw new IOException("Cannot send a " + value.getClass().getName());
+        }
+    }
+
+    /**
+     * Reads a value written by writeValue.
+     * @param in  the stream to read from
+     * @return  the value
+     * @throws IOException  if the value is malformed or its class cannot be found or is not allowed
+     */
+    public static Object readValue(DataInputStream in) throws IOException {
+        byte tag = in.readByte();
+        switch (tag) {
+            case NULL:
+                return null;
+            case BYTES:
+                return readBytes(in);
+            case STRING:
+                return new String(readBytes(in), StandardCharsets.UTF_8);
+            case LONG:
+                return in.readLong();
+            case INT:
+                return in.readInt();
+            case BOOLEAN:
+                return in.readBoolean();
+            case CHUNK:
+                String codec = (String) readValue(in);
+                int length = in.readInt();
+                long checksum = in.readLong();
+                return new Chunk(codec, length, readBytes(in), checksum);
+            case STRING_LIST:
+                int size = in.readInt();
+                if (size < 0) {
+                    throw new IOException("Malformed frame: negative list size");
+                }
+                List<String> list = new ArrayList<>(Math.min(size, 1024));
+                for (int i = 0; i < size; i++) {
+                    list.add(new String(readBytes(in), StandardCharsets.UTF_8));
+                }
+                return list;
+            case OBJECT:
+                try (ObjectInputStream objects = new ProtocolObjectInputStream(readBytes(in))) {
+                    return objects.readObject();
+                } catch (ClassNotFoundException exp) {
+                    throw new IOException("Unknown class in frame: " + exp.getMessage(), exp);
+                }
+            default:
+                throw new IOException("Malformed frame: unknown value type " + tag);
+        }
+    }
+
+    /**
+     * Checks whether a value is a list of strings, which has a compact encoding.
+     * @param value  the value
+     * @return  true if the value is a list whose elements are all strings
+     */
+    private static boolean isStringList(Object value) {
+        if (! (value instanceof List)) {
+            return false;
+        }
+        for (Object element : (List<?>) value) {
+            if (! (element instanceof String)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes a byte array preceded by its length.
+     * @param out  the stream to write to
+     * @param bytes  the bytes
+     * @throws IOException  if the bytes cannot be written
+     */
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a byte array written by writeBytes.
+     * @param in  the stream to read from
+     * @return  the bytes
+     * @throws IOException  if the length is negative or the stream ends early
+     */
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > in.available()) {
+            throw new IOException("Malformed frame: bad length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+}
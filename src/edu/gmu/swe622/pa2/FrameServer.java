@@ -0,0 +1,456 @@
+package edu.gmu.swe622.pa2;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.rmi.NoSuchObjectException;
+import java.rmi.Remote;
+import java.rmi.server.Unreferenced;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serves a FileSharingSystem over the framed transport described in FrameCodec, as an alternative to RMI. One
+ * selector thread accepts connections, reads request frames and writes response frames for every client, and fixed
+ * pools of worker threads make the calls, so the number of threads does not grow with the number of clients or
+ * transfers. Calls that move file data, which may wait for admission or for the rate limits, run on the bulk workers;
+ * all other calls, such as listing or creating directories, run on a separate, smaller pool of interactive workers so
+ * that they are never stuck behind them. A connection can have only so many calls in flight, counting those whose
+ * responses are still queued; once it reaches that many, the server stops reading from it until responses have been
+ * sent, which bounds the work and memory one client can tie up. Each connection has its own table of the remote
+ * objects its calls have returned, such as upload and download sessions, which the client calls by id over the same
+ * connection. When a connection closes, the objects it still holds are told they are unreferenced, as RMI would once
+ * the client's lease ran out.
+ */
+public class FrameServer implements Closeable {
+
+    /**
+     * A remote object a connection can call, and the interface it is called through.
+     */
+    private static class Exported {
+        private Remote object;
+        private Class<?> type;
+
+        /**
+         * Constructor.
+         * @param object  the remote object
+         * @param type  the remote interface of the object
+         */
+        private Exported(Remote object, Class<?> type) {
+            this.object = object;
+            this.type = type;
+        }
+    }
+
+    /**
+     * One client connection.
+     */
+    private static class Connection {
+        private SocketChannel channel;
+        private String host;
+        private SelectionKey key;
+        private ByteBuffer header = ByteBuffer.allocate(4);
+        private ByteBuffer body;
+        private Map<Long, Exported> objects = new ConcurrentHashMap<>();
+        private AtomicLong nextId = new AtomicLong(FrameCodec.ROOT_ID);
+        private Queue<ByteBuffer> writes = new ConcurrentLinkedQueue<>();
+        private AtomicInteger inFlight = new AtomicInteger();
+    }
+
+    /**
+     * The remote interfaces of the sessions whose calls move, hash or copy file data, and so run on the bulk workers,
+     * as do the calls that open them.
+     */
+    private static final Set<Class<?>> BULK_TYPES = new HashSet<>(Arrays.asList(Upload.class, Download.class,
+            DeltaUpload.class, StoreUpload.class, TreeOperation.class));
+
+    /**
+     * The calls of the server itself that move or hash file data without opening a session.
+     */
+    private static final Set<String> BULK_METHODS = new HashSet<>(Arrays.asList("uploadBatch", "hashTree"));
+
+    private static final ThreadLocal<String> CLIENT = new ThreadLocal<>();
+
+    private FileSharingSystem root;
+    private int maxInFlight;
+    private int maxFrameSize;
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private ExecutorService workers;
+    private ExecutorService interactiveWorkers;
+    private Set<Connection> connections = ConcurrentHashMap.newKeySet();
+    private Queue<Connection> writable = new ConcurrentLinkedQueue<>();
+    private AtomicInteger activeCalls = new AtomicInteger();
+    private volatile boolean closing;
+
+    /**
+     * Constructor. Opens the listening socket and starts serving connections.
+     * @param port  the port to listen on, or 0 for any free port
+     * @param root  the object every connection calls as id 0
+     * @param workers  the number of calls that move file data made at once
+     * @param interactiveWorkers  the number of other calls made at once
+     * @param maxInFlight  the most calls a connection can have in flight before the server stops reading from it
+     * @param maxFrameSize  the largest frame accepted; a client sending a larger one is disconnected
+     * @throws IOException  if the socket cannot be opened
+     * @throws IllegalArgumentException  if workers, interactiveWorkers, maxInFlight or maxFrameSize is not positive
+     */
+    public FrameServer(int port, FileSharingSystem root, int workers, int interactiveWorkers, int maxInFlight,
+            int maxFrameSize) throws IOException {
+        if (workers <= 0 || interactiveWorkers <= 0 || maxInFlight <= 0 || maxFrameSize <= 0) {
+            throw new IllegalArgumentException("Numbers of workers and calls in flight, and frame size must be > 0");
+        }
+        this.root = root;
+        this.maxInFlight = maxInFlight;
+        this.maxFrameSize = maxFrameSize;
+        this.workers = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "fss-frame-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.interactiveWorkers = Executors.newFixedThreadPool(interactiveWorkers, runnable -> {
+            Thread thread = new Thread(runnable, "fss-frame-interactive");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        this.serverChannel.bind(new InetSocketAddress(port));
+        this.serverChannel.configureBlocking(false);
+        this.serverChannel.register(this.selector, SelectionKey.OP_ACCEPT);
+        new Thread(this::serve, "fss-frame-server").start();
+    }
+
+    /**
+     * Returns the host of the client whose call the current thread is making.
+     * @return  the client's host, or null if the current thread is not making a call for the framed transport
+     */
+    public static String currentClient() {
+        return CLIENT.get();
+    }
+
+    /**
+     * Returns the port the server is listening on.
+     * @return  the local port of the listening socket
+     * @throws IOException  if the socket has been closed
+     */
+    public int getPort() throws IOException {
+        return ((InetSocketAddress) this.serverChannel.getLocalAddress()).getPort();
+    }
+
+    /**
+     * Stops the server. New connections are refused at once; the calls being made, such as the one that asked the
+     * server to shut down, are finished and answered before the connections are closed.
+     */
+    @Override
+    public void close() {
+        this.closing = true;
+        this.selector.wakeup();
+    }
+
+    /**
+     * Runs the selector loop until the server is closed and every call has been answered. Runs on its own thread.
+     */
+    private void serve() {
+        try {
+            while (true) {
+                this.selector.select();
+                for (Connection connection; (connection = this.writable.poll()) != null; ) {
+                    this.updateInterest(connection);
+                }
+                for (SelectionKey key : this.selector.selectedKeys()) {
+                    if (! key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        this.accept();
+                        continue;
+                    }
+                    Connection connection = (Connection) key.attachment();
+                    try {
+                        if (key.isReadable()) {
+                            this.read(connection);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            this.write(connection);
+                        }
+                    } catch (IOException exp) {
+                        this.disconnect(connection);
+                    }
+                }
+                this.selector.selectedKeys().clear();
+                if (this.closing) {
+                    this.serverChannel.close();
+                    if (this.activeCalls.get() == 0
+                            && this.connections.stream().allMatch((connection) -> connection.writes.isEmpty())) {
+                        break;
+                    }
+                }
+            }
+        } catch (IOException exp) {
+            exp.printStackTrace();
+        } finally {
+            for (Connection connection : this.connections) {
+                this.disconnect(connection);
+            }
+            this.workers.shutdown();
+            this.interactiveWorkers.shutdown();
+            try {
+                this.serverChannel.close();
+                this.selector.close();
+            } catch (IOException exp) {
+                exp.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Accepts a new connection and registers it for reading.
+     * @throws IOException  if the listening socket fails
+     */
+    private void accept() throws IOException {
+        SocketChannel channel = this.serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        Connection connection = new Connection();
+        connection.channel = channel;
+        connection.host = ((InetSocketAddress) channel.getRemoteAddress()).getAddress().getHostAddress();
+        connection.objects.put(FrameCodec.ROOT_ID, new Exported(this.root, FileSharingSystem.class));
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        connection.key = channel.register(this.selector, SelectionKey.OP_READ, connection);
+        this.connections.add(connection);
+    }
+
+    /**
+     * Reads what has arrived on a connection, handing each complete request frame to a worker, until the connection
+     * has as many calls in flight as it is allowed.
+     * @param connection  the connection to read
+     * @throws IOException  if the connection has closed, fails, or sends a frame that is too large
+     */
+    private void read(Connection connection) throws IOException {
+        while (true) {
+            ByteBuffer buffer = connection.body != null ? connection.body : connection.header;
+            int count = connection.channel.read(buffer);
+            if (count == -1) {
+                throw new IOException("Connection closed");
+            }
+            if (buffer.hasRemaining()) {
+                return;
+            }
+            if (connection.body == null) {
+                int length = connection.header.getInt(0);
+                if (length <= 0 || length > this.maxFrameSize) {
+                    throw new IOException("Frame of " + length + " bytes refused");
+                }
+                connection.body = ByteBuffer.allocate(length);
+            } else {
+                byte[] frame = connection.body.array();
+                connection.header.clear();
+                connection.body = null;
+                this.activeCalls.incrementAndGet();
+                ExecutorService executor = this.isBulk(connection, frame) ? this.workers : this.interactiveWorkers;
+                executor.execute(() -> this.call(connection, frame));
+                if (connection.inFlight.incrementAndGet() >= this.maxInFlight) {
+                    this.updateInterest(connection);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Decides whether a request frame asks for a call that moves file data, from the object and method it names.
+     * Frames too short to name them are left for the interactive workers to reject.
+     * @param connection  the connection the request came from
+     * @param frame  the request frame, without its length
+     * @return  true if the call should run on the bulk workers
+     */
+    private boolean isBulk(Connection connection, byte[] frame) {
+        if (frame.length < 15) {
+            return false;
+        }
+        ByteBuffer request = ByteBuffer.wrap(frame);
+        Exported exported = connection.objects.get(request.getLong(5));
+        if (exported == null) {
+            return false;
+        }
+        if (BULK_TYPES.contains(exported.type)) {
+            return true;
+        }
+        Method[] methods = FrameCodec.methods(exported.type);
+        int methodIndex = request.getShort(13) & 0xffff;
+        if (methodIndex >= methods.length) {
+            return false;
+        }
+        Method method = methods[methodIndex];
+        return BULK_TYPES.contains(method.getReturnType())
+                || (exported.object == this.root && BULK_METHODS.contains(method.getName()));
+    }
+
+    /**
+     * Writes as many queued response frames to a connection as it will take. Every response sent frees a place for
+     * another call in flight.
+     * @param connection  the connection to write to
+     * @throws IOException  if the connection fails
+     */
+    private void write(Connection connection) throws IOException {
+        for (ByteBuffer buffer; (buffer = connection.writes.peek()) != null; ) {
+            connection.channel.write(buffer);
+            if (buffer.hasRemaining()) {
+                break;
+            }
+            connection.writes.poll();
+            connection.inFlight.decrementAndGet();
+        }
+        this.updateInterest(connection);
+    }
+
+    /**
+     * Sets what the selector waits for on a connection: requests while it has room for more calls in flight, and
+     * room to write while it has responses queued. Runs on the selector thread.
+     * @param connection  the connection
+     */
+    private void updateInterest(Connection connection) {
+        if (! connection.key.isValid()) {
+            return;
+        }
+        int ops = connection.inFlight.get() < this.maxInFlight ? SelectionKey.OP_READ : 0;
+        if (! connection.writes.isEmpty()) {
+            ops |= SelectionKey.OP_WRITE;
+        }
+        connection.key.interestOps(ops);
+    }
+
+    /**
+     * Makes the call a request frame asks for and queues the response. A remote object returned by the call is added
+     * to the connection's objects and its id sent back, and an object that is closed is removed from them. Runs on a
+     * worker thread.
+     * @param connection  the connection the request came from
+     * @param frame  the request frame, without its length
+     */
+    private void call(Connection connection, byte[] frame) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(frame));
+            if (in.readByte() != FrameCodec.REQUEST) {
+                throw new IOException("Malformed frame: not a request");
+            }
+            int callId = in.readInt();
+            long objectId = in.readLong();
+            int methodIndex = in.readUnsignedShort();
+            Object[] args = new Object[in.readUnsignedByte()];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = FrameCodec.readValue(in);
+            }
+            out.writeInt(0);
+            try {
+                Exported exported = connection.objects.get(objectId);
+                if (exported == null) {
+                    throw new NoSuchObjectException("No such object: " + objectId);
+                }
+                Method[] methods = FrameCodec.methods(exported.type);
+                if (methodIndex >= methods.length || methods[methodIndex].getParameterCount() != args.length) {
+                    throw new IOException("No such method: " + methodIndex);
+                }
+                Method method = methods[methodIndex];
+                Object result = this.invoke(connection, exported.object, method, args);
+                if (objectId != FrameCodec.ROOT_ID && "close".equals(method.getName()) && args.length == 0) {
+                    connection.objects.remove(objectId);
+                }
+                if (result instanceof Remote) {
+                    long id = connection.nextId.incrementAndGet();
+                    connection.objects.put(id, new Exported((Remote) result, method.getReturnType()));
+                    out.writeByte(FrameCodec.REMOTE);
+                    out.writeInt(callId);
+                    out.writeLong(id);
+                } else {
+                    out.writeByte(FrameCodec.RESULT);
+                    out.writeInt(callId);
+                    FrameCodec.writeValue(out, result);
+                }
+            } catch (Exception exp) {
+                bytes.reset();
+                out.writeInt(0);
+                out.writeByte(FrameCodec.ERROR);
+                out.writeInt(callId);
+                FrameCodec.writeValue(out, exp);
+            }
+            ByteBuffer response = ByteBuffer.wrap(bytes.toByteArray());
+            response.putInt(0, response.capacity() - 4);
+            connection.writes.add(response);
+            this.writable.add(connection);
+            this.selector.wakeup();
+        } catch (IOException exp) {
+            this.disconnect(connection);
+        } finally {
+            this.activeCalls.decrementAndGet();
+        }
+    }
+
+    /**
+     * Calls a method of an object on behalf of a connection's client.
+     * @param connection  the connection making the call
+     * @param object  the object to call
+     * @param method  the method to call
+     * @param args  the arguments of the call
+     * @return  the result of the call
+     * @throws Exception  whatever the call throws
+     */
+    private Object invoke(Connection connection, Remote object, Method method, Object[] args) throws Exception {
+        CLIENT.set(connection.host);
+        try {
+            return method.invoke(object, args);
+        } catch (InvocationTargetException exp) {
+            if (exp.getCause() instanceof Exception) {
+                throw (Exception) exp.getCause();
+            }
+            throw exp;
+        } finally {
+            CLIENT.remove();
+        }
+    }
+
+    /**
+     * Closes a connection and tells the objects it still holds that they are unreferenced.
+     * @param connection  the connection to close
+     */
+    private void disconnect(Connection connection) {
+        if (! this.connections.remove(connection)) {
+            return;
+        }
+        connection.key.cancel();
+        try {
+            connection.channel.close();
+        } catch (IOException exp) {
+            exp.printStackTrace();
+        }
+        for (Exported exported : connection.objects.values()) {
+            if (exported.object instanceof Unreferenced) {
+                this.workers.execute(((Unreferenced) exported.object)::unreferenced);
+            }
+        }
+        connection.objects.clear();
+    }
+}
@@ -0,0 +1,267 @@
+package edu.gmu.swe622.pa2;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Serializable;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A Merkle tree of SHA-256 digests over a file. The file is split into leaves of a fixed size, each leaf is hashed,
+ * and pairs of digests are hashed together up to a single root. Two files are identical if their roots are equal,
+ * and comparing leaves shows how long a prefix two files have in common.
+ */
+public class HashTree implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The algorithm every node is hashed with.
+     */
+    public static final String ALGORITHM = "SHA-256";
+
+    /**
+     * The number of bytes in each digest.
+     */
+    public static final int DIGEST_LENGTH = 32;
+
+    /**
+     * The number of leaves each task hashes when a tree is computed in parallel.
+     */
+    private static final int LEAVES_PER_TASK = 8;
+
+    /**
+     * Hashes leaves of files being read in full.
+     */
+    private static final ExecutorService HASH_EXECUTOR = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), runnable -> {
+                Thread thread = new Thread(runnable, "fss-hasher");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private int leafSize;
+    private long length;
+    private byte[] leaves;
+    private byte[] root;
+
+    /**
+     * Constructor.
+     * @param leafSize  the number of bytes in each leaf
+     * @param length  the number of bytes in the file
+     * @param leaves  the digests of the leaves, one after another
+     */
+    public HashTree(int leafSize, long length, byte[] leaves) {
+        this.leafSize = leafSize;
+        this.length = length;
+        this.leaves = leaves;
+        this.root = computeRoot(leaves);
+    }
+
+    /**
+     * Creates a digest for the nodes of the tree.
+     * @return  a new SHA-256 digest
+     */
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException exp) {
+            throw new IllegalStateException(ALGORITHM + " is not available", exp);
+        }
+    }
+
+    /**
+     * Returns the number of leaves a file of the given length is split into.
+     * @param length  the number of bytes in the file
+     * @param leafSize  the number of bytes in each leaf
+     * @return  the count of leaves; an empty file has none
+     */
+    public static int leafCount(long length, int leafSize) {
+        return (int) ((length + leafSize - 1) / leafSize);
+    }
+
+    /**
+     * Checks a leaf size requested by a client.
+     * @param leafSize  the number of bytes in each leaf
+     * @throws IllegalArgumentException  if leafSize is smaller than Constants.MIN_CHUNK_SIZE
+     */
+    public static void checkLeafSize(int leafSize) {
+        if (leafSize < Constants.MIN_CHUNK_SIZE) {
+            throw new IllegalArgumentException("Leaf size must be >= " + Constants.MIN_CHUNK_SIZE);
+        }
+    }
+
+    /**
+     * Reads the first length bytes of a source and computes their tree, hashing leaves on a shared pool.
+     * @param source  the source to read
+     * @param length  the number of bytes to hash
+     * @param leafSize  the number of bytes in each leaf
+     * @return  the tree of the bytes
+     * @throws IOException  if the source cannot be read or is shorter than length
+     * @throws IllegalArgumentException  if leafSize is not positive
+     */
+    public static HashTree compute(ChunkSource source, long length, int leafSize) throws IOException {
+        if (leafSize <= 0) {
+            throw new IllegalArgumentException("Leaf size must be > 0");
+        }
+        int count = leafCount(length, leafSize);
+        byte[] leaves = new byte[count * DIGEST_LENGTH];
+        List<Future<?>> tasks = new ArrayList<>();
+        for (int first = 0; first < count; first += LEAVES_PER_TASK) {
+            final int from = first;
+            final int to = Math.min(count, first + LEAVES_PER_TASK);
+            tasks.add(HASH_EXECUTOR.submit(() -> {
+                MessageDigest digest = newDigest();
+                for (int leaf = from; leaf < to; leaf++) {
+                    long offset = (long) leaf * leafSize;
+                    int size = (int) Math.min(leafSize, length - offset);
+                    byte[] data = source.read(offset, size);
+                    if (data.length != size) {
+                        throw new IOException("File is shorter than " + length + " bytes");
+                    }
+                    digest.update(data);
+                    System.arraycopy(digest.digest(), 0, leaves, leaf * DIGEST_LENGTH, DIGEST_LENGTH);
+                }
+                return null;
+            }));
+        }
+        try {
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        } catch (ExecutionException exp) {
+            if (exp.getCause() instanceof IOException) {
+                throw (IOException) exp.getCause();
+            }
+            throw new IOException(exp.getCause().getMessage(), exp.getCause());
+        } catch (InterruptedException exp) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while hashing");
+        } finally {
+            tasks.forEach(task -> task.cancel(true));
+        }
+        return new HashTree(leafSize, length, leaves);
+    }
+
+    /**
+     * Hashes leaf digests pairwise up to a single root; an unpaired digest moves up a level unchanged.
+     * @param leaves  the digests of the leaves, one after another
+     * @return  the root digest, which for no leaves is the digest of no bytes
+     */
+    private static byte[] computeRoot(byte[] leaves) {
+        MessageDigest digest = newDigest();
+        if (leaves.length == 0) {
+            return digest.digest();
+        }
+        byte[] level = leaves;
+        while (level.length > DIGEST_LENGTH) {
+            int nodes = level.length / DIGEST_LENGTH;
+            byte[] next = new byte[(nodes + 1) / 2 * DIGEST_LENGTH];
+            for (int i = 0; i < nodes; i += 2) {
+                if (i + 1 < nodes) {
+                    digest.update(level, i * DIGEST_LENGTH, 2 * DIGEST_LENGTH);
+                    System.arraycopy(digest.digest(), 0, next, i / 2 * DIGEST_LENGTH, DIGEST_LENGTH);
+                } else {
+                    System.arraycopy(level, i * DIGEST_LENGTH, next, i / 2 * DIGEST_LENGTH, DIGEST_LENGTH);
+                }
+            }
+            level = next;
+        }
+        return level;
+    }
+
+    /**
+     * Returns the length of the prefix this file has in common with another, as far as their leaves show. A leaf
+     * only counts if it covers the same bytes in both files, so the result ends on a leaf boundary unless both files
+     * end at the same place.
+     * @param other  the tree of the other file
+     * @return  the number of leading bytes the files are known to share
+     * @throws IllegalArgumentException  if the trees have different leaf sizes
+     */
+    public long matchingLength(HashTree other) {
+        if (this.leafSize != other.leafSize) {
+            throw new IllegalArgumentException("Hash trees have different leaf sizes");
+        }
+        long matching = 0;
+        int leaves = Math.min(this.getLeafCount(), other.getLeafCount());
+        for (int leaf = 0; leaf < leaves; leaf++) {
+            long end = Math.min(this.length, (long) (leaf + 1) * this.leafSize);
+            if (end != Math.min(other.length, (long) (leaf + 1) * this.leafSize)) {
+                break;
+            }
+            int from = leaf * DIGEST_LENGTH;
+            if (! Arrays.equals(Arrays.copyOfRange(this.leaves, from, from + DIGEST_LENGTH),
+                    Arrays.copyOfRange(other.leaves, from, from + DIGEST_LENGTH))) {
+                break;
+            }
+            matching = end;
+        }
+        return matching;
+    }
+
+    /**
+     * Returns true if another tree describes the same bytes.
+     * @param other  the tree of the other file
+     * @return  true if the lengths and roots are equal
+     */
+    public boolean matches(HashTree other) {
+        return this.length == other.length && Arrays.equals(this.root, other.root);
+    }
+
+    /**
+     * Getter for the leaf size.
+     * @return  the number of bytes in each leaf
+     */
+    public int getLeafSize() {
+        return this.leafSize;
+    }
+
+    /**
+     * Getter for the length.
+     * @return  the number of bytes in the file
+     */
+    public long getLength() {
+        return this.length;
+    }
+
+    /**
+     * Returns the number of leaves.
+     * @return  the count of leaf digests
+     */
+    public int getLeafCount() {
+        return this.leaves.length / DIGEST_LENGTH;
+    }
+
+    /**
+     * Returns the digests of the first leaves.
+     * @param count  the number of leaves
+     * @return  the digests of the leaves, one after another
+     */
+    public byte[] getLeaves(int count) {
+        return Arrays.copyOf(this.leaves, count * DIGEST_LENGTH);
+    }
+
+    /**
+     * Getter for the root.
+     * @return  the root digest
+     */
+    public byte[] getRoot() {
+        return this.root.clone();
+    }
+
+    /**
+     * Formats the root digest.
+     * @return  the root digest in hexadecimal
+     */
+    @Override
+    public String toString() {
+        return ChunkStore.toHex(this.root);
+    }
+}
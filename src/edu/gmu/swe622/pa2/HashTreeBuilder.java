@@ -0,0 +1,124 @@
+package edu.gmu.swe622.pa2;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+
+/**
+ * Builds a HashTree from bytes that arrive in file order, hashing each leaf as it fills so that the tree is ready as
+ * soon as the last byte has been seen. A builder can start from the leaves of a prefix that has already been hashed.
+ */
+public class HashTreeBuilder {
+
+    private int leafSize;
+    private ByteArrayOutputStream leaves = new ByteArrayOutputStream();
+    private MessageDigest digest = HashTree.newDigest();
+    private int leafFill;
+    private long position;
+
+    /**
+     * Constructor for a builder that starts at the beginning of the file.
+     * @param leafSize  the number of bytes in each leaf
+     * @throws IllegalArgumentException  if leafSize is not positive
+     */
+    public HashTreeBuilder(int leafSize) {
+        if (leafSize <= 0) {
+            throw new IllegalArgumentException("Leaf size must be > 0");
+        }
+        this.leafSize = leafSize;
+    }
+
+    /**
+     * Constructor for a builder that continues after the full leaves of a prefix. The builder's position is the end
+     * of the last full leaf of the prefix that lies within start; the bytes from there up to start must be passed to
+     * update before the bytes after start.
+     * @param prefix  the tree of a prefix of the file
+     * @param start  the position the caller will continue from, at most the length of the prefix
+     */
+    public HashTreeBuilder(HashTree prefix, long start) {
+        this(prefix.getLeafSize());
+        int full = (int) (Math.min(start, prefix.getLength()) / this.leafSize);
+        this.leaves.write(prefix.getLeaves(full), 0, full * HashTree.DIGEST_LENGTH);
+        this.position = (long) full * this.leafSize;
+    }
+
+    /**
+     * Creates a builder that continues from start after a prefix that has already been hashed, reading the bytes
+     * between the last full leaf of the prefix and start from source.
+     * @param prefix  the tree of a prefix of the file
+     * @param start  the position the caller will continue from, at most the length of the prefix
+     * @param source  the file, to read the bytes of a partial leaf from
+     * @return  a builder positioned at start
+     * @throws IOException  if the partial leaf cannot be read
+     */
+    public static HashTreeBuilder resume(HashTree prefix, long start, ChunkSource source) throws IOException {
+        HashTreeBuilder builder = new HashTreeBuilder(prefix, start);
+        int tail = (int) (start - builder.getPosition());
+        if (tail > 0) {
+            byte[] data = source.read(builder.getPosition(), tail);
+            if (data.length != tail) {
+                throw new IOException("File is shorter than " + start + " bytes");
+            }
+            builder.update(data, 0, tail);
+        }
+        return builder;
+    }
+
+    /**
+     * Returns the position in the file of the next byte to pass to update.
+     * @return  the number of bytes hashed so far
+     */
+    public long getPosition() {
+        return this.position;
+    }
+
+    /**
+     * Hashes the next bytes of the file.
+     * @param data  the array holding the bytes
+     * @param offset  the index of the first byte
+     * @param length  the number of bytes
+     */
+    public void update(byte[] data, int offset, int length) {
+        while (length > 0) {
+            int count = Math.min(length, this.leafSize - this.leafFill);
+            this.digest.update(data, offset, count);
+            this.leafFill += count;
+            this.position += count;
+            offset += count;
+            length -= count;
+            if (this.leafFill == this.leafSize) {
+                this.finishLeaf();
+            }
+        }
+    }
+
+    /**
+     * Returns the tree of every byte passed so far.
+     * @return  the tree, including a final partial leaf
+     */
+    public HashTree build() {
+        byte[] leaves = this.leaves.toByteArray();
+        if (this.leafFill > 0) {
+            try {
+                MessageDigest partial = (MessageDigest) this.digest.clone();
+                byte[] last = partial.digest();
+                byte[] all = new byte[leaves.length + HashTree.DIGEST_LENGTH];
+                System.arraycopy(leaves, 0, all, 0, leaves.length);
+                System.arraycopy(last, 0, all, leaves.length, last.length);
+                leaves = all;
+            } catch (CloneNotSupportedException exp) {
+                throw new IllegalStateException("Digest cannot be cloned", exp);
+            }
+        }
+        return new HashTree(this.leafSize, this.position, leaves);
+    }
+
+    /**
+     * Records the digest of the leaf that has just filled up.
+     */
+    private void finishLeaf() {
+        byte[] leaf = this.digest.digest();
+        this.leaves.write(leaf, 0, leaf.length);
+        this.leafFill = 0;
+    }
+}
@@ -0,0 +1,77 @@
+package edu.gmu.swe622.pa2;
+
+import java.io.Serializable;
+
+/**
+ * Settings for a directory listing: which entries to return, in what order, and how many in each page.
+ */
+public class ListOptions implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private String glob;
+    private DirOrder order;
+    private boolean descending;
+    private int pageSize;
+
+    /**
+     * Constructor.
+     * @param glob  a glob pattern that entry names must match, or null to return every entry
+     * @param order  the order to return entries in
+     * @param descending  true to reverse the order
+     * @param pageSize  the most entries to return in each page
+     * @throws IllegalArgumentException  if order is null or pageSize is not positive
+     */
+    public ListOptions(String glob, DirOrder order, boolean descending, int pageSize) {
+        if (order == null) {
+            throw new IllegalArgumentException("Order must not be null");
+        }
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be > 0");
+        }
+        this.glob = glob;
+        this.order = order;
+        this.descending = descending;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Returns options for an unfiltered listing in file system order with the page size configured in Constants.
+     * @return  the default listing options
+     */
+    public static ListOptions defaults() {
+        return new ListOptions(null, DirOrder.NONE, false, Constants.DIR_PAGE_SIZE);
+    }
+
+    /**
+     * Getter for the glob pattern.
+     * @return  the glob pattern that entry names must match, or null if every entry is returned
+     */
+    public String getGlob() {
+        return this.glob;
+    }
+
+    /**
+     * Getter for the order.
+     * @return  the order to return entries in
+     */
+    public DirOrder getOrder() {
+        return this.order;
+    }
+
+    /**
+     * Returns whether the order is reversed.
+     * @return  true if entries are returned in reverse order
+     */
+    public boolean isDescending() {
+        return this.descending;
+    }
+
+    /**
+     * Getter for the page size.
+     * @return  the most entries to return in each page
+     */
+    public int getPageSize() {
+        return this.pageSize;
+    }
+}
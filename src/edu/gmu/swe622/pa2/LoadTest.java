@@ -0,0 +1,437 @@
+package edu.gmu.swe622.pa2;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Puts a server under the load of many clients at once, for finding how it behaves under concurrency and, over long
+ * runs, whether it leaks resources. Each simulated client runs in its own thread with its own connection and works
+ * in its own directory on the server, repeatedly picking an operation from a weighted mix, uploading files whose
+ * sizes are picked from a weighted distribution, downloading, listing and deleting the files it uploaded, and pausing
+ * for a random think time between operations. Progress is printed at intervals together with the server's open
+ * sessions, open files and threads; at the end the throughput, errors and latency percentiles of each operation are
+ * printed, and once the server has had time to settle its sessions, files and threads are compared with what they
+ * were before the run, after a warm-up.
+ */
+public class LoadTest {
+
+    /**
+     * What is recorded about one kind of operation.
+     */
+    private static class Stats {
+        private LatencyHistogram latency = new LatencyHistogram();
+        private LongAdder errors = new LongAdder();
+        private volatile String lastError;
+    }
+
+    private static final String[] OPERATIONS = { "upload", "download", "dir", "rm" };
+    private static final String[] RESOURCES = { "sessions.open", "process.files.open", "process.threads" };
+    private static final String[] LEAK_CHECKED = { "sessions.open", "process.files.open" };
+
+    private String hostName;
+    private int port;
+    private Transport transport;
+    private int clients;
+    private long durationMillis;
+    private Map<String, Integer> mix;
+    private Map<Long, Integer> sizes;
+    private String root = "loadtest-" + ManagementFactory.getRuntimeMXBean().getName().replaceAll("\\W", "-");
+    private Path scratch;
+    private Map<Long, Path> files = new LinkedHashMap<>();
+    private Map<String, Stats> stats = new LinkedHashMap<>();
+    private PrintStream out = System.out;
+
+    /**
+     * Constructor.
+     * @param hostName  the host the server runs on
+     * @param port  the port of the server's registry, or of the server itself for the framed transport
+     * @param transport  how the clients reach the server
+     * @param clients  the number of simulated clients
+     * @param durationSeconds  how long to run for
+     * @throws IllegalArgumentException  if clients or durationSeconds is not positive, or the operation mix or the
+     *                                   size distribution is invalid
+     */
+    public LoadTest(String hostName, int port, Transport transport, int clients, long durationSeconds) {
+        if (clients <= 0 || durationSeconds <= 0) {
+            throw new IllegalArgumentException("Number of clients and duration must be > 0");
+        }
+        this.hostName = hostName;
+        this.port = port;
+        this.transport = transport;
+        this.clients = clients;
+        this.durationMillis = TimeUnit.SECONDS.toMillis(durationSeconds);
+        this.mix = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> entry : this.parseWeights(Constants.LOAD_MIX).entrySet()) {
+            if (! Stream.of(OPERATIONS).anyMatch(entry.getKey()::equals)) {
+                throw new IllegalArgumentException("Unknown operation in mix: " + entry.getKey());
+            }
+            this.mix.put(entry.getKey(), entry.getValue());
+        }
+        this.sizes = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> entry : this.parseWeights(Constants.LOAD_SIZES).entrySet()) {
+            try {
+                this.sizes.put(Long.valueOf(entry.getKey()), entry.getValue());
+            } catch (NumberFormatException exp) {
+                throw new IllegalArgumentException("Invalid file size: " + entry.getKey());
+            }
+        }
+        for (String operation : OPERATIONS) {
+            this.stats.put(operation, new Stats());
+        }
+    }
+
+    /**
+     * Runs the load test and prints its report.
+     * @return  true if the server's resources returned to where they were before the run
+     * @throws Exception  if the server cannot be reached, or the test files cannot be created or cleaned up
+     */
+    public boolean run() throws Exception {
+        FileSharingSystem fss = this.transport.connect(this.hostName, this.port);
+        this.scratch = Files.createTempDirectory("fss-load");
+        PrintStream quiet = new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+        });
+        ExecutorService pool = Executors.newFixedThreadPool(this.clients);
+        try {
+            for (long size : this.sizes.keySet()) {
+                Path file = this.scratch.resolve(size + ".bin");
+                this.createFile(file, size);
+                this.files.put(size, file);
+            }
+            System.setOut(quiet);
+            fss.mkdir(this.root);
+            this.warmUp();
+            Map<String, Long> before = this.resources(fss);
+            this.out.println("Running " + this.clients + " clients for " + this.durationMillis / 1000
+                    + " seconds against " + this.transport.getName() + "://" + this.hostName + ":" + this.port
+                    + ", working in /" + this.root);
+            long start = System.nanoTime();
+            long deadline = start + TimeUnit.MILLISECONDS.toNanos(this.durationMillis);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < this.clients; i++) {
+                int client = i;
+                futures.add(pool.submit(() -> {
+                    this.simulate(client, deadline);
+                    return null;
+                }));
+            }
+            this.report(fss, futures, start);
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            long elapsed = System.nanoTime() - start;
+            System.setOut(this.out);
+            this.printSummary(elapsed);
+            this.cleanUp(fss);
+            return this.checkLeaks(fss, before);
+        } finally {
+            System.setOut(this.out);
+            pool.shutdownNow();
+            try (Stream<Path> walk = Files.list(this.scratch)) {
+                for (Path path : (Iterable<Path>) walk::iterator) {
+                    Files.deleteIfExists(path);
+                }
+            }
+            Files.deleteIfExists(this.scratch);
+        }
+    }
+
+    /**
+     * Runs one simulated client until the deadline. The client connects on its own, creates its directory and then
+     * runs operations picked from the mix, keeping track of the files it has uploaded, and disconnects at the end.
+     * @param client  the number of the client
+     * @param deadline  the value of System.nanoTime at which to stop
+     * @throws Exception  if the client cannot connect or create its directory
+     */
+    private void simulate(int client, long deadline) throws Exception {
+        try (FSSClient fssClient = new FSSClient(this.hostName, this.port, this.transport)) {
+            String dir = this.root + "/client" + client;
+            fssClient.doAction(Action.MKDIR, new String[] { dir });
+            Path downloads = Files.createDirectory(this.scratch.resolve("client" + client));
+            List<String> uploaded = new ArrayList<>();
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long next = 0;
+            try {
+                while (System.nanoTime() < deadline) {
+                    String operation = this.pick(this.mix, random);
+                    if (uploaded.isEmpty() && ! "dir".equals(operation)) {
+                        operation = "upload";
+                    }
+                    String remote = uploaded.isEmpty() ? null : uploaded.get(random.nextInt(uploaded.size()));
+                    long start = System.nanoTime();
+                    try {
+                        switch (operation) {
+                            case "upload":
+                                Path file = this.files.get(this.pick(this.sizes, random));
+                                remote = dir + "/file" + next++;
+                                fssClient.doAction(Action.UPLOAD, new String[] { file.toString(), remote });
+                                uploaded.add(remote);
+                                break;
+                            case "download":
+                                Path local = downloads.resolve("download.bin");
+                                Files.deleteIfExists(local);
+                                fssClient.doAction(Action.DOWNLOAD, new String[] { remote, local.toString() });
+                                break;
+                            case "dir":
+                                fssClient.doAction(Action.DIR, new String[] { dir });
+                                break;
+                            default:
+                                uploaded.remove(remote);
+                                fssClient.doAction(Action.RM, new String[] { remote });
+                                break;
+                        }
+                        this.stats.get(operation).latency.record(System.nanoTime() - start);
+                    } catch (Exception exp) {
+                        Stats failed = this.stats.get(operation);
+                        failed.errors.increment();
+                        failed.lastError = exp.getMessage() != null ? exp.getMessage() : exp.toString();
+                    }
+                    if (Constants.LOAD_THINK_MILLIS > 0) {
+                        double think = -Math.log(1 - random.nextDouble()) * Constants.LOAD_THINK_MILLIS;
+                        TimeUnit.MICROSECONDS.sleep((long) (think * 1000));
+                    }
+                }
+            } finally {
+                try (Stream<Path> walk = Files.list(downloads)) {
+                    for (Path path : (Iterable<Path>) walk::iterator) {
+                        Files.deleteIfExists(path);
+                    }
+                }
+                Files.deleteIfExists(downloads);
+            }
+        }
+    }
+
+    /**
+     * Uploads, downloads and removes one file before the run, so that what the server opens on first use and keeps
+     * open, such as the random number sources of the JDK, is not taken for a leak.
+     * @throws Exception  if the client cannot connect or an operation fails
+     */
+    private void warmUp() throws Exception {
+        try (FSSClient fssClient = new FSSClient(this.hostName, this.port, this.transport)) {
+            Path file = this.files.values().iterator().next();
+            String remote = this.root + "/warmup";
+            Path local = this.scratch.resolve("warmup.bin");
+            fssClient.doAction(Action.UPLOAD, new String[] { file.toString(), remote });
+            fssClient.doAction(Action.DOWNLOAD, new String[] { remote, local.toString() });
+            fssClient.doAction(Action.RM, new String[] { remote });
+            Files.deleteIfExists(local);
+        }
+    }
+
+    /**
+     * Prints progress at every report interval until all the clients have finished: the operations done and failed
+     * so far, the throughput since the last report, and the server's sessions, open files and threads.
+     * @param fss  the server
+     * @param futures  the running clients
+     * @param start  the value of System.nanoTime when the clients started
+     * @throws InterruptedException  if interrupted while waiting
+     */
+    private void report(FileSharingSystem fss, List<Future<?>> futures, long start) throws InterruptedException {
+        long lastCount = 0;
+        long lastTime = start;
+        while (futures.stream().anyMatch((future) -> ! future.isDone())) {
+            TimeUnit.MILLISECONDS.sleep(100);
+            long now = System.nanoTime();
+            if (now - lastTime < TimeUnit.SECONDS.toNanos(Constants.LOAD_REPORT_SECONDS)) {
+                continue;
+            }
+            long count = 0;
+            long errors = 0;
+            for (Stats stats : this.stats.values()) {
+                count += stats.latency.getCount();
+                errors += stats.errors.sum();
+            }
+            StringBuilder line = new StringBuilder();
+            line.append(String.format("%6ds %10d ops %8.1f ops/s %6d errors",
+                    TimeUnit.NANOSECONDS.toSeconds(now - start), count, (count - lastCount) / ((now - lastTime) / 1e9),
+                    errors));
+            try {
+                this.resources(fss).forEach((name, value) -> line.append("  ").append(name).append('=').append(value));
+            } catch (IOException exp) {
+                line.append("  server metrics unavailable: ").append(exp.getMessage());
+            }
+            this.out.println(line);
+            lastCount = count;
+            lastTime = now;
+        }
+    }
+
+    /**
+     * Prints the throughput, errors and latency percentiles of each operation.
+     * @param elapsed  how long the clients ran for in nanoseconds
+     */
+    private void printSummary(long elapsed) {
+        double seconds = elapsed / 1e9;
+        this.out.println(String.format("%-9s %9s %8s %9s %9s %9s %9s %9s %9s", "operation", "count", "errors",
+                "ops/s", "mean(us)", "p50(us)", "p90(us)", "p99(us)", "max(us)"));
+        for (Map.Entry<String, Stats> entry : this.stats.entrySet()) {
+            LatencyHistogram latency = entry.getValue().latency;
+            this.out.println(String.format("%-9s %9d %8d %9.1f %9d %9d %9d %9d %9d", entry.getKey(),
+                    latency.getCount(), entry.getValue().errors.sum(), latency.getCount() / seconds,
+                    latency.getMean(), latency.getPercentile(0.5), latency.getPercentile(0.9),
+                    latency.getPercentile(0.99), latency.getMax()));
+        }
+        for (Map.Entry<String, Stats> entry : this.stats.entrySet()) {
+            if (entry.getValue().lastError != null) {
+                this.out.println("Last " + entry.getKey() + " error: " + entry.getValue().lastError);
+            }
+        }
+    }
+
+    /**
+     * Deletes the files and directories the clients left on the server.
+     * @param fss  the server
+     * @throws IOException  if the files cannot be listed or deleted
+     */
+    private void cleanUp(FileSharingSystem fss) throws IOException {
+        for (String dir : fss.dir(this.root)) {
+            String dirPath = this.root + "/" + dir;
+            for (String file : fss.dir(dirPath)) {
+                fss.rm(dirPath + "/" + file);
+            }
+            fss.rmdir(dirPath);
+        }
+        fss.rmdir(this.root);
+    }
+
+    /**
+     * Waits for the server's sessions and open files to return to where they were before the run, then compares its
+     * resources with what they were and prints the difference. Threads are printed but not checked, since the
+     * server's thread pools start their threads as they are first needed and keep them.
+     * @param fss  the server
+     * @param before  the server's resources before the run
+     * @return  true if neither the sessions nor the open files grew
+     * @throws IOException  if the server's metrics cannot be read
+     * @throws InterruptedException  if interrupted while waiting
+     */
+    private boolean checkLeaks(FileSharingSystem fss, Map<String, Long> before)
+            throws IOException, InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Constants.LOAD_SETTLE_MILLIS);
+        Map<String, Long> after = this.resources(fss);
+        while (System.nanoTime() < deadline && this.grown(before, after)) {
+            TimeUnit.MILLISECONDS.sleep(250);
+            after = this.resources(fss);
+        }
+        boolean clean = true;
+        for (Map.Entry<String, Long> entry : before.entrySet()) {
+            Long value = after.get(entry.getKey());
+            if (value == null) {
+                continue;
+            }
+            boolean leaked = value > entry.getValue() && Stream.of(LEAK_CHECKED).anyMatch(entry.getKey()::equals);
+            clean &= ! leaked;
+            this.out.println(entry.getKey() + ": " + entry.getValue() + " before, " + value + " after"
+                    + (leaked ? "  POSSIBLE LEAK" : ""));
+        }
+        return clean;
+    }
+
+    /**
+     * Checks whether the server's sessions or open files have grown.
+     * @param before  the resources before the run
+     * @param after  the resources now
+     * @return  true if either is higher now
+     */
+    private boolean grown(Map<String, Long> before, Map<String, Long> after) {
+        return Stream.of(LEAK_CHECKED).anyMatch((name) -> before.containsKey(name) && after.containsKey(name)
+                && after.get(name) > before.get(name));
+    }
+
+    /**
+     * Reads the server's open sessions, open files and threads from its metrics.
+     * @param fss  the server
+     * @return  the values of the resources the server reports, by name
+     * @throws IOException  if the metrics cannot be read
+     */
+    private Map<String, Long> resources(FileSharingSystem fss) throws IOException {
+        Map<String, Long> resources = new LinkedHashMap<>();
+        for (String line : fss.stats()) {
+            String[] words = line.split(" ");
+            if (words.length == 2 && Stream.of(RESOURCES).anyMatch(words[0]::equals)) {
+                resources.put(words[0], Long.valueOf(words[1]));
+            }
+        }
+        return resources;
+    }
+
+    /**
+     * Picks a key at random, with a probability proportional to its weight.
+     * @param weights  the keys and their weights
+     * @param random  the source of randomness
+     * @param <K>  the type of the keys
+     * @return  the key picked
+     */
+    private <K> K pick(Map<K, Integer> weights, Random random) {
+        int total = weights.values().stream().mapToInt(Integer::intValue).sum();
+        int value = random.nextInt(total);
+        for (Map.Entry<K, Integer> entry : weights.entrySet()) {
+            value -= entry.getValue();
+            if (value < 0) {
+                return entry.getKey();
+            }
+        }
+        throw new IllegalStateException("Weights changed while picking");
+    }
+
+    /**
+     * Parses a comma separated list of name:weight pairs. A pair without a weight has a weight of 1.
+     * @param list  the list to parse
+     * @return  the weights by name, in the order of the list
+     * @throws IllegalArgumentException  if a weight is not a number >= 0, or all the weights are 0
+     */
+    private Map<String, Integer> parseWeights(String list) {
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        for (String pair : list.split(",")) {
+            String[] parts = pair.trim().split(":");
+            try {
+                int weight = parts.length > 1 ? Integer.parseInt(parts[1].trim()) : 1;
+                if (weight < 0) {
+                    throw new IllegalArgumentException("Weights must be >= 0: " + pair);
+                }
+                weights.put(parts[0].trim(), weight);
+            } catch (NumberFormatException exp) {
+                throw new IllegalArgumentException("Invalid weight: " + pair);
+            }
+        }
+        if (weights.values().stream().mapToInt(Integer::intValue).sum() <= 0) {
+            throw new IllegalArgumentException("At least one weight must be > 0: " + list);
+        }
+        return weights;
+    }
+
+    /**
+     * Creates a file of random bytes.
+     * @param file  the file to create
+     * @param size  the number of bytes in the file
+     * @throws IOException  if the file cannot be written
+     */
+    private void createFile(Path file, long size) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        Random random = new Random(size);
+        try (OutputStream stream = Files.newOutputStream(file)) {
+            for (long written = 0; written < size; written += buffer.length) {
+                random.nextBytes(buffer);
+                stream.write(buffer, 0, (int) Math.min(buffer.length, size - written));
+            }
+        }
+    }
+}
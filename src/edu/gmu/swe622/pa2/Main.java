@@ -1,6 +1,7 @@
 package edu.gmu.swe622.pa2;
 
 import java.rmi.Naming;
+import java.rmi.server.UnicastRemoteObject;
 import java.util.stream.Stream;
 
 /**
@@ -14,14 +15,21 @@ public class Main {
     private static void printUsage() {
         Stream.of(
                 "Usage:",
-                "server start <portnumber>",
+                "server start <portnumber> [rmi|frame]",
                 "client upload <path_on_client> </path/filename/on/server>",
                 "client download </path/existing_filename/on/server> <path_on_client>",
-                "client dir <path/existing_directory/on/server>",
+                "client dir <path/existing_directory/on/server> [glob] [name|size|modified|-name|-size|-modified]",
                 "client mkdir </path/new_directory/on/server>",
                 "client rmdir <path/existing_directory/on/server>",
                 "client rm </path/existing_filename/on/server>",
-                "client shutdown"
+                "client rename </path/existing_file_or_directory/on/server> </path/new_name/on/server>",
+                "client copy </path/existing_file_or_directory/on/server> </path/copy/on/server>",
+                "client move </path/existing_file_or_directory/on/server> </path/new_location/on/server>",
+                "client sessions",
+                "client stats",
+                "client shell",
+                "client shutdown",
+                "loadtest <clients> <seconds>"
         ).forEach(System.out::println);
         System.exit(0);
     }
@@ -50,10 +58,24 @@ public class Main {
             } catch (NumberFormatException exp) {
                 printUsage();
             }
+            Transport transport = args.length > 3 ? Transport.findByName(args[3]) : Transport.RMI;
+            if (transport == null) {
+                printUsage();
+            }
             String registeredName = "rmi://localhost:" + port + "/fss";
+            if (System.getProperty("java.rmi.dgc.leaseValue") == null) {
+                System.setProperty("java.rmi.dgc.leaseValue", String.valueOf(Constants.SESSION_LEASE_MILLIS));
+            }
             try  {
                 //System.setSecurityManager(new SecurityManager());
-                Naming.rebind(registeredName, new FSSServer());
+                if (transport == Transport.FRAME) {
+                    FSSServer server = new FSSServer();
+                    server.addTransport(new FrameServer(port, server, Constants.FRAME_WORKERS,
+                            Constants.FRAME_INTERACTIVE_WORKERS, Constants.FRAME_MAX_IN_FLIGHT,
+                            Constants.FRAME_MAX_SIZE));
+                } else {
+                    Naming.rebind(registeredName, UnicastRemoteObject.exportObject(new FSSServer(), 0));
+                }
             } catch (Exception exp) {
                 System.err.println("FSS server encountered an error");
                 exp.printStackTrace();
@@ -61,23 +83,9 @@ public class Main {
             }
         } else if ("client".equalsIgnoreCase(args[0])) {
             try {
-                String serverVar = System.getenv("PA2_SERVER");
-                if (serverVar == null) {
-                    throw new IllegalStateException("environment variable PA2_SERVER must be set");
-                }
-                String[] serverVarItems = serverVar.split(":");
-                if (serverVarItems.length != 2) {
-                    throw new IllegalStateException("make sure PA2_SERVER environment variable is set: hostname:port");
-                }
+                String[] serverVarItems = getServer();
                 String hostName = serverVarItems[0];
-                String portParam = serverVarItems[1];
-                if (hostName == null) {
-                    throw new IllegalStateException("no hostname could be found; make sure PA2_SERVER is set: hostname:port");
-                }
-                if (portParam == null) {
-                    throw new IllegalStateException("no port could be found; make sure PA2_SERVER is set: hostname:port");
-                }
-                Integer port = Integer.valueOf(portParam);
+                Integer port = Integer.valueOf(serverVarItems[1]);
                 String actionName = args[1];
                 Action action = Action.findByName(actionName);
 
@@ -85,19 +93,70 @@ public class Main {
                     printUsage();
                 }
 
-                String[] commandArgs = new String[action.getNumArgs()];
-                for (int i = 0; i < action.getNumArgs(); i++) {
+                String[] commandArgs = new String[Math.min(args.length - 2, action.getMaxArgs())];
+                for (int i = 0; i < commandArgs.length; i++) {
                     commandArgs[i] = args[i+2];
                 }
-                new FSSClient(hostName, port).doAction(action, commandArgs);
+                Transport transport = Transport.findByName(serverVarItems[2]);
+                new FSSClient(hostName, port, transport).doAction(action, commandArgs);
 
             } catch (Exception exp) {
                 System.err.println(exp.getMessage());
                 //exp.printStackTrace();
                 System.exit(1);
             }
+        } else if ("loadtest".equalsIgnoreCase(args[0])) {
+            if (args.length < 3) {
+                printUsage();
+            }
+            try {
+                String[] serverVarItems = getServer();
+                LoadTest loadTest = new LoadTest(serverVarItems[0], Integer.valueOf(serverVarItems[1]),
+                        Transport.findByName(serverVarItems[2]), Integer.parseInt(args[1]), Long.parseLong(args[2]));
+                if (! loadTest.run()) {
+                    System.exit(1);
+                }
+            } catch (Exception exp) {
+                System.err.println(exp.getMessage());
+                System.exit(1);
+            }
         } else {
             printUsage();
         }
     }
+
+    /**
+     * Reads the transport, host name and port of the server from the PA2_SERVER environment variable. The transport is
+     * written before the host name as in frame://hostname:port, and is RMI if it is left out.
+     * @return  the host name, the port and the name of the transport
+     * @throws IllegalStateException  if PA2_SERVER is not set, or is not of the form [transport://]hostname:port
+     */
+    private static String[] getServer() {
+        String serverVar = System.getenv("PA2_SERVER");
+        if (serverVar == null) {
+            throw new IllegalStateException("environment variable PA2_SERVER must be set");
+        }
+        String transportName = Transport.RMI.getName();
+        int separator = serverVar.indexOf("://");
+        if (separator >= 0) {
+            transportName = serverVar.substring(0, separator);
+            serverVar = serverVar.substring(separator + 3);
+            if (Transport.findByName(transportName) == null) {
+                throw new IllegalStateException("unknown transport " + transportName + "; use rmi or frame");
+            }
+        }
+        String[] serverVarItems = serverVar.split(":");
+        if (serverVarItems.length != 2) {
+            throw new IllegalStateException("make sure PA2_SERVER environment variable is set: hostname:port");
+        }
+        String hostName = serverVarItems[0];
+        String portParam = serverVarItems[1];
+        if (hostName == null) {
+            throw new IllegalStateException("no hostname could be found; make sure PA2_SERVER is set: hostname:port");
+        }
+        if (portParam == null) {
+            throw new IllegalStateException("no port could be found; make sure PA2_SERVER is set: hostname:port");
+        }
+        return new String[] { hostName, portParam, transportName };
+    }
 }
@@ -0,0 +1,152 @@
+package edu.gmu.swe622.pa2;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.UserDefinedFileAttributeView;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The list of chunks a file stored in the chunk store is made of. A manifest is kept at the path of the file it
+ * describes and is marked as a manifest by a user-defined file attribute, out of band, so that an uploaded file whose
+ * bytes happen to look like a manifest is never taken for one. The magic number at its start is checked as well.
+ */
+public class Manifest {
+
+    /**
+     * The first eight bytes of every manifest, "FSSMANF1" in ASCII.
+     */
+    private static final long MAGIC = 0x4653534d414e4631L;
+
+    /**
+     * Suffix of the temporary file a manifest is written to before it is moved into place.
+     */
+    private static final String TEMP_SUFFIX = ".fssmanifest";
+
+    /**
+     * The user-defined file attribute that marks a file as a manifest.
+     */
+    private static final String MARK_ATTRIBUTE = "fss.manifest";
+
+    private long length;
+    private List<ChunkRef> chunks;
+
+    /**
+     * Constructor.
+     * @param chunks  the chunks of the file, in order
+     */
+    public Manifest(List<ChunkRef> chunks) {
+        this.chunks = Collections.unmodifiableList(new ArrayList<>(chunks));
+        for (ChunkRef chunk : chunks) {
+            this.length += chunk.getLength();
+        }
+    }
+
+    /**
+     * Returns true if a file is a manifest.
+     * @param filePath  the file to check
+     * @return  true if the file is marked as a manifest and starts with the manifest magic number
+     * @throws IOException  if the file or its attributes cannot be read
+     */
+    public static boolean isManifest(Path filePath) throws IOException {
+        if (! Files.isRegularFile(filePath) || Files.size(filePath) < 20) {
+            return false;
+        }
+        UserDefinedFileAttributeView view = Files.getFileAttributeView(filePath, UserDefinedFileAttributeView.class);
+        if (view == null || ! view.list().contains(MARK_ATTRIBUTE)) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(filePath))) {
+            return in.readLong() == MAGIC;
+        }
+    }
+
+    /**
+     * Checks that the file system a directory is on can mark files as manifests.
+     * @param dirPath  the directory manifests will be kept under
+     * @throws IOException  if the file system has no user-defined file attributes
+     */
+    public static void checkSupported(Path dirPath) throws IOException {
+        if (! Files.getFileStore(dirPath).supportsFileAttributeView(UserDefinedFileAttributeView.class)) {
+            throw new IOException("The chunk store needs a file system with user-defined file attributes: "
+                    + dirPath);
+        }
+    }
+
+    /**
+     * Reads a manifest.
+     * @param filePath  the manifest file
+     * @return  the manifest
+     * @throws IOException  if the file cannot be read or is not a manifest
+     */
+    public static Manifest read(Path filePath) throws IOException {
+        try (InputStream stream = Files.newInputStream(filePath);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(stream))) {
+            if (in.readLong() != MAGIC) {
+                throw new IOException("Not a manifest: " + filePath);
+            }
+            long length = in.readLong();
+            int count = in.readInt();
+            List<ChunkRef> chunks = new ArrayList<>(count);
+            byte[] hash = new byte[ChunkStore.HASH_LENGTH];
+            for (int i = 0; i < count; i++) {
+                in.readFully(hash);
+                chunks.add(new ChunkRef(ChunkStore.toHex(hash), in.readInt()));
+            }
+            Manifest manifest = new Manifest(chunks);
+            if (manifest.length != length) {
+                throw new IOException("Manifest is corrupt: " + filePath);
+            }
+            return manifest;
+        }
+    }
+
+    /**
+     * Writes the manifest to a temporary file, marks it as a manifest and atomically moves it to filePath.
+     * @param filePath  the path of the file the manifest describes
+     * @throws IOException  if the manifest cannot be written
+     */
+    public void write(Path filePath) throws IOException {
+        Path tempPath = filePath.resolveSibling(filePath.getFileName() + TEMP_SUFFIX);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempPath)))) {
+            out.writeLong(MAGIC);
+            out.writeLong(this.length);
+            out.writeInt(this.chunks.size());
+            for (ChunkRef chunk : this.chunks) {
+                out.write(ChunkStore.fromHex(chunk.getHash()));
+                out.writeInt(chunk.getLength());
+            }
+        }
+        UserDefinedFileAttributeView view = Files.getFileAttributeView(tempPath, UserDefinedFileAttributeView.class);
+        if (view == null) {
+            throw new IOException("Cannot mark a manifest on this file system: " + filePath);
+        }
+        view.write(MARK_ATTRIBUTE, ByteBuffer.wrap(new byte[] {1}));
+        Files.move(tempPath, filePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Getter for the length.
+     * @return  the number of bytes in the file
+     */
+    public long getLength() {
+        return this.length;
+    }
+
+    /**
+     * Getter for the chunks.
+     * @return  the chunks of the file, in order
+     */
+    public List<ChunkRef> getChunks() {
+        return this.chunks;
+    }
+}
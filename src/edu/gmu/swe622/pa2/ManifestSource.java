@@ -0,0 +1,117 @@
+package edu.gmu.swe622.pa2;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads a file that is kept in the chunk store, by reading the chunks listed in its manifest.
+ */
+public class ManifestSource implements ChunkSource {
+
+    private ChunkStore chunkStore;
+    private List<ChunkRef> chunks;
+    private long[] offsets;
+    private long size;
+    private int openChunk = -1;
+    private FileChannel openChannel;
+
+    /**
+     * Constructor.
+     * @param chunkStore  the store holding the chunks
+     * @param manifest  the manifest of the file
+     */
+    public ManifestSource(ChunkStore chunkStore, Manifest manifest) {
+        this.chunkStore = chunkStore;
+        this.chunks = manifest.getChunks();
+        this.offsets = new long[this.chunks.size()];
+        long offset = 0;
+        for (int i = 0; i < this.offsets.length; i++) {
+            this.offsets[i] = offset;
+            offset += this.chunks.get(i).getLength();
+        }
+        this.size = offset;
+    }
+
+    /**
+     * Returns the number of bytes in the file.
+     * @return  the total length of the chunks
+     */
+    @Override
+    public long size() {
+        return this.size;
+    }
+
+    /**
+     * Reads bytes of the file from the chunks that hold them.
+     * @param offset  the position in the file of the first byte to read
+     * @param length  the number of bytes to read
+     * @return  the bytes read from the file
+     * @throws IOException  if a chunk is missing or cannot be read
+     */
+    @Override
+    public synchronized byte[] read(long offset, int length) throws IOException {
+        int count = (int) Math.max(0, Math.min(length, this.size - offset));
+        ByteBuffer buffer = ByteBuffer.allocate(count);
+        int index = Arrays.binarySearch(this.offsets, offset);
+        if (index < 0) {
+            index = -index - 2;
+        }
+        while (buffer.hasRemaining()) {
+            long position = offset + buffer.position();
+            while (position >= this.offsets[index] + this.chunks.get(index).getLength()) {
+                index++;
+            }
+            FileChannel channel = this.channel(index);
+            int limit = (int) Math.min(buffer.capacity(),
+                    buffer.position() + this.offsets[index] + this.chunks.get(index).getLength() - position);
+            buffer.limit(limit);
+            while (buffer.hasRemaining()) {
+                long chunkPosition = offset + buffer.position() - this.offsets[index];
+                if (channel.read(buffer, chunkPosition) == -1) {
+                    throw new IOException("Stored chunk is truncated: " + this.chunks.get(index).getHash());
+                }
+            }
+            buffer.limit(buffer.capacity());
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Returns true, since chunks are read from disk.
+     * @return  true
+     */
+    @Override
+    public boolean readsFromDisk() {
+        return true;
+    }
+
+    /**
+     * Closes the chunk that is open.
+     * @throws IOException  if the chunk cannot be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (this.openChannel != null) {
+            this.openChannel.close();
+            this.openChannel = null;
+        }
+    }
+
+    /**
+     * Returns the open channel of a chunk, closing the previously opened chunk.
+     * @param index  the index of the chunk in the manifest
+     * @return  the open chunk file
+     * @throws IOException  if the chunk is missing or cannot be opened
+     */
+    private FileChannel channel(int index) throws IOException {
+        if (index != this.openChunk) {
+            this.close();
+            this.openChannel = this.chunkStore.open(this.chunks.get(index).getHash());
+            this.openChunk = index;
+        }
+        return this.openChannel;
+    }
+}
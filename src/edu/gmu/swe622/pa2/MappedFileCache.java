@@ -0,0 +1,223 @@
+package edu.gmu.swe622.pa2;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shares read-only memory mappings of downloaded files between download sessions. The first session to download a
+ * file maps it, in segments of at most Constants.MMAP_SEGMENT_SIZE bytes, and later sessions for the same file reuse
+ * the mapping as long as the file's size and modification time have not changed. Mappings are reference counted and
+ * dropped once no session has used them for the idle timeout; the memory is unmapped when the buffers are garbage
+ * collected.
+ */
+public class MappedFileCache {
+
+    /**
+     * The mapped segments of one version of a file.
+     */
+    private class MappedFile {
+        private Path filePath;
+        private long size;
+        private long lastModified;
+        private MappedByteBuffer[] segments;
+        private int references;
+        private long idleSince;
+    }
+
+    /**
+     * One session's use of a mapped file.
+     */
+    private class MappedSource implements ChunkSource {
+        private MappedFile mappedFile;
+        private boolean closed;
+
+        /**
+         * Returns the number of bytes in the mapped file.
+         * @return  the file size when it was mapped
+         */
+        @Override
+        public long size() {
+            return this.mappedFile.size;
+        }
+
+        /**
+         * Copies bytes out of the mapped segments.
+         * @param offset  the position in the file of the first byte to read
+         * @param length  the number of bytes to read
+         * @return  the bytes read from the file
+         * @throws IOException  if the file was truncated after it was mapped
+         */
+        @Override
+        public byte[] read(long offset, int length) throws IOException {
+            int count = (int) Math.max(0, Math.min(length, this.mappedFile.size - offset));
+            byte[] chunk = new byte[count];
+            int copied = 0;
+            try {
+                while (copied < count) {
+                    long position = offset + copied;
+                    ByteBuffer segment = this.mappedFile.segments[(int) (position / segmentSize)].duplicate();
+                    segment.position((int) (position % segmentSize));
+                    int n = Math.min(count - copied, segment.remaining());
+                    segment.get(chunk, copied, n);
+                    copied += n;
+                }
+            } catch (InternalError exp) {
+                // the JVM reports access to a page that no longer exists in the file as an InternalError
+                throw new IOException("File changed while it was being downloaded: " + this.mappedFile.filePath, exp);
+            }
+            return chunk;
+        }
+
+        /**
+         * Returns false, since the file is read from memory.
+         * @return  false
+         */
+        @Override
+        public boolean readsFromDisk() {
+            return false;
+        }
+
+        /**
+         * Releases this session's reference to the mapping.
+         */
+        @Override
+        public void close() {
+            synchronized (MappedFileCache.this) {
+                if (! this.closed) {
+                    this.closed = true;
+                    MappedFileCache.this.release(this.mappedFile);
+                }
+            }
+        }
+    }
+
+    private long segmentSize;
+    private long idleTimeoutNanos;
+    private Map<Path, MappedFile> mappedFiles = new HashMap<>();
+    private ScheduledExecutorService reaper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "fss-mmap-reaper");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Constructor. Starts a background task that drops idle mappings.
+     * @param segmentSize  the largest number of bytes in one mapped segment
+     * @param idleTimeoutMillis  how long an unused mapping is kept
+     * @throws IllegalArgumentException  if segmentSize is not between 1 and Integer.MAX_VALUE
+     */
+    public MappedFileCache(long segmentSize, long idleTimeoutMillis) {
+        if (segmentSize <= 0 || segmentSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Segment size must be > 0 and <= " + Integer.MAX_VALUE);
+        }
+        this.segmentSize = segmentSize;
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+        long period = Math.max(1L, idleTimeoutMillis / 2);
+        this.reaper.scheduleWithFixedDelay(this::dropIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns a source that reads the file from a shared mapping, mapping the file if it is not mapped yet or has
+     * changed since it was mapped.
+     * @param filePath  the file to read
+     * @return  a source for one download session; closing it releases the session's reference to the mapping
+     * @throws IOException  if the file cannot be mapped
+     */
+    public synchronized ChunkSource acquire(Path filePath) throws IOException {
+        Path key = filePath.toAbsolutePath().normalize();
+        long size = Files.size(key);
+        long lastModified = Files.getLastModifiedTime(key).toMillis();
+        MappedFile mappedFile = this.mappedFiles.get(key);
+        if (mappedFile == null || mappedFile.size != size || mappedFile.lastModified != lastModified) {
+            mappedFile = this.map(key, size, lastModified);
+            this.mappedFiles.put(key, mappedFile);
+        }
+        mappedFile.references++;
+        MappedSource source = new MappedSource();
+        source.mappedFile = mappedFile;
+        return source;
+    }
+
+    /**
+     * Stops sharing the mapping of a file that is about to be changed or deleted. Sessions that already use the
+     * mapping keep it until they are closed.
+     * @param filePath  the file that is changing
+     */
+    public synchronized void invalidate(Path filePath) {
+        this.mappedFiles.remove(filePath.toAbsolutePath().normalize());
+    }
+
+    /**
+     * Returns the number of files currently mapped.
+     * @return  the count of shared mappings
+     */
+    public synchronized int size() {
+        return this.mappedFiles.size();
+    }
+
+    /**
+     * Stops the background task and drops every mapping.
+     */
+    public synchronized void close() {
+        this.reaper.shutdownNow();
+        this.mappedFiles.clear();
+    }
+
+    /**
+     * Maps a file in read-only segments.
+     * @param filePath  the file to map
+     * @param size  the size of the file
+     * @param lastModified  the modification time of the file in milliseconds
+     * @return  the mapped file, with no references
+     * @throws IOException  if the file cannot be mapped
+     */
+    private MappedFile map(Path filePath, long size, long lastModified) throws IOException {
+        MappedFile mappedFile = new MappedFile();
+        mappedFile.filePath = filePath;
+        mappedFile.size = size;
+        mappedFile.lastModified = lastModified;
+        mappedFile.segments = new MappedByteBuffer[(int) ((size + this.segmentSize - 1) / this.segmentSize)];
+        try (FileChannel fileChannel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            for (int i = 0; i < mappedFile.segments.length; i++) {
+                long position = i * this.segmentSize;
+                mappedFile.segments[i] = fileChannel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(this.segmentSize, size - position));
+            }
+        }
+        return mappedFile;
+    }
+
+    /**
+     * Releases one session's reference to a mapped file.
+     * @param mappedFile  the mapped file the session used
+     */
+    private void release(MappedFile mappedFile) {
+        if (--mappedFile.references == 0) {
+            mappedFile.idleSince = System.nanoTime();
+        }
+    }
+
+    /**
+     * Drops every shared mapping that has had no references for longer than the idle timeout.
+     */
+    private synchronized void dropIdle() {
+        long now = System.nanoTime();
+        for (Iterator<MappedFile> it = this.mappedFiles.values().iterator(); it.hasNext(); ) {
+            MappedFile mappedFile = it.next();
+            if (mappedFile.references == 0 && now - mappedFile.idleSince > this.idleTimeoutNanos) {
+                it.remove();
+            }
+        }
+    }
+}
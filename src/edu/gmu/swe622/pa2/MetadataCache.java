@@ -0,0 +1,364 @@
+package edu.gmu.swe622.pa2;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An in-memory index of the names, types, sizes and modification times of the files in the directories the server
+ * serves. A directory is read the first time one of its entries is asked for and is then watched with a
+ * WatchService, whose events keep the cached entries up to date; the server also refreshes an entry itself right
+ * after it changes the file, so its own changes are seen at once. The cache holds at most a fixed number of entries
+ * and of directories, since every cached directory takes one of the operating system's limited watches, and drops
+ * the least recently used directories to stay within them; a directory that cannot be watched is read from disk
+ * instead of being cached. A directory with more entries than the cache holds is not cached: a lookup of one of its
+ * files reads that file's attributes directly, and the directory is only read again to try caching it when it is
+ * listed, a while after the last try and once its modification time has changed. Overflowed watch events drop a
+ * directory so that it is read again the next time it is needed.
+ */
+public class MetadataCache {
+
+    /**
+     * The cached entries of one directory.
+     */
+    private static class CachedDir {
+        private Path dirPath;
+        private WatchKey watchKey;
+        private Map<String, DirEntry> children = new HashMap<>();
+    }
+
+    /**
+     * A directory found to have too many entries to cache.
+     */
+    private static class OversizedDir {
+        private long lastModified;
+        private long retryAt;
+    }
+
+    private Path root;
+    private int maxEntries;
+    private int maxDirs;
+    private long retryNanos;
+    private int entryCount;
+    private WatchService watchService;
+    private LinkedHashMap<Path, CachedDir> dirs = new LinkedHashMap<>(16, 0.75f, true);
+    private Map<WatchKey, CachedDir> watched = new HashMap<>();
+    private Map<Path, OversizedDir> oversized = new HashMap<>();
+    private LongAdder hits = new LongAdder();
+    private LongAdder misses = new LongAdder();
+
+    /**
+     * Constructor. Starts a background thread that applies watch events to the cache.
+     * @param root  the directory the server serves; only directories inside it are cached
+     * @param maxEntries  the most entries the cache holds
+     * @param maxDirs  the most directories the cache holds, and so watches
+     * @param retryMillis  how long to wait, in milliseconds, before reading a directory that had too many entries
+     *                     again to try caching it
+     * @throws IOException  if the watch service cannot be created
+     * @throws IllegalArgumentException  if maxEntries or maxDirs is not positive
+     */
+    public MetadataCache(Path root, int maxEntries, int maxDirs, long retryMillis) throws IOException {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("The cache must hold at least one entry");
+        }
+        if (maxDirs <= 0) {
+            throw new IllegalArgumentException("The cache must hold at least one directory");
+        }
+        this.root = root.toAbsolutePath().normalize();
+        this.maxEntries = maxEntries;
+        this.maxDirs = maxDirs;
+        this.retryNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, retryMillis));
+        this.watchService = this.root.getFileSystem().newWatchService();
+        Thread watcher = new Thread(this::watch, "fss-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    /**
+     * Returns the entry for a file, reading and caching its directory if it is not cached yet. The file's attributes
+     * are read directly if its directory has too many entries to cache.
+     * @param path  the file to look up
+     * @return  the entry for the file, or null if it does not exist
+     * @throws IOException  if the directory or the file's attributes cannot be read
+     */
+    public synchronized DirEntry stat(Path path) throws IOException {
+        Path normalized = path.toAbsolutePath().normalize();
+        Path parent = normalized.getParent();
+        CachedDir dir = null;
+        if (parent != null && parent.startsWith(this.root)) {
+            if (this.oversized.containsKey(parent)) {
+                this.misses.increment();
+            } else {
+                dir = this.load(parent);
+            }
+        }
+        if (dir == null) {
+            return DirEntry.read(normalized);
+        }
+        return dir.children.get(normalized.getFileName().toString());
+    }
+
+    /**
+     * Returns the entries of a directory, reading and caching it if it is not cached yet. A directory that had too
+     * many entries is only read again once it has changed and the retry delay has passed.
+     * @param dirPath  the directory to list
+     * @return  a copy of the entries of the directory, or null if it cannot be cached because it is outside the
+     *          served directory or has too many entries
+     * @throws IOException  if the directory cannot be read
+     * @throws NotDirectoryException  if dirPath is not a directory
+     */
+    public synchronized List<DirEntry> list(Path dirPath) throws IOException {
+        Path normalized = dirPath.toAbsolutePath().normalize();
+        if (! normalized.startsWith(this.root)) {
+            return null;
+        }
+        CachedDir dir = this.load(normalized);
+        if (dir == null) {
+            if (! Files.isDirectory(normalized)) {
+                throw new NotDirectoryException(dirPath.toString());
+            }
+            return null;
+        }
+        return new ArrayList<>(dir.children.values());
+    }
+
+    /**
+     * Reads a file's entry again after the server has created, changed or deleted it, if its directory is cached. If
+     * the entry cannot be read, the directory is dropped so that it is read again the next time it is needed.
+     * @param path  the file that changed
+     */
+    public synchronized void refresh(Path path) {
+        Path normalized = path.toAbsolutePath().normalize();
+        CachedDir changed = this.dirs.get(normalized);
+        if (changed != null && ! Files.isDirectory(normalized)) {
+            this.drop(changed);
+        }
+        Path parent = normalized.getParent();
+        CachedDir dir = parent != null ? this.dirs.get(parent) : null;
+        if (dir != null) {
+            try {
+                this.update(dir, normalized.getFileName().toString());
+            } catch (IOException exp) {
+                this.drop(dir);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of lookups answered from the cache.
+     * @return  the count of cache hits
+     */
+    public long getHits() {
+        return this.hits.sum();
+    }
+
+    /**
+     * Returns the number of lookups that had to read a directory.
+     * @return  the count of cache misses
+     */
+    public long getMisses() {
+        return this.misses.sum();
+    }
+
+    /**
+     * Returns the number of entries currently cached.
+     * @return  the count of cached entries
+     */
+    public synchronized int size() {
+        return this.entryCount;
+    }
+
+    /**
+     * Summarizes the cache counters.
+     * @return  the hit and miss counts and the numbers of cached directories and entries
+     */
+    @Override
+    public synchronized String toString() {
+        return "hits=" + this.getHits() + " misses=" + this.getMisses() + " dirs=" + this.dirs.size()
+                + " entries=" + this.entryCount;
+    }
+
+    /**
+     * Stops watching every directory and empties the cache.
+     * @throws IOException  if the watch service cannot be closed
+     */
+    public synchronized void close() throws IOException {
+        this.dirs.clear();
+        this.watched.clear();
+        this.oversized.clear();
+        this.entryCount = 0;
+        this.watchService.close();
+    }
+
+    /**
+     * Returns the cached entries of a directory, reading the directory and starting to watch it if it is not cached.
+     * Least recently used directories are dropped to make room for it.
+     * @param dirPath  the normalized absolute path of the directory
+     * @return  the cached directory, or null if it does not exist, is not a directory, cannot be watched or has too
+     *          many entries
+     * @throws IOException  if the directory cannot be read
+     */
+    private CachedDir load(Path dirPath) throws IOException {
+        CachedDir dir = this.dirs.get(dirPath);
+        if (dir != null) {
+            this.hits.increment();
+            return dir;
+        }
+        this.misses.increment();
+        OversizedDir oversized = this.oversized.get(dirPath);
+        if (oversized != null && oversized.retryAt - System.nanoTime() > 0) {
+            return null;
+        }
+        if (! Files.isDirectory(dirPath)) {
+            this.oversized.remove(dirPath);
+            return null;
+        }
+        long lastModified = Files.getLastModifiedTime(dirPath).toMillis();
+        if (oversized != null && oversized.lastModified == lastModified) {
+            oversized.retryAt = System.nanoTime() + this.retryNanos;
+            return null;
+        }
+        this.oversized.remove(dirPath);
+        for (Iterator<CachedDir> it = this.dirs.values().iterator();
+                it.hasNext() && this.dirs.size() >= this.maxDirs; ) {
+            CachedDir eldest = it.next();
+            it.remove();
+            this.forget(eldest);
+        }
+        dir = new CachedDir();
+        dir.dirPath = dirPath;
+        // watch before reading, so that changes made while the directory is read are not missed
+        try {
+            dir.watchKey = dirPath.register(this.watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException exp) {
+            // out of watches, or the directory went away; the caller reads it from disk
+            return null;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dirPath)) {
+            for (Path path : stream) {
+                DirEntry entry = DirEntry.read(path);
+                if (entry != null) {
+                    dir.children.put(entry.getName(), entry);
+                }
+                if (dir.children.size() > this.maxEntries) {
+                    // not read again until the retry delay has passed and the directory has changed
+                    dir.watchKey.cancel();
+                    oversized = new OversizedDir();
+                    oversized.lastModified = lastModified;
+                    oversized.retryAt = System.nanoTime() + this.retryNanos;
+                    this.oversized.put(dirPath, oversized);
+                    return null;
+                }
+            }
+        } catch (DirectoryIteratorException exp) {
+            dir.watchKey.cancel();
+            throw exp.getCause();
+        } catch (IOException exp) {
+            dir.watchKey.cancel();
+            throw exp;
+        }
+        for (Iterator<CachedDir> it = this.dirs.values().iterator();
+                it.hasNext() && this.entryCount + dir.children.size() > this.maxEntries; ) {
+            CachedDir eldest = it.next();
+            it.remove();
+            this.forget(eldest);
+        }
+        this.dirs.put(dirPath, dir);
+        this.watched.put(dir.watchKey, dir);
+        this.entryCount += dir.children.size();
+        return dir;
+    }
+
+    /**
+     * Reads one entry of a cached directory again.
+     * @param dir  the cached directory
+     * @param name  the name of the entry
+     * @throws IOException  if the entry's attributes cannot be read
+     */
+    private void update(CachedDir dir, String name) throws IOException {
+        DirEntry entry = DirEntry.read(dir.dirPath.resolve(name));
+        DirEntry previous = entry != null ? dir.children.put(name, entry) : dir.children.remove(name);
+        if (previous == null && entry != null) {
+            this.entryCount++;
+        } else if (previous != null && entry == null) {
+            this.entryCount--;
+        }
+    }
+
+    /**
+     * Drops a cached directory so that it is read again the next time it is needed.
+     * @param dir  the cached directory
+     */
+    private void drop(CachedDir dir) {
+        if (this.dirs.get(dir.dirPath) == dir) {
+            this.dirs.remove(dir.dirPath);
+            this.forget(dir);
+        }
+    }
+
+    /**
+     * Stops watching a directory that has been removed from the cache.
+     * @param dir  the directory that was removed
+     */
+    private void forget(CachedDir dir) {
+        this.watched.remove(dir.watchKey);
+        dir.watchKey.cancel();
+        this.entryCount -= dir.children.size();
+    }
+
+    /**
+     * Applies watch events to the cached directories until the watch service is closed. Runs on the watcher thread.
+     */
+    private void watch() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = this.watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException exp) {
+                return;
+            }
+            synchronized (this) {
+                CachedDir dir = this.watched.get(key);
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (dir == null) {
+                        break;
+                    }
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        this.drop(dir);
+                        dir = null;
+                        break;
+                    }
+                    try {
+                        this.update(dir, event.context().toString());
+                    } catch (NoSuchFileException exp) {
+                        // the directory itself is gone; its key is cancelled and it is dropped below
+                    } catch (IOException exp) {
+                        this.drop(dir);
+                        dir = null;
+                    }
+                }
+                if (! key.reset() && dir != null) {
+                    this.drop(dir);
+                }
+            }
+        }
+    }
+}
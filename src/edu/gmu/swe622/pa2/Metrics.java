@@ -0,0 +1,181 @@
+package edu.gmu.swe622.pa2;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.ReflectionException;
+
+/**
+ * The server's counters, gauges and latency histograms. Counters and histograms are created the first time they
+ * are used and can be updated from any thread without locking; gauges read a value, such as the size of a cache,
+ * when the metrics are read. The metrics can be dumped as text and are also exposed as the read-only attributes of a
+ * JMX MBean, with each histogram showing as its count, mean, percentiles and maximum in microseconds.
+ */
+public class Metrics implements DynamicMBean {
+
+    private static final double[] PERCENTILES = { 0.5, 0.9, 0.99, 0.999 };
+    private static final String[] PERCENTILE_NAMES = { "p50", "p90", "p99", "p999" };
+
+    private Map<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+    private Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    /**
+     * Records the latency of an operation.
+     * @param name  the name of the operation
+     * @param nanos  how long the operation took in nanoseconds
+     */
+    public void record(String name, long nanos) {
+        this.latencies.computeIfAbsent(name, (key) -> new LatencyHistogram()).record(nanos);
+    }
+
+    /**
+     * Adds to a counter.
+     * @param name  the name of the counter
+     * @param amount  the amount to add
+     */
+    public void add(String name, long amount) {
+        this.counters.computeIfAbsent(name, (key) -> new LongAdder()).add(amount);
+    }
+
+    /**
+     * Registers a value that is read each time the metrics are read.
+     * @param name  the name of the gauge
+     * @param value  reads the current value
+     */
+    public void gauge(String name, LongSupplier value) {
+        this.gauges.put(name, value);
+    }
+
+    /**
+     * Reads every metric. Each histogram contributes its count, mean, percentiles and maximum as separate values.
+     * @return  the values of the metrics by name, in name order
+     */
+    public Map<String, Long> snapshot() {
+        Map<String, Long> values = new TreeMap<>();
+        this.counters.forEach((name, counter) -> values.put(name, counter.sum()));
+        this.gauges.forEach((name, gauge) -> values.put(name, gauge.getAsLong()));
+        this.latencies.forEach((name, histogram) -> {
+            values.put(name + ".count", histogram.getCount());
+            values.put(name + ".mean", histogram.getMean());
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                values.put(name + "." + PERCENTILE_NAMES[i], histogram.getPercentile(PERCENTILES[i]));
+            }
+            values.put(name + ".max", histogram.getMax());
+        });
+        return values;
+    }
+
+    /**
+     * Formats every metric as text, one counter or gauge per line followed by one histogram per line.
+     * @return  the lines of text
+     */
+    public List<String> dump() {
+        List<String> lines = new ArrayList<>();
+        Map<String, Long> values = new TreeMap<>();
+        this.counters.forEach((name, counter) -> values.put(name, counter.sum()));
+        this.gauges.forEach((name, gauge) -> values.put(name, gauge.getAsLong()));
+        values.forEach((name, value) -> lines.add(name + " " + value));
+        new TreeMap<>(this.latencies).forEach((name, histogram) -> {
+            StringBuilder line = new StringBuilder(name);
+            line.append(" count=").append(histogram.getCount());
+            line.append(" mean=").append(histogram.getMean()).append("us");
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                line.append(' ').append(PERCENTILE_NAMES[i]).append('=');
+                line.append(histogram.getPercentile(PERCENTILES[i])).append("us");
+            }
+            line.append(" max=").append(histogram.getMax()).append("us");
+            lines.add(line.toString());
+        });
+        return lines;
+    }
+
+    /**
+     * Reads one metric for JMX.
+     * @param name  the name of the metric
+     * @return  its current value
+     * @throws AttributeNotFoundException  if there is no such metric
+     */
+    @Override
+    public Object getAttribute(String name) throws AttributeNotFoundException {
+        Long value = this.snapshot().get(name);
+        if (value == null) {
+            throw new AttributeNotFoundException(name);
+        }
+        return value;
+    }
+
+    /**
+     * Refuses to change a metric, since they are all read-only.
+     * @param attribute  the metric to change
+     * @throws AttributeNotFoundException  always
+     */
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException(attribute.getName() + " is read-only");
+    }
+
+    /**
+     * Reads several metrics for JMX.
+     * @param names  the names of the metrics
+     * @return  the metrics that exist, with their current values
+     */
+    @Override
+    public AttributeList getAttributes(String[] names) {
+        Map<String, Long> values = this.snapshot();
+        AttributeList attributes = new AttributeList();
+        for (String name : names) {
+            if (values.containsKey(name)) {
+                attributes.add(new Attribute(name, values.get(name)));
+            }
+        }
+        return attributes;
+    }
+
+    /**
+     * Refuses to change metrics, since they are all read-only.
+     * @param attributes  the metrics to change
+     * @return  an empty list, since nothing was changed
+     */
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    /**
+     * Refuses to invoke an operation, since the MBean has none.
+     * @param actionName  the name of the operation
+     * @param params  the arguments of the operation
+     * @param signature  the types of the arguments
+     * @return  never returns
+     * @throws ReflectionException  always
+     */
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+
+    /**
+     * Describes the MBean, with one read-only attribute for each metric that exists now.
+     * @return  the description of the MBean
+     */
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> attributes = new ArrayList<>();
+        for (String name : this.snapshot().keySet()) {
+            attributes.add(new MBeanAttributeInfo(name, Long.class.getName(), name, true, false, false));
+        }
+        return new MBeanInfo(this.getClass().getName(), "File Sharing System server metrics",
+                attributes.toArray(new MBeanAttributeInfo[0]), null, null, null);
+    }
+}
@@ -0,0 +1,214 @@
+package edu.gmu.swe622.pa2;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Server side state of an upload that is split into fixed size parts, each sent through its own UploadPartServer
+ * session. Parts may arrive in any order and are written with positional writes into a temporary file of the upload's
+ * own. A bitmap records which parts have arrived, and the temporary file is moved over the destination once
+ * every part is complete, after being forced to disk unless the upload's durability policy is NONE. The upload records
+ * when a part last joined it or wrote to it, so that the server can abort uploads whose clients have given up on them.
+ */
+public class MultipartUpload {
+
+    private String name;
+    private Path filePath;
+    private Path tempPath;
+    private long length;
+    private long partSize;
+    private int partCount;
+    private Durability durability;
+    private BitSet completed;
+    private FileChannel fileChannel;
+    private boolean finished;
+    private volatile long lastUsed = System.nanoTime();
+
+    /**
+     * Constructor. Creates the temporary file that the parts are written to.
+     * @param name  the path of the file as the client named it
+     * @param filePath  the path to upload the file to
+     * @param tempPath  the temporary file to write the parts to, which must be on the same file system as filePath
+     * @param length  the length of the file to upload
+     * @param partSize  the number of bytes in each part
+     * @param durability  whether the file is forced to disk before it is moved into place
+     * @throws IOException  if the temporary file cannot be created
+     * @throws IllegalArgumentException  if length or partSize is not positive, or the file would have more parts than
+     *                                   an int can count
+     */
+    public MultipartUpload(String name, Path filePath, Path tempPath, long length, long partSize,
+            Durability durability) throws IOException {
+        if (length <= 0 || partSize <= 0) {
+            throw new IllegalArgumentException("File length and part size must be > 0");
+        }
+        long partCount = (length - 1) / partSize + 1;
+        if (partCount > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("A file of " + length + " bytes has too many parts of " + partSize
+                    + " bytes");
+        }
+        this.name = name;
+        this.filePath = filePath;
+        this.tempPath = tempPath;
+        this.length = length;
+        this.partSize = partSize;
+        this.partCount = (int) partCount;
+        this.durability = durability;
+        this.completed = new BitSet(this.partCount);
+        this.fileChannel = FileChannel.open(this.tempPath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        if (length > 0) {
+            this.fileChannel.write(ByteBuffer.wrap(new byte[1]), length - 1);
+        }
+    }
+
+    /**
+     * Returns true if this unfinished upload is to the same file, of the same length, split into parts of the same
+     * size.
+     * @param filePath  the path to upload the file to
+     * @param length  the length of the file to upload
+     * @param partSize  the number of bytes in each part
+     * @return  true if an upload with these settings can be resumed by joining this one
+     */
+    public synchronized boolean matches(Path filePath, long length, long partSize) {
+        return ! this.finished && this.filePath.equals(filePath) && this.length == length
+                && this.partSize == partSize;
+    }
+
+    /**
+     * Getter for the name.
+     * @return  the path of the file as the client named it
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Getter for the file path.
+     * @return  the path the file is uploaded to
+     */
+    public Path getFilePath() {
+        return this.filePath;
+    }
+
+    /**
+     * Records that a part session has joined the upload, which keeps it from being aborted as idle.
+     */
+    public void touch() {
+        this.lastUsed = System.nanoTime();
+    }
+
+    /**
+     * Returns how long it is since a part session last joined the upload or wrote to it.
+     * @return  the idle time in milliseconds
+     */
+    public long getIdleMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - this.lastUsed);
+    }
+
+    /**
+     * Returns the number of parts the file is split into.
+     * @return  the count of parts
+     */
+    public int getPartCount() {
+        return this.partCount;
+    }
+
+    /**
+     * Returns the position in the file of the first byte of a part.
+     * @param part  the index of the part
+     * @return  the offset of the part
+     */
+    public long partOffset(int part) {
+        return part * this.partSize;
+    }
+
+    /**
+     * Returns the number of bytes in a part; only the last part can be shorter than the part size.
+     * @param part  the index of the part
+     * @return  the length of the part
+     */
+    public long partLength(int part) {
+        return Math.min(this.partSize, this.length - part * this.partSize);
+    }
+
+    /**
+     * Returns true if the part has already been completely received.
+     * @param part  the index of the part
+     * @return  true if the part is complete
+     */
+    public synchronized boolean isCompleted(int part) {
+        return this.completed.get(part);
+    }
+
+    /**
+     * Writes bytes of a part to the temporary file.
+     * @param position  the position in the file to write the bytes at
+     * @param buffer  the bytes to write
+     * @throws IOException  if the file cannot be written
+     */
+    public void write(long position, ByteBuffer buffer) throws IOException {
+        this.lastUsed = System.nanoTime();
+        while (buffer.hasRemaining()) {
+            position += this.fileChannel.write(buffer, position);
+        }
+    }
+
+    /**
+     * Reads bytes back from the temporary file.
+     * @param position  the position in the file of the first byte to read
+     * @param length  the number of bytes to read
+     * @return  the bytes read, fewer than length only if the end of the file is reached
+     * @throws IOException  if the file cannot be read, or the upload has finished
+     */
+    public byte[] read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            int read = this.fileChannel.read(buffer, position + buffer.position());
+            if (read == -1) {
+                break;
+            }
+        }
+        return buffer.hasRemaining() ? Arrays.copyOf(buffer.array(), buffer.position()) : buffer.array();
+    }
+
+    /**
+     * Records that a part has been completely received. When this is the last missing part, the temporary file is
+     * forced to disk if the durability policy requires it, closed and atomically moved over the destination.
+     * @param part  the index of the completed part
+     * @return  true if this completed the upload
+     * @throws IOException  if the file cannot be moved into place
+     */
+    public synchronized boolean completePart(int part) throws IOException {
+        this.completed.set(part);
+        if (this.finished || this.completed.cardinality() < this.partCount) {
+            return false;
+        }
+        this.finished = true;
+        if (this.durability != Durability.NONE) {
+            this.fileChannel.force(true);
+        }
+        this.fileChannel.close();
+        Files.move(this.tempPath, this.filePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return true;
+    }
+
+    /**
+     * Discards the upload, deleting the temporary file.
+     * @throws IOException  if the temporary file cannot be deleted
+     */
+    public synchronized void abort() throws IOException {
+        if (! this.finished) {
+            this.finished = true;
+            this.fileChannel.close();
+            Files.deleteIfExists(this.tempPath);
+        }
+    }
+}
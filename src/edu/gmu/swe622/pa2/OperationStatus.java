@@ -0,0 +1,86 @@
+package edu.gmu.swe622.pa2;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * How far a copy or move carried out on the server has got.
+ */
+public class OperationStatus implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private int filesDone;
+    private int filesTotal;
+    private long bytesDone;
+    private long bytesTotal;
+    private boolean finished;
+    private List<String> errors;
+
+    /**
+     * Constructor.
+     * @param filesDone  the number of files copied or moved so far
+     * @param filesTotal  the number of files in the tree
+     * @param bytesDone  the number of bytes copied or moved so far
+     * @param bytesTotal  the number of bytes in the files of the tree
+     * @param finished  true if the operation has finished
+     * @param errors  a message for each file that could not be copied or moved
+     */
+    public OperationStatus(int filesDone, int filesTotal, long bytesDone, long bytesTotal, boolean finished,
+            List<String> errors) {
+        this.filesDone = filesDone;
+        this.filesTotal = filesTotal;
+        this.bytesDone = bytesDone;
+        this.bytesTotal = bytesTotal;
+        this.finished = finished;
+        this.errors = errors;
+    }
+
+    /**
+     * Getter for the files done.
+     * @return  the number of files copied or moved so far
+     */
+    public int getFilesDone() {
+        return this.filesDone;
+    }
+
+    /**
+     * Getter for the file count.
+     * @return  the number of files in the tree
+     */
+    public int getFilesTotal() {
+        return this.filesTotal;
+    }
+
+    /**
+     * Getter for the bytes done.
+     * @return  the number of bytes copied or moved so far
+     */
+    public long getBytesDone() {
+        return this.bytesDone;
+    }
+
+    /**
+     * Getter for the byte count.
+     * @return  the number of bytes in the files of the tree
+     */
+    public long getBytesTotal() {
+        return this.bytesTotal;
+    }
+
+    /**
+     * Returns whether the operation has finished.
+     * @return  true if every file has been copied or moved or has failed, or the operation was cancelled
+     */
+    public boolean isFinished() {
+        return this.finished;
+    }
+
+    /**
+     * Getter for the errors.
+     * @return  a message for each file that could not be copied or moved
+     */
+    public List<String> getErrors() {
+        return this.errors;
+    }
+}
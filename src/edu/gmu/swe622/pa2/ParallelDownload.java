@@ -0,0 +1,210 @@
+package edu.gmu.swe622.pa2;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Downloads a file by splitting it into byte ranges and fetching several ranges at once, each through its own range
+ * download session. Ranges are written with positional writes into a local file that is allocated at its full size
+ * up front. The ranges that have been completely written are recorded in a state file next to the destination, so
+ * an interrupted download can be resumed without trusting the length of the partial file.
+ */
+public class ParallelDownload {
+
+    /**
+     * Suffix added to the destination file name to name the state file.
+     */
+    private static final String STATE_SUFFIX = ".fssranges";
+
+    /**
+     * Version of the state file format.
+     */
+    private static final int STATE_VERSION = 1;
+
+    private FileSharingSystem fss;
+    private String remoteFile;
+    private Path destination;
+    private Path statePath;
+    private int streams;
+    private long rangeSize;
+    private long total;
+    private BitSet completed;
+
+    /**
+     * Constructor.
+     * @param fss  the server to download from
+     * @param remoteFile  the file to download from the server
+     * @param destination  the local path to download the file to
+     * @param streams  the number of ranges to download at once
+     * @param rangeSize  the number of bytes in each range
+     * @throws IllegalArgumentException  if streams or rangeSize is not positive
+     */
+    public ParallelDownload(FileSharingSystem fss, String remoteFile, Path destination, int streams, long rangeSize) {
+        if (streams <= 0 || rangeSize <= 0) {
+            throw new IllegalArgumentException("Stream count and range size must be > 0");
+        }
+        this.fss = fss;
+        this.remoteFile = remoteFile;
+        this.destination = destination;
+        this.statePath = destination.resolveSibling(destination.getFileName() + STATE_SUFFIX);
+        this.streams = streams;
+        this.rangeSize = rangeSize;
+    }
+
+    /**
+     * Downloads every range that has not already been downloaded. If any range fails, the ranges that did complete
+     * are kept in the state file and the first failure is reported.
+     * @throws IOException  if there is an error while communicating with the server or writing the file
+     * @throws IllegalArgumentException  if the file would have more ranges than an int can count
+     */
+    public void run() throws IOException {
+        Download probe = BusyRetry.retry(() -> this.fss.download(this.remoteFile, 0, TransferOptions.defaults()));
+        try {
+            this.total = BusyRetry.bulk(probe::fileSize);
+        } finally {
+            probe.close();
+        }
+        long rangeCount = this.total == 0 ? 0 : (this.total - 1) / this.rangeSize + 1;
+        if (rangeCount > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("File has too many ranges of " + this.rangeSize + " bytes");
+        }
+        ProgressReporter progress = new ProgressReporter(this.total, "download", "downloaded");
+
+        ExecutorService executor = Executors.newFixedThreadPool(this.streams);
+        try (FileChannel fileChannel = FileChannel.open(this.destination,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            this.completed = this.loadState();
+            if (this.completed != null && fileChannel.size() != this.total) {
+                // the partial file does not match the state file, so none of its ranges can be trusted
+                this.completed = null;
+            }
+            if (this.completed == null) {
+                this.completed = new BitSet((int) rangeCount);
+                fileChannel.truncate(0);
+            } else {
+                long skipped = 0;
+                for (int i = this.completed.nextSetBit(0); i >= 0; i = this.completed.nextSetBit(i + 1)) {
+                    skipped += this.rangeLength(i);
+                }
+                progress.skip(skipped);
+            }
+            if (fileChannel.size() > this.total) {
+                fileChannel.truncate(this.total);
+            } else if (fileChannel.size() < this.total) {
+                fileChannel.write(ByteBuffer.wrap(new byte[1]), this.total - 1);
+            }
+
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = this.completed.nextClearBit(0); i < rangeCount; i = this.completed.nextClearBit(i + 1)) {
+                final int range = i;
+                futures.add(executor.submit(() -> {
+                    this.downloadRange(range, fileChannel, progress);
+                    this.markCompleted(range, fileChannel);
+                    return null;
+                }));
+            }
+            IOException failure = null;
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException exp) {
+                    if (failure == null) {
+                        failure = new IOException("Download incomplete, run it again to resume: "
+                                + exp.getCause().getMessage(), exp.getCause());
+                    }
+                } catch (InterruptedException exp) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Download interrupted", exp);
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        Files.deleteIfExists(this.statePath);
+    }
+
+    /**
+     * Downloads one range through its own pipelined session and writes it to the destination file.
+     * @param range  the index of the range to download
+     * @param fileChannel  the destination file
+     * @param progress  the progress of the whole download
+     * @throws IOException  if there is an error while communicating with the server or writing the file
+     */
+    private void downloadRange(int range, FileChannel fileChannel, ProgressReporter progress) throws IOException {
+        long start = range * this.rangeSize;
+        long end = start + this.rangeLength(range);
+        Download download = BusyRetry.retry(
+                () -> this.fss.downloadRange(this.remoteFile, start, end - start, TransferOptions.defaults()));
+        try {
+            new PipelinedDownload(download, fileChannel, Constants.DOWNLOAD_PIPELINE_DEPTH, progress).run(start, end);
+        } finally {
+            download.close();
+        }
+    }
+
+    /**
+     * Returns the number of bytes in a range; only the last range can be shorter than the range size.
+     * @param range  the index of the range
+     * @return  the number of bytes in the range
+     */
+    private long rangeLength(int range) {
+        return Math.min(this.rangeSize, this.total - range * this.rangeSize);
+    }
+
+    /**
+     * Flushes a downloaded range to disk and records it in the state file.
+     * @param range  the index of the range that has been written
+     * @param fileChannel  the destination file
+     * @throws IOException  if the file or the state file cannot be written
+     */
+    private synchronized void markCompleted(int range, FileChannel fileChannel) throws IOException {
+        fileChannel.force(false);
+        this.completed.set(range);
+        Path tempPath = this.statePath.resolveSibling(this.statePath.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(tempPath))) {
+            out.writeInt(STATE_VERSION);
+            out.writeLong(this.total);
+            out.writeLong(this.rangeSize);
+            byte[] bits = this.completed.toByteArray();
+            out.writeInt(bits.length);
+            out.write(bits);
+        }
+        Files.move(tempPath, this.statePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads the ranges completed by an earlier attempt from the state file.
+     * @return  the completed ranges, or null if there is no state file or it belongs to a different file or range size
+     * @throws IOException  if the state file cannot be read
+     */
+    private BitSet loadState() throws IOException {
+        if (! Files.exists(this.statePath)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(this.statePath))) {
+            if (in.readInt() != STATE_VERSION || in.readLong() != this.total || in.readLong() != this.rangeSize) {
+                return null;
+            }
+            byte[] bits = new byte[in.readInt()];
+            in.readFully(bits);
+            return BitSet.valueOf(bits);
+        }
+    }
+}
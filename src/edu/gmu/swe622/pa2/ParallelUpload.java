@@ -0,0 +1,133 @@
+package edu.gmu.swe622.pa2;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Uploads a file by splitting it into fixed size parts and sending several parts at once, each through its own part
+ * session. The id of the server's multipart upload is kept in a state file until the upload finishes, so that running
+ * the upload again continues the same one; parts that the server reports as already received by an earlier attempt
+ * are skipped.
+ */
+public class ParallelUpload {
+
+    private FileSharingSystem fss;
+    private Path filePath;
+    private String remoteDestination;
+    private Path statePath;
+    private String uploadId;
+    private int streams;
+    private long partSize;
+    private long length;
+
+    /**
+     * Constructor.
+     * @param fss  the server to upload to
+     * @param filePath  the local file to upload
+     * @param remoteDestination  the path of the file on the server
+     * @param statePath  the file to keep the id of the upload in while it is unfinished
+     * @param streams  the number of parts to upload at once
+     * @param partSize  the number of bytes in each part
+     * @throws IllegalArgumentException  if streams or partSize is not positive
+     */
+    public ParallelUpload(FileSharingSystem fss, Path filePath, String remoteDestination, Path statePath, int streams,
+            long partSize) {
+        if (streams <= 0 || partSize <= 0) {
+            throw new IllegalArgumentException("Stream count and part size must be > 0");
+        }
+        this.fss = fss;
+        this.filePath = filePath;
+        this.remoteDestination = remoteDestination;
+        this.statePath = statePath;
+        this.streams = streams;
+        this.partSize = partSize;
+    }
+
+    /**
+     * Uploads every part that the server does not already have. If any part fails, the first failure is reported
+     * and the parts that did complete are kept by the server for the next attempt.
+     * @param length  the number of bytes in the file
+     * @throws IOException  if there is an error while communicating with the server or reading the file
+     * @throws IllegalArgumentException  if the file would have more parts than an int can count
+     */
+    public void run(long length) throws IOException {
+        this.length = length;
+        long partCount = (length - 1) / this.partSize + 1;
+        if (partCount > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("File has too many parts of " + this.partSize + " bytes");
+        }
+        String resumeId = Files.exists(this.statePath)
+                ? new String(Files.readAllBytes(this.statePath), StandardCharsets.UTF_8).trim() : null;
+        this.uploadId = BusyRetry.retry(() -> this.fss.startMultipartUpload(this.remoteDestination, length,
+                this.partSize, resumeId, TransferOptions.defaults()));
+        if (! this.uploadId.equals(resumeId)) {
+            Files.createDirectories(this.statePath.getParent());
+            Files.write(this.statePath, this.uploadId.getBytes(StandardCharsets.UTF_8));
+        }
+        ProgressReporter progress = new ProgressReporter(length, "upload", "uploaded");
+
+        ExecutorService executor = Executors.newFixedThreadPool(this.streams);
+        try (FileChannel fileChannel = FileChannel.open(this.filePath, StandardOpenOption.READ)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < partCount; i++) {
+                final int part = i;
+                futures.add(executor.submit(() -> {
+                    this.uploadPart(part, fileChannel, progress);
+                    return null;
+                }));
+            }
+            IOException failure = null;
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException exp) {
+                    if (failure == null) {
+                        failure = new IOException("Upload incomplete, run it again to resume: "
+                                + exp.getCause().getMessage(), exp.getCause());
+                    }
+                } catch (InterruptedException exp) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Upload interrupted", exp);
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        Files.deleteIfExists(this.statePath);
+    }
+
+    /**
+     * Uploads one part through its own session.
+     * @param part  the index of the part to upload
+     * @param fileChannel  the local file
+     * @param progress  the progress of the whole upload
+     * @throws IOException  if there is an error while communicating with the server or reading the file
+     */
+    private void uploadPart(int part, FileChannel fileChannel, ProgressReporter progress) throws IOException {
+        long start = part * this.partSize;
+        long end = Math.min(this.length, start + this.partSize);
+        Upload upload = BusyRetry.retry(() -> this.fss.uploadPart(this.uploadId, part, TransferOptions.defaults()));
+        try {
+            if (BusyRetry.bulk(upload::fileSize) == end - start) {
+                progress.skip(end - start);
+                return;
+            }
+            new PipelinedUpload(upload, fileChannel, this.filePath, progress).run(start, end);
+        } finally {
+            upload.close();
+        }
+    }
+}
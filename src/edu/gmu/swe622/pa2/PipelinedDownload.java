@@ -0,0 +1,146 @@
+package edu.gmu.swe622.pa2;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Downloads a byte range through one download session while keeping several chunk requests in flight. Requests are
+ * issued on a worker pool and their results are held in a bounded queue in file order; the calling thread writes each
+ * chunk to disk as soon as it arrives and immediately issues the next request, so network round trips overlap with each
+ * other and with local disk writes. Requests go through BusyRetry, so they wait while the client has as many in flight
+ * as the server allows and are sent again if the server turns them away as busy. When the session negotiated a codec,
+ * chunks are requested compressed and decompressed on the worker pool. When verification is on, chunks are requested
+ * with their checksums, which are checked as they are decoded, and may be hashed as they are written.
+ */
+public class PipelinedDownload {
+
+    /**
+     * A chunk request and the time it took.
+     */
+    private static class Fetched {
+        private byte[] data;
+        private long elapsedNanos;
+    }
+
+    private Download download;
+    private FileChannel fileChannel;
+    private int depth;
+    private ProgressReporter progress;
+    private HashTreeBuilder hashBuilder;
+
+    /**
+     * Constructor.
+     * @param download  the download session to request chunks from
+     * @param fileChannel  the destination file
+     * @param depth  the number of chunk requests to keep in flight
+     * @param progress  the progress of the download
+     * @throws IllegalArgumentException  if depth is not positive
+     */
+    public PipelinedDownload(Download download, FileChannel fileChannel, int depth, ProgressReporter progress) {
+        if (depth <= 0) {
+            throw new IllegalArgumentException("Pipeline depth must be > 0");
+        }
+        this.download = download;
+        this.fileChannel = fileChannel;
+        this.depth = depth;
+        this.progress = progress;
+    }
+
+    /**
+     * Hashes the downloaded bytes, in file order, as they are written.
+     * @param hashBuilder  the builder to pass the bytes to, positioned at the start of the range to download
+     */
+    public void setHashBuilder(HashTreeBuilder hashBuilder) {
+        this.hashBuilder = hashBuilder;
+    }
+
+    /**
+     * Downloads the bytes from start up to end and writes them at the same positions in the destination file.
+     * @param start  the position of the first byte to download
+     * @param end  the position just past the last byte to download
+     * @throws IOException  if there is an error while communicating with the server or writing the file
+     */
+    public void run(long start, long end) throws IOException {
+        TransferOptions options = BusyRetry.bulk(this.download::getOptions);
+        ChunkSizer chunkSizer = new ChunkSizer(options);
+        Codec codec = options.getCodec();
+        boolean encoded = codec != null || Constants.VERIFY;
+        ExecutorService executor = Executors.newFixedThreadPool(this.depth);
+        Deque<Future<Fetched>> inFlight = new ArrayDeque<>(this.depth);
+        try {
+            long requested = start;
+            long written = start;
+            while (written < end) {
+                while (requested < end && inFlight.size() < this.depth) {
+                    final long offset = requested;
+                    final int length = (int) Math.min(chunkSizer.nextChunkSize(), end - requested);
+                    inFlight.add(executor.submit(() -> this.fetch(offset, length, encoded)));
+                    requested += length;
+                }
+                Fetched chunk = this.await(inFlight.poll());
+                chunkSizer.record(chunk.data.length, chunk.elapsedNanos);
+                ByteBuffer buffer = ByteBuffer.wrap(chunk.data);
+                while (buffer.hasRemaining()) {
+                    written += this.fileChannel.write(buffer, written);
+                }
+                if (this.hashBuilder != null) {
+                    this.hashBuilder.update(chunk.data, 0, chunk.data.length);
+                }
+                this.progress.add(chunk.data.length);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Requests one chunk from the server, waiting for a free slot and retrying while the server is busy.
+     * @param offset  the position of the first byte of the chunk
+     * @param length  the number of bytes in the chunk
+     * @param encoded  true to request the chunk compressed with the negotiated codec and with its checksum
+     * @return  the chunk and the time it took to arrive
+     * @throws IOException  if there is an error while communicating with the server, the chunk is corrupt, or fewer
+     *                      bytes arrive than were requested
+     */
+    private Fetched fetch(long offset, int length, boolean encoded) throws IOException {
+        Fetched chunk = new Fetched();
+        long requestStart = System.nanoTime();
+        if (! encoded) {
+            chunk.data = BusyRetry.bulk(() -> this.download.readChunk(offset, length));
+        } else {
+            chunk.data = BusyRetry.bulk(() -> this.download.readEncodedChunk(offset, length)).decode(length);
+        }
+        chunk.elapsedNanos = System.nanoTime() - requestStart;
+        if (chunk.data.length != length) {
+            throw new IOException("Remote file was truncated while downloading");
+        }
+        return chunk;
+    }
+
+    /**
+     * Waits for the oldest chunk request to complete.
+     * @param future  the request to wait for
+     * @return  the chunk that arrived
+     * @throws IOException  if the request failed or the wait was interrupted
+     */
+    private Fetched await(Future<Fetched> future) throws IOException {
+        try {
+            return future.get();
+        } catch (ExecutionException exp) {
+            if (exp.getCause() instanceof IOException) {
+                throw (IOException) exp.getCause();
+            }
+            throw new IOException(exp.getCause().getMessage(), exp.getCause());
+        } catch (InterruptedException exp) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Download interrupted", exp);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package edu.gmu.swe622.pa2;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Uploads a byte range of a local file through one upload session. The next chunks are read from disk, and compressed
+ * when the session negotiated a codec, on a shared worker pool while the current chunk is being sent, so reading and
+ * compression do not hold up the network. Chunks are sent through BusyRetry, so they wait while the client has as many
+ * calls in flight as the server allows and are sent again if the server turns them away as busy. When verification is
+ * on, chunks are sent with their checksums so the server can check them, and may be hashed as they are sent.
+ */
+public class PipelinedUpload {
+
+    /**
+     * Reads and compresses chunks for every upload.
+     */
+    private static final ExecutorService ENCODER_EXECUTOR = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), runnable -> {
+                Thread thread = new Thread(runnable, "fss-encoder");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    /**
+     * The number of chunks prepared ahead of the one being sent.
+     */
+    private static final int READ_AHEAD_CHUNKS = 2;
+
+    /**
+     * A chunk read from the file, and the chunk to send for it.
+     */
+    private static class Prepared {
+        private byte[] raw;
+        private Chunk chunk;
+    }
+
+    private Upload upload;
+    private FileChannel fileChannel;
+    private Path filePath;
+    private ProgressReporter progress;
+    private HashTreeBuilder hashBuilder;
+
+    /**
+     * Constructor.
+     * @param upload  the upload session to send chunks through
+     * @param fileChannel  the local file
+     * @param filePath  the path of the local file, used in error messages
+     * @param progress  the progress of the upload
+     */
+    public PipelinedUpload(Upload upload, FileChannel fileChannel, Path filePath, ProgressReporter progress) {
+        this.upload = upload;
+        this.fileChannel = fileChannel;
+        this.filePath = filePath;
+        this.progress = progress;
+    }
+
+    /**
+     * Hashes the uploaded bytes, in file order, as they are sent.
+     * @param hashBuilder  the builder to pass the bytes to, positioned at the start of the range to upload
+     */
+    public void setHashBuilder(HashTreeBuilder hashBuilder) {
+        this.hashBuilder = hashBuilder;
+    }
+
+    /**
+     * Uploads the bytes from start up to end to the same positions in the remote file.
+     * @param start  the position of the first byte to upload
+     * @param end  the position just past the last byte to upload
+     * @throws IOException  if there is an error while communicating with the server or reading the file
+     */
+    public void run(long start, long end) throws IOException {
+        TransferOptions options = BusyRetry.bulk(this.upload::getOptions);
+        ChunkSizer chunkSizer = new ChunkSizer(options);
+        Codec codec = options.getCodec();
+        boolean encoded = codec != null || Constants.VERIFY;
+        Deque<Future<Prepared>> ready = new ArrayDeque<>(READ_AHEAD_CHUNKS + 1);
+        try {
+            long queued = start;
+            long written = start;
+            while (written < end) {
+                while (queued < end && ready.size() <= READ_AHEAD_CHUNKS) {
+                    final long offset = queued;
+                    final int length = (int) Math.min(chunkSizer.nextChunkSize(), end - queued);
+                    ready.add(ENCODER_EXECUTOR.submit(() -> this.prepare(offset, length, codec)));
+                    queued += length;
+                }
+                Prepared prepared = this.await(ready.poll());
+                Chunk chunk = prepared.chunk;
+                long requestStart = System.nanoTime();
+                final long offset = written;
+                if (! encoded) {
+                    BusyRetry.bulk(() -> {
+                        this.upload.writeChunk(offset, prepared.raw, chunk.getLength());
+                        return null;
+                    });
+                } else {
+                    BusyRetry.bulk(() -> {
+                        this.upload.writeEncodedChunk(offset, chunk);
+                        return null;
+                    });
+                }
+                if (this.hashBuilder != null) {
+                    this.hashBuilder.update(prepared.raw, 0, chunk.getLength());
+                }
+                chunkSizer.record(chunk.getLength(), System.nanoTime() - requestStart);
+                written += chunk.getLength();
+                this.progress.add(chunk.getLength());
+            }
+        } finally {
+            ready.forEach(future -> future.cancel(true));
+        }
+    }
+
+    /**
+     * Reads one chunk from the local file and compresses it.
+     * @param offset  the position of the first byte of the chunk
+     * @param length  the number of bytes in the chunk
+     * @param codec  the negotiated codec, or null to leave the chunk raw
+     * @return  the bytes read and the chunk to send
+     * @throws IOException  if the file cannot be read or is shorter than expected
+     */
+    private Prepared prepare(long offset, int length, Codec codec) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (this.fileChannel.read(buffer, offset + buffer.position()) == -1) {
+                throw new IOException("File was truncated while uploading: " + this.filePath);
+            }
+        }
+        Prepared prepared = new Prepared();
+        prepared.raw = buffer.array();
+        prepared.chunk = Chunk.encode(codec, prepared.raw, length);
+        return prepared;
+    }
+
+    /**
+     * Waits for the oldest prepared chunk.
+     * @param future  the chunk to wait for
+     * @return  the bytes read and the chunk to send
+     * @throws IOException  if the chunk could not be prepared or the wait was interrupted
+     */
+    private Prepared await(Future<Prepared> future) throws IOException {
+        try {
+            return future.get();
+        } catch (ExecutionException exp) {
+            if (exp.getCause() instanceof IOException) {
+                throw (IOException) exp.getCause();
+            }
+            throw new IOException(exp.getCause().getMessage(), exp.getCause());
+        } catch (InterruptedException exp) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Upload interrupted", exp);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package edu.gmu.swe622.pa2;
+
+import java.io.PrintStream;
+
+/**
+ * Prints the percentage of a transfer that has completed each time another 10% of the file has been sent. Progress
+ * can be reported from several threads at once. A reporter without an output stream only counts, for transfers that
+ * are part of a larger one.
+ */
+public class ProgressReporter {
+
+    private long total;
+    private PrintStream out;
+    private String noun;
+    private String verb;
+    private long transferred;
+    private float percentDone;
+
+    /**
+     * Constructor.
+     * @param total  the total number of bytes in the file
+     * @param noun  the word naming the transfer, such as "download"
+     * @param verb  the word describing the transfer in progress messages, such as "downloaded"
+     */
+    public ProgressReporter(long total, String noun, String verb) {
+        this(total, noun, verb, System.out);
+    }
+
+    /**
+     * Constructor for a reporter that prints to the given stream.
+     * @param total  the total number of bytes in the file
+     * @param noun  the word naming the transfer, such as "download"
+     * @param verb  the word describing the transfer in progress messages, such as "downloaded"
+     * @param out  the stream to print progress to, or null to print nothing
+     */
+    public ProgressReporter(long total, String noun, String verb, PrintStream out) {
+        this.total = total;
+        this.noun = noun;
+        this.verb = verb;
+        this.out = out;
+    }
+
+    /**
+     * Records bytes that were already transferred by an earlier, interrupted transfer.
+     * @param bytes  the number of bytes that will not be transferred again
+     */
+    public synchronized void skip(long bytes) {
+        if (bytes <= 0 || this.total == 0) {
+            return;
+        }
+        this.transferred += bytes;
+        this.percentDone = (((float) this.transferred) / this.total) * 100;
+        if (this.out != null) {
+            this.out.format("Skipping %d%% of %s\n", (int) this.percentDone, this.noun);
+            this.out.flush();
+        }
+    }
+
+    /**
+     * Records bytes transferred, printing the percentage done if it has passed the next 10% mark.
+     * @param bytes  the number of bytes just transferred
+     */
+    public synchronized void add(long bytes) {
+        this.transferred += bytes;
+        int percent = (int) ((((float) this.transferred) / this.total) * 100);
+        if (percent >= this.percentDone) {
+            if (this.out != null) {
+                this.out.format("%d%% %s\n", percent, this.verb);
+                this.out.flush();
+            }
+            while (this.percentDone <= percent) {
+                this.percentDone += 10;
+            }
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package edu.gmu.swe622.pa2;
+
+import java.io.IOException;
+import java.rmi.Remote;
+
+/**
+ * Interface for a remote object that holds server resources for one client, such as an open file, until it is
+ * closed.
+ */
+public interface RemoteSession extends Remote {
+
+    void close() throws IOException;
+}
@@ -0,0 +1,60 @@
+package edu.gmu.swe622.pa2;
+
+/**
+ * The weak rolling checksum used by rsync. The checksum of a window of bytes can be moved forward by one byte in
+ * constant time, which lets a delta upload test every offset of a file for a block the server already has.
+ */
+public class RollingChecksum {
+
+    private int a;
+    private int b;
+    private int length;
+
+    /**
+     * Computes the checksum of a window of bytes.
+     * @param data  the array holding the window
+     * @param offset  the index of the first byte of the window
+     * @param length  the number of bytes in the window
+     */
+    public void reset(byte[] data, int offset, int length) {
+        this.a = 0;
+        this.b = 0;
+        this.length = length;
+        for (int i = 0; i < length; i++) {
+            int value = data[offset + i] & 0xff;
+            this.a += value;
+            this.b += (length - i) * value;
+        }
+    }
+
+    /**
+     * Moves the window forward by one byte.
+     * @param out  the byte leaving the start of the window
+     * @param in  the byte entering the end of the window
+     */
+    public void roll(byte out, byte in) {
+        this.a += (in & 0xff) - (out & 0xff);
+        this.b += this.a - this.length * (out & 0xff);
+    }
+
+    /**
+     * Returns the checksum of the current window.
+     * @return  the 32 bit checksum
+     */
+    public int getValue() {
+        return (this.a & 0xffff) | (this.b << 16);
+    }
+
+    /**
+     * Computes the checksum of a window of bytes.
+     * @param data  the array holding the window
+     * @param offset  the index of the first byte of the window
+     * @param length  the number of bytes in the window
+     * @return  the 32 bit checksum
+     */
+    public static int of(byte[] data, int offset, int length) {
+        RollingChecksum checksum = new RollingChecksum();
+        checksum.reset(data, offset, length);
+        return checksum.getValue();
+    }
+}
@@ -0,0 +1,32 @@
+package edu.gmu.swe622.pa2;
+
+import java.io.IOException;
+
+/**
+ * Thrown when the server turns a request away because it is already doing as much as it has been allowed to. The
+ * request can be sent again after the suggested delay.
+ */
+public class ServerBusyException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private long retryAfterMillis;
+
+    /**
+     * Constructor.
+     * @param message  what limit was reached
+     * @param retryAfterMillis  how long, in milliseconds, the client should wait before trying again
+     */
+    public ServerBusyException(String message, long retryAfterMillis) {
+        super(message + "; try again in " + retryAfterMillis + " ms");
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    /**
+     * Getter for the retry delay.
+     * @return  how long, in milliseconds, the client should wait before trying again
+     */
+    public long getRetryAfterMillis() {
+        return this.retryAfterMillis;
+    }
+}
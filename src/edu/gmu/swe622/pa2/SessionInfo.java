@@ -0,0 +1,73 @@
+package edu.gmu.swe622.pa2;
+
+import java.io.Serializable;
+
+/**
+ * A description of one open session on the server.
+ */
+public class SessionInfo implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private long id;
+    private String kind;
+    private String path;
+    private long ageMillis;
+    private long idleMillis;
+
+    /**
+     * Constructor.
+     * @param id  the number the server gave the session
+     * @param kind  what the session is for, such as "upload"
+     * @param path  the file or directory the session works on, as the client named it
+     * @param ageMillis  how long ago the session was opened, in milliseconds
+     * @param idleMillis  how long ago the session was last used, in milliseconds, or 0 if it is in use
+     */
+    public SessionInfo(long id, String kind, String path, long ageMillis, long idleMillis) {
+        this.id = id;
+        this.kind = kind;
+        this.path = path;
+        this.ageMillis = ageMillis;
+        this.idleMillis = idleMillis;
+    }
+
+    /**
+     * Getter for the id.
+     * @return  the number the server gave the session
+     */
+    public long getId() {
+        return this.id;
+    }
+
+    /**
+     * Getter for the kind.
+     * @return  what the session is for, such as "upload"
+     */
+    public String getKind() {
+        return this.kind;
+    }
+
+    /**
+     * Getter for the path.
+     * @return  the file or directory the session works on, as the client named it
+     */
+    public String getPath() {
+        return this.path;
+    }
+
+    /**
+     * Getter for the age.
+     * @return  how long ago the session was opened, in milliseconds
+     */
+    public long getAgeMillis() {
+        return this.ageMillis;
+    }
+
+    /**
+     * Getter for the idle time.
+     * @return  how long ago the session was last used, in milliseconds, or 0 if it is in use
+     */
+    public long getIdleMillis() {
+        return this.idleMillis;
+    }
+}
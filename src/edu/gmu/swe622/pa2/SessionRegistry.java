@@ -0,0 +1,444 @@
+package edu.gmu.swe622.pa2;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.rmi.NoSuchObjectException;
+import java.rmi.Remote;
+import java.rmi.server.UnicastRemoteObject;
+import java.rmi.server.Unreferenced;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps track of every session the server has exported to its clients. Each session is exported behind a proxy that
+ * records when it was last used, so that a background task can close and unexport sessions that have been idle too
+ * long, such as those of clients that died mid-transfer; sessions are otherwise only released when the client closes
+ * them or distributed garbage collection finally notices the client is gone. The registry also caps the number of
+ * open sessions, and passes the sessions and calls of bulk transfers through admission control. A session opened
+ * with a reattach key is kept when its client goes away, until it is reaped, so that the same client host resuming
+ * the same transfer gets the same session back instead of opening the file again; a session is only handed back once
+ * it has been orphaned, so a client never gets a session another client is still using. Every call made through a
+ * proxy is timed, and the bytes of file data it moves are counted in total and per client. A session opened by a
+ * client of the framed transport is not exported to RMI: the proxy itself is handed to FrameServer, which keeps it
+ * for the connection.
+ */
+public class SessionRegistry {
+
+    /**
+     * Opens the server side of a session.
+     * @param <T>  the remote interface of the session
+     */
+    public interface Opener<T extends RemoteSession> {
+
+        /**
+         * Opens the session.
+         * @return  the session
+         * @throws IOException  if the session cannot be opened
+         */
+        T open() throws IOException;
+    }
+
+    /**
+     * One exported session, and the handler of the calls made through its proxy.
+     */
+    private class Session implements InvocationHandler {
+        private long id = SessionRegistry.this.nextId.incrementAndGet();
+        private String kind;
+        private AdmissionControl.Priority priority;
+        private String client;
+        private String path;
+        private String reattachKey;
+        private RemoteSession target;
+        private Remote proxy;
+        private Remote stub;
+        private long openedAt = System.nanoTime();
+        private volatile long lastUsed = this.openedAt;
+        private AtomicInteger activeCalls = new AtomicInteger();
+        private AtomicBoolean closed = new AtomicBoolean();
+        private AtomicBoolean orphaned = new AtomicBoolean();
+
+        /**
+         * Passes a call on to the session, recording when it was made, how long it took and how much data it moved.
+         * Closing the session through the proxy also removes it from the registry. A call on a session the server
+         * has already closed is refused, except for close, which then does nothing. The call is counted as active
+         * before the session is checked, while the reaper marks a session closed before checking for active calls,
+         * so a call and the reaper can never both go ahead.
+         * @param proxy  the proxy the call was made on
+         * @param method  the method called
+         * @param args  the arguments of the call
+         * @return  the result of the call
+         * @throws Throwable  whatever the session throws
+         */
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                switch (method.getName()) {
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    default:
+                        return this.kind + " session " + this.id;
+                }
+            }
+            if (method.getDeclaringClass() == Unreferenced.class) {
+                SessionRegistry.this.unreferenced(this);
+                return null;
+            }
+            boolean closing = "close".equals(method.getName()) && method.getParameterCount() == 0;
+            boolean bulk = this.priority == AdmissionControl.Priority.BULK && ! closing;
+            this.activeCalls.incrementAndGet();
+            if (this.closed.get()) {
+                this.activeCalls.decrementAndGet();
+                if (closing) {
+                    return null;
+                }
+                throw new NoSuchObjectException("The " + this.kind + " session has been closed");
+            }
+            if (bulk) {
+                try {
+                    SessionRegistry.this.admission.beginCall(this.client);
+                } catch (ServerBusyException exp) {
+                    this.activeCalls.decrementAndGet();
+                    throw exp;
+                }
+            }
+            this.lastUsed = System.nanoTime();
+            long start = this.lastUsed;
+            Object result = null;
+            try {
+                result = method.invoke(this.target, args);
+                return result;
+            } catch (InvocationTargetException exp) {
+                throw exp.getCause();
+            } finally {
+                this.lastUsed = System.nanoTime();
+                this.activeCalls.decrementAndGet();
+                if (closing) {
+                    SessionRegistry.this.release(this);
+                }
+                long bytesIn = 0;
+                for (int i = 0; args != null && i < args.length; i++) {
+                    bytesIn += AdmissionControl.bytesOf(args[i]);
+                }
+                long bytesOut = AdmissionControl.bytesOf(result);
+                this.count(method, this.lastUsed - start, bytesIn, bytesOut);
+                if (bulk) {
+                    SessionRegistry.this.admission.endCall(this.client, bytesIn + bytesOut);
+                }
+            }
+        }
+
+        /**
+         * Records the latency of a call and the bytes it moved.
+         * @param method  the method called
+         * @param nanos  how long the call took
+         * @param bytesIn  the bytes of file data the client sent
+         * @param bytesOut  the bytes of file data the client received
+         */
+        private void count(Method method, long nanos, long bytesIn, long bytesOut) {
+            Metrics metrics = SessionRegistry.this.metrics;
+            metrics.record(method.getDeclaringClass().getSimpleName() + "." + method.getName(), nanos);
+            if (bytesIn > 0) {
+                metrics.add("bytes.in", bytesIn);
+                metrics.add("client." + this.client + ".bytes.in", bytesIn);
+            }
+            if (bytesOut > 0) {
+                metrics.add("bytes.out", bytesOut);
+                metrics.add("client." + this.client + ".bytes.out", bytesOut);
+            }
+        }
+
+        /**
+         * Describes the session.
+         * @param now  the current value of System.nanoTime
+         * @return  the id, kind, path, age and idle time of the session
+         */
+        private SessionInfo describe(long now) {
+            long idle = this.activeCalls.get() > 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(now - this.lastUsed);
+            return new SessionInfo(this.id, this.kind, this.path, TimeUnit.NANOSECONDS.toMillis(now - this.openedAt),
+                    idle);
+        }
+    }
+
+    private int maxSessions;
+    private long idleTimeoutNanos;
+    private AdmissionControl admission;
+    private Metrics metrics;
+    private AtomicLong nextId = new AtomicLong();
+    private AtomicInteger openCount = new AtomicInteger();
+    private Map<Long, Session> sessions = new ConcurrentHashMap<>();
+    private Map<String, Session> reattachable = new ConcurrentHashMap<>();
+    private List<Runnable> reapTasks = new CopyOnWriteArrayList<>();
+    private ScheduledExecutorService reaper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "fss-session-reaper");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Constructor. Starts a background task that closes idle sessions.
+     * @param maxSessions  the most sessions that can be open at once
+     * @param idleTimeoutMillis  how long a session can go unused before it is closed
+     * @param admission  the admission control that bulk sessions and their calls pass through
+     * @param metrics  where the latency of calls and the bytes they move are recorded
+     * @throws IllegalArgumentException  if maxSessions or idleTimeoutMillis is not positive
+     */
+    public SessionRegistry(int maxSessions, long idleTimeoutMillis, AdmissionControl admission, Metrics metrics) {
+        if (maxSessions <= 0 || idleTimeoutMillis <= 0) {
+            throw new IllegalArgumentException("Session limit and idle timeout must be > 0");
+        }
+        this.maxSessions = maxSessions;
+        this.admission = admission;
+        this.metrics = metrics;
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+        long period = Math.max(100, idleTimeoutMillis / 4);
+        this.reaper.scheduleWithFixedDelay(this::reap, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Opens a session and exports it, unless the most sessions allowed are already open or, for a bulk session, the
+     * client has as many transfers open as it is allowed.
+     * @param type  the remote interface of the session
+     * @param kind  what the session is for, such as "upload"
+     * @param priority  whether the session moves file data and is subject to admission control
+     * @param path  the file or directory the session works on, as the client named it
+     * @param reattachKey  the key a later call to reattach finds the session by, together with the client's host, or
+     *                     null if it cannot be reattached
+     * @param opener  opens the session
+     * @param <T>  the remote interface of the session
+     * @return  the stub the client uses to call the session, or the proxy itself for a framed transport client
+     * @throws IOException  if the session cannot be opened or exported
+     * @throws ServerBusyException  if too many sessions are open
+     */
+    public <T extends RemoteSession> T open(Class<T> type, String kind, AdmissionControl.Priority priority,
+            String path, String reattachKey, Opener<T> opener) throws IOException {
+        if (this.openCount.incrementAndGet() > this.maxSessions) {
+            this.openCount.decrementAndGet();
+            throw new ServerBusyException("The server has too many open sessions",
+                    this.admission.getRetryAfterMillis());
+        }
+        long start = System.nanoTime();
+        Session session = new Session();
+        session.kind = kind;
+        session.priority = priority;
+        session.client = this.admission.currentClient();
+        session.path = path;
+        session.reattachKey = reattachKey != null ? session.client + " " + reattachKey : null;
+        if (priority == AdmissionControl.Priority.BULK) {
+            try {
+                this.admission.openSession(session.client);
+            } catch (ServerBusyException exp) {
+                this.openCount.decrementAndGet();
+                throw exp;
+            }
+        }
+        try {
+            session.target = opener.open();
+            session.proxy = (Remote) Proxy.newProxyInstance(type.getClassLoader(),
+                    new Class<?>[] { type, Unreferenced.class }, session);
+            if (FrameServer.currentClient() == null) {
+                session.stub = UnicastRemoteObject.exportObject(session.proxy, 0);
+            }
+        } catch (IOException | RuntimeException exp) {
+            this.openCount.decrementAndGet();
+            if (priority == AdmissionControl.Priority.BULK) {
+                this.admission.closeSession(session.client);
+            }
+            if (session.target != null) {
+                session.target.close();
+            }
+            throw exp;
+        }
+        this.sessions.put(session.id, session);
+        if (session.reattachKey != null) {
+            this.reattachable.put(session.reattachKey, session);
+        }
+        this.metrics.record("open." + type.getSimpleName(), System.nanoTime() - start);
+        return type.cast(session.stub != null ? session.stub : session.proxy);
+    }
+
+    /**
+     * Returns an open session that the current client's host opened with the given reattach key and that has been
+     * orphaned, because the client that held it went away, so that a client resuming a transfer can carry on with
+     * it. The session is no longer orphaned once it has been handed back.
+     * @param type  the remote interface of the session
+     * @param reattachKey  the key the session was opened with
+     * @param <T>  the remote interface of the session
+     * @return  the stub of the session, or its proxy for a framed transport client, or null if there is no such
+     *          session
+     */
+    public <T extends RemoteSession> T reattach(Class<T> type, String reattachKey) {
+        Session session = this.reattachable.get(this.admission.currentClient() + " " + reattachKey);
+        if (session == null || session.closed.get() || session.activeCalls.get() > 0
+                || ! type.isInstance(session.proxy)) {
+            return null;
+        }
+        Remote handle = FrameServer.currentClient() != null ? session.proxy : session.stub;
+        if (handle == null || ! session.orphaned.compareAndSet(true, false)) {
+            return null;
+        }
+        session.lastUsed = System.nanoTime();
+        return type.cast(handle);
+    }
+
+    /**
+     * Describes every open session.
+     * @return  the open sessions, oldest first
+     */
+    public List<SessionInfo> list() {
+        long now = System.nanoTime();
+        List<SessionInfo> infos = new ArrayList<>();
+        for (Session session : this.sessions.values()) {
+            infos.add(session.describe(now));
+        }
+        infos.sort((first, second) -> Long.compare(first.getId(), second.getId()));
+        return infos;
+    }
+
+    /**
+     * Returns the number of open sessions.
+     * @return  the count of open sessions
+     */
+    public int size() {
+        return this.sessions.size();
+    }
+
+    /**
+     * Getter for the idle timeout.
+     * @return  how long, in milliseconds, a session can go unused before it is closed
+     */
+    public long getIdleTimeoutMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(this.idleTimeoutNanos);
+    }
+
+    /**
+     * Adds a task that the reaper runs every time it looks for idle sessions, so that what clients leave behind
+     * outside their sessions is cleared up on the same schedule.
+     * @param task  the task, which holds up the reaper while it runs
+     */
+    public void addReapTask(Runnable task) {
+        this.reapTasks.add(task);
+    }
+
+    /**
+     * Stops reaping and closes every open session.
+     */
+    public void close() {
+        this.reaper.shutdownNow();
+        for (Session session : this.sessions.values()) {
+            this.closeSession(session);
+        }
+    }
+
+    /**
+     * Closes the sessions that have not been used for longer than the idle timeout, then runs the reap tasks. Runs
+     * on the reaper thread. A session is marked closed before its active calls are counted again, so that a call
+     * that starts at the same moment either sees it closed or keeps it open.
+     */
+    private void reap() {
+        long now = System.nanoTime();
+        for (Session session : this.sessions.values()) {
+            if (session.activeCalls.get() > 0 || now - session.lastUsed <= this.idleTimeoutNanos
+                    || ! session.closed.compareAndSet(false, true)) {
+                continue;
+            }
+            if (session.activeCalls.get() > 0) {
+                // a call started after all
+                session.closed.set(false);
+                continue;
+            }
+            this.closeTarget(session);
+        }
+        for (Runnable task : this.reapTasks) {
+            try {
+                task.run();
+            } catch (RuntimeException exp) {
+                // keep reaping on schedule
+                exp.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Called when no client holds a session any more, either because RMI's lease on it ran out or because the
+     * framed transport connection that held it closed. The session is closed at once, unless it can be reattached,
+     * in which case it is marked as orphaned and left for the reaper.
+     * @param session  the session no client holds
+     */
+    private void unreferenced(Session session) {
+        if (session.reattachKey == null) {
+            this.closeSession(session);
+        } else {
+            session.orphaned.set(true);
+        }
+    }
+
+    /**
+     * Closes a session on behalf of the server and removes it.
+     * @param session  the session to close
+     */
+    private void closeSession(Session session) {
+        if (session.closed.compareAndSet(false, true)) {
+            this.closeTarget(session);
+        }
+    }
+
+    /**
+     * Closes a session that has just been marked closed and removes it.
+     * @param session  the session to close
+     */
+    private void closeTarget(Session session) {
+        try {
+            session.target.close();
+        } catch (IOException | RuntimeException exp) {
+            exp.printStackTrace();
+        }
+        this.remove(session);
+    }
+
+    /**
+     * Removes a session its client has closed.
+     * @param session  the session that was closed
+     */
+    private void release(Session session) {
+        if (session.closed.compareAndSet(false, true)) {
+            this.remove(session);
+        }
+    }
+
+    /**
+     * Removes a closed session from the registry and unexports it.
+     * @param session  the session that was closed
+     */
+    private void remove(Session session) {
+        this.sessions.remove(session.id);
+        if (session.reattachKey != null) {
+            this.reattachable.remove(session.reattachKey, session);
+        }
+        this.openCount.decrementAndGet();
+        if (session.priority == AdmissionControl.Priority.BULK) {
+            this.admission.closeSession(session.client);
+        }
+        if (session.stub == null) {
+            return;
+        }
+        try {
+            UnicastRemoteObject.unexportObject(session.proxy, true);
+        } catch (NoSuchObjectException exp) {
+            // already unexported
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package edu.gmu.swe622.pa2;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Interface for uploading a file into the server's chunk store, sending only the chunks it does not already have.
+ */
+public interface StoreUpload extends RemoteSession {
+
+    TransferOptions getOptions() throws IOException;
+
+    List<String> missing(List<String> hashes) throws IOException;
+
+    void putChunks(List<Chunk> chunks) throws IOException;
+
+    void commit(List<ChunkRef> chunks) throws IOException;
+
+    void close() throws IOException;
+}
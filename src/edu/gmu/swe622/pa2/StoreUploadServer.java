@@ -0,0 +1,133 @@
+package edu.gmu.swe622.pa2;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Implements the remote StoreUpload interface. Chunks are stored as they arrive; the file only appears at its path
+ * when the client commits the list of chunks it is made of and every one of them is in the store. Every chunk the
+ * client asks about or sends is pinned in the store until the session is closed, so that a sweep does not delete it
+ * before the manifest that uses it has been written.
+ */
+public class StoreUploadServer implements StoreUpload {
+
+    private ChunkStore chunkStore;
+    private Path filePath;
+    private long length;
+    private TransferOptions options;
+    private Runnable onCommitted;
+    private Set<String> pinned = new HashSet<>();
+
+    /**
+     * Constructor.
+     * @param chunkStore  the store to put chunks in
+     * @param filePath  the path to write the manifest to
+     * @param length  the length of the file to upload
+     * @param options  the transfer options negotiated with the client
+     * @param onCommitted  called once the manifest has been written
+     */
+    public StoreUploadServer(ChunkStore chunkStore, Path filePath, long length, TransferOptions options,
+                             Runnable onCommitted) {
+        this.chunkStore = chunkStore;
+        this.filePath = filePath;
+        this.length = length;
+        this.options = options;
+        this.onCommitted = onCommitted;
+    }
+
+    /**
+     * Returns the transfer options negotiated with the client.
+     * @return  the options used for this upload
+     */
+    @Override
+    public TransferOptions getOptions() {
+        return this.options;
+    }
+
+    /**
+     * Pins the chunks, then returns the hashes of those that the store does not have.
+     * @param hashes  the hashes of the chunks the file is made of
+     * @return  the hashes that must be sent
+     * @throws IllegalArgumentException  if a hash is not a hexadecimal SHA-256 hash
+     */
+    @Override
+    public List<String> missing(List<String> hashes) {
+        this.pin(hashes);
+        return this.chunkStore.missing(hashes);
+    }
+
+    /**
+     * Stores chunks. Each chunk is stored under the hash of its decompressed bytes.
+     * @param chunks  the chunks to store, which may be compressed with the negotiated codec
+     * @throws IOException  if a chunk is corrupt or larger than the negotiated maximum chunk size, or cannot be
+     *                      written
+     */
+    @Override
+    public void putChunks(List<Chunk> chunks) throws IOException {
+        for (Chunk chunk : chunks) {
+            String hash = this.chunkStore.put(chunk.decode(this.options.getMaxChunkSize()));
+            synchronized (this.pinned) {
+                if (! this.pinned.add(hash)) {
+                    // the session already held a pin on the chunk
+                    this.chunkStore.unpin(Collections.singletonList(hash));
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the manifest of the uploaded file to its path, replacing whatever was there.
+     * @param chunks  the chunks the file is made of, in order
+     * @throws IOException  if the manifest cannot be written
+     * @throws IllegalArgumentException  if a chunk is not in the store or has the wrong length, or the chunks do not
+     *                                   add up to the length of the file
+     */
+    @Override
+    public void commit(List<ChunkRef> chunks) throws IOException {
+        Manifest manifest = new Manifest(chunks);
+        if (manifest.getLength() != this.length) {
+            throw new IllegalArgumentException("Chunks add up to " + manifest.getLength() + " bytes instead of "
+                    + this.length);
+        }
+        for (ChunkRef chunk : chunks) {
+            if (this.chunkStore.length(chunk.getHash()) != chunk.getLength()) {
+                throw new IllegalArgumentException("Chunk has not been uploaded: " + chunk.getHash());
+            }
+        }
+        manifest.write(this.filePath);
+        this.onCommitted.run();
+    }
+
+    /**
+     * Ends the session and unpins its chunks. Chunks that were stored but never committed are removed by the next
+     * sweep of the store.
+     */
+    @Override
+    public void close() {
+        synchronized (this.pinned) {
+            this.chunkStore.unpin(this.pinned);
+            this.pinned.clear();
+        }
+    }
+
+    /**
+     * Pins the chunks this session has not pinned yet.
+     * @param hashes  the hashes of the chunks
+     */
+    private void pin(List<String> hashes) {
+        synchronized (this.pinned) {
+            List<String> added = new ArrayList<>();
+            for (String hash : hashes) {
+                if (this.pinned.add(hash)) {
+                    added.add(hash);
+                }
+            }
+            this.chunkStore.pin(added);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package edu.gmu.swe622.pa2;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the rate at which bytes are transferred. Tokens accumulate at the configured rate up to one second's worth,
+ * and every transfer takes as many tokens as it moved bytes. A transfer that takes more tokens than are available
+ * leaves the bucket in debt and the caller is made to wait until the debt has been paid back, so the long-run rate
+ * never exceeds the limit while short bursts go through at full speed.
+ */
+public class TokenBucket {
+
+    private double bytesPerNano;
+    private double capacity;
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+
+    /**
+     * Constructor.
+     * @param bytesPerSecond  the most bytes transferred per second on average
+     * @throws IllegalArgumentException  if bytesPerSecond is not positive
+     */
+    public TokenBucket(long bytesPerSecond) {
+        if (bytesPerSecond <= 0) {
+            throw new IllegalArgumentException("Rate must be > 0");
+        }
+        this.bytesPerNano = bytesPerSecond / (double) TimeUnit.SECONDS.toNanos(1);
+        this.capacity = bytesPerSecond;
+        this.tokens = this.capacity;
+    }
+
+    /**
+     * Takes tokens for bytes that were transferred.
+     * @param bytes  the number of bytes transferred
+     * @return  how long, in nanoseconds, the caller should wait before transferring more, 0 if it need not wait
+     */
+    public synchronized long take(long bytes) {
+        long now = System.nanoTime();
+        this.tokens = Math.min(this.capacity, this.tokens + (now - this.lastRefill) * this.bytesPerNano);
+        this.lastRefill = now;
+        this.tokens -= bytes;
+        return this.tokens >= 0 ? 0 : (long) (-this.tokens / this.bytesPerNano);
+    }
+}
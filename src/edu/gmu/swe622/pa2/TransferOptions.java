@@ -0,0 +1,167 @@
+package edu.gmu.swe622.pa2;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Settings for an upload or download that are negotiated between the client and the server when the transfer
+ * session is created. The client sends the options it would like to use, and the session reports the options that
+ * both sides agreed on.
+ */
+public class TransferOptions implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private int minChunkSize;
+    private int maxChunkSize;
+    private int initialChunkSize;
+    private Durability durability;
+    private long syncInterval;
+    private List<String> codecs = new ArrayList<>();
+
+    /**
+     * Constructor for options that leave the durability of uploads to the server.
+     * @param minChunkSize  the smallest chunk size, in bytes, to use for the transfer
+     * @param maxChunkSize  the largest chunk size, in bytes, to use for the transfer
+     * @param initialChunkSize  the chunk size, in bytes, to start the transfer with
+     * @throws IllegalArgumentException  if the sizes are not positive or are inconsistent with each other
+     */
+    public TransferOptions(int minChunkSize, int maxChunkSize, int initialChunkSize) {
+        this(minChunkSize, maxChunkSize, initialChunkSize, null, 0);
+    }
+
+    /**
+     * Constructor.
+     * @param minChunkSize  the smallest chunk size, in bytes, to use for the transfer
+     * @param maxChunkSize  the largest chunk size, in bytes, to use for the transfer
+     * @param initialChunkSize  the chunk size, in bytes, to start the transfer with
+     * @param durability  when an upload is forced to disk, or null to leave it to the other side
+     * @param syncInterval  the number of bytes written between each fsync when durability is PERIODIC
+     * @throws IllegalArgumentException  if the sizes are not positive or are inconsistent with each other
+     */
+    public TransferOptions(int minChunkSize, int maxChunkSize, int initialChunkSize, Durability durability,
+                           long syncInterval) {
+        if (minChunkSize <= 0 || maxChunkSize < minChunkSize) {
+            throw new IllegalArgumentException("Chunk sizes must be > 0 and the minimum must not exceed the maximum");
+        }
+        this.minChunkSize = minChunkSize;
+        this.maxChunkSize = maxChunkSize;
+        this.initialChunkSize = Math.max(minChunkSize, Math.min(maxChunkSize, initialChunkSize));
+        if (durability == Durability.PERIODIC && syncInterval <= 0) {
+            throw new IllegalArgumentException("The sync interval must be > 0 for periodic durability");
+        }
+        this.durability = durability;
+        this.syncInterval = syncInterval;
+    }
+
+    /**
+     * Returns options built from the chunk sizes and durability configured in Constants.
+     * @return  the options configured for this process
+     */
+    public static TransferOptions defaults() {
+        TransferOptions options = new TransferOptions(Constants.MIN_CHUNK_SIZE, Constants.MAX_CHUNK_SIZE,
+                Constants.INITIAL_CHUNK_SIZE, Constants.UPLOAD_DURABILITY, Constants.UPLOAD_SYNC_INTERVAL);
+        options.setCodecs(Codecs.parse(Constants.COMPRESSION_CODECS));
+        return options;
+    }
+
+    /**
+     * Combines the options requested by a client with the limits of this process. The resulting range of chunk
+     * sizes is the overlap of both ranges; if they do not overlap, the smaller maximum wins. The durability requested
+     * by the client is used if it asked for one, otherwise this process's durability, and NONE if neither did. The
+     * codec is the first one in the client's list that this process also supports; chunks are not compressed if
+     * there is none.
+     * @param requested  the options requested by the other side of the transfer, or null to use these options
+     * @return  the options both sides can use
+     */
+    public TransferOptions negotiate(TransferOptions requested) {
+        if (requested == null) {
+            requested = this;
+        }
+        int max = Math.min(this.maxChunkSize, requested.maxChunkSize);
+        int min = Math.min(max, Math.max(this.minChunkSize, requested.minChunkSize));
+        TransferOptions durable = requested.durability != null ? requested : this;
+        Durability durability = durable.durability != null ? durable.durability : Durability.NONE;
+        TransferOptions negotiated = new TransferOptions(min, max, requested.initialChunkSize, durability,
+                durable.syncInterval);
+        for (String codec : requested.getCodecs()) {
+            if (this.getCodecs().contains(codec)) {
+                negotiated.codecs.add(codec);
+                break;
+            }
+        }
+        return negotiated;
+    }
+
+    /**
+     * Getter for the minimum chunk size.
+     * @return  the smallest chunk size, in bytes, to use for the transfer
+     */
+    public int getMinChunkSize() {
+        return this.minChunkSize;
+    }
+
+    /**
+     * Getter for the maximum chunk size.
+     * @return  the largest chunk size, in bytes, to use for the transfer
+     */
+    public int getMaxChunkSize() {
+        return this.maxChunkSize;
+    }
+
+    /**
+     * Getter for the initial chunk size.
+     * @return  the chunk size, in bytes, to start the transfer with
+     */
+    public int getInitialChunkSize() {
+        return this.initialChunkSize;
+    }
+
+    /**
+     * Getter for the durability of uploads.
+     * @return  when an upload is forced to disk, or null if it is left to the other side
+     */
+    public Durability getDurability() {
+        return this.durability;
+    }
+
+    /**
+     * Getter for the sync interval.
+     * @return  the number of bytes written between each fsync when durability is PERIODIC
+     */
+    public long getSyncInterval() {
+        return this.syncInterval;
+    }
+
+    /**
+     * Getter for the codecs.
+     * @return  the names of the codecs to compress chunks with, in order of preference; after negotiation, the one
+     *          codec both sides agreed on, or none
+     */
+    public List<String> getCodecs() {
+        return this.codecs == null ? new ArrayList<>() : this.codecs;
+    }
+
+    /**
+     * Setter for the codecs.
+     * @param codecs  the names of the codecs to compress chunks with, in order of preference
+     */
+    public void setCodecs(List<String> codecs) {
+        this.codecs = new ArrayList<>(codecs);
+    }
+
+    /**
+     * Returns the codec chunks are compressed with.
+     * @return  the first codec in the list that is registered in this process, or null to send chunks uncompressed
+     */
+    public Codec getCodec() {
+        for (String name : this.getCodecs()) {
+            Codec codec = Codecs.find(name);
+            if (codec != null) {
+                return codec;
+            }
+        }
+        return null;
+    }
+}
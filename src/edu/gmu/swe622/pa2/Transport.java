@@ -0,0 +1,66 @@
+package edu.gmu.swe622.pa2;
+
+import java.io.IOException;
+import java.rmi.Naming;
+import java.rmi.NotBoundException;
+
+/**
+ * How a client reaches the server.
+ */
+public enum Transport {
+    /**
+     * Java RMI, with the server looked up in the RMI registry.
+     */
+    RMI("rmi"),
+    /**
+     * The framed transport, with every call made over one connection to the server's port.
+     */
+    FRAME("frame");
+
+    private String name;
+
+    /**
+     * Constructor.
+     * @param name  the name of the transport as it is written in configuration
+     */
+    Transport(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Getter for the transport name.
+     * @return  the name of the transport as it is written in configuration
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Connects to a server.
+     * @param hostName  the host on which the server is running
+     * @param port  the port the server is listening on
+     * @return  the server
+     * @throws IOException  if the server cannot be reached
+     * @throws NotBoundException  if the server is not bound in the RMI registry
+     */
+    public FileSharingSystem connect(String hostName, int port) throws IOException, NotBoundException {
+        if (this == FRAME) {
+            return new FrameClient(hostName, port, Constants.FRAME_MAX_SIZE).getServer();
+        }
+        return (FileSharingSystem) Naming.lookup("rmi://" + hostName + ":" + port + "/fss");
+    }
+
+    /**
+     * Finds the instance of Transport using the name.
+     * @param name  the name of the transport to find, or null
+     * @return  the transport with the specified name, or null if no transport with that name exists
+     */
+    public static Transport findByName(String name) {
+        for (Transport transport : Transport.values()) {
+            if (transport.name.equalsIgnoreCase(name)) {
+                return transport;
+            }
+        }
+        return null;
+    }
+}
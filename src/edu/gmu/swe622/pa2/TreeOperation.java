@@ -0,0 +1,13 @@
+package edu.gmu.swe622.pa2;
+
+import java.io.IOException;
+
+/**
+ * Interface for following a copy or move that the server carries out on its own files.
+ */
+public interface TreeOperation extends RemoteSession {
+
+    OperationStatus poll(long waitMillis) throws IOException;
+
+    void close() throws IOException;
+}
@@ -0,0 +1,310 @@
+package edu.gmu.swe622.pa2;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.UserDefinedFileAttributeView;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Implements remote TreeOperation interface. Copies or moves a file or a directory tree from one place on the server to
+ * another without any of its bytes leaving the server. A move within one volume is a single atomic rename, however
+ * large the tree. A copy, or a move across volumes, creates the directories of the tree and then copies its files on a
+ * pool of worker threads shared by all operations, each with FileChannel.transferTo so that the operating system moves
+ * the bytes without them passing through the JVM; a moved file is deleted once its copy is complete, and the source
+ * directories once all their files are. Modification times are kept, as are the user-defined attributes of files where
+ * both file systems have them, so that a copied manifest is still a manifest. Each file is copied into a temporary file
+ * next to its target, which is renamed over the target only once its bytes, attributes and modification time are in
+ * place, so a target that already existed is either untouched or completely replaced, and keeps none of its old
+ * attributes. A file that fails is reported and the others carry on. The client follows the operation by polling it;
+ * closing it before it has finished cancels it, leaving the files already copied or moved where they are.
+ */
+public class TreeOperationServer implements TreeOperation {
+
+    /**
+     * The most bytes copied from a file between updates of the progress and checks for cancellation.
+     */
+    private static final long SLICE_SIZE = 8L * 1024 * 1024;
+
+    /**
+     * Copies the files of every operation.
+     */
+    private static final ExecutorService COPY_EXECUTOR = Executors.newFixedThreadPool(Constants.COPY_WORKERS,
+            runnable -> {
+                Thread thread = new Thread(runnable, "fss-copy");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private Path source;
+    private Path target;
+    private boolean move;
+    private Consumer<Path> changed;
+    private Map<Path, FileTime> directories = new LinkedHashMap<>();
+    private Map<Path, Long> files = new LinkedHashMap<>();
+    private long bytesTotal;
+    private AtomicInteger filesDone = new AtomicInteger();
+    private AtomicLong bytesDone = new AtomicLong();
+    private AtomicInteger remaining = new AtomicInteger();
+    private List<String> errors = Collections.synchronizedList(new ArrayList<>());
+    private CountDownLatch finished = new CountDownLatch(1);
+    private volatile boolean cancelled;
+
+    /**
+     * Constructor. Lists the tree, then either moves it at once or creates its directories under the target and
+     * starts copying its files.
+     * @param source  the file or directory to copy or move
+     * @param target  where to copy or move it to, which must not exist unless both are files
+     * @param move  true to move the tree, false to copy it
+     * @param changed  told about every file or directory before and after the operation changes it, so that the
+     *                 server can drop what it keeps about it
+     * @throws IOException  if the tree cannot be listed, moved or its directories created
+     */
+    public TreeOperationServer(Path source, Path target, boolean move, Consumer<Path> changed) throws IOException {
+        this.source = source;
+        this.target = target;
+        this.move = move;
+        this.changed = changed;
+        this.scan();
+        if (move && this.moveAtomically()) {
+            return;
+        }
+        for (Path directory : this.directories.keySet()) {
+            Path created = this.target.resolve(directory);
+            if (! Files.isDirectory(created)) {
+                Files.createDirectory(created);
+            }
+            this.changed.accept(created);
+        }
+        this.remaining.set(this.files.size());
+        if (this.files.isEmpty()) {
+            this.finish();
+            return;
+        }
+        for (Map.Entry<Path, Long> file : this.files.entrySet()) {
+            COPY_EXECUTOR.execute(() -> this.copy(file.getKey(), file.getValue()));
+        }
+    }
+
+    /**
+     * Waits for the operation to finish, up to a time limit, and returns how far it has got.
+     * @param waitMillis  the longest time to wait, in milliseconds
+     * @return  the status of the operation
+     * @throws IOException  if interrupted while waiting
+     */
+    @Override
+    public OperationStatus poll(long waitMillis) throws IOException {
+        try {
+            this.finished.await(Math.max(0, waitMillis), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException exp) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the operation", exp);
+        }
+        List<String> errors;
+        synchronized (this.errors) {
+            errors = new ArrayList<>(this.errors);
+        }
+        return new OperationStatus(this.filesDone.get(), this.files.size(), this.bytesDone.get(), this.bytesTotal,
+                this.finished.getCount() == 0, errors);
+    }
+
+    /**
+     * Cancels the operation if it has not finished. Files being copied stop at the end of their current slice.
+     */
+    @Override
+    public void close() {
+        if (this.finished.getCount() > 0) {
+            this.cancelled = true;
+        }
+    }
+
+    /**
+     * Lists the directories of the tree, parents first, with their modification times, and its files with their
+     * sizes, all relative to the source. A source that is a file is listed as the one file with an empty relative
+     * path. Anything that is not a regular file or a directory is reported, since it is not copied.
+     * @throws IOException  if the tree cannot be read
+     */
+    private void scan() throws IOException {
+        Files.walkFileTree(this.source, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                TreeOperationServer.this.directories.put(TreeOperationServer.this.source.relativize(dir),
+                        attrs.lastModifiedTime());
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                Path relative = TreeOperationServer.this.source.relativize(file);
+                if (attrs.isRegularFile()) {
+                    TreeOperationServer.this.files.put(relative, attrs.size());
+                    TreeOperationServer.this.bytesTotal += attrs.size();
+                } else {
+                    TreeOperationServer.this.errors.add(TreeOperationServer.this.name(relative)
+                            + ": not a regular file");
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exp) throws IOException {
+                throw exp;
+            }
+        });
+    }
+
+    /**
+     * Moves the whole tree with one rename, if the source and target are on the same volume.
+     * @return  true if the tree was moved, false if it has to be copied instead
+     * @throws IOException  if the tree cannot be moved
+     */
+    private boolean moveAtomically() throws IOException {
+        for (Path file : this.files.keySet()) {
+            this.changed.accept(this.source.resolve(file));
+        }
+        this.changed.accept(this.target);
+        try {
+            Files.move(this.source, this.target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException exp) {
+            return false;
+        }
+        this.changed.accept(this.source);
+        this.changed.accept(this.target);
+        this.errors.clear();
+        this.filesDone.set(this.files.size());
+        this.bytesDone.set(this.bytesTotal);
+        this.finished.countDown();
+        return true;
+    }
+
+    /**
+     * Copies one file of the tree into a temporary file next to its target and renames that over the target, then
+     * deletes the source file if this is a move. Runs on the copy workers.
+     * @param file  the path of the file relative to the source
+     * @param size  the number of bytes in the file when the tree was listed
+     */
+    private void copy(Path file, long size) {
+        Path from = this.source.resolve(file);
+        Path to = this.target.resolve(file);
+        Path temp = to.resolveSibling("." + to.getFileName() + "." + UUID.randomUUID() + ".fsscopy");
+        long copied = 0;
+        try {
+            if (this.cancelled) {
+                return;
+            }
+            try (FileChannel in = FileChannel.open(from, StandardOpenOption.READ);
+                    FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                long length = in.size();
+                while (copied < length) {
+                    if (this.cancelled) {
+                        throw new IOException("cancelled");
+                    }
+                    long count = in.transferTo(copied, Math.min(SLICE_SIZE, length - copied), out);
+                    if (count <= 0) {
+                        break;
+                    }
+                    copied += count;
+                    this.bytesDone.addAndGet(count);
+                }
+            }
+            copyUserAttributes(from, temp);
+            Files.setLastModifiedTime(temp, Files.getLastModifiedTime(from));
+            this.changed.accept(to);
+            Files.move(temp, to, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            this.changed.accept(to);
+            if (this.move) {
+                this.changed.accept(from);
+                Files.delete(from);
+                this.changed.accept(from);
+            }
+            this.filesDone.incrementAndGet();
+            this.bytesDone.addAndGet(size - copied);
+        } catch (IOException exp) {
+            this.errors.add(this.name(file) + ": " + exp.getMessage());
+        } finally {
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException exp) {
+                this.errors.add(this.name(file) + ": " + exp.getMessage());
+            }
+            if (this.remaining.decrementAndGet() == 0) {
+                this.finish();
+            }
+        }
+    }
+
+    /**
+     * Copies the user-defined attributes of a file, such as the mark of a manifest, if the file systems of both
+     * copies have them.
+     * @param from  the source file
+     * @param to  the copy
+     * @throws IOException  if the attributes cannot be read or written
+     */
+    private static void copyUserAttributes(Path from, Path to) throws IOException {
+        if (! Files.getFileStore(from).supportsFileAttributeView(UserDefinedFileAttributeView.class)
+                || ! Files.getFileStore(to).supportsFileAttributeView(UserDefinedFileAttributeView.class)) {
+            return;
+        }
+        UserDefinedFileAttributeView source = Files.getFileAttributeView(from, UserDefinedFileAttributeView.class);
+        UserDefinedFileAttributeView target = Files.getFileAttributeView(to, UserDefinedFileAttributeView.class);
+        for (String name : source.list()) {
+            ByteBuffer value = ByteBuffer.allocate(source.size(name));
+            source.read(name, value);
+            value.flip();
+            target.write(name, value);
+        }
+    }
+
+    /**
+     * Finishes the operation once every file has been copied or has failed. A move that moved every file deletes
+     * the source directories; the modification times of the target directories are set to those of the sources.
+     */
+    private void finish() {
+        List<Path> directories = new ArrayList<>(this.directories.keySet());
+        Collections.reverse(directories);
+        for (Path directory : directories) {
+            Path from = this.source.resolve(directory);
+            Path to = this.target.resolve(directory);
+            try {
+                Files.setLastModifiedTime(to, this.directories.get(directory));
+                if (this.move && this.errors.isEmpty() && ! this.cancelled) {
+                    Files.delete(from);
+                    this.changed.accept(from);
+                }
+            } catch (IOException exp) {
+                this.errors.add(this.name(directory) + ": " + exp.getMessage());
+            }
+        }
+        this.finished.countDown();
+    }
+
+    /**
+     * Names a file or directory of the tree in an error message.
+     * @param relative  the path relative to the source
+     * @return  the path relative to the source, or the source's own name for the source itself
+     */
+    private String name(Path relative) {
+        return relative.toString().isEmpty() ? String.valueOf(this.source.getFileName()) : relative.toString();
+    }
+}
@@ -0,0 +1,401 @@
+package edu.gmu.swe622.pa2;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Transfers the files of a directory tree on a fixed number of worker threads. Files are handed out smallest first,
+ * so the per-file round trips of many small files overlap each other instead of queueing behind a large one. If
+ * batching is set up, the small files are instead grouped into batches that are each transferred with a single
+ * call, and a batch is handed out like one file. A file or batch that fails is retried a few times with a growing
+ * delay before it is reported, and the other files carry on.
+ * Every file that has been transferred is recorded in a manifest, so running the same transfer again after an
+ * interruption or a failure skips the files that were already done, as long as their size and modification time
+ * have not changed. The manifest is deleted once every file has been transferred.
+ */
+public class TreeTransfer {
+
+    /**
+     * The delay before the first retry of a failed file, in milliseconds. Each further retry waits twice as long.
+     */
+    private static final long RETRY_DELAY_MILLIS = 500;
+
+    /**
+     * One file of a directory tree.
+     */
+    public static class Item {
+        private String path;
+        private long size;
+        private long lastModified;
+
+        /**
+         * Constructor.
+         * @param path  the path of the file relative to the root of the tree, with '/' between names
+         * @param size  the number of bytes in the file
+         * @param lastModified  the modification time of the file in milliseconds
+         */
+        public Item(String path, long size, long lastModified) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        /**
+         * Getter for the path.
+         * @return  the path of the file relative to the root of the tree, with '/' between names
+         */
+        public String getPath() {
+            return this.path;
+        }
+
+        /**
+         * Getter for the size.
+         * @return  the number of bytes in the file
+         */
+        public long getSize() {
+            return this.size;
+        }
+
+        /**
+         * Getter for the modification time.
+         * @return  the modification time of the file in milliseconds
+         */
+        public long getLastModified() {
+            return this.lastModified;
+        }
+
+        /**
+         * Returns the line that records the file in the manifest.
+         * @return  the size, modification time and path of the file, separated by tabs
+         */
+        private String toManifestLine() {
+            return this.size + "\t" + this.lastModified + "\t" + this.path;
+        }
+    }
+
+    /**
+     * Transfers one file of a tree.
+     */
+    public interface FileTransfer {
+
+        /**
+         * Transfers a file.
+         * @param item  the file to transfer
+         * @throws IOException  if the file could not be transferred; the transfer is retried
+         */
+        void transfer(Item item) throws IOException;
+    }
+
+    /**
+     * Transfers a batch of small files of a tree with a single call.
+     */
+    public interface BatchTransfer {
+
+        /**
+         * Transfers a batch of files.
+         * @param items  the files to transfer
+         * @return  for each file, in the same order, null if it was transferred or why it was not
+         * @throws IOException  if the batch could not be transferred; the whole batch is retried
+         */
+        List<String> transfer(List<Item> items) throws IOException;
+    }
+
+    private Path manifestPath;
+    private int streams;
+    private int retries;
+    private String noun;
+    private String verb;
+    private long maxBatchFileSize;
+    private long maxBatchSize;
+    private BatchTransfer batchTransfer;
+    private int skipped;
+    private int transferred;
+
+    /**
+     * Constructor.
+     * @param manifestPath  the file recording which files have been transferred
+     * @param streams  the number of files to transfer at once
+     * @param retries  the number of times to retry a file that failed
+     * @param noun  the word naming the transfer, such as "download"
+     * @param verb  the word describing the transfer in progress messages, such as "downloaded"
+     * @throws IllegalArgumentException  if streams is not positive or retries is negative
+     */
+    public TreeTransfer(Path manifestPath, int streams, int retries, String noun, String verb) {
+        if (streams <= 0) {
+            throw new IllegalArgumentException("Number of streams must be > 0");
+        }
+        if (retries < 0) {
+            throw new IllegalArgumentException("Number of retries must be >= 0");
+        }
+        this.manifestPath = manifestPath;
+        this.streams = streams;
+        this.retries = retries;
+        this.noun = noun;
+        this.verb = verb;
+    }
+
+    /**
+     * Sends small files in batches instead of one at a time.
+     * @param maxFileSize  the largest file that is put in a batch
+     * @param maxSize  the most bytes of file data in one batch
+     * @param transfer  transfers one batch
+     */
+    public void setBatching(long maxFileSize, long maxSize, BatchTransfer transfer) {
+        this.maxBatchFileSize = maxFileSize;
+        this.maxBatchSize = maxSize;
+        this.batchTransfer = transfer;
+    }
+
+    /**
+     * Transfers every file of a tree that the manifest does not record as done, printing the progress of the whole
+     * tree and any file that could not be transferred.
+     * @param items  the files of the tree
+     * @param transfer  transfers one file
+     * @throws IOException  if the manifest cannot be read or written, or some files could not be transferred
+     */
+    public void run(List<Item> items, FileTransfer transfer) throws IOException {
+        Set<String> done = this.readManifest();
+        List<Item> pending = new ArrayList<>();
+        long total = 0;
+        long skippedBytes = 0;
+        for (Item item : items) {
+            total += item.getSize();
+            if (done.contains(item.toManifestLine())) {
+                skippedBytes += item.getSize();
+                this.skipped++;
+            } else {
+                pending.add(item);
+            }
+        }
+        pending.sort(Comparator.comparingLong(Item::getSize));
+        List<List<Item>> units = this.group(pending);
+        ProgressReporter progress = new ProgressReporter(total, this.noun, this.verb);
+        progress.skip(skippedBytes);
+
+        Files.createDirectories(this.manifestPath.getParent());
+        List<String> failures = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger next = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(this.streams, Math.max(units.size(), 1)));
+        try (BufferedWriter manifest = Files.newBufferedWriter(this.manifestPath, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            List<Future<Void>> workers = new ArrayList<>();
+            for (int i = 0; i < this.streams; i++) {
+                workers.add(executor.submit(() -> {
+                    for (int index = next.getAndIncrement(); index < units.size(); index = next.getAndIncrement()) {
+                        List<Item> unit = units.get(index);
+                        List<String> unitFailures = this.isBatched(unit.get(0)) ? this.transferBatch(unit)
+                                : Collections.singletonList(this.transfer(unit.get(0), transfer));
+                        for (int position = 0; position < unit.size(); position++) {
+                            Item item = unit.get(position);
+                            if (unitFailures.get(position) == null) {
+                                this.record(manifest, item);
+                            } else {
+                                failures.add(unitFailures.get(position));
+                            }
+                            progress.add(item.getSize());
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<Void> worker : workers) {
+                try {
+                    worker.get();
+                } catch (InterruptedException exp) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while transferring files", exp);
+                } catch (ExecutionException exp) {
+                    Throwable cause = exp.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    }
+                    throw new IOException(cause);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        if (! failures.isEmpty()) {
+            for (String failure : failures) {
+                System.err.println(failure);
+            }
+            throw new IOException(failures.size() + " of " + items.size() + " files could not be " + this.verb
+                    + "; run the " + this.noun + " again to retry them");
+        }
+        Files.deleteIfExists(this.manifestPath);
+    }
+
+    /**
+     * Getter for the number of files skipped by the last run.
+     * @return  the number of files the manifest recorded as already transferred
+     */
+    public int getSkipped() {
+        return this.skipped;
+    }
+
+    /**
+     * Getter for the number of files transferred by the last run.
+     * @return  the number of files transferred
+     */
+    public synchronized int getTransferred() {
+        return this.transferred;
+    }
+
+    /**
+     * Splits the files to transfer into the units handed out to the workers: a batch of small files, or one file.
+     * @param pending  the files to transfer, smallest first
+     * @return  the units, in the order they are handed out
+     */
+    private List<List<Item>> group(List<Item> pending) {
+        List<List<Item>> units = new ArrayList<>();
+        List<Item> batch = null;
+        long batchSize = 0;
+        for (Item item : pending) {
+            if (! this.isBatched(item)) {
+                units.add(Collections.singletonList(item));
+                continue;
+            }
+            if (batch == null || batch.size() >= BatchArchive.MAX_ENTRIES
+                    || batchSize + item.getSize() > this.maxBatchSize) {
+                batch = new ArrayList<>();
+                batchSize = 0;
+                units.add(batch);
+            }
+            batch.add(item);
+            batchSize += item.getSize();
+        }
+        return units;
+    }
+
+    /**
+     * Returns whether a file is sent in a batch.
+     * @param item  the file
+     * @return  true if batching is set up and the file is small enough
+     */
+    private boolean isBatched(Item item) {
+        return this.batchTransfer != null && item.getSize() <= this.maxBatchFileSize;
+    }
+
+    /**
+     * Transfers a batch of files, retrying the whole batch with a growing delay if the call fails. Files the server
+     * rejects are not retried.
+     * @param items  the files to transfer
+     * @return  for each file, null if it was transferred or a message saying why it was not
+     */
+    private List<String> transferBatch(List<Item> items) {
+        for (int attempt = 0; ; attempt++) {
+            String error;
+            try {
+                List<String> errors = this.batchTransfer.transfer(items);
+                List<String> failures = new ArrayList<>();
+                for (int i = 0; i < items.size(); i++) {
+                    String itemError = errors.get(i);
+                    failures.add(itemError == null ? null
+                            : "Could not " + this.noun + " " + items.get(i).getPath() + ": " + itemError);
+                }
+                return failures;
+            } catch (IllegalArgumentException | IllegalStateException exp) {
+                error = exp.getMessage();
+            } catch (IOException exp) {
+                if (attempt < this.retries && this.sleepBeforeRetry(attempt, exp)) {
+                    continue;
+                }
+                error = exp.getMessage();
+            }
+            List<String> failures = new ArrayList<>();
+            for (Item item : items) {
+                failures.add("Could not " + this.noun + " " + item.getPath() + ": " + error);
+            }
+            return failures;
+        }
+    }
+
+    /**
+     * Transfers one file, retrying it with a growing delay if it fails. A file the server rejects outright is not
+     * retried.
+     * @param item  the file to transfer
+     * @param transfer  transfers one file
+     * @return  null if the file was transferred, or a message saying why it was not
+     */
+    private String transfer(Item item, FileTransfer transfer) {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                transfer.transfer(item);
+                return null;
+            } catch (IllegalArgumentException | IllegalStateException exp) {
+                return "Could not " + this.noun + " " + item.getPath() + ": " + exp.getMessage();
+            } catch (IOException exp) {
+                if (attempt >= this.retries || ! this.sleepBeforeRetry(attempt, exp)) {
+                    return "Could not " + this.noun + " " + item.getPath() + ": " + exp.getMessage();
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits before a retry, twice as long as before the previous one, or as long as the server asked if it turned
+     * the transfer away for being busy.
+     * @param attempt  the number of attempts that have failed, less one
+     * @param failure  why the last attempt failed
+     * @return  false if the thread was interrupted while waiting
+     */
+    private boolean sleepBeforeRetry(int attempt, IOException failure) {
+        long delay = RETRY_DELAY_MILLIS << attempt;
+        if (failure instanceof ServerBusyException) {
+            delay = Math.max(delay, ((ServerBusyException) failure).getRetryAfterMillis());
+        }
+        try {
+            Thread.sleep(delay);
+            return true;
+        } catch (InterruptedException exp) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Records a transferred file in the manifest. The line is flushed at once so that it survives the client being
+     * killed.
+     * @param manifest  the open manifest
+     * @param item  the file that was transferred
+     * @throws IOException  if the manifest cannot be written
+     */
+    private synchronized void record(BufferedWriter manifest, Item item) throws IOException {
+        this.transferred++;
+        if (item.getPath().indexOf('\n') >= 0) {
+            // cannot be written as one line; the file is transferred again next time
+            return;
+        }
+        manifest.write(item.toManifestLine());
+        manifest.newLine();
+        manifest.flush();
+    }
+
+    /**
+     * Reads the files recorded by an earlier, unfinished run of the same transfer.
+     * @return  the manifest lines of the files that were transferred
+     * @throws IOException  if the manifest exists but cannot be read
+     */
+    private Set<String> readManifest() throws IOException {
+        if (! Files.exists(this.manifestPath)) {
+            return Collections.emptySet();
+        }
+        return new HashSet<>(Files.readAllLines(this.manifestPath, StandardCharsets.UTF_8));
+    }
+}
@@ -1,16 +1,21 @@
 package edu.gmu.swe622.pa2;
 
 import java.io.IOException;
-import java.rmi.Remote;
 
 /**
  * Interface for uploading a file remotely.
  */
-public interface Upload extends Remote {
+public interface Upload extends RemoteSession {
 
-    void write(int[] bytes) throws IOException;
+    void writeChunk(long offset, byte[] data, int len) throws IOException;
+
+    void writeEncodedChunk(long offset, Chunk chunk) throws IOException;
+
+    TransferOptions getOptions() throws IOException;
 
     long fileSize() throws IOException;
 
+    HashTree hashTree(int leafSize) throws IOException;
+
     void close() throws IOException;
 }
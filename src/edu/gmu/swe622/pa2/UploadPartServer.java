@@ -0,0 +1,173 @@
+package edu.gmu.swe622.pa2;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Implements the remote Upload interface for one part of a multipart upload. Offsets passed to writeChunk are
+ * positions in the whole file and must fall inside the part. The part is written from its start with no gaps, so
+ * that the bytes received always form a prefix of the part and the part is only complete once every byte of it has
+ * arrived.
+ */
+public class UploadPartServer implements Upload {
+
+    /**
+     * Reads the bytes of the part received so far, with offsets relative to the start of the part.
+     */
+    private class PartSource implements ChunkSource {
+
+        /**
+         * Returns the number of bytes of the part received so far.
+         * @return  the size of the received part
+         */
+        @Override
+        public long size() {
+            return UploadPartServer.this.bytesUploaded;
+        }
+
+        /**
+         * Reads bytes of the part from the temporary file.
+         * @param offset  the position in the part of the first byte to read
+         * @param length  the number of bytes to read
+         * @return  the bytes read, fewer than length only past the end of the part
+         * @throws IOException  if the file cannot be read
+         */
+        @Override
+        public byte[] read(long offset, int length) throws IOException {
+            UploadPartServer part = UploadPartServer.this;
+            int count = (int) Math.max(0, Math.min(length, part.partEnd - part.partStart - offset));
+            return part.multipartUpload.read(part.partStart + offset, count);
+        }
+
+        /**
+         * Returns true, since every read goes to the file.
+         * @return  true
+         */
+        @Override
+        public boolean readsFromDisk() {
+            return true;
+        }
+
+        /**
+         * Does nothing; the temporary file belongs to the multipart upload.
+         */
+        @Override
+        public void close() {
+        }
+    }
+
+    private MultipartUpload multipartUpload;
+    private int part;
+    private long partStart;
+    private long partEnd;
+    private volatile long bytesUploaded;
+    private TransferOptions options;
+    private Runnable onFinished;
+
+    /**
+     * Constructor.
+     * @param multipartUpload  the upload the part belongs to
+     * @param part  the index of the part
+     * @param options  the transfer options negotiated with the client
+     * @param onFinished  called once the part completes the whole upload
+     */
+    public UploadPartServer(MultipartUpload multipartUpload, int part, TransferOptions options, Runnable onFinished) {
+        this.multipartUpload = multipartUpload;
+        this.part = part;
+        this.partStart = multipartUpload.partOffset(part);
+        this.partEnd = this.partStart + multipartUpload.partLength(part);
+        this.options = options;
+        this.onFinished = onFinished;
+        if (multipartUpload.isCompleted(part)) {
+            this.bytesUploaded = this.partEnd - this.partStart;
+        }
+    }
+
+    /**
+     * Returns the transfer options negotiated with the client.
+     * @return  the options used for this upload
+     */
+    @Override
+    public TransferOptions getOptions() {
+        return this.options;
+    }
+
+    /**
+     * Returns the number of bytes of the part that have already been received. This is the length of the part if
+     * it was completed by an earlier session, and 0 otherwise.
+     * @return  the count of bytes of the part already on the server
+     */
+    @Override
+    public long fileSize() {
+        return this.bytesUploaded;
+    }
+
+    /**
+     * Writes the first len bytes of data into the part, starting at offset. Bytes past the end of the part are
+     * ignored. A chunk may rewrite bytes already received, but must not start past the last of them.
+     * @param offset  the position in the whole file of the first byte to write
+     * @param data  the bytes to write
+     * @param len  the number of bytes in data to write
+     * @throws IOException if there is a communication error
+     * @throws IllegalArgumentException  if offset is outside the part or would leave a gap after the bytes received
+     *                                   so far, len is out of range, or len exceeds the negotiated maximum chunk size
+     */
+    @Override
+    public synchronized void writeChunk(long offset, byte[] data, int len) throws IOException {
+        if (offset < this.partStart || offset > this.partEnd || len < 0 || len > data.length) {
+            throw new IllegalArgumentException("Offset or length is out of range for part " + this.part);
+        }
+        if (offset > this.partStart + this.bytesUploaded) {
+            throw new IllegalArgumentException("Chunk at " + offset + " leaves a gap in part " + this.part
+                    + ", which has been received up to " + (this.partStart + this.bytesUploaded));
+        }
+        if (len > this.options.getMaxChunkSize()) {
+            throw new IllegalArgumentException("Chunk is larger than the negotiated maximum of "
+                    + this.options.getMaxChunkSize() + " bytes");
+        }
+        int count = (int) Math.min(len, this.partEnd - offset);
+        this.multipartUpload.write(offset, ByteBuffer.wrap(data, 0, count));
+        this.bytesUploaded = Math.max(this.bytesUploaded, offset + count - this.partStart);
+    }
+
+    /**
+     * Writes a chunk that may be compressed with the negotiated codec, starting at offset. The chunk is decompressed
+     * and then written as by writeChunk.
+     * @param offset  the position in the file of the first byte to write
+     * @param chunk  the chunk to write
+     * @throws IOException if there is a communication error, or the chunk is corrupt or larger than the negotiated
+     *                     maximum chunk size
+     */
+    @Override
+    public void writeEncodedChunk(long offset, Chunk chunk) throws IOException {
+        byte[] data = chunk.decode(this.options.getMaxChunkSize());
+        this.writeChunk(offset, data, data.length);
+    }
+
+    /**
+     * Returns the hash tree of the bytes of the part received so far, as reported by fileSize, with offsets relative
+     * to the start of the part. The whole file can also be verified with FileSharingSystem.hashTree once every part
+     * has arrived.
+     * @param leafSize  the number of bytes in each leaf
+     * @return  the tree of the received bytes of the part
+     * @throws IOException  if the temporary file cannot be read
+     * @throws IllegalArgumentException  if leafSize is too small
+     */
+    @Override
+    public HashTree hashTree(int leafSize) throws IOException {
+        HashTree.checkLeafSize(leafSize);
+        return HashTree.compute(new PartSource(), this.bytesUploaded, leafSize);
+    }
+
+    /**
+     * Ends the part session. If every byte of the part was received, the part is marked complete, which finishes
+     * the upload when it was the last missing part.
+     * @throws IOException if there is a communication error
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (this.bytesUploaded == this.partEnd - this.partStart && this.multipartUpload.completePart(this.part)) {
+            this.onFinished.run();
+        }
+    }
+}
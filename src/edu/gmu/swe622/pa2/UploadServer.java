@@ -1,41 +1,78 @@
 package edu.gmu.swe622.pa2;
 
-import java.io.File;
 import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
 /**
- * Implements remote Upload interface.
+ * Implements remote Upload interface. Uploaded chunks are staged in pooled direct buffers and written to disk by a
+ * background writer, so writeChunk returns without waiting for the disk. Chunks that arrive in file order are hashed
+ * as they arrive, so the hash tree of the uploaded file is ready for the client to verify without reading the file
+ * back.
  */
 public class UploadServer implements Upload {
 
-    private RandomAccessFile randomAccessFile;
+    /**
+     * Staging buffers shared by every upload.
+     */
+    private static final BufferPool BUFFER_POOL = new BufferPool(Constants.UPLOAD_BUFFER_SIZE,
+            Constants.UPLOAD_BUFFER_SLICE, Constants.UPLOAD_BUFFER_COUNT, Constants.ADMIT_WAIT_MILLIS,
+            Constants.ADMIT_RETRY_MILLIS);
+
+    private FileChannel fileChannel;
+    private WriteBehindFile writeBehindFile;
     private Path filePath;
     private long length;
     private long bytesUploaded;
+    private TransferOptions options;
+    private DigestCache digestCache;
+    private HashTree prefixTree;
+    private HashTreeBuilder hashBuilder;
+    private boolean written;
+
+    /**
+     * Returns the number of slices of the staging buffers held by uploads.
+     * @return  the count of slices in use
+     */
+    public static int getBuffersInUse() {
+        return BUFFER_POOL.inUse();
+    }
 
     /**
      * Constructor.
      * @param filePath the path to upload the file to
      * @param length  the length of the file to upload
+     * @param options  the transfer options negotiated with the client
+     * @throws IOException if there is a communication error
+     */
+    public UploadServer(Path filePath, long length, TransferOptions options) throws IOException {
+        this(filePath, length, options, null);
+    }
+
+    /**
+     * Constructor for an upload whose hash tree is published to a digest cache when it completes.
+     * @param filePath the path to upload the file to
+     * @param length  the length of the file to upload
+     * @param options  the transfer options negotiated with the client
+     * @param digestCache  the cache of hash trees, or null if trees are not cached
      * @throws IOException if there is a communication error
      */
-    public UploadServer(Path filePath, long length) throws IOException {
+    public UploadServer(Path filePath, long length, TransferOptions options, DigestCache digestCache)
+            throws IOException {
+        this.digestCache = digestCache;
         this.filePath = filePath;
         this.length = length;
-        File file = this.filePath.toFile();
-        if (! file.exists()) {
-            file.createNewFile();
-        }
-        this.bytesUploaded = file.length();
-        this.randomAccessFile = new RandomAccessFile(file, "rw");
-        if (this.bytesUploaded > 0 && this.bytesUploaded < this.length) {
-            randomAccessFile.seek(this.bytesUploaded);
-        } else {
+        this.options = options;
+        this.fileChannel = FileChannel.open(this.filePath, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        this.bytesUploaded = this.fileChannel.size();
+        if (this.bytesUploaded == 0 || this.bytesUploaded >= this.length) {
             // if the existing file is >= to the size of the file being uploaded, overwrite it
+            this.fileChannel.truncate(0);
             this.bytesUploaded = 0;
         }
+        this.writeBehindFile = new WriteBehindFile(this.fileChannel, BUFFER_POOL, options.getDurability(),
+                options.getSyncInterval());
     }
 
     /**
@@ -45,29 +82,133 @@ public class UploadServer implements Upload {
      */
     @Override
     public long fileSize() throws IOException {
-        return this.randomAccessFile.length();
+        return this.bytesUploaded;
     }
 
     /**
-     * Writes the bytes from the buffer to the file being uploaded. If the number of bytes written exceeds the total
-     * file size, the remaining bytes in the buffer are ignored.
-     * @param bytes  the bytes to write
+     * Returns the transfer options negotiated with the client.
+     * @return  the options used for this upload
+     */
+    @Override
+    public TransferOptions getOptions() {
+        return this.options;
+    }
+
+    /**
+     * Writes the first len bytes of data to the file being uploaded, starting at offset. If the write would extend
+     * past the total file size, the remaining bytes in the buffer are ignored. The bytes are written to disk in the
+     * background; a failure to write them is reported by a later call to writeChunk or close.
+     * @param offset  the position in the file of the first byte to write
+     * @param data  the bytes to write
+     * @param len  the number of bytes in data to write
      * @throws IOException if there is a communication error
+     * @throws IllegalArgumentException  if offset or len is out of range, or len exceeds the negotiated maximum
+     *                                   chunk size
      */
     @Override
-    public void write(int[] bytes) throws IOException {
-        for (int i = 0; i < bytes.length; i++) {
-            if (this.bytesUploaded++ >= this.length) break;
-            this.randomAccessFile.write(bytes[i]);
+    public void writeChunk(long offset, byte[] data, int len) throws IOException {
+        if (offset < 0 || len < 0 || len > data.length) {
+            throw new IllegalArgumentException("Offset or length is out of range");
         }
+        if (len > this.options.getMaxChunkSize()) {
+            throw new IllegalArgumentException("Chunk is larger than the negotiated maximum of "
+                    + this.options.getMaxChunkSize() + " bytes");
+        }
+        int count = (int) Math.max(0, Math.min(len, this.length - offset));
+        this.writeBehindFile.write(offset, data, 0, count);
+        this.hash(offset, data, count);
+        this.bytesUploaded = Math.max(this.bytesUploaded, offset + count);
     }
 
     /**
-     * Closes the file.
-     * @throws IOException if there is a communication error
+     * Writes a chunk that may be compressed with the negotiated codec, starting at offset. The chunk is decompressed
+     * and then written as by writeChunk.
+     * @param offset  the position in the file of the first byte to write
+     * @param chunk  the chunk to write
+     * @throws IOException if there is a communication error, or the chunk is corrupt or larger than the negotiated
+     *                     maximum chunk size
+     */
+    @Override
+    public void writeEncodedChunk(long offset, Chunk chunk) throws IOException {
+        byte[] data = chunk.decode(this.options.getMaxChunkSize());
+        this.writeChunk(offset, data, data.length);
+    }
+
+    /**
+     * Returns the hash tree of the bytes of the file received so far. Before any chunk is written this is the tree
+     * of the partial file left by an earlier upload, which the client compares against its own file to decide where
+     * to resume. Afterwards it is the tree built as chunks arrived, or, if they arrived out of order, the tree of the
+     * bytes on disk.
+     * @param leafSize  the number of bytes in each leaf
+     * @return  the tree of the first fileSize() bytes of the file
+     * @throws IOException if there is a communication error, or the file cannot be read
+     * @throws IllegalArgumentException  if leafSize is too small
+     */
+    @Override
+    public synchronized HashTree hashTree(int leafSize) throws IOException {
+        HashTree.checkLeafSize(leafSize);
+        if (this.hashBuilder != null && this.hashBuilder.getPosition() == this.bytesUploaded) {
+            HashTree built = this.hashBuilder.build();
+            if (built.getLeafSize() == leafSize) {
+                return built;
+            }
+        }
+        if (! this.written && this.prefixTree != null && this.prefixTree.getLeafSize() == leafSize) {
+            return this.prefixTree;
+        }
+        this.writeBehindFile.flush();
+        HashTree tree;
+        try (ChunkSource source = new FileChannelSource(this.filePath)) {
+            tree = HashTree.compute(source, this.bytesUploaded, leafSize);
+        }
+        if (! this.written) {
+            this.prefixTree = tree;
+        }
+        return tree;
+    }
+
+    /**
+     * Writes out any staged bytes, forces them to disk if the negotiated durability requires it, and closes the file.
+     * If the whole file was hashed as it arrived, its tree is published to the digest cache.
+     * @throws IOException if there is a communication error, or the uploaded bytes could not be written
      */
     @Override
     public void close() throws IOException {
-        this.randomAccessFile.close();
+        this.writeBehindFile.close();
+        synchronized (this) {
+            if (this.digestCache != null && this.hashBuilder != null && this.hashBuilder.getPosition() == this.length) {
+                this.digestCache.put(this.filePath, this.hashBuilder.build());
+            }
+        }
+    }
+
+    /**
+     * Adds written bytes to the hash tree of the file. The first write starts the tree, continuing from the tree of
+     * the partial file if the client asked for it; a write that is not at the end of the bytes hashed so far stops
+     * hashing.
+     * @param offset  the position in the file of the first byte
+     * @param data  the bytes written
+     * @param count  the number of bytes of data written
+     * @throws IOException  if the partial file cannot be read
+     */
+    private synchronized void hash(long offset, byte[] data, int count) throws IOException {
+        if (! this.written) {
+            this.written = true;
+            if (offset == 0) {
+                int leafSize = this.prefixTree != null ? this.prefixTree.getLeafSize() : Constants.HASH_BLOCK_SIZE;
+                this.hashBuilder = new HashTreeBuilder(leafSize);
+            } else if (this.prefixTree != null && offset <= this.prefixTree.getLength()) {
+                try (ChunkSource source = new FileChannelSource(this.filePath)) {
+                    this.hashBuilder = HashTreeBuilder.resume(this.prefixTree, offset, source);
+                }
+            }
+        }
+        if (this.hashBuilder != null) {
+            if (offset == this.hashBuilder.getPosition()) {
+                this.hashBuilder.update(data, 0, count);
+            } else {
+                this.hashBuilder = null;
+            }
+        }
     }
 }
@@ -0,0 +1,226 @@
+package edu.gmu.swe622.pa2;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Writes to a file from a background thread. Callers copy their bytes into as many pooled direct buffer slices as
+ * they need and return immediately; every slice is queued before write returns, so that a file whose writer has gone
+ * quiet holds no buffers, and a writer task on a shared pool writes every queued run of contiguous slices with a
+ * single gathering write. Slices are waited for outside the object's lock, so flush and close are never held up by a
+ * writer waiting for the pool. A failed write is reported by the next call to write or close. The file is forced to
+ * disk according to the Durability policy it was created with.
+ */
+public class WriteBehindFile {
+
+    /**
+     * Writes queued buffers for every file.
+     */
+    private static final ExecutorService WRITER_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "fss-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * A filled buffer waiting to be written, and the position in the file it belongs at.
+     */
+    private static class Pending {
+        private long position;
+        private ByteBuffer buffer;
+    }
+
+    private FileChannel fileChannel;
+    private BufferPool bufferPool;
+    private Durability durability;
+    private long syncInterval;
+    private Deque<Pending> queue = new ArrayDeque<>();
+    private boolean draining;
+    private boolean closed;
+    private long bytesSinceSync;
+    private volatile IOException failure;
+
+    /**
+     * Constructor.
+     * @param fileChannel  the file to write to; it is closed when this object is closed
+     * @param bufferPool  the pool to take buffers from
+     * @param durability  when the file is forced to disk
+     * @param syncInterval  the number of bytes written between each fsync when durability is PERIODIC
+     */
+    public WriteBehindFile(FileChannel fileChannel, BufferPool bufferPool, Durability durability, long syncInterval) {
+        this.fileChannel = fileChannel;
+        this.bufferPool = bufferPool;
+        this.durability = durability;
+        this.syncInterval = syncInterval;
+    }
+
+    /**
+     * Copies bytes into buffer slices and queues them to be written at position.
+     * @param position  the position in the file of the first byte
+     * @param data  the bytes to write
+     * @param offset  the index in data of the first byte
+     * @param length  the number of bytes to write
+     * @throws IOException  if an earlier write failed, the file has been closed, or the caller was interrupted while
+     *                      waiting for a slice
+     * @throws ServerBusyException  if every slice stayed in use for too long
+     */
+    public void write(long position, byte[] data, int offset, int length) throws IOException {
+        this.checkFailure();
+        while (length > 0) {
+            ByteBuffer slice;
+            try {
+                slice = this.bufferPool.acquire();
+            } catch (InterruptedException exp) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for an upload buffer");
+            }
+            int count = Math.min(length, slice.remaining());
+            slice.put(data, offset, count);
+            synchronized (this) {
+                if (this.closed) {
+                    this.bufferPool.release(slice);
+                    throw new IOException("Uploaded bytes arrived after the file was closed");
+                }
+                this.submit(position, slice);
+            }
+            position += count;
+            offset += count;
+            length -= count;
+        }
+    }
+
+    /**
+     * Waits until every queued byte has been written to the file.
+     * @throws IOException  if any write failed, or the caller was interrupted while waiting
+     */
+    public synchronized void flush() throws IOException {
+        synchronized (this.queue) {
+            while (this.draining || ! this.queue.isEmpty()) {
+                try {
+                    this.queue.wait();
+                } catch (InterruptedException exp) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while writing uploaded bytes");
+                }
+            }
+        }
+        this.checkFailure();
+    }
+
+    /**
+     * Writes out every queued byte, forces the file to disk if the durability policy requires it, and closes the
+     * file.
+     * @throws IOException  if any write failed or the file cannot be forced or closed
+     */
+    public synchronized void close() throws IOException {
+        this.closed = true;
+        try {
+            this.flush();
+            if (this.durability != Durability.NONE && this.fileChannel.isOpen()) {
+                this.fileChannel.force(true);
+            }
+        } finally {
+            this.fileChannel.close();
+        }
+    }
+
+    /**
+     * Queues a filled slice for writing and starts the writer task if it is not already running.
+     * @param position  the position in the file of the first byte in the slice
+     * @param buffer  the slice, filled from its start
+     */
+    private void submit(long position, ByteBuffer buffer) {
+        Pending pending = new Pending();
+        pending.position = position;
+        pending.buffer = buffer;
+        pending.buffer.flip();
+        synchronized (this.queue) {
+            this.queue.add(pending);
+            if (! this.draining) {
+                this.draining = true;
+                WRITER_EXECUTOR.execute(this::drain);
+            }
+        }
+    }
+
+    /**
+     * Writes queued buffers until the queue is empty, coalescing each run of contiguous buffers into one gathering
+     * write. Runs on the writer pool; only one drain runs at a time for each file.
+     */
+    private void drain() {
+        while (true) {
+            List<Pending> batch;
+            synchronized (this.queue) {
+                if (this.queue.isEmpty()) {
+                    this.draining = false;
+                    this.queue.notifyAll();
+                    return;
+                }
+                batch = new ArrayList<>(this.queue);
+                this.queue.clear();
+            }
+            int start = 0;
+            while (start < batch.size()) {
+                int end = start + 1;
+                long next = batch.get(start).position + batch.get(start).buffer.remaining();
+                while (end < batch.size() && batch.get(end).position == next) {
+                    next += batch.get(end).buffer.remaining();
+                    end++;
+                }
+                this.writeRun(batch.subList(start, end));
+                start = end;
+            }
+        }
+    }
+
+    /**
+     * Writes a run of contiguous buffers at the position of the first one and returns them to the pool.
+     * @param run  the buffers to write, in file order
+     */
+    private void writeRun(List<Pending> run) {
+        ByteBuffer[] buffers = new ByteBuffer[run.size()];
+        long remaining = 0;
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = run.get(i).buffer;
+            remaining += buffers[i].remaining();
+        }
+        try {
+            if (this.failure == null) {
+                this.fileChannel.position(run.get(0).position);
+                while (remaining > 0) {
+                    remaining -= this.fileChannel.write(buffers);
+                }
+                this.bytesSinceSync += run.get(run.size() - 1).position + buffers[buffers.length - 1].limit()
+                        - run.get(0).position;
+                if (this.durability == Durability.PERIODIC && this.bytesSinceSync >= this.syncInterval) {
+                    this.fileChannel.force(false);
+                    this.bytesSinceSync = 0;
+                }
+            }
+        } catch (IOException exp) {
+            this.failure = exp;
+        } finally {
+            for (ByteBuffer buffer : buffers) {
+                this.bufferPool.release(buffer);
+            }
+        }
+    }
+
+    /**
+     * Throws the first write failure, if there has been one.
+     * @throws IOException  the failure of an earlier background write
+     */
+    private void checkFailure() throws IOException {
+        if (this.failure != null) {
+            throw new IOException("Uploaded bytes could not be written: " + this.failure.getMessage(), this.failure);
+        }
+    }
+}
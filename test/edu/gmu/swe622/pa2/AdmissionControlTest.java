@@ -0,0 +1,56 @@
+package edu.gmu.swe622.pa2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+/**
+ * Tests for AdmissionControl.
+ */
+public class AdmissionControlTest {
+
+    /**
+     * A bulk call over the client's limit is turned away with the configured retry delay, and is let in once a
+     * running call ends.
+     * @throws Exception  if the test fails
+     */
+    @Test
+    public void turnsAwayCallsOverTheClientLimit() throws Exception {
+        AdmissionControl admission = new AdmissionControl(8, 1, 8, 0, 250, 0, 0);
+        admission.beginCall("a");
+        try {
+            admission.beginCall("a");
+            fail("Second call was admitted");
+        } catch (ServerBusyException exp) {
+            assertEquals(250, exp.getRetryAfterMillis());
+        }
+        admission.beginCall("b");
+        admission.endCall("a", 0);
+        admission.beginCall("a");
+    }
+
+    /**
+     * A client is only forgotten once it has no sessions open and has been idle for the timeout.
+     * @throws Exception  if the test fails
+     */
+    @Test
+    public void prunesOnlyIdleClients() throws Exception {
+        AdmissionControl admission = new AdmissionControl(8, 8, 8, 0, 0, 0, 0);
+        admission.openSession("a");
+        admission.beginCall("b");
+        admission.endCall("b", 0);
+        assertEquals(2, admission.clientCount());
+        Thread.sleep(1100);
+        admission.prune(0);
+        assertEquals(1, admission.clientCount());
+        admission.closeSession("a");
+        admission.prune(0);
+        assertEquals(1, admission.clientCount());
+        Thread.sleep(1100);
+        admission.prune(0);
+        assertEquals(0, admission.clientCount());
+        admission.openSession("a");
+        admission.closeSession("a");
+    }
+}
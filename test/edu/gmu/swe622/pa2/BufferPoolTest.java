@@ -0,0 +1,42 @@
+package edu.gmu.swe622.pa2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+/**
+ * Tests for BufferPool.
+ */
+public class BufferPoolTest {
+
+    /**
+     * Each buffer is handed out as separate slices that do not overlap.
+     * @throws Exception  if the test fails
+     */
+    @Test
+    public void handsOutSlices() throws Exception {
+        BufferPool pool = new BufferPool(1024, 256, 1, 0, 0);
+        ByteBuffer first = pool.acquire();
+        ByteBuffer second = pool.acquire();
+        assertEquals(256, first.capacity());
+        assertEquals(2, pool.inUse());
+        first.put((byte) 1);
+        assertEquals(0, second.get(0));
+        pool.acquire();
+        pool.acquire();
+        try {
+            pool.acquire();
+            fail("More slices than the pool holds");
+        } catch (ServerBusyException exp) {
+            assertEquals(4, pool.inUse());
+        }
+        pool.release(first);
+        assertEquals(3, pool.inUse());
+        ByteBuffer again = pool.acquire();
+        assertEquals(0, again.position());
+        assertEquals(256, again.remaining());
+    }
+}
@@ -0,0 +1,49 @@
+package edu.gmu.swe622.pa2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Tests for BusyRetry.
+ */
+public class BusyRetryTest {
+
+    /**
+     * A call turned away as busy is sent again until it goes through.
+     * @throws Exception  if the test fails
+     */
+    @Test
+    public void retriesBusyCalls() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        String result = BusyRetry.bulk(() -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new ServerBusyException("Busy", 1);
+            }
+            return "done";
+        });
+        assertEquals("done", result);
+        assertEquals(3, attempts.get());
+    }
+
+    /**
+     * A call that is still turned away after the last retry fails with the server's error.
+     * @throws Exception  if the test fails
+     */
+    @Test
+    public void givesUpAfterTheLastRetry() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        try {
+            BusyRetry.retry(() -> {
+                attempts.incrementAndGet();
+                throw new ServerBusyException("Busy", 0);
+            });
+            fail("Busy call succeeded");
+        } catch (ServerBusyException exp) {
+            assertEquals(Constants.ADMIT_RETRIES + 1, attempts.get());
+        }
+    }
+}
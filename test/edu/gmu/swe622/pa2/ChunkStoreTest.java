@@ -0,0 +1,67 @@
+package edu.gmu.swe622.pa2;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for ChunkStore.
+ */
+public class ChunkStoreTest {
+
+    private Path dir;
+    private ChunkStore store;
+
+    /**
+     * Creates a directory holding an empty chunk store.
+     * @throws Exception  if the store cannot be created
+     */
+    @Before
+    public void createStore() throws Exception {
+        this.dir = Files.createTempDirectory("fss-store");
+        this.store = new ChunkStore(this.dir.resolve(".fssstore"));
+    }
+
+    /**
+     * Deletes the directory and everything in it.
+     * @throws Exception  if the directory cannot be deleted
+     */
+    @After
+    public void deleteDir() throws Exception {
+        try (Stream<Path> paths = Files.walk(this.dir)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    /**
+     * A sweep keeps chunks that are pinned, whether they were pinned by storing them or before they were stored,
+     * and deletes them once they are unpinned.
+     * @throws Exception  if the test fails
+     */
+    @Test
+    public void keepsPinnedChunks() throws Exception {
+        String stored = this.store.put(new byte[] { 1 });
+        List<String> asked = Collections.singletonList(ChunkStore.hash(new byte[] { 2 }, 0, 1));
+        this.store.pin(asked);
+        this.store.put(new byte[] { 2 });
+        this.store.unpin(asked);
+        assertEquals(0, this.store.sweep(this.dir));
+        this.store.unpin(Collections.singletonList(stored));
+        assertEquals(1, this.store.sweep(this.dir));
+        this.store.unpin(asked);
+        assertEquals(1, this.store.sweep(this.dir));
+        assertEquals(Arrays.asList(stored, asked.get(0)), this.store.missing(Arrays.asList(stored, asked.get(0))));
+    }
+}
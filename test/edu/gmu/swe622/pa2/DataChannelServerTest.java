@@ -0,0 +1,114 @@
+package edu.gmu.swe622.pa2;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for DataChannelServer.
+ */
+public class DataChannelServerTest {
+
+    private Path path;
+    private DataChannelServer server;
+
+    /**
+     * Creates the file to upload to and starts a data channel whose transfers time out quickly.
+     * @throws Exception  if the file cannot be created or the channel cannot be started
+     */
+    @Before
+    public void start() throws Exception {
+        this.path = Files.createTempFile("fss-data", ".bin");
+        this.server = new DataChannelServer(0, 5000, 300, 2, (path) -> { });
+    }
+
+    /**
+     * Stops the data channel and deletes the file.
+     * @throws Exception  if the channel cannot be stopped or the file cannot be deleted
+     */
+    @After
+    public void stop() throws Exception {
+        this.server.close();
+        Files.deleteIfExists(this.path);
+    }
+
+    /**
+     * An upload whose bytes all arrive is written, forced, and confirmed with the status byte.
+     * @throws Exception  if the test fails
+     */
+    @Test
+    public void receivesUpload() throws Exception {
+        byte[] data = { 1, 2, 3, 4, 5, 6, 7, 8 };
+        TransferOptions options = new TransferOptions(1, 1, 1, Durability.PERIODIC, 3);
+        DataTicket ticket = this.server.issueUpload(this.path, data.length, 0, options);
+        try (Socket socket = this.connect(ticket)) {
+            socket.getOutputStream().write(data);
+            assertEquals(DataChannelServer.STATUS_OK, socket.getInputStream().read());
+        }
+        assertArrayEquals(data, Files.readAllBytes(this.path));
+    }
+
+    /**
+     * A shorter existing file keeps only the prefix the client says matches, and the upload resumes from there, while
+     * a file that is not shorter is cut off and received whole.
+     * @throws Exception  if the test fails
+     */
+    @Test
+    public void resumesFromMatchingPrefix() throws Exception {
+        Files.write(this.path, new byte[] { 1, 2, 9, 9 });
+        DataTicket ticket = this.server.issueUpload(this.path, 6, 2, TransferOptions.defaults());
+        assertEquals(2, ticket.getOffset());
+        assertEquals(4, ticket.getLength());
+        assertArrayEquals(new byte[] { 1, 2 }, Files.readAllBytes(this.path));
+        try (Socket socket = this.connect(ticket)) {
+            socket.getOutputStream().write(new byte[] { 3, 4, 5, 6 });
+            assertEquals(DataChannelServer.STATUS_OK, socket.getInputStream().read());
+        }
+        assertArrayEquals(new byte[] { 1, 2, 3, 4, 5, 6 }, Files.readAllBytes(this.path));
+        ticket = this.server.issueUpload(this.path, 6, 6, TransferOptions.defaults());
+        assertEquals(0, ticket.getOffset());
+        assertEquals(0, Files.size(this.path));
+    }
+
+    /**
+     * An upload whose client stops sending part way through is closed once the idle timeout has passed, instead of
+     * holding its worker forever.
+     * @throws Exception  if the test fails
+     */
+    @Test
+    public void closesStalledUpload() throws Exception {
+        DataTicket ticket = this.server.issueUpload(this.path, 100, 0, TransferOptions.defaults());
+        try (Socket socket = this.connect(ticket)) {
+            socket.getOutputStream().write(new byte[10]);
+            socket.setSoTimeout(5000);
+            long start = System.nanoTime();
+            InputStream in = socket.getInputStream();
+            assertEquals(-1, in.read());
+            assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(3000));
+        }
+    }
+
+    /**
+     * Opens a connection to the data channel and sends the ticket's token.
+     * @param ticket  the ticket to connect with
+     * @return  the open connection
+     * @throws Exception  if the connection cannot be opened
+     */
+    private Socket connect(DataTicket ticket) throws Exception {
+        Socket socket = new Socket();
+        socket.connect(new InetSocketAddress("localhost", ticket.getPort()));
+        socket.getOutputStream().write(ticket.getToken());
+        return socket;
+    }
+}
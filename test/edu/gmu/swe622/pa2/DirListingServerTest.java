@@ -0,0 +1,64 @@
+package edu.gmu.swe622.pa2;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for DirListingServer.
+ */
+public class DirListingServerTest {
+
+    private Path dir;
+
+    /**
+     * Creates a directory to list.
+     * @throws Exception  if the directory cannot be created
+     */
+    @Before
+    public void createDir() throws Exception {
+        this.dir = Files.createTempDirectory("fss-list");
+    }
+
+    /**
+     * Deletes the directory and everything in it.
+     * @throws Exception  if the directory cannot be deleted
+     */
+    @After
+    public void deleteDir() throws Exception {
+        Files.deleteIfExists(this.dir.resolve(".fssuploads").resolve("upload"));
+        Files.deleteIfExists(this.dir.resolve(".fssuploads"));
+        Files.deleteIfExists(this.dir.resolve("a.txt"));
+        Files.delete(this.dir);
+    }
+
+    /**
+     * Reserved directories, such as the upload staging directory, are left out of the listing.
+     * @throws Exception  if the test fails
+     */
+    @Test
+    public void leavesOutExcludedEntries() throws Exception {
+        Path staging = Files.createDirectory(this.dir.resolve(".fssuploads"));
+        Files.write(staging.resolve("upload"), new byte[] { 1 });
+        Files.write(this.dir.resolve("a.txt"), new byte[] { 1 });
+        DirListingServer listing = new DirListingServer(this.dir, ListOptions.defaults(),
+                Collections.singleton(staging.toAbsolutePath().normalize()));
+        List<String> names = new ArrayList<>();
+        DirPage page;
+        do {
+            page = listing.nextPage();
+            page.getEntries().forEach((entry) -> names.add(entry.getName()));
+        } while (! page.isLast());
+        listing.close();
+        assertEquals(Arrays.asList("a.txt"), names);
+    }
+}
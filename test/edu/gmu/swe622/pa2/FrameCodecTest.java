@@ -0,0 +1,63 @@
+package edu.gmu.swe622.pa2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.nio.file.NoSuchFileException;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Tests for FrameCodec.
+ */
+public class FrameCodecTest {
+
+    /**
+     * Protocol values and exceptions sent with Java serialization are read back.
+     * @throws Exception  if the test fails
+     */
+    @Test
+    public void readsProtocolValues() throws Exception {
+        TransferOptions options = (TransferOptions) roundTrip(TransferOptions.defaults());
+        assertEquals(TransferOptions.defaults().getDurability(), options.getDurability());
+        ServerBusyException busy = (ServerBusyException) roundTrip(new ServerBusyException("Busy", 100));
+        assertEquals(100, busy.getRetryAfterMillis());
+        assertTrue(roundTrip(new NoSuchFileException("a")) instanceof NoSuchFileException);
+        assertEquals(Arrays.asList(1L, 2L), roundTrip(Arrays.asList(1L, 2L)));
+    }
+
+    /**
+     * A serialized value containing a class that is not part of the protocol is refused.
+     * @throws Exception  if the test fails
+     */
+    @Test
+    public void refusesOtherClasses() throws Exception {
+        try {
+            roundTrip(new File("a"));
+            fail("File was read from a frame");
+        } catch (InvalidClassException exp) {
+            assertEquals(File.class.getName(), exp.classname);
+        }
+    }
+
+    /**
+     * Writes a value and reads it back.
+     * @param value  the value
+     * @return  the value read
+     * @throws IOException  if the value cannot be written or read
+     */
+    private static Object roundTrip(Object value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        FrameCodec.writeValue(new DataOutputStream(bytes), value);
+        return FrameCodec.readValue(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+}
@@ -0,0 +1,90 @@
+package edu.gmu.swe622.pa2;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for MultipartUpload.
+ */
+public class MultipartUploadTest {
+
+    private Path dir;
+
+    /**
+     * Creates a directory to upload into.
+     * @throws Exception  if the directory cannot be created
+     */
+    @Before
+    public void createDir() throws Exception {
+        this.dir = Files.createTempDirectory("fss-multipart");
+    }
+
+    /**
+     * Deletes the directory and everything in it.
+     * @throws Exception  if the directory cannot be deleted
+     */
+    @After
+    public void deleteDir() throws Exception {
+        try (Stream<Path> files = Files.list(this.dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(this.dir);
+    }
+
+    /**
+     * Parts completed in any order replace the destination once the last one arrives.
+     * @throws Exception  if the test fails
+     */
+    @Test
+    public void completesPartsInAnyOrder() throws Exception {
+        Path destination = this.dir.resolve("file.bin");
+        Files.write(destination, new byte[] { 9 });
+        byte[] data = { 0, 1, 2, 3, 4, 5, 6, 7, 8, 9 };
+        MultipartUpload upload = new MultipartUpload("file.bin", destination, this.dir.resolve("file.tmp"),
+                data.length, 4, Durability.NONE);
+        assertEquals(3, upload.getPartCount());
+        assertEquals(2, upload.partLength(2));
+        for (int part : new int[] { 2, 0 }) {
+            upload.write(upload.partOffset(part), ByteBuffer.wrap(data, (int) upload.partOffset(part),
+                    (int) upload.partLength(part)));
+            assertFalse(upload.completePart(part));
+        }
+        upload.write(4, ByteBuffer.wrap(data, 4, 4));
+        assertTrue(upload.completePart(1));
+        assertArrayEquals(data, Files.readAllBytes(destination));
+        try (Stream<Path> files = Files.list(this.dir)) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    /**
+     * A file that would have more parts than an int can count is refused rather than miscounted.
+     * @throws Exception  if the test fails
+     */
+    @Test
+    public void refusesTooManyParts() throws Exception {
+        try {
+            new MultipartUpload("file.bin", this.dir.resolve("file.bin"), this.dir.resolve("file.tmp"),
+                    Long.MAX_VALUE, 2, Durability.NONE);
+            fail("Upload with too many parts was started");
+        } catch (IllegalArgumentException exp) {
+            try (Stream<Path> files = Files.list(this.dir)) {
+                assertEquals(0, files.count());
+            }
+        }
+    }
+}
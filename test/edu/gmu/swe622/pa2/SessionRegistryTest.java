@@ -0,0 +1,102 @@
+package edu.gmu.swe622.pa2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.rmi.NoSuchObjectException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for SessionRegistry.
+ */
+public class SessionRegistryTest {
+
+    /**
+     * A session whose calls take as long as they are told to.
+     */
+    public interface Pausing extends RemoteSession {
+
+        /**
+         * Returns after a while.
+         * @param millis  how long to take
+         * @throws IOException  if the call fails
+         */
+        void pause(long millis) throws IOException;
+    }
+
+    private SessionRegistry registry;
+
+    /**
+     * Creates a registry whose sessions are reaped after 200 milliseconds.
+     */
+    @Before
+    public void createRegistry() {
+        this.registry = new SessionRegistry(8, 200, new AdmissionControl(8, 8, 8, 0, 0, 0, 0), new Metrics());
+    }
+
+    /**
+     * Closes every session left open.
+     */
+    @After
+    public void closeRegistry() {
+        this.registry.close();
+    }
+
+    /**
+     * A session is not reaped while a call on it runs past the idle timeout, is reaped once it has then been idle,
+     * and refuses calls after that.
+     * @throws Exception  if the test fails
+     */
+    @Test
+    public void reapsOnlyIdleSessions() throws Exception {
+        AtomicBoolean closed = new AtomicBoolean();
+        Pausing session = this.registry.open(Pausing.class, "pausing", AdmissionControl.Priority.INTERACTIVE, "p",
+                null, () -> new Pausing() {
+                    @Override
+                    public void pause(long millis) throws IOException {
+                        try {
+                            Thread.sleep(millis);
+                        } catch (InterruptedException exp) {
+                            throw new IOException(exp);
+                        }
+                    }
+
+                    @Override
+                    public void close() {
+                        closed.set(true);
+                    }
+                });
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        Thread caller = new Thread(() -> {
+            try {
+                session.pause(800);
+            } catch (Exception exp) {
+                failure.set(exp);
+            }
+        });
+        caller.start();
+        Thread.sleep(500);
+        assertEquals(1, this.registry.size());
+        assertFalse(closed.get());
+        caller.join();
+        assertNull(failure.get());
+        Thread.sleep(600);
+        assertEquals(0, this.registry.size());
+        assertTrue(closed.get());
+        try {
+            session.pause(0);
+            fail("Call on a reaped session succeeded");
+        } catch (NoSuchObjectException exp) {
+            // expected
+        }
+    }
+}
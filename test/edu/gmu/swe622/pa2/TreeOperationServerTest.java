@@ -0,0 +1,76 @@
+package edu.gmu.swe622.pa2;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.UserDefinedFileAttributeView;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for TreeOperationServer.
+ */
+public class TreeOperationServerTest {
+
+    private Path dir;
+
+    /**
+     * Creates a directory to copy in.
+     * @throws Exception  if the directory cannot be created
+     */
+    @Before
+    public void createDir() throws Exception {
+        this.dir = Files.createTempDirectory("fss-copy");
+    }
+
+    /**
+     * Deletes the directory and everything in it.
+     * @throws Exception  if the directory cannot be deleted
+     */
+    @After
+    public void deleteDir() throws Exception {
+        try (Stream<Path> files = Files.list(this.dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(this.dir);
+    }
+
+    /**
+     * Copying a file over an existing one replaces it whole: the bytes and modification time are the source's, the
+     * target's old user-defined attributes are gone, and no temporary file is left behind.
+     * @throws Exception  if the test fails
+     */
+    @Test
+    public void replacesExistingTarget() throws Exception {
+        Assume.assumeTrue(Files.getFileStore(this.dir).supportsFileAttributeView(UserDefinedFileAttributeView.class));
+        Path source = this.dir.resolve("source.bin");
+        Path target = this.dir.resolve("target.bin");
+        Files.write(source, new byte[] { 1, 2, 3 });
+        Files.setLastModifiedTime(source, FileTime.fromMillis(1000000000000L));
+        Files.write(target, new byte[] { 9, 9, 9, 9, 9, 9 });
+        UserDefinedFileAttributeView attributes = Files.getFileAttributeView(target,
+                UserDefinedFileAttributeView.class);
+        attributes.write("fss.old", ByteBuffer.wrap("x".getBytes(StandardCharsets.UTF_8)));
+        OperationStatus status = new TreeOperationServer(source, target, false, (path) -> { }).poll(10000);
+        assertTrue(status.isFinished());
+        assertTrue(status.getErrors().isEmpty());
+        assertArrayEquals(new byte[] { 1, 2, 3 }, Files.readAllBytes(target));
+        assertEquals(Files.getLastModifiedTime(source), Files.getLastModifiedTime(target));
+        assertTrue(Files.getFileAttributeView(target, UserDefinedFileAttributeView.class).list().isEmpty());
+        try (Stream<Path> files = Files.list(this.dir)) {
+            assertEquals(2, files.count());
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package edu.gmu.swe622.pa2;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for WriteBehindFile.
+ */
+public class WriteBehindFileTest {
+
+    private Path path;
+
+    /**
+     * Creates the file to write to.
+     * @throws Exception  if the file cannot be created
+     */
+    @Before
+    public void createFile() throws Exception {
+        this.path = Files.createTempFile("fss-write", ".bin");
+    }
+
+    /**
+     * Deletes the file.
+     * @throws Exception  if the file cannot be deleted
+     */
+    @After
+    public void deleteFile() throws Exception {
+        Files.deleteIfExists(this.path);
+    }
+
+    /**
+     * Writes that span several slices, and arrive out of order, end up at their positions, and every slice is
+     * returned to the pool.
+     * @throws Exception  if the test fails
+     */
+    @Test
+    public void writesAcrossSlices() throws Exception {
+        BufferPool pool = new BufferPool(1024, 100, 4, 1000, 0);
+        byte[] data = new byte[1000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        WriteBehindFile file = new WriteBehindFile(this.open(), pool, Durability.NONE, 0);
+        file.write(300, data, 300, 700);
+        file.write(0, data, 0, 300);
+        file.close();
+        assertArrayEquals(data, Files.readAllBytes(this.path));
+        assertEquals(0, pool.inUse());
+    }
+
+    /**
+     * A writer waiting for a slice does not hold up close, and its bytes are refused once the file is closed.
+     * @throws Exception  if the test fails
+     */
+    @Test
+    public void closesWhileWriterWaits() throws Exception {
+        BufferPool pool = new BufferPool(100, 100, 1, 2000, 0);
+        WriteBehindFile file = new WriteBehindFile(this.open(), pool, Durability.NONE, 0);
+        ByteBuffer held = pool.acquire();
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            started.countDown();
+            try {
+                file.write(0, new byte[10], 0, 10);
+            } catch (Exception exp) {
+                failure.set(exp);
+            }
+        });
+        writer.start();
+        started.await();
+        Thread.sleep(100);
+        long start = System.nanoTime();
+        file.close();
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(1000));
+        pool.release(held);
+        writer.join();
+        assertTrue(failure.get() instanceof IOException);
+        assertEquals(0, pool.inUse());
+    }
+
+    /**
+     * Opens the file for writing.
+     * @return  the open file
+     * @throws IOException  if the file cannot be opened
+     */
+    private FileChannel open() throws IOException {
+        return FileChannel.open(this.path, StandardOpenOption.WRITE);
+    }
+}